@@ -0,0 +1,132 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import messageModel.ConnectMessage;
+import protocol.Protocol;
+
+/**
+ * Helpers shared by the benchmarks: starting an in-process server, connecting raw clients and
+ * summarizing measurements
+ */
+public class BenchSupport {
+
+  /**
+   * All methods are static
+   */
+  private BenchSupport() {}
+
+  /**
+   *
+   * @return a port nothing is listening on right now
+   * @throws IOException if no port can be found
+   */
+  public static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  /**
+   * Start the server on a daemon thread and wait until it accepts connections
+   *
+   * @param server the server to start
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public static void startServer(ChatServer server) throws InterruptedException {
+    Thread serverThread = new Thread(() -> {
+      try {
+        server.start();
+      } catch (IOException ignored) {
+      }
+    }, "bench-server");
+    serverThread.setDaemon(true);
+    serverThread.start();
+    while (server.getServerSocket() == null || !server.getServerSocket().isBound()) {
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Stop the server and give its threads a moment to finish
+   *
+   * @param server the running server
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public static void stopServer(ChatServer server) throws InterruptedException {
+    server.stop();
+    server.getThreadPool().awaitTermination(5, java.util.concurrent.TimeUnit.SECONDS);
+  }
+
+  /**
+   * Connect a raw socket and complete the connect handshake
+   *
+   * @param port the server port
+   * @param username the username to log in as
+   * @return the connected socket
+   * @throws IOException if the handshake fails
+   */
+  public static Socket connect(int port, String username) throws IOException {
+    Socket socket = new Socket("localhost", port);
+    socket.setTcpNoDelay(true);
+    new ConnectMessage(username).send(new DataOutputStream(socket.getOutputStream()));
+    DataInputStream in = new DataInputStream(socket.getInputStream());
+    if (in.readInt() != Protocol.CONNECT_RESPONSE || !in.readBoolean()) {
+      throw new IOException("Connect failed for " + username);
+    }
+    in.readUTF();
+    return socket;
+  }
+
+  /**
+   * Close sockets, ignoring errors
+   *
+   * @param sockets the sockets to close
+   */
+  public static void closeAll(Iterable<Socket> sockets) {
+    for (Socket socket : sockets) {
+      try {
+        socket.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  /**
+   *
+   * @return bytes of heap in use after a garbage collection
+   * @throws InterruptedException if interrupted while waiting for the collection
+   */
+  public static long usedHeapAfterGc() throws InterruptedException {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  /**
+   *
+   * @return number of live platform threads in this JVM
+   */
+  public static int liveThreads() {
+    return ManagementFactory.getThreadMXBean().getThreadCount();
+  }
+
+  /**
+   * @param samples the measurements, sorted in place
+   * @param percentile between 0 and 100
+   * @return the value at the given percentile
+   */
+  public static long percentile(long[] samples, double percentile) {
+    if (samples.length == 0) {
+      return 0;
+    }
+    Arrays.sort(samples);
+    int index = (int) Math.ceil(percentile / 100.0 * samples.length) - 1;
+    return samples[Math.max(0, Math.min(samples.length - 1, index))];
+  }
+}
@@ -0,0 +1,82 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import messageModel.BroadcastMessage;
+import messageModel.EncodedMessage;
+import messageModel.Message;
+
+/**
+ * Compares the cost of one broadcast when every recipient's writer encodes the BroadcastMessage itself
+ * against handing every recipient the same EncodedMessage. Covers the fan-out to the queues and the
+ * writers' work, with writers draining into a null stream on the benchmark thread.
+ * Args: recipient counts, default 1000 10000
+ */
+public class BroadcastFanoutBenchmark {
+  private static final int BROADCASTS = 200;
+  private static final int WARMUP_ROUNDS = 3;
+
+  /**
+   * Run the comparison
+   *
+   * @param args recipient counts
+   * @throws IOException if encoding fails
+   */
+  public static void main(String[] args) throws IOException {
+    int[] counts = args.length > 0
+        ? java.util.Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+        : new int[] {1000, 10000};
+    BroadcastMessage broadcast = new BroadcastMessage("sender", "x".repeat(200));
+    System.out.println("recipients,variant,usPerBroadcast,bytesAllocatedPerBroadcast");
+    for (int recipients : counts) {
+      List<ClientThread> writers = new ArrayList<>();
+      for (int i = 0; i < recipients; i++) {
+        writers.add(new ClientThread(new DataOutputStream(OutputStream.nullOutputStream()), "user" + i));
+      }
+      for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+        boolean report = round == WARMUP_ROUNDS;
+        measure("perRecipientEncode", writers, broadcast, false, report);
+        measure("encodeOnce", writers, broadcast, true, report);
+      }
+    }
+  }
+
+  /**
+   * Broadcast a number of times and print the average cost
+   *
+   * @param variant label for the report
+   * @param writers the recipients
+   * @param broadcast the message to broadcast
+   * @param encodeOnce whether to share one EncodedMessage between recipients
+   * @param report whether to print the result
+   * @throws IOException if encoding fails
+   */
+  private static void measure(String variant, List<ClientThread> writers, BroadcastMessage broadcast,
+      boolean encodeOnce, boolean report) throws IOException {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+    long start = System.nanoTime();
+    for (int b = 0; b < BROADCASTS; b++) {
+      Message frame = encodeOnce ? new EncodedMessage(broadcast) : broadcast;
+      for (ClientThread writer : writers) {
+        writer.receiveMessage(frame);
+      }
+      for (ClientThread writer : writers) {
+        Message queued;
+        while ((queued = writer.getMessageLine().poll()) != null) {
+          queued.send(writer.getOutStream());
+        }
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+    if (report) {
+      System.out.println(writers.size() + "," + variant + "," + elapsed / BROADCASTS / 1000 + ","
+          + allocated / BROADCASTS);
+    }
+  }
+}
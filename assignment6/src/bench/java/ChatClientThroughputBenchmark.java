@@ -0,0 +1,88 @@
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import messageModel.DirectMessage;
+
+/**
+ * Measures how many direct messages one ChatClient connection can push through an in-process server,
+ * with up to a given number of messages in flight at a time. Every message is acknowledged to the
+ * sender and delivered to the recipient before the round ends.
+ * Args: messages per round, most in flight, server mode; defaults 200000, 1024, NIO
+ */
+public class ChatClientThroughputBenchmark {
+  private static final int WARMUP_ROUNDS = 2;
+
+  /**
+   * Run the measurement
+   *
+   * @param args messages per round, most in flight and server mode
+   * @throws Exception if the server cannot be reached or a message fails
+   */
+  public static void main(String[] args) throws Exception {
+    int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+    int window = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+    ServerMode mode = args.length > 2 ? ServerMode.valueOf(args[2].toUpperCase()) : ServerMode.NIO;
+    int port = BenchSupport.freePort();
+    ChatServer server = new ChatServer(port, mode);
+    BenchSupport.startServer(server);
+    AtomicLong delivered = new AtomicLong();
+    ChatClient sender = ChatClient.connect("localhost", port, "sender", new ChatListener() {});
+    ChatClient recipient = ChatClient.connect("localhost", port, "recipient", new ChatListener() {
+      @Override
+      public void onDirectMessage(DirectMessage message) {
+        delivered.incrementAndGet();
+      }
+    });
+    System.out.println("mode,window,messages,messagesPerSecond");
+    try {
+      for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+        long start = System.nanoTime();
+        long target = delivered.get() + messages;
+        send(sender, messages, window);
+        while (delivered.get() < target) {
+          Thread.sleep(1);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (round == WARMUP_ROUNDS) {
+          System.out.println(mode + "," + window + "," + messages + ","
+              + messages * TimeUnit.SECONDS.toNanos(1) / elapsed);
+        }
+      }
+    } finally {
+      sender.close();
+      recipient.close();
+      BenchSupport.stopServer(server);
+    }
+  }
+
+  /**
+   * Send messages, never letting more than the window wait for their acknowledgement
+   *
+   * @param sender the sending client
+   * @param messages number of messages to send
+   * @param window most messages in flight
+   * @throws IOException if a message is refused
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private static void send(ChatClient sender, int messages, int window)
+      throws IOException, InterruptedException {
+    Semaphore inFlight = new Semaphore(window);
+    AtomicLong failures = new AtomicLong();
+    for (int i = 0; i < messages; i++) {
+      inFlight.acquire();
+      CompletableFuture<Void> ack = sender.sendDirect("recipient", "benchmark message " + i);
+      ack.whenComplete((ignored, failure) -> {
+        if (failure != null) {
+          failures.incrementAndGet();
+        }
+        inFlight.release();
+      });
+    }
+    inFlight.acquire(window);
+    if (failures.get() > 0) {
+      throw new IOException(failures.get() + " messages failed");
+    }
+  }
+}
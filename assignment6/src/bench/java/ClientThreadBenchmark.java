@@ -0,0 +1,96 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import messageModel.DirectMessage;
+
+/**
+ * Measures one ClientThread writer: CPU used while its queue stays empty, and how many messages per
+ * second it delivers over a loopback socket to a reader that drains as fast as it can.
+ * Args: messages to deliver, default 200000
+ */
+public class ClientThreadBenchmark {
+  private static final long IDLE_MILLIS = 2000;
+
+  /**
+   * Run both measurements
+   *
+   * @param args number of messages for the throughput run
+   * @throws Exception if a run fails
+   */
+  public static void main(String[] args) throws Exception {
+    int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+    System.out.println("idleCpuPercent," + idleCpuPercent());
+    System.out.println("messagesPerSecond," + messagesPerSecond(messages));
+    System.exit(0);
+  }
+
+  /**
+   *
+   * @return CPU time of an idle writer thread as a percentage of one core
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private static long idleCpuPercent() throws InterruptedException {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    ClientThread writer = new ClientThread(new DataOutputStream(OutputStream.nullOutputStream()), "idle");
+    Thread thread = new Thread(writer, "idle-writer");
+    thread.setDaemon(true);
+    thread.start();
+    Thread.sleep(200);
+    long cpuBefore = threads.getThreadCpuTime(thread.getId());
+    Thread.sleep(IDLE_MILLIS);
+    long cpuUsed = threads.getThreadCpuTime(thread.getId()) - cpuBefore;
+    return cpuUsed * 100 / (IDLE_MILLIS * 1_000_000);
+  }
+
+  /**
+   * @param messages number of messages to queue
+   * @return messages delivered per second through a loopback socket
+   * @throws Exception if the socket fails
+   */
+  private static long messagesPerSecond(int messages) throws Exception {
+    DirectMessage message = new DirectMessage("sender", "receiver", "a typical short chat line");
+    java.io.ByteArrayOutputStream frame = new java.io.ByteArrayOutputStream();
+    message.send(new DataOutputStream(frame));
+    long expectedBytes = (long) frame.size() * messages;
+    try (ServerSocket listener = new ServerSocket(0);
+        Socket client = new Socket("localhost", listener.getLocalPort());
+        Socket server = listener.accept()) {
+      CountDownLatch drained = new CountDownLatch(1);
+      Thread reader = new Thread(() -> {
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        try (InputStream in = client.getInputStream()) {
+          while (total < expectedBytes) {
+            int read = in.read(buffer);
+            if (read < 0) {
+              break;
+            }
+            total += read;
+          }
+        } catch (IOException ignored) {
+        }
+        drained.countDown();
+      }, "bench-reader");
+      reader.start();
+
+      ClientThread writer = new ClientThread(new DataOutputStream(server.getOutputStream()), "receiver");
+      Thread thread = new Thread(writer, "bench-writer");
+      thread.setDaemon(true);
+      thread.start();
+      long start = System.nanoTime();
+      for (int i = 0; i < messages; i++) {
+        writer.receiveMessage(message);
+      }
+      drained.await();
+      long elapsed = System.nanoTime() - start;
+      return messages * 1_000_000_000L / elapsed;
+    }
+  }
+}
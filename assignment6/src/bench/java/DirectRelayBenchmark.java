@@ -0,0 +1,93 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import messageModel.DirectMessage;
+import messageModel.EncodedMessage;
+import messageModel.FramePool;
+import messageModel.FrameView;
+import messageModel.Message;
+import messageModel.PooledFrame;
+import messageModel.WireFormat;
+
+/**
+ * Compares the codec work a connection does to relay one direct message: decoding it into a
+ * ForwardedDirectMessage that holds a copy of the frame, against matching it in place with a FrameView
+ * and copying it into a pooled frame. Each message is then written into a socket-sized buffer.
+ * Args: messages per round, default 1000000
+ */
+public class DirectRelayBenchmark {
+  private static final int WARMUP_ROUNDS = 3;
+
+  /**
+   * Run the comparison
+   *
+   * @param args messages per round
+   * @throws IOException if a frame cannot be decoded
+   */
+  public static void main(String[] args) throws IOException {
+    int messages = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    System.out.println("format,variant,nsPerMessage,bytesAllocatedPerMessage");
+    for (WireFormat format : WireFormat.values()) {
+      ByteBuffer read = ByteBuffer.allocate(64 * 1024);
+      for (int i = 0; i < 256; i++) {
+        read.put(format.encode(new DirectMessage("sender", "recipient", "message number " + i)));
+      }
+      read.flip();
+      for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+        boolean report = round == WARMUP_ROUNDS;
+        measure(format, "decodeRouted", read, messages, false, report);
+        measure(format, "pooledView", read, messages, true, report);
+      }
+    }
+  }
+
+  /**
+   * Relay a number of messages and print the average cost
+   *
+   * @param format the wire format of the frames
+   * @param variant label for the report
+   * @param read the frames as they would sit in a read buffer
+   * @param messages number of messages to relay
+   * @param pooled whether to use the pooled path
+   * @param report whether to print the result
+   * @throws IOException if a frame cannot be decoded
+   */
+  private static void measure(WireFormat format, String variant, ByteBuffer read, int messages,
+      boolean pooled, boolean report) throws IOException {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    FramePool pool = new FramePool(1024, 64);
+    FrameView view = new FrameView();
+    ByteBuffer socket = ByteBuffer.allocate(1024);
+    String recipient = null;
+    long threadId = Thread.currentThread().getId();
+    long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+    long start = System.nanoTime();
+    for (int i = 0; i < messages; i++) {
+      if (!read.hasRemaining()) {
+        read.rewind();
+      }
+      socket.clear();
+      if (pooled) {
+        int length = format.frameLength(read);
+        view.wrap(format, read, read.position(), length);
+        if (!view.fieldEquals(1, recipient)) {
+          recipient = view.getString(1);
+        }
+        view.fieldEquals(0, "sender");
+        PooledFrame frame = pool.copyOf(view);
+        socket.put(format.encode(frame));
+        frame.release();
+        read.position(read.position() + length);
+      } else {
+        Message message = format.decodeRouted(read);
+        socket.put(((EncodedMessage) message).getFrame(format));
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+    if (report) {
+      System.out.println(format + "," + variant + "," + elapsed / messages + "," + allocated / messages);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how fast well-behaved clients can connect while other sockets connect and never send their
+ * ConnectMessage. Each connect is timed from opening the socket to reading the ConnectResp.
+ * Args: number of stalled sockets, default 1000, and number of timed connects, default 2000
+ */
+public class HandshakeStallBenchmark {
+
+  /**
+   * Run the measurement in BLOCKING and NIO mode, once without and once with stalled sockets
+   *
+   * @param args stalled socket count and timed connect count
+   * @throws Exception if a run fails
+   */
+  public static void main(String[] args) throws Exception {
+    int stalled = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int connects = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+    System.out.println("java " + System.getProperty("java.version"));
+    System.out.println("mode,stalled,connects,connectsPerSec,p50Us,p99Us,pendingHandshakes");
+    for (ServerMode mode : new ServerMode[] {ServerMode.BLOCKING, ServerMode.NIO}) {
+      run(mode, 0, connects);
+      run(mode, stalled, connects);
+    }
+  }
+
+  /**
+   * Open the stalled sockets, then connect and close clients one after another
+   *
+   * @param mode the server mode
+   * @param stalled number of sockets that never send a ConnectMessage
+   * @param connects number of timed connects
+   * @throws Exception if the run fails
+   */
+  private static void run(ServerMode mode, int stalled, int connects) throws Exception {
+    int port = BenchSupport.freePort();
+    ChatServer server = new ChatServer(port, mode);
+    server.setHandshakeTimeoutMillis(60_000);
+    BenchSupport.startServer(server);
+
+    List<Socket> stalledSockets = new ArrayList<>();
+    for (int i = 0; i < stalled; i++) {
+      stalledSockets.add(new Socket("localhost", port));
+    }
+    while (server.getPendingHandshakeCount() < stalled) {
+      Thread.sleep(10);
+    }
+
+    long[] latencies = new long[connects];
+    long start = System.nanoTime();
+    for (int i = 0; i < connects; i++) {
+      long connectStart = System.nanoTime();
+      Socket socket = BenchSupport.connect(port, "user" + i);
+      latencies[i] = System.nanoTime() - connectStart;
+      try {
+        socket.close();
+      } catch (IOException ignored) {
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+
+    System.out.println(mode + "," + stalled + "," + connects + ","
+        + (long) (connects / (elapsed / 1e9)) + ","
+        + BenchSupport.percentile(latencies, 50) / 1000 + ","
+        + BenchSupport.percentile(latencies, 99) / 1000 + ","
+        + server.getPendingHandshakeCount());
+    BenchSupport.closeAll(stalledSockets);
+    BenchSupport.stopServer(server);
+  }
+}
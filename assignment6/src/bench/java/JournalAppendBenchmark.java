@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import messageModel.DirectMessage;
+import messageModel.WireFormat;
+
+/**
+ * Measures what journaling adds to the routing path: the latency of MessageJournal.append for an
+ * encoded direct message, with several routing threads appending at once while the background thread
+ * group-commits. Args: appends per thread, threads; defaults 200000, 4
+ */
+public class JournalAppendBenchmark {
+  private static final int WARMUP_ROUNDS = 2;
+
+  /**
+   * Run the measurement
+   *
+   * @param args appends per thread and threads
+   * @throws Exception if the journal cannot be opened
+   */
+  public static void main(String[] args) throws Exception {
+    int appends = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+    int threadCount = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    ByteBuffer frame = WireFormat.V2.encode(new DirectMessage("sender", "recipient", "x".repeat(64)));
+    System.out.println("threads,appends,p50Ns,p99Ns,p999Ns,maxNs,appendsPerSecond,durableSequence");
+    for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+      Path directory = Files.createTempDirectory("journal-bench");
+      try (MessageJournal journal = new MessageJournal(directory)) {
+        LatencyHistogram histogram = new LatencyHistogram(TimeUnit.SECONDS.toNanos(1));
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threadCount; t++) {
+          Thread thread = new Thread(() -> {
+            for (int i = 0; i < appends; i++) {
+              long before = System.nanoTime();
+              journal.append(WireFormat.V2, frame);
+              histogram.record(System.nanoTime() - before);
+            }
+          });
+          threads.add(thread);
+          thread.start();
+        }
+        for (Thread thread : threads) {
+          thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        long durable = journal.sync();
+        if (round == WARMUP_ROUNDS) {
+          System.out.println(threadCount + "," + appends * threadCount + ","
+              + histogram.getValueAtPercentile(50) + "," + histogram.getValueAtPercentile(99) + ","
+              + histogram.getValueAtPercentile(99.9) + "," + histogram.getMax() + ","
+              + appends * threadCount * TimeUnit.SECONDS.toNanos(1) / elapsed + "," + durable);
+        }
+      } finally {
+        delete(directory);
+      }
+    }
+  }
+
+  /**
+   * @param directory the directory to delete with everything in it
+   * @throws IOException if a file cannot be deleted
+   */
+  private static void delete(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+}
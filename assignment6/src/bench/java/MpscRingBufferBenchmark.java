@@ -0,0 +1,96 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Compares the outbound queue of a ClientThread, an MpscRingBuffer with either wait strategy, against the
+ * LinkedBlockingQueue it replaced, with 1, 8 and 64 producers putting at once the way a broadcast storm
+ * does and one consumer taking in batches the way the writer does. Reports throughput and the cost per
+ * message. Args: messages per run, default 2000000
+ */
+public class MpscRingBufferBenchmark {
+  private static final int WARMUP_ROUNDS = 2;
+  private static final int[] PRODUCERS = {1, 8, 64};
+  private static final int MAX_BATCH = 256;
+  private static final int CAPACITY = 1 << 16;
+  private static final Object MESSAGE = new Object();
+
+  /**
+   * Run the comparison
+   *
+   * @param args number of messages per run
+   * @throws Exception if interrupted
+   */
+  public static void main(String[] args) throws Exception {
+    int messages = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+    System.out.println("queue,producers,messagesPerSecond,nsPerMessage");
+    for (int producers : PRODUCERS) {
+      for (String queue : new String[] {"LinkedBlockingQueue", "MpscRingBuffer/BLOCK",
+          "MpscRingBuffer/SPIN_THEN_PARK"}) {
+        long elapsed = 0;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+          elapsed = run(newQueue(queue), producers, messages);
+        }
+        System.out.println(queue + "," + producers + "," + messages * 1_000_000_000L / elapsed + ","
+            + elapsed / messages);
+      }
+    }
+  }
+
+  /**
+   * @param name the queue to make
+   * @return a new empty queue
+   */
+  private static BlockingQueue<Object> newQueue(String name) {
+    switch (name) {
+      case "LinkedBlockingQueue":
+        return new LinkedBlockingQueue<>();
+      case "MpscRingBuffer/BLOCK":
+        return new MpscRingBuffer<>(MpscRingBuffer.DEFAULT_INITIAL_CAPACITY, CAPACITY, WaitStrategy.BLOCK);
+      default:
+        return new MpscRingBuffer<>(MpscRingBuffer.DEFAULT_INITIAL_CAPACITY, CAPACITY,
+            WaitStrategy.SPIN_THEN_PARK);
+    }
+  }
+
+  /**
+   * Put the messages from the producers and take them all on this thread
+   *
+   * @param queue the queue
+   * @param producers how many threads put at once
+   * @param messages how many messages in all
+   * @return nanoseconds from the start until the last message was taken
+   * @throws InterruptedException if interrupted
+   */
+  private static long run(BlockingQueue<Object> queue, int producers, int messages)
+      throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    int perProducer = messages / producers;
+    for (int p = 0; p < producers; p++) {
+      int count = p == 0 ? messages - perProducer * (producers - 1) : perProducer;
+      Thread producer = new Thread(() -> {
+        try {
+          start.await();
+          for (int i = 0; i < count; i++) {
+            queue.put(MESSAGE);
+          }
+        } catch (InterruptedException ignored) {
+        }
+      }, "bench-producer-" + p);
+      producer.setDaemon(true);
+      producer.start();
+    }
+    List<Object> batch = new ArrayList<>(MAX_BATCH);
+    long begin = System.nanoTime();
+    start.countDown();
+    for (int taken = 0; taken < messages; ) {
+      batch.add(queue.take());
+      queue.drainTo(batch, MAX_BATCH - 1);
+      taken += batch.size();
+      batch.clear();
+    }
+    return System.nanoTime() - begin;
+  }
+}
@@ -0,0 +1,82 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import messageModel.PresenceSnapshot;
+import messageModel.QueryResp;
+import messageModel.WireFormat;
+
+/**
+ * Compares answering who queries by copying the user map into a new QueryResp and encoding every name,
+ * against serving a reply from a presence snapshot that was encoded once. Each answer is written to a
+ * reused buffer standing in for the socket.
+ * Args: connected users, queries per round, default 10000 2000
+ */
+public class PresenceQueryBenchmark {
+  private static final int WARMUP_ROUNDS = 3;
+
+  /**
+   * Run the comparison
+   *
+   * @param args connected users and queries per round
+   * @throws IOException if a reply cannot be encoded
+   */
+  public static void main(String[] args) throws IOException {
+    int users = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+    int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+    ConcurrentHashMap<String, Object> clients = new ConcurrentHashMap<>();
+    for (int i = 0; i < users; i++) {
+      clients.put("user" + i, Boolean.TRUE);
+    }
+    System.out.println("format,variant,nsPerQuery,bytesAllocatedPerQuery");
+    for (WireFormat format : WireFormat.values()) {
+      for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+        boolean report = round == WARMUP_ROUNDS;
+        measure(format, "encodeEachQuery", clients, queries, false, report);
+        measure(format, "sharedSnapshot", clients, queries, true, report);
+      }
+    }
+  }
+
+  /**
+   * Answer a number of queries and print the average cost
+   *
+   * @param format the wire format of the replies
+   * @param variant label for the report
+   * @param clients the connected usernames
+   * @param queries number of queries to answer
+   * @param snapshot whether to serve replies from a presence snapshot
+   * @param report whether to print the result
+   * @throws IOException if a reply cannot be encoded
+   */
+  private static void measure(WireFormat format, String variant, ConcurrentHashMap<String, Object> clients,
+      int queries, boolean snapshot, boolean report) throws IOException {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    PresenceSnapshot presence = new PresenceSnapshot(1, clients.keySet());
+    ByteArrayOutputStream socket = new ByteArrayOutputStream(1 << 20);
+    DataOutputStream out = new DataOutputStream(socket);
+    long threadId = Thread.currentThread().getId();
+    long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+    long start = System.nanoTime();
+    for (int i = 0; i < queries; i++) {
+      String requester = "user" + (i % clients.size());
+      socket.reset();
+      if (snapshot) {
+        format.write(presence.replyFor(requester), out);
+      } else {
+        List<String> others = new ArrayList<>(clients.keySet());
+        others.remove(requester);
+        format.write(new QueryResp(others), out);
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+    if (report) {
+      System.out.println(format + "," + variant + "," + elapsed / queries + "," + allocated / queries);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import messageModel.DirectMessage;
+import messageModel.Message;
+
+/**
+ * Compares BLOCKING (a platform thread per reader and writer) and NIO mode (a few shared event loops):
+ * heap and platform thread count added by N connected users, and p50/p99 latency of direct messages sent
+ * while those users are connected. VIRTUAL_THREADS is not compared, it needs Java 21.
+ * Args: the connected user counts to try, default 100 500 1000
+ */
+public class ThreadModeBenchmark {
+  private static final int CHATTY_USERS = 10;
+  private static final int MESSAGES_PER_USER = 200;
+
+  /**
+   * Run the comparison
+   *
+   * @param args connected user counts
+   * @throws Exception if a run fails
+   */
+  public static void main(String[] args) throws Exception {
+    int[] counts = args.length > 0
+        ? java.util.Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+        : new int[] {100, 500, 1000};
+    System.out.println("java " + System.getProperty("java.version"));
+    System.out.println("mode,users,heapMb,platformThreads,dmP50Us,dmP99Us");
+    for (ServerMode mode : new ServerMode[] {ServerMode.BLOCKING, ServerMode.NIO}) {
+      for (int users : counts) {
+        run(mode, users);
+      }
+    }
+  }
+
+  /**
+   * Connect the users, measure, send direct messages between the first few users and measure latency
+   *
+   * @param mode the server mode
+   * @param users number of users to connect
+   * @throws Exception if the run fails
+   */
+  private static void run(ServerMode mode, int users) throws Exception {
+    int port = BenchSupport.freePort();
+    ChatServer server = new ChatServer(port, mode);
+    BenchSupport.startServer(server);
+    long heapBefore = BenchSupport.usedHeapAfterGc();
+    int threadsBefore = BenchSupport.liveThreads();
+
+    List<Socket> sockets = new ArrayList<>();
+    for (int i = 0; i < users; i++) {
+      sockets.add(BenchSupport.connect(port, "user" + i));
+    }
+    long heapMb = (BenchSupport.usedHeapAfterGc() - heapBefore) / (1024 * 1024);
+    int threads = BenchSupport.liveThreads() - threadsBefore;
+
+    int chatty = Math.min(CHATTY_USERS, users);
+    int total = chatty * MESSAGES_PER_USER;
+    long[] latencies = new long[total];
+    AtomicInteger received = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(chatty);
+    for (int i = 0; i < chatty; i++) {
+      DataInputStream in = new DataInputStream(sockets.get(i).getInputStream());
+      Thread reader = new Thread(() -> {
+        try {
+          for (int m = 0; m < MESSAGES_PER_USER; m++) {
+            DirectMessage dm = (DirectMessage) Message.receive(in);
+            long sentAt = Long.parseLong(dm.getMessage());
+            latencies[received.getAndIncrement()] = System.nanoTime() - sentAt;
+          }
+        } catch (IOException ignored) {
+        } finally {
+          done.countDown();
+        }
+      });
+      reader.setDaemon(true);
+      reader.start();
+    }
+    for (int m = 0; m < MESSAGES_PER_USER; m++) {
+      for (int i = 0; i < chatty; i++) {
+        String recipient = "user" + ((i + 1) % chatty);
+        DataOutputStream out = new DataOutputStream(sockets.get(i).getOutputStream());
+        new DirectMessage("user" + i, recipient, Long.toString(System.nanoTime())).send(out);
+      }
+      Thread.sleep(1);
+    }
+    done.await();
+
+    System.out.println(mode + "," + users + "," + heapMb + "," + threads + ","
+        + BenchSupport.percentile(latencies, 50) / 1000 + ","
+        + BenchSupport.percentile(latencies, 99) / 1000);
+    BenchSupport.closeAll(sockets);
+    BenchSupport.stopServer(server);
+  }
+}
@@ -0,0 +1,47 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what keeping one liveness timeout per session costs: scheduling a timeout for every session,
+ * then rescheduling each one, cancelling the old timeout, the way every heartbeat check does. Reports the
+ * cost per operation and the heap the pending timeouts take. Args: sessions; default 100000
+ */
+public class TimerWheelBenchmark {
+  private static final int WARMUP_ROUNDS = 2;
+
+  /**
+   * Run the measurement
+   *
+   * @param args number of sessions
+   * @throws Exception if interrupted
+   */
+  public static void main(String[] args) throws Exception {
+    int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    Runnable check = () -> {
+    };
+    System.out.println("sessions,scheduleNs,rescheduleNs,pendingAfter,heapBytesPerTimeout");
+    for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+      try (HashedTimerWheel timer = new HashedTimerWheel("bench-timer")) {
+        HashedTimerWheel.Timeout[] timeouts = new HashedTimerWheel.Timeout[sessions];
+        long heapBefore = BenchSupport.usedHeapAfterGc();
+        long start = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+          timeouts[i] = timer.schedule(check, 30, TimeUnit.SECONDS);
+        }
+        long scheduled = System.nanoTime() - start;
+        Thread.sleep(2 * timer.getTickMillis());
+        long heapAfter = BenchSupport.usedHeapAfterGc();
+        start = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+          timeouts[i].cancel();
+          timeouts[i] = timer.schedule(check, 30, TimeUnit.SECONDS);
+        }
+        long rescheduled = System.nanoTime() - start;
+        Thread.sleep(2 * timer.getTickMillis());
+        if (round == WARMUP_ROUNDS) {
+          System.out.println(sessions + "," + scheduled / sessions + "," + rescheduled / sessions + ","
+              + timer.getPendingCount() + "," + (heapAfter - heapBefore) / sessions);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package messageModelBench;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import messageModel.ConnectResp;
+import messageModel.DisconnectResp;
+import messageModel.FrameCodecV2;
+import messageModel.FrameDecoder;
+import messageModel.Message;
+import messageModel.QueryResp;
+import messageModel.WireFormat;
+import protocol.Protocol;
+
+/**
+ * The codec calls the benchmarks measure, the same way the server and clients make them. Version 1
+ * server-to-client messages are read the way a client reads them, since the server's FrameDecoder only
+ * knows client-to-server frames
+ */
+final class CodecSupport {
+
+  /**
+   * All methods are static
+   */
+  private CodecSupport() {}
+
+  /**
+   * Encode a message into a new buffer, as the NIO server does
+   *
+   * @param format the wire format
+   * @param message the message to encode
+   * @return the frame in read mode
+   * @throws IOException if the message cannot be encoded
+   */
+  static ByteBuffer encode(WireFormat format, Message message) throws IOException {
+    return format == WireFormat.V1 ? FrameDecoder.encode(message) : FrameCodecV2.encode(message);
+  }
+
+  /**
+   * Write a message to a stream, as the blocking server and the clients do
+   *
+   * @param format the wire format
+   * @param message the message to write
+   * @param out the stream
+   * @throws IOException if the message cannot be encoded
+   */
+  static void write(WireFormat format, Message message, DataOutputStream out) throws IOException {
+    if (format == WireFormat.V1) {
+      message.send(out);
+    } else {
+      FrameCodecV2.write(message, out);
+    }
+  }
+
+  /**
+   * Decode one whole frame
+   *
+   * @param format the wire format
+   * @param frame the frame, which is not modified
+   * @param in a stream positioned at the start of the same frame, used for version 1
+   * @return the decoded message
+   * @throws IOException if the frame cannot be decoded
+   */
+  static Message decode(WireFormat format, ByteBuffer frame, DataInputStream in) throws IOException {
+    if (format == WireFormat.V2) {
+      return FrameCodecV2.decode(frame.duplicate());
+    }
+    int messageType = frame.getInt(0);
+    switch (messageType) {
+      case Protocol.CONNECT_RESPONSE:
+      case Protocol.VERSIONED_CONNECT_RESPONSE:
+        return ConnectResp.receive(in);
+      case Protocol.QUERY_USER_RESPONSE:
+        in.readInt();
+        return QueryResp.receive(in);
+      case Protocol.OTHER:
+        in.readInt();
+        return DisconnectResp.receive(in);
+      default:
+        return Message.receive(in);
+    }
+  }
+}
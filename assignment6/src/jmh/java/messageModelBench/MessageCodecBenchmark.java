@@ -0,0 +1,169 @@
+package messageModelBench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import messageModel.BroadcastMessage;
+import messageModel.ConnectMessage;
+import messageModel.ConnectResp;
+import messageModel.DirectMessage;
+import messageModel.DisconnectMessage;
+import messageModel.DisconnectResp;
+import messageModel.FailedMessage;
+import messageModel.FrameCodecV2;
+import messageModel.InsultMessage;
+import messageModel.Message;
+import messageModel.QueryUsers;
+import messageModel.WireFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encode and decode throughput of every message type in both wire formats. The payload is the message's
+ * one free-length field, the text of a message or the username for messages that only carry names, and
+ * goes from empty up to the 65535 byte writeUTF limit. Run with the gc profiler to see the allocation
+ * rate, which gradle jmh does by default
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+  private static final int MAX_UTF_BYTES = 65535;
+
+  @Param({"DirectMessage", "BroadcastMessage", "ConnectMessage", "ConnectResp", "DisconnectMessage",
+      "DisconnectResp", "QueryUsers", "FailedMessage", "InsultMessage"})
+  public String messageClass;
+
+  @Param({"0", "128", "4096", "65535"})
+  public int payloadBytes;
+
+  @Param({"V1", "V2"})
+  public WireFormat format;
+
+  private Message message;
+  private ByteBuffer frame;
+  private byte[] frameBytes;
+  private ByteBuffer target;
+  private ByteArrayOutputStream bytes;
+  private DataOutputStream out;
+
+  /**
+   * Build the message and its encoded frame
+   *
+   * @throws IOException if the message cannot be encoded
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    message = create(messageClass, "x".repeat(Math.min(payloadBytes, MAX_UTF_BYTES)));
+    frame = CodecSupport.encode(format, message);
+    frameBytes = new byte[frame.remaining()];
+    frame.duplicate().get(frameBytes);
+    target = ByteBuffer.allocate(frameBytes.length);
+    bytes = new ByteArrayOutputStream(frameBytes.length);
+    out = new DataOutputStream(bytes);
+  }
+
+  /**
+   * Build a message of the given class around a payload
+   *
+   * @param messageClass the simple name of the message class
+   * @param payload the free-length field
+   * @return the message
+   */
+  static Message create(String messageClass, String payload) {
+    switch (messageClass) {
+      case "DirectMessage":
+        return new DirectMessage("sender", "recipient", payload);
+      case "BroadcastMessage":
+        return new BroadcastMessage("sender", payload);
+      case "ConnectMessage":
+        return new ConnectMessage(payload);
+      case "ConnectResp":
+        return new ConnectResp(true, payload);
+      case "DisconnectMessage":
+        return new DisconnectMessage(payload);
+      case "DisconnectResp":
+        return new DisconnectResp(true, payload);
+      case "QueryUsers":
+        return new QueryUsers(payload);
+      case "FailedMessage":
+        return new FailedMessage(payload);
+      case "InsultMessage":
+        return new InsultMessage(payload, "recipient");
+      default:
+        throw new IllegalArgumentException("Unknown message class: " + messageClass);
+    }
+  }
+
+  /**
+   * Encode into a new buffer, as the NIO server does for every non-shared message
+   *
+   * @return the frame
+   * @throws IOException if the message cannot be encoded
+   */
+  @Benchmark
+  public ByteBuffer encode() throws IOException {
+    return CodecSupport.encode(format, message);
+  }
+
+  /**
+   * Encode into a reused buffer, as pooled frames do. Version 1 has no such path and writes to a reused
+   * stream instead
+   *
+   * @return the buffer or stream the frame went into
+   * @throws IOException if the message cannot be encoded
+   */
+  @Benchmark
+  public Object encodeReused() throws IOException {
+    if (format == WireFormat.V1) {
+      bytes.reset();
+      message.send(out);
+      return bytes;
+    }
+    target.clear();
+    FrameCodecV2.encode(message, target);
+    return target;
+  }
+
+  /**
+   * Write to a reused stream, as the blocking server's writers and the clients do
+   *
+   * @return the stream
+   * @throws IOException if the message cannot be encoded
+   */
+  @Benchmark
+  public ByteArrayOutputStream write() throws IOException {
+    bytes.reset();
+    CodecSupport.write(format, message, out);
+    return bytes;
+  }
+
+  /**
+   * Decode one whole frame
+   *
+   * @return the decoded message
+   * @throws IOException if the frame cannot be decoded
+   */
+  @Benchmark
+  public Message decode() throws IOException {
+    return CodecSupport.decode(format, frame,
+        new DataInputStream(new ByteArrayInputStream(frameBytes)));
+  }
+}
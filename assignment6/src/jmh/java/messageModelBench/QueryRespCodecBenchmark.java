@@ -0,0 +1,106 @@
+package messageModelBench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import messageModel.Message;
+import messageModel.QueryResp;
+import messageModel.WireFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encode and decode cost of a QueryResp listing a number of connected users, the one message whose size
+ * grows with the server rather than with what a user typed
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryRespCodecBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  public int users;
+
+  @Param({"V1", "V2"})
+  public WireFormat format;
+
+  private QueryResp message;
+  private ByteBuffer frame;
+  private byte[] frameBytes;
+  private ByteArrayOutputStream bytes;
+  private DataOutputStream out;
+
+  /**
+   * Build the user list and its encoded frame
+   *
+   * @throws IOException if the message cannot be encoded
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    List<String> usernames = new ArrayList<>(users);
+    for (int i = 0; i < users; i++) {
+      usernames.add("user" + i);
+    }
+    message = new QueryResp(usernames);
+    frame = CodecSupport.encode(format, message);
+    frameBytes = new byte[frame.remaining()];
+    frame.duplicate().get(frameBytes);
+    bytes = new ByteArrayOutputStream(frameBytes.length);
+    out = new DataOutputStream(bytes);
+  }
+
+  /**
+   * Encode into a new buffer
+   *
+   * @return the frame
+   * @throws IOException if the message cannot be encoded
+   */
+  @Benchmark
+  public ByteBuffer encode() throws IOException {
+    return CodecSupport.encode(format, message);
+  }
+
+  /**
+   * Write to a reused stream
+   *
+   * @return the stream
+   * @throws IOException if the message cannot be encoded
+   */
+  @Benchmark
+  public ByteArrayOutputStream write() throws IOException {
+    bytes.reset();
+    CodecSupport.write(format, message, out);
+    return bytes;
+  }
+
+  /**
+   * Decode one whole frame
+   *
+   * @return the decoded message
+   * @throws IOException if the frame cannot be decoded
+   */
+  @Benchmark
+  public Message decode() throws IOException {
+    return CodecSupport.decode(format, frame,
+        new DataInputStream(new ByteArrayInputStream(frameBytes)));
+  }
+}
@@ -0,0 +1,457 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import messageModel.BroadcastMessage;
+import messageModel.ConnectMessage;
+import messageModel.ConnectResp;
+import messageModel.DirectMessage;
+import messageModel.DisconnectMessage;
+import messageModel.FailedMessage;
+import messageModel.HistoryQuery;
+import messageModel.HistoryResp;
+import messageModel.InsultMessage;
+import messageModel.Message;
+import messageModel.PingMessage;
+import messageModel.PongMessage;
+import messageModel.QueryResp;
+import messageModel.QueryUsers;
+import messageModel.ResumeMessage;
+import messageModel.RoomMessage;
+import messageModel.WireFormat;
+import protocol.Protocol;
+
+/**
+ * Represents a connection to a chat server for programs rather than people. Every operation returns at
+ * once with a future of the server's answer, so any number of operations can be in flight, and
+ * everything else the server sends goes to a {@link ChatListener}. Requests are encoded on the calling
+ * thread and handed to one writer thread, which writes everything queued so far with a single flush.
+ * One reader thread completes the futures and calls the listener. Any thread may use a ChatClient.
+ * <p>
+ * If the server keeps sessions, a lost connection can be picked up again with
+ * {@link #resume(String, int, String, String, long, ChatListener)} and this client's resume token and
+ * last sequence number, and the server sends again what this client did not read
+ */
+public class ChatClient implements Closeable {
+  /**
+   * How long connect waits for the server to answer the ConnectMessage
+   */
+  public static final int HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+
+  private static final int MAX_BATCH = 256;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final ByteBuffer CLOSE_SIGNAL = ByteBuffer.allocate(0);
+
+  private final String username;
+  private final String resumeToken;
+  private final Socket socket;
+  private final DataInputStream in;
+  private final BufferedOutputStream out;
+  private final ChatListener listener;
+  private final PendingRequests requests;
+  private final BlockingQueue<ByteBuffer> outbound;
+  private final AtomicBoolean closed;
+  private final Thread reader;
+  private final Thread writer;
+  private volatile boolean disconnecting;
+  private volatile long lastSequence;
+
+  /**
+   * Construct a ChatClient around a connection that finished its handshake
+   *
+   * @param username the username the connection is logged in as
+   * @param resumeToken the token to resume the session with, or empty
+   * @param lastSequence the sequence number of the last frame read before this connection
+   * @param socket the connected socket
+   * @param in the buffered input stream of the socket
+   * @param out the buffered output stream of the socket
+   * @param listener told about everything that is not an answer
+   */
+  private ChatClient(String username, String resumeToken, long lastSequence, Socket socket,
+      DataInputStream in, BufferedOutputStream out, ChatListener listener) {
+    this.username = username;
+    this.resumeToken = resumeToken;
+    this.lastSequence = lastSequence;
+    this.socket = socket;
+    this.in = in;
+    this.out = out;
+    this.listener = listener;
+    this.requests = new PendingRequests(WireFormat.V2, null);
+    this.outbound = new LinkedBlockingQueue<>();
+    this.closed = new AtomicBoolean();
+    this.reader = new Thread(this::readLoop, "chat-client-reader-" + username);
+    this.writer = new Thread(this::writeLoop, "chat-client-writer-" + username);
+    this.reader.setDaemon(true);
+    this.writer.setDaemon(true);
+  }
+
+  /**
+   * Connect to a chat server and log in, waiting for the server to accept the username
+   *
+   * @param host the host address of the server
+   * @param port the port number the server is listening
+   * @param username the username to log in as
+   * @param listener told about everything that is not an answer
+   * @return the connected client
+   * @throws IOException if the server cannot be reached, refuses the login or does not speak version 2
+   */
+  public static ChatClient connect(String host, int port, String username, ChatListener listener)
+      throws IOException {
+    return open(host, port, new ConnectMessage(username, Protocol.MAX_VERSION), username, 0, listener);
+  }
+
+  /**
+   * Connect to a chat server and pick up a session whose connection was lost. The server first sends
+   * again every frame after the last one read, then carries on as if the connection had never dropped
+   *
+   * @param host the host address of the server
+   * @param port the port number the server is listening
+   * @param username the username the session is logged in as
+   * @param resumeToken the {@link #getResumeToken()} of the lost client
+   * @param lastSequence the {@link #getLastSequence()} of the lost client
+   * @param listener told about everything that is not an answer
+   * @return the connected client
+   * @throws IOException if the server cannot be reached or the session cannot be resumed
+   */
+  public static ChatClient resume(String host, int port, String username, String resumeToken,
+      long lastSequence, ChatListener listener) throws IOException {
+    ResumeMessage handshake = new ResumeMessage(username, resumeToken, lastSequence, Protocol.MAX_VERSION);
+    return open(host, port, handshake, username, lastSequence, listener);
+  }
+
+  /**
+   * @param host the host address of the server
+   * @param port the port number the server is listening
+   * @param handshake the ConnectMessage or ResumeMessage to open with
+   * @param username the username to log in as
+   * @param lastSequence the sequence number of the last frame read before this connection
+   * @param listener told about everything that is not an answer
+   * @return the connected client
+   * @throws IOException if the server cannot be reached, refuses the handshake or does not speak
+   *                     version 2
+   */
+  private static ChatClient open(String host, int port, Message handshake, String username,
+      long lastSequence, ChatListener listener) throws IOException {
+    Socket socket = new Socket(host, port);
+    try {
+      socket.setTcpNoDelay(true);
+      socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+      BufferedOutputStream out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+      handshake.send(new DataOutputStream(out));
+      ConnectResp resp = ConnectResp.receive(in);
+      if (!resp.getSuccess()) {
+        throw new IOException("Connect failed for " + username + ": " + resp.getMessage());
+      }
+      if (WireFormat.negotiate(resp.getProtocolVersion()) != WireFormat.V2) {
+        throw new IOException("Server does not speak protocol version " + Protocol.VERSION_2);
+      }
+      socket.setSoTimeout(0);
+      ChatClient client = new ChatClient(username, resp.getResumeToken(), lastSequence, socket, in, out,
+          listener);
+      client.reader.start();
+      client.writer.start();
+      return client;
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Send a direct message to another user
+   *
+   * @param recipient the username of the recipient
+   * @param text the content of the message
+   * @return a future completed once the server handed the message on, or exceptionally with the reason
+   *         it did not
+   */
+  public CompletableFuture<Void> sendDirect(String recipient, String text) {
+    return request(new DirectMessage(username, recipient, text)).thenApply(ChatClient::acknowledged);
+  }
+
+  /**
+   * Send a message to every other connected user
+   *
+   * @param text the content of the message
+   * @return a future completed once the server handed the message to everyone
+   */
+  public CompletableFuture<Void> broadcast(String text) {
+    return request(new BroadcastMessage(username, text)).thenApply(ChatClient::acknowledged);
+  }
+
+  /**
+   * Have the server send a random insult aimed at another user to everyone
+   *
+   * @param recipient the username of the user being insulted
+   * @return a future completed once the server sent the insult out
+   */
+  public CompletableFuture<Void> insult(String recipient) {
+    return request(new InsultMessage(username, recipient)).thenApply(ChatClient::acknowledged);
+  }
+
+  /**
+   * Ask who else is connected
+   *
+   * @return a future of the other connected usernames
+   */
+  public CompletableFuture<List<String>> queryUsers() {
+    return request(new QueryUsers(username)).thenApply(answer -> {
+      if (answer instanceof QueryResp) {
+        return ((QueryResp) answer).getUsernames();
+      }
+      throw new CompletionException(failure(answer));
+    });
+  }
+
+  /**
+   * Read a page of the history of the global room or of a direct conversation with another user
+   *
+   * @param peer the other user, or an empty string for the global room
+   * @param count the most messages to return
+   * @param beforeSequence only older messages are returned, 0 for the newest, or the
+   *                       {@link HistoryResp#getNextBeforeSequence()} of the previous page
+   * @return a future of the page, oldest message first
+   */
+  public CompletableFuture<HistoryResp> history(String peer, int count, long beforeSequence) {
+    return request(new HistoryQuery(username, peer, count, beforeSequence)).thenApply(answer -> {
+      if (answer instanceof HistoryResp) {
+        return (HistoryResp) answer;
+      }
+      throw new CompletionException(failure(answer));
+    });
+  }
+
+  /**
+   * Check the server is still there
+   *
+   * @return a future of the round trip time in nanoseconds
+   */
+  public CompletableFuture<Long> ping() {
+    return request(new PingMessage(System.nanoTime())).thenApply(answer -> {
+      if (answer instanceof PongMessage) {
+        return System.nanoTime() - ((PongMessage) answer).getTimestamp();
+      }
+      throw new CompletionException(failure(answer));
+    });
+  }
+
+  /**
+   * Log off. The connection is closed once the server confirms, the listener is then told with a null
+   * cause
+   *
+   * @return a future completed once the server confirmed
+   */
+  public CompletableFuture<Void> disconnect() {
+    disconnecting = true;
+    return request(new DisconnectMessage(username)).thenApply(answer -> {
+      close();
+      return null;
+    });
+  }
+
+  /**
+   * Send any request and get the server's answer as-is, for requests without a method of their own such
+   * as room operations
+   *
+   * @param request the request to send, it must not be sent again
+   * @return a future of the answer, completed exceptionally if the connection is lost first
+   */
+  public CompletableFuture<Message> request(Message request) {
+    CompletableFuture<Message> answer;
+    try {
+      answer = requests.register(request);
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    try {
+      outbound.add(WireFormat.V2.encode(request));
+    } catch (IOException e) {
+      requests.fail(request, e);
+    }
+    if (closed.get()) {
+      requests.fail(request, new IOException("Client is closed"));
+    }
+    return answer;
+  }
+
+  /**
+   * Close the connection right away. Requests still in flight fail
+   */
+  @Override
+  public void close() {
+    shutdown(null);
+  }
+
+  /**
+   * Write queued frames until the client closes. Everything queued while the last batch was being
+   * written goes out together, so a burst of requests costs a single flush
+   */
+  private void writeLoop() {
+    List<ByteBuffer> batch = new ArrayList<>(MAX_BATCH);
+    try {
+      while (true) {
+        batch.add(outbound.take());
+        outbound.drainTo(batch, MAX_BATCH - 1);
+        for (ByteBuffer frame : batch) {
+          if (frame == CLOSE_SIGNAL) {
+            return;
+          }
+          out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+        }
+        batch.clear();
+        out.flush();
+      }
+    } catch (IOException e) {
+      shutdown(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Read everything the server sends until the connection closes, completing answers and passing the
+   * rest to the listener, and count the frames read. The server's pings are answered right here. A
+   * listener that throws does not stop the reader
+   */
+  private void readLoop() {
+    IOException cause;
+    try {
+      while (true) {
+        Message message = WireFormat.V2.read(in);
+        lastSequence++;
+        if (message instanceof PingMessage) {
+          outbound.add(WireFormat.V2.encode(new PongMessage(((PingMessage) message).getTimestamp())));
+        } else if (!requests.complete(message)) {
+          dispatch(message);
+        }
+      }
+    } catch (IOException e) {
+      cause = e;
+    }
+    shutdown(disconnecting ? null : cause);
+  }
+
+  /**
+   * @param message a message from the server that is not an answer
+   */
+  private void dispatch(Message message) {
+    try {
+      if (message instanceof DirectMessage) {
+        listener.onDirectMessage((DirectMessage) message);
+      } else if (message instanceof BroadcastMessage) {
+        listener.onBroadcast((BroadcastMessage) message);
+      } else if (message instanceof RoomMessage) {
+        listener.onRoomMessage((RoomMessage) message);
+      } else {
+        listener.onMessage(message);
+      }
+    } catch (RuntimeException ignored) {
+    }
+  }
+
+  /**
+   * Close the connection once, failing whatever is still in flight and telling the listener
+   *
+   * @param cause why the connection was lost, or null if it was closed on purpose
+   */
+  private void shutdown(IOException cause) {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+    requests.failAll(cause != null ? cause : new IOException("Client is closed"));
+    outbound.clear();
+    outbound.add(CLOSE_SIGNAL);
+    try {
+      socket.close();
+    } catch (IOException ignored) {
+    }
+    try {
+      listener.onClosed(cause);
+    } catch (RuntimeException ignored) {
+    }
+  }
+
+  /**
+   * @param answer the answer to a request the server only acknowledges
+   * @return nothing, if the answer is an empty FailedMessage
+   */
+  private static Void acknowledged(Message answer) {
+    if (answer instanceof FailedMessage && ((FailedMessage) answer).getErrorMessage().isEmpty()) {
+      return null;
+    }
+    throw new CompletionException(failure(answer));
+  }
+
+  /**
+   * @param answer an answer that is not the one the request expects
+   * @return the error to fail the request's future with
+   */
+  private static IOException failure(Message answer) {
+    if (answer instanceof FailedMessage) {
+      return new IOException(((FailedMessage) answer).getErrorMessage());
+    }
+    return new IOException("Unexpected answer: " + answer);
+  }
+
+  /**
+   *
+   * @return the username the connection is logged in as
+   */
+  public String getUsername() {
+    return username;
+  }
+
+  /**
+   *
+   * @return the token to resume the session with after the connection is lost, or empty if the server
+   *         does not keep sessions
+   */
+  public String getResumeToken() {
+    return resumeToken;
+  }
+
+  /**
+   *
+   * @return the sequence number of the last frame read from the server, counted over the whole session
+   */
+  public long getLastSequence() {
+    return lastSequence;
+  }
+
+  /**
+   *
+   * @return the number of requests sent and not answered yet
+   */
+  public int getPendingCount() {
+    return requests.size();
+  }
+
+  /**
+   *
+   * @return true once the connection is closed
+   */
+  public boolean isClosed() {
+    return closed.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "ChatClient{username:" + username + ", pending:" + requests.size() + ", closed:" + closed.get()
+        + "}";
+  }
+}
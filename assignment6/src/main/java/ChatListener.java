@@ -0,0 +1,54 @@
+import java.io.IOException;
+import messageModel.BroadcastMessage;
+import messageModel.DirectMessage;
+import messageModel.Message;
+import messageModel.RoomMessage;
+
+/**
+ * Represents what a {@link ChatClient} tells its owner about traffic it did not ask for. Every method is
+ * called on the client's reader thread, one at a time and in the order the server sent the messages, so
+ * a slow listener holds up the connection. Only {@link #onClosed(IOException)} may run on whichever
+ * thread closed the client. Every method does nothing unless overridden
+ */
+public interface ChatListener {
+
+  /**
+   * Another user sent this user a direct message
+   *
+   * @param message the direct message
+   */
+  default void onDirectMessage(DirectMessage message) {
+  }
+
+  /**
+   * Another user sent a broadcast or an insult to everyone
+   *
+   * @param message the broadcast
+   */
+  default void onBroadcast(BroadcastMessage message) {
+  }
+
+  /**
+   * Another member of a room this user is in sent a message to it
+   *
+   * @param message the room message
+   */
+  default void onRoomMessage(RoomMessage message) {
+  }
+
+  /**
+   * The server sent something that is neither an answer nor a chat message, such as a presence update
+   *
+   * @param message the message
+   */
+  default void onMessage(Message message) {
+  }
+
+  /**
+   * The connection is closed and no more messages will arrive
+   *
+   * @param cause why the connection was lost, or null if the user logged off or the client was closed
+   */
+  default void onClosed(IOException cause) {
+  }
+}
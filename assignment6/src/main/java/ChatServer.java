@@ -1,124 +1,701 @@
+import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import messageModel.BroadcastMessage;
 import messageModel.ConnectMessage;
 import messageModel.ConnectResp;
 import messageModel.DirectMessage;
+import messageModel.DirectoryQuery;
+import messageModel.DirectoryResp;
 import messageModel.DisconnectMessage;
 import messageModel.DisconnectResp;
+import messageModel.EncodedMessage;
 import messageModel.FailedMessage;
+import messageModel.ForwardedDirectMessage;
+import messageModel.FramePool;
+import messageModel.FrameView;
+import messageModel.HistoryQuery;
 import messageModel.InsultMessage;
+import messageModel.JoinRoomMessage;
+import messageModel.LeaveRoomMessage;
 import messageModel.Message;
-import messageModel.QueryResp;
+import messageModel.PingMessage;
+import messageModel.PongMessage;
+import messageModel.PresenceDelta;
+import messageModel.PresenceSnapshot;
+import messageModel.PresenceSync;
 import messageModel.QueryUsers;
+import messageModel.ResumeMessage;
+import messageModel.RoomMessage;
+import messageModel.RoomResp;
+import messageModel.SubscribePresence;
+import messageModel.WireFormat;
 import protocol.Protocol;
 
 /**
- * Represents a ChatServer to hold a chat room for up to 10 Client users
+ * Represents a ChatServer to hold a chat room for Client users
  *
  * @author Yezhen Chen, Xiaoyu Zhou
  * @version 0.01 12/6/24
  */
 public class ChatServer {
 
-  private static final int MAX_CLIENTS = 10;
+  /**
+   * Outbound queue limits applied to each user unless changed with setQueueLimits
+   */
+  public static final QueueLimits DEFAULT_QUEUE_LIMITS =
+      new QueueLimits(10_000, 16L * 1024 * 1024, SlowConsumerPolicy.DROP_BROADCASTS);
+
+  /**
+   * How long a new connection may take to send its ConnectMessage unless changed with
+   * setHandshakeTimeoutMillis
+   */
+  public static final int DEFAULT_HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+
+  /**
+   * How many connections may be waiting for their ConnectMessage at once unless changed with
+   * setMaxPendingHandshakes
+   */
+  public static final int DEFAULT_MAX_PENDING_HANDSHAKES = 4096;
+
+  /**
+   * How long a lost connection's session may be resumed for when started from main
+   */
+  public static final int DEFAULT_RESUME_GRACE_MILLIS = 30_000;
+
+  /**
+   * How long a connection may be quiet before it is pinged, when started from main
+   */
+  public static final int DEFAULT_HEARTBEAT_INTERVAL_MILLIS = 30_000;
+
+  /**
+   * How long a connection may be quiet before it is treated as lost, when started from main
+   */
+  public static final int DEFAULT_IDLE_TIMEOUT_MILLIS = 90_000;
+
+  /**
+   * How fast each user may send each category of message, when started from main
+   */
+  public static final RateLimits DEFAULT_RATE_LIMITS = RateLimits.UNLIMITED
+      .with(RateCategory.BROADCAST, 20, 50)
+      .with(RateCategory.DIRECT, 50, 100)
+      .with(RateCategory.INSULT, 1, 5)
+      .with(RateCategory.QUERY, 10, 20);
+
+  private static final long MAILBOX_SWEEP_MILLIS = 60_000;
+
+  private static final int FRAME_POOL_BUFFER_SIZE = 1024;
+  private static final int FRAME_POOL_MAX_POOLED = 4096;
+  private static final int SENDER_FIELD = 0;
+  private static final FailedMessage BROADCAST_ACK = new FailedMessage("");
+
   private int port;
+  private ServerMode mode;
+  private int eventLoopCount;
   private ServerSocket serverSocket;
   private ExecutorService threadPool;
+  private volatile NioEventLoop[] eventLoops;
   private InsultGenerator insultGenerator;
   private ConcurrentHashMap<String, ClientThread> clients;
+  private Set<Closeable> pendingHandshakes;
+  private FramePool framePool;
+  private RoomIndex rooms;
+  private UserDirectory directory;
+  private AtomicLong presenceVersion;
+  private volatile PresenceSnapshot presence;
+  private final Object presenceLock = new Object();
+  private volatile QueueLimits queueLimits = DEFAULT_QUEUE_LIMITS;
+  private volatile int handshakeTimeoutMillis = DEFAULT_HANDSHAKE_TIMEOUT_MILLIS;
+  private volatile int maxPendingHandshakes = DEFAULT_MAX_PENDING_HANDSHAKES;
+  private volatile RateLimits rateLimits = RateLimits.UNLIMITED;
+  private volatile WaitStrategy writerWaitStrategy = WaitStrategy.BLOCK;
+  private volatile LaneWeights laneWeights = LaneWeights.DEFAULT;
+  private volatile MessageJournal journal;
+  private volatile MessageHistory history;
+  private volatile OfflineMailbox mailbox;
+  private volatile int resumeGraceMillis;
+  private volatile int heartbeatIntervalMillis;
+  private volatile int idleTimeoutMillis;
+  private volatile HashedTimerWheel.Timeout mailboxSweep;
+  private HashedTimerWheel timer;
+  private AtomicLong idleEvictions;
+  private AtomicLong rateLimitRejections;
+  private ConcurrentHashMap<String, ResumableSession> sessions;
 
   /**
    * Create a new chat room hold on this ChatServer by given port
    * @param port given port number
    */
   public ChatServer(int port) {
+    this(port, ServerMode.BLOCKING);
+  }
+
+  /**
+   * Create a new chat room hold on this ChatServer by given port and connection mode
+   * @param port given port number
+   * @param mode how connections are served
+   */
+  public ChatServer(int port, ServerMode mode) {
+    this(port, mode, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Create a new chat room hold on this ChatServer by given port and connection mode
+   * @param port given port number
+   * @param mode how connections are served
+   * @param eventLoopCount number of selector threads, only used in NIO mode
+   */
+  public ChatServer(int port, ServerMode mode, int eventLoopCount) {
+    if (eventLoopCount < 1) {
+      throw new IllegalArgumentException("eventLoopCount must be at least 1");
+    }
     this.port = port;
+    this.mode = mode;
+    this.eventLoopCount = eventLoopCount;
     clients = new ConcurrentHashMap<>();
+    pendingHandshakes = ConcurrentHashMap.newKeySet();
+    sessions = new ConcurrentHashMap<>();
+    timer = new HashedTimerWheel("chat-timer");
+    idleEvictions = new AtomicLong();
+    rateLimitRejections = new AtomicLong();
+    framePool = new FramePool(FRAME_POOL_BUFFER_SIZE, FRAME_POOL_MAX_POOLED);
+    rooms = new RoomIndex();
+    directory = new UserDirectory();
+    presenceVersion = new AtomicLong();
+    presence = new PresenceSnapshot(0, List.of());
     insultGenerator = new InsultGenerator();
-    threadPool = Executors.newFixedThreadPool(MAX_CLIENTS);
+    threadPool = newThreadPool(mode);
+  }
+
+  /**
+   * Create the executor running one reader task and one ClientThread per connection. Tasks are never
+   * queued behind each other, so the number of users is not capped by a pool size
+   * @param mode how connections are served
+   * @return an executor starting a new platform or virtual thread per task
+   */
+  private static ExecutorService newThreadPool(ServerMode mode) {
+    if (mode == ServerMode.VIRTUAL_THREADS) {
+      if (!mode.isAvailable()) {
+        System.out.println("Virtual threads need Java 21, falling back to platform threads");
+        return Executors.newCachedThreadPool();
+      }
+      try {
+        return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Virtual threads are unavailable on Java " + Runtime.version(), e);
+      }
+    }
+    return Executors.newCachedThreadPool();
   }
 
   /**
-   * Start this chat server
+   * Start this chat server. The accept loop only accepts, the connect handshake of each connection runs
+   * on that connection's reader thread, so a client that never sends its ConnectMessage cannot hold up
+   * anyone else
    * @throws IOException will be ignored for unexpected input
    */
   public void start() throws IOException {
+    if (mode == ServerMode.NIO) {
+      startNio();
+      return;
+    }
     serverSocket = new ServerSocket(port);
     System.out.println("Server listening on port: " + port);
     while (true) {
       Socket clientSocket = serverSocket.accept();
-      DataInputStream dataIn = new DataInputStream(clientSocket.getInputStream());
+      if (!beginHandshake(clientSocket)) {
+        closeQuietly(clientSocket);
+        continue;
+      }
+      threadPool.execute(() -> serveConnection(clientSocket));
+    }
+  }
+
+  /**
+   * Wait for the ConnectMessage or ResumeMessage of an accepted socket, then read and route its messages
+   * until it disconnects. Runs on the connection's reader thread
+   * @param clientSocket the accepted socket, already counted as a pending handshake
+   */
+  private void serveConnection(Socket clientSocket) {
+    DataInputStream dataIn;
+    ClientThread clientThread;
+    String username;
+    Message initialMsg;
+    try {
+      clientSocket.setSoTimeout(handshakeTimeoutMillis);
+      dataIn = new DataInputStream(clientSocket.getInputStream());
       DataOutputStream dataOut = new DataOutputStream(clientSocket.getOutputStream());
-      Message initialMsg = Message.receive(dataIn);
+      initialMsg = Message.receive(dataIn);
+      int maxVersion;
+      if (initialMsg instanceof ConnectMessage) {
+        username = ((ConnectMessage) initialMsg).getUsername().trim();
+        maxVersion = ((ConnectMessage) initialMsg).getMaxVersion();
+      } else if (initialMsg instanceof ResumeMessage) {
+        username = ((ResumeMessage) initialMsg).getUsername().trim();
+        maxVersion = ((ResumeMessage) initialMsg).getMaxVersion();
+      } else {
+        throw new IOException("Expected a connect message but got type " + initialMsg.getMessageType());
+      }
+      clientSocket.setSoTimeout(0);
+      clientThread = new ClientThread(dataOut, username, clientSocket, queueLimits, writerWaitStrategy);
+      clientThread.setRateLimits(rateLimits);
+      clientThread.setLaneWeights(laneWeights);
+      clientThread.setWireFormat(WireFormat.negotiate(maxVersion));
+    } catch (IOException e) {
+      endHandshake(clientSocket);
+      closeQuietly(clientSocket);
+      return;
+    }
+    endHandshake(clientSocket);
+
+    if (initialMsg instanceof ResumeMessage && !resumeClient((ResumeMessage) initialMsg, clientThread)) {
+      refuseResume(clientThread);
+      threadPool.execute(clientThread);
+      return;
+    }
+    if (initialMsg instanceof ConnectMessage) {
+      addClient(username, clientThread);
+    }
+    threadPool.execute(clientThread);
+    WireFormat wireFormat = clientThread.getWireFormat();
+    try {
+      while (!clientThread.isClosing()) {
+        Message msg = wireFormat.readRouted(dataIn);
+        clientThread.markRead();
+        if (admit(msg, clientThread)) {
+          handleMessage(msg, clientThread);
+        }
+      }
+    } catch (IOException e) {
+      System.out.println("Client " + username + " disconnected.");
+    } finally {
+      connectionLost(username, clientThread);
+      clientThread.closeAfterFlush();
+    }
+  }
+
+  /**
+   * Start this chat server on non-blocking channels served by the event loops
+   * @throws IOException will be ignored for unexpected input
+   */
+  private void startNio() throws IOException {
+    ServerSocketChannel serverChannel = ServerSocketChannel.open();
+    serverSocket = serverChannel.socket();
+    serverChannel.bind(new InetSocketAddress(port));
+    eventLoops = new NioEventLoop[eventLoopCount];
+    for (int i = 0; i < eventLoops.length; i++) {
+      eventLoops[i] = new NioEventLoop(this);
+      Thread loopThread = new Thread(eventLoops[i], "nio-event-loop-" + i);
+      loopThread.setDaemon(true);
+      loopThread.start();
+    }
+    System.out.println("Server listening on port: " + port + " with " + eventLoopCount + " event loops");
+    try {
+      int next = 0;
+      while (true) {
+        SocketChannel channel = serverChannel.accept();
+        if (!beginHandshake(channel)) {
+          closeQuietly(channel);
+          continue;
+        }
+        eventLoops[next].register(channel);
+        next = (next + 1) % eventLoops.length;
+      }
+    } finally {
+      for (NioEventLoop loop : eventLoops) {
+        loop.shutdown();
+      }
+      serverChannel.close();
+    }
+  }
+
+  /**
+   * Stop this chat server: stop accepting, close every connection and stop the connection threads. An
+   * NIO connection is only ever closed on its own event loop, so the loops are shut down, which closes
+   * what they own, and each connection is aborted, which asks its loop to close it
+   */
+  public void stop() {
+    try {
+      if (serverSocket != null) {
+        serverSocket.close();
+      }
+    } catch (IOException ignored) {
+    }
+    if (eventLoops != null) {
+      for (NioEventLoop loop : eventLoops) {
+        loop.shutdown();
+      }
+    }
+    for (ClientThread clientThread : clients.values()) {
+      clientThread.abort();
+    }
+    clients.clear();
+    sessions.clear();
+    timer.close();
+    for (Closeable connection : pendingHandshakes) {
+      closeQuietly(connection);
+    }
+    pendingHandshakes.clear();
+    threadPool.shutdown();
+  }
 
-      ConnectMessage connectMsg = (ConnectMessage) initialMsg;
-      String username = connectMsg.getUsername().trim();
+  /**
+   * Count a new connection as waiting for its ConnectMessage. Only the accept loop calls this, so the
+   * size check and the add cannot race with each other
+   * @param connection the accepted socket or channel
+   * @return false if too many handshakes are pending already and the connection should be refused
+   */
+  boolean beginHandshake(Closeable connection) {
+    if (pendingHandshakes.size() >= maxPendingHandshakes) {
+      return false;
+    }
+    pendingHandshakes.add(connection);
+    return true;
+  }
 
-      ClientThread clientThread = new ClientThread(dataOut, username);
+  /**
+   * Stop counting a connection as pending, because it finished, failed or timed out its handshake
+   * @param connection the accepted socket or channel
+   */
+  void endHandshake(Closeable connection) {
+    pendingHandshakes.remove(connection);
+  }
+
+  /**
+   * Close a connection, ignoring errors
+   * @param connection the socket or channel to close
+   */
+  private static void closeQuietly(Closeable connection) {
+    try {
+      connection.close();
+    } catch (IOException ignored) {
+    }
+  }
+
+  /**
+   * Register a user who finished the connect handshake and confirm the login. The response names the
+   * wire format already set on the ClientThread, which is used for every message after it. Clients above
+   * version 1 also get a token to resume their session with if resumption is on
+   * @param username of the user
+   * @param clientThread delivering messages to the user
+   */
+  void addClient(String username, ClientThread clientThread) {
+    String successMsg = "Log in as username: " + username + ".\n";
+    int version = clientThread.getWireFormat().getVersion();
+    String resumeToken = "";
+    if (resumeGraceMillis > 0 && clientThread.getWireFormat() != WireFormat.V1) {
+      ResumableSession session = new ResumableSession(username, clientThread);
+      clientThread.setSession(session);
+      sessions.put(session.getToken(), session);
+      resumeToken = session.getToken();
+    }
+    clientThread.receiveMessage(new ConnectResp(true, successMsg, version, resumeToken));
+    synchronized (presenceLock) {
       clients.put(username, clientThread);
-      String successMsg = "Log in as username: " + username + ".\n";
-      ConnectResp connectResponse = new ConnectResp(true, successMsg);
-      connectResponse.send(dataOut);
-      threadPool.execute(clientThread);
+      directory.add(username);
+      publishPresence(true, username);
+    }
+    watchLiveness(clientThread);
+    deliverMailbox(username, clientThread);
+  }
+
+  /**
+   * Hand a user the direct messages that waited for them, a burst now and the rest as their queue
+   * drains
+   * @param username of the user
+   * @param clientThread delivering messages to the user
+   */
+  private void deliverMailbox(String username, ClientThread clientThread) {
+    OfflineMailbox current = mailbox;
+    if (current != null && current.deliver(username, clientThread)) {
+      clientThread.setBacklog(() -> current.deliver(username, clientThread));
+    }
+  }
+
+  /**
+   * Unregister a user, unless the username has since been taken by another connection, and forget their
+   * session
+   * @param username of the user
+   * @param clientThread delivering messages to the user
+   */
+  void removeClient(String username, ClientThread clientThread) {
+    synchronized (presenceLock) {
+      boolean[] removed = new boolean[1];
+      clients.computeIfPresent(username, (name, current) -> {
+        removed[0] = current == clientThread;
+        return removed[0] ? null : current;
+      });
+      if (removed[0]) {
+        directory.remove(username);
+        publishPresence(false, username);
+        ResumableSession session = clientThread.getSession();
+        if (session != null) {
+          sessions.remove(session.getToken(), session);
+        }
+      }
+    }
+    rooms.leaveAll(clientThread);
+  }
+
+  /**
+   * Handle a connection that closed without the user disconnecting. If the user's session may be resumed
+   * they stay connected for the grace period, with their messages queuing up, and are only removed if no
+   * new connection resumes the session by then. Otherwise they are removed right away
+   * @param username of the user
+   * @param clientThread delivering messages to the user
+   */
+  void connectionLost(String username, ClientThread clientThread) {
+    clientThread.replaceTimeout(null);
+    ResumableSession session = clientThread.getSession();
+    int grace = resumeGraceMillis;
+    if (session == null || grace <= 0 || clientThread.isEvicted() || clients.get(username) != clientThread
+        || session.getOwner() != clientThread) {
+      removeClient(username, clientThread);
+      return;
+    }
+    clientThread.detach();
+    session.setExpiry(timer.schedule(() -> {
+      if (session.getOwner() == clientThread) {
+        removeClient(username, clientThread);
+      }
+    }, grace, TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Schedule the next liveness check of a connection on the shared timer, if heartbeats or idle
+   * eviction are on. Each connection has at most one check pending, and a connection that talks
+   * often enough is never pinged
+   * @param clientThread delivering messages to the user
+   */
+  private void watchLiveness(ClientThread clientThread) {
+    int heartbeat = heartbeatIntervalMillis;
+    int period = heartbeat > 0 ? heartbeat : idleTimeoutMillis;
+    if (period <= 0) {
+      clientThread.replaceTimeout(null);
+      return;
+    }
+    clientThread.replaceTimeout(timer.schedule(() -> checkLiveness(clientThread), period, TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Close a connection that has been quiet for longer than the idle timeout, which counts as a lost
+   * connection, so a resumable session survives it. Ping a connection that has been quiet for a heartbeat
+   * interval, a live client answers with a pong. Runs on the timer thread
+   * @param clientThread delivering messages to the user
+   */
+  private void checkLiveness(ClientThread clientThread) {
+    if (clientThread.isClosing()) {
+      return;
+    }
+    long quietMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - clientThread.getLastReadNanos());
+    int idleTimeout = idleTimeoutMillis;
+    if (idleTimeout > 0 && quietMillis >= idleTimeout) {
+      idleEvictions.incrementAndGet();
+      clientThread.abort();
+      return;
+    }
+    int heartbeat = heartbeatIntervalMillis;
+    if (heartbeat > 0 && quietMillis >= heartbeat) {
+      clientThread.receiveMessage(new PingMessage(System.currentTimeMillis()));
+    }
+    watchLiveness(clientThread);
+  }
 
-      Runnable readerTask = () -> {
+  /**
+   * Move a user's session to a new connection. The new connection gets a ConnectResp, then the frames
+   * the client missed, then whatever queued up for the old connection, all before it replaces the old
+   * connection in the client list, so traffic routed to it afterwards comes after them. The user never
+   * left, so nobody sees a presence change, and the user stays in their rooms
+   * @param msg the ResumeMessage the new connection opened with
+   * @param clientThread delivering messages to the user from now on, with its wire format already set
+   * @return false if the token is unknown, belongs to someone else, or the missed frames are gone
+   */
+  boolean resumeClient(ResumeMessage msg, ClientThread clientThread) {
+    String username = msg.getUsername().trim();
+    ResumableSession session = sessions.get(msg.getResumeToken());
+    if (session == null || !session.getUsername().equals(username)
+        || clientThread.getWireFormat() == WireFormat.V1) {
+      return false;
+    }
+    ClientThread previous;
+    synchronized (presenceLock) {
+      previous = clients.get(username);
+      if (previous == null || previous.isEvicted() || session.getOwner() != previous) {
+        return false;
+      }
+      synchronized (session) {
+        List<Message> missed = session.takeOver(clientThread, msg.getLastSequence());
+        if (missed == null) {
+          return false;
+        }
+        clientThread.setSession(session);
+        String successMsg = "Resumed session as username: " + username + ".\n";
+        int version = clientThread.getWireFormat().getVersion();
+        clientThread.receiveMessage(new ConnectResp(true, successMsg, version, session.getToken()));
+        for (Message message : missed) {
+          clientThread.receiveMessage(message);
+        }
+      }
+      previous.detach();
+      previous.handQueuedTo(clientThread);
+      clients.put(username, clientThread);
+      for (String roomName : List.copyOf(previous.getRooms())) {
+        rooms.join(roomName, clientThread);
+      }
+      if (previous.isPresenceSubscribed()) {
+        clientThread.subscribePresence();
+      }
+    }
+    watchLiveness(clientThread);
+    deliverMailbox(username, clientThread);
+    return true;
+  }
+
+  /**
+   * Tell a connection its session cannot be resumed and close it
+   * @param clientThread delivering messages to the user
+   */
+  void refuseResume(ClientThread clientThread) {
+    clientThread.receiveMessage(new ConnectResp(false, "Session cannot be resumed."));
+    clientThread.closeAfterFlush();
+  }
+
+  /**
+   * Count a membership change and push it to every presence subscriber, must hold the presence lock so
+   * subscribers get the deltas in sequence order and none falls between a PresenceSync and the next one
+   * @param joined true if the user joined, false if they left
+   * @param username of the user
+   */
+  private void publishPresence(boolean joined, String username) {
+    long sequence = presenceVersion.incrementAndGet();
+    EncodedMessage delta = null;
+    for (ClientThread subscriber : clients.values()) {
+      if (!subscriber.isPresenceSubscribed()) {
+        continue;
+      }
+      if (delta == null) {
         try {
-          while (true) {
-            Message msg = Message.receive(dataIn);
-            handleMessage(msg, username, clientSocket, dataOut);
-          }
+          delta = new EncodedMessage(new PresenceDelta(sequence, joined, username));
         } catch (IOException e) {
-          System.out.println("Client " + username + " disconnected.");
-        } finally {
-          clients.remove(username);
-          try {
-            clientSocket.close();
-          } catch (IOException ignored) {
-          }
+          throw new UncheckedIOException(e);
         }
-      };
+      }
+      subscriber.receiveMessage(delta);
+    }
+  }
 
-      threadPool.execute(readerTask);
+  /**
+   * Get the connected users as of the latest membership change. The snapshot is only rebuilt when
+   * someone asks after users came or went, so repeated queries share one set of encoded usernames.
+   * Membership changes hold the presence lock too, so a snapshot always matches its version
+   * @return the current presence snapshot
+   */
+  public PresenceSnapshot getPresence() {
+    PresenceSnapshot snapshot = presence;
+    if (snapshot.getVersion() == presenceVersion.get()) {
+      return snapshot;
+    }
+    synchronized (presenceLock) {
+      snapshot = presence;
+      long version = presenceVersion.get();
+      if (snapshot.getVersion() != version) {
+        snapshot = new PresenceSnapshot(version, clients.keySet());
+        presence = snapshot;
+      }
+      return snapshot;
     }
   }
 
+  /**
+   * Charge a message read from a user to their rate limits before it is handled. A message over the
+   * budget of its category is answered with a FailedMessage and counted, and goes no further
+   * @param message given by user
+   * @param clientThread delivering messages to the user
+   * @return true if the message should be handled
+   * @throws IOException will be ignored for unexpected input
+   */
+  boolean admit(Message message, ClientThread clientThread) throws IOException {
+    RateCategory category = RateCategory.of(message.getMessageType());
+    if (category == null || clientThread.tryAcquire(category)) {
+      return true;
+    }
+    clientThread.countRateLimited();
+    rateLimitRejections.incrementAndGet();
+    sendFailedMessage(clientThread, message, "Rate limit exceeded for " + category.getDescription() + ".");
+    return false;
+  }
+
   /**
    * Process given message based on their type
    * @param message given by user
-   * @param username of the user
-   * @param clientSocket of the user
-   * @param dataOut of the user
+   * @param clientThread delivering messages to the user
    * @throws IOException will be ignored for unexpected input
    */
-  private void handleMessage(Message message, String username, Socket clientSocket, DataOutputStream dataOut) throws IOException {
+  void handleMessage(Message message, ClientThread clientThread) throws IOException {
     switch (message.getMessageType()) {
       case Protocol.DISCONNECT_MESSAGE:
-        handleDisconnectMessage((DisconnectMessage) message, username, clientSocket, dataOut);
+        handleDisconnectMessage((DisconnectMessage) message, clientThread);
         break;
       case Protocol.BROADCAST_MESSAGE:
-        handleBroadcastMessage((BroadcastMessage) message, username, dataOut);
+        handleBroadcastMessage((BroadcastMessage) message, clientThread);
         break;
       case Protocol.DIRECT_MESSAGE:
-        handleDirectMessage((DirectMessage) message, username, dataOut);
+        if (message instanceof ForwardedDirectMessage) {
+          handleForwardedDirectMessage((ForwardedDirectMessage) message, clientThread);
+        } else {
+          handleDirectMessage((DirectMessage) message, clientThread);
+        }
         break;
       case Protocol.SEND_INSULT:
-        handleSendInsultMessage((InsultMessage) message, username, dataOut);
+        handleSendInsultMessage((InsultMessage) message, clientThread);
         break;
       case Protocol.QUERY_CONNECTED_USERS:
-        handleQueryUsersMessage((QueryUsers) message, username, dataOut);
+        handleQueryUsersMessage((QueryUsers) message, clientThread);
+        break;
+      case Protocol.JOIN_ROOM:
+        handleJoinRoomMessage((JoinRoomMessage) message, clientThread);
+        break;
+      case Protocol.LEAVE_ROOM:
+        handleLeaveRoomMessage((LeaveRoomMessage) message, clientThread);
+        break;
+      case Protocol.ROOM_MESSAGE:
+        handleRoomMessage((RoomMessage) message, clientThread);
+        break;
+      case Protocol.SUBSCRIBE_PRESENCE:
+        handleSubscribePresence((SubscribePresence) message, clientThread);
+        break;
+      case Protocol.QUERY_DIRECTORY:
+        handleDirectoryQuery((DirectoryQuery) message, clientThread);
+        break;
+      case Protocol.HISTORY_QUERY:
+        handleHistoryQuery((HistoryQuery) message, clientThread);
+        break;
+      case Protocol.PING:
+        reply(clientThread, message, new PongMessage(((PingMessage) message).getTimestamp()));
+        break;
+      case Protocol.PONG:
         break;
       default:
-        sendFailedMessage(dataOut, "Unsupported message type: " + message.getMessageType());
+        sendFailedMessage(clientThread, message, "Unsupported message type: " + message.getMessageType());
         break;
     }
   }
@@ -126,79 +703,197 @@ public class ChatServer {
   /**
    * Process disconnect message
    * @param msg given by user
-   * @param username of the user
-   * @param clientSocket of the user
-   * @param dataOut of the user
+   * @param clientThread delivering messages to the user
    * @throws IOException will be ignored for unexpected input
    */
-  private void handleDisconnectMessage(DisconnectMessage msg,
-      String username, Socket clientSocket, DataOutputStream dataOut) throws IOException {
+  private void handleDisconnectMessage(DisconnectMessage msg, ClientThread clientThread) throws IOException {
+    String username = clientThread.getUserName();
     if (!clients.containsKey(username)) {
-      sendFailedMessage(dataOut, "You are not connected.");
+      sendFailedMessage(clientThread, msg, "You are not connected.");
       return;
     }
 
-    clients.remove(username);
+    removeClient(username, clientThread);
     DisconnectResp response = new DisconnectResp(true, "You are no longer connected.");
-    response.send(dataOut);
-
-    clientSocket.close();
+    reply(clientThread, msg, response);
+    clientThread.closeAfterFlush();
   }
 
   /**
    * Process broadcast message
    * @param msg given by user
-   * @param username of the user
-   * @param dataOut of the user
+   * @param clientThread delivering messages to the user
    * @throws IOException will be ignored for unexpected input
    */
-  private void handleBroadcastMessage(BroadcastMessage msg, String username, DataOutputStream dataOut) throws IOException {
-    if (!clients.containsKey(username)) {
+  private void handleBroadcastMessage(BroadcastMessage msg, ClientThread clientThread) throws IOException {
+    if (!clients.containsKey(clientThread.getUserName())) {
+      if (msg.getRequestId() != 0) {
+        sendFailedMessage(clientThread, msg, "You are not connected.");
+      }
       return;
     }
-    broadcastMessage(msg, dataOut);
+    broadcastMessage(msg, clientThread);
   }
 
   /**
-   * Process Direct Message
+   * Process Direct Message. A tagged message is acknowledged to the sender, and the recipient gets an
+   * untagged copy since the request id only means something to the sender
    * @param msg given by user
-   * @param username of the user
-   * @param dataOut of the user
+   * @param clientThread delivering messages to the user
    * @throws IOException will be ignored for unexpected input
    */
-  private void handleDirectMessage(DirectMessage msg, String username, DataOutputStream dataOut) throws IOException {
-    if (!clients.containsKey(username)) {
-      sendFailedMessage(dataOut, "You are not connected.");
+  private void handleDirectMessage(DirectMessage msg, ClientThread clientThread) throws IOException {
+    ClientThread recipient = findDirectRecipient(msg.getSenderUsername(), msg.getRecipientUsername(),
+        clientThread, msg);
+    if (recipient == null) {
       return;
     }
-    String recipient = msg.getRecipientUsername();
-    if (!clients.containsKey(recipient)) {
-      sendFailedMessage(dataOut, "Recipient not found: " + recipient);
+    String conversation = MessageHistory.conversation(msg.getSenderUsername(), msg.getRecipientUsername());
+    if (msg.getRequestId() == 0) {
+      journal(msg, conversation);
+      recipient.receiveMessage(msg);
       return;
     }
-    sendDirectMessage(msg);
+    DirectMessage copy = new DirectMessage(msg.getSenderUsername(), msg.getRecipientUsername(),
+        msg.getMessage());
+    journal(copy, conversation);
+    recipient.receiveMessage(copy);
+    clientThread.receiveMessage(ack(msg));
   }
 
   /**
-   * Process Direct Message
-   * @param message given by user
+   * Process a Direct Message read as its original frame. The frame's text is checked in place first, so a
+   * malformed one is rejected before it is journaled or delivered. A recipient on the sender's wire
+   * format then gets the original frame undecoded, anyone else gets it encoded again in their own format
+   * @param msg given by user
+   * @param clientThread delivering messages to the user
+   * @throws IOException will be ignored for unexpected input
+   */
+  private void handleForwardedDirectMessage(ForwardedDirectMessage msg, ClientThread clientThread)
+      throws IOException {
+    if (!msg.isWellFormed()) {
+      sendFailedMessage(clientThread, msg, "Malformed direct message.");
+      return;
+    }
+    ClientThread recipient = findDirectRecipient(msg.getSenderUsername(), msg.getRecipientUsername(),
+        clientThread, msg);
+    if (recipient == null) {
+      return;
+    }
+    journal(msg, MessageHistory.conversation(msg.getSenderUsername(), msg.getRecipientUsername()));
+    recipient.receiveMessage(recipient.getWireFormat() == msg.getSourceFormat() ? msg : msg.getMessage());
+  }
+
+  /**
+   * Relay a direct message frame straight from the sender's read buffer to the recipient. The frame is
+   * copied into a pooled buffer and never decoded, so nothing is allocated once the pool is warm. Its
+   * text is checked in place the same way the normal path checks it. Only the common case is handled
+   * here, anything else, a malformed frame included, returns false and goes through the normal path,
+   * which also reports errors to the sender
+   * @param view the whole direct message frame
+   * @param recipientName the recipient named in the frame
+   * @param sender delivering messages to the sender
+   * @return true if the frame was queued for the recipient
+   * @throws IOException if the frame is malformed
    */
-  private void sendDirectMessage(DirectMessage message) {
-    ClientThread ct = clients.get(message.getRecipientUsername());
-    ct.receiveMessage(message);
+  boolean relayDirectFrame(FrameView view, String recipientName, ClientThread sender) throws IOException {
+    ClientThread recipient = clients.get(recipientName);
+    if (recipient == null || recipient.getWireFormat() != view.getFormat() || view.getRequestId() != 0
+        || clients.get(sender.getUserName()) != sender || !view.fieldEquals(SENDER_FIELD, sender.getUserName())
+        || !view.hasWellFormedStrings(ForwardedDirectMessage.DIRECT_MESSAGE_FIELDS)) {
+      return false;
+    }
+    MessageJournal current = journal;
+    if (current != null) {
+      long sequence = current.append(view);
+      MessageHistory currentHistory = history;
+      if (sequence > 0 && currentHistory != null && currentHistory.getJournal() == current) {
+        byte[] frame = new byte[view.getFrameLength()];
+        view.copyTo(ByteBuffer.wrap(frame));
+        currentHistory.record(MessageHistory.conversation(sender.getUserName(), recipientName), sequence,
+            ForwardedDirectMessage.fromFrame(view.getFormat(), frame));
+      }
+    }
+    recipient.receiveMessage(framePool.copyOf(view));
+    return true;
+  }
+
+  /**
+   * Check that a direct message may be delivered and find its recipient, telling the sender why not
+   * otherwise
+   * @param sender the sender named in the message
+   * @param recipientName the recipient named in the message
+   * @param clientThread delivering messages to the sender
+   * @param request the direct message, whose request id any failure is tagged with
+   * @return the recipient's ClientThread, or null if the message must not be delivered
+   * @throws IOException will be ignored for unexpected input
+   */
+  private ClientThread findDirectRecipient(String sender, String recipientName, ClientThread clientThread,
+      Message request) throws IOException {
+    if (!clients.containsKey(clientThread.getUserName())) {
+      sendFailedMessage(clientThread, request, "You are not connected.");
+      return null;
+    }
+    if (!clientThread.getUserName().equals(sender)) {
+      sendFailedMessage(clientThread, request, "Sender does not match your username: " + sender);
+      return null;
+    }
+    ClientThread recipient = clients.get(recipientName);
+    if (recipient == null) {
+      OfflineMailbox current = mailbox;
+      if (current == null) {
+        sendFailedMessage(clientThread, request, "Recipient not found: " + recipientName);
+      } else {
+        keepForLater(current, request, recipientName, clientThread);
+      }
+    }
+    return recipient;
+  }
+
+  /**
+   * Keep a direct message for a recipient who is not connected. It is journaled like a delivered one
+   * and acknowledged to the sender, and if the recipient connected in the meantime they get it at once
+   * @param current the server's mailbox
+   * @param request the direct message
+   * @param recipientName the recipient named in the message
+   * @param clientThread delivering messages to the sender
+   * @throws IOException will be ignored for unexpected input
+   */
+  private void keepForLater(OfflineMailbox current, Message request, String recipientName,
+      ClientThread clientThread) throws IOException {
+    DirectMessage message;
+    try {
+      message = (DirectMessage) (request instanceof ForwardedDirectMessage
+          ? ((ForwardedDirectMessage) request).getMessage() : request);
+    } catch (UncheckedIOException e) {
+      sendFailedMessage(clientThread, request, "Malformed direct message.");
+      return;
+    }
+    DirectMessage copy = new DirectMessage(message.getSenderUsername(), recipientName, message.getMessage());
+    if (!current.store(copy)) {
+      sendFailedMessage(clientThread, request, "Mailbox is full for recipient: " + recipientName);
+      return;
+    }
+    journal(copy, MessageHistory.conversation(copy.getSenderUsername(), recipientName));
+    if (request.getRequestId() != 0) {
+      clientThread.receiveMessage(ack(request));
+    }
+    ClientThread arrived = clients.get(recipientName);
+    if (arrived != null) {
+      deliverMailbox(recipientName, arrived);
+    }
   }
 
   /**
    * Process Insult Message
    * @param msg given by user
-   * @param username of the user
-   * @param dataOut of the user
+   * @param clientThread delivering messages to the user
    * @throws IOException will be ignored for unexpected input
    */
-  private void handleSendInsultMessage(InsultMessage msg, String username, DataOutputStream dataOut) throws IOException {
+  private void handleSendInsultMessage(InsultMessage msg, ClientThread clientThread) throws IOException {
+    String username = clientThread.getUserName();
     if (!clients.containsKey(username)) {
-      ClientThread sender = clients.get(username);
-      sender.receiveMessage(msg);
+      sendFailedMessage(clientThread, msg, "You are not connected.");
       return;
     }
 
@@ -208,52 +903,258 @@ public class ChatServer {
     String insult = generator.generate();
     String formattedInsult = username + " -> " + recipient + ": " + insult + "\n";
 
-    broadcastMessage(new BroadcastMessage(msg.getSenderUsername(), formattedInsult), dataOut);
+    BroadcastMessage insultBroadcast = new BroadcastMessage(msg.getSenderUsername(), formattedInsult);
+    insultBroadcast.setRequestId(msg.getRequestId());
+    broadcastMessage(insultBroadcast, clientThread);
   }
 
   /**
-   * Process query user message
+   * Process query user message. The reply is served from the shared presence snapshot with the
+   * requester's own entry skipped, nothing is encoded per query
    * @param msg given by user
-   * @param username of the user
-   * @param dataOut of the user
+   * @param clientThread delivering messages to the user
    * @throws IOException will be ignored for unexpected input
    */
-  private void handleQueryUsersMessage(QueryUsers msg, String username, DataOutputStream dataOut) throws IOException {
+  private void handleQueryUsersMessage(QueryUsers msg, ClientThread clientThread) throws IOException {
+    String username = clientThread.getUserName();
     if (!clients.containsKey(username)) {
-      sendFailedMessage(dataOut, "You are not connected.");
+      sendFailedMessage(clientThread, msg, "You are not connected.");
       return;
     }
-    List<String> users = new ArrayList<>(clients.keySet());
-    users.remove(username);
-    QueryResp response = new QueryResp(users);
-    response.send(dataOut);
+    reply(clientThread, msg, getPresence().replyFor(username));
   }
 
   /**
-   * Process broadcast message
+   * Process presence subscription. The user gets every connected user as of now, then a delta for each
+   * change after that. Subscribing again gets a fresh list
+   * @param msg given by user
+   * @param clientThread delivering messages to the user
+   * @throws IOException will be ignored for unexpected input
+   */
+  private void handleSubscribePresence(SubscribePresence msg, ClientThread clientThread) throws IOException {
+    if (clients.get(clientThread.getUserName()) != clientThread) {
+      sendFailedMessage(clientThread, msg, "You are not connected.");
+      return;
+    }
+    if (!clientThread.getUserName().equals(msg.getUsername())) {
+      sendFailedMessage(clientThread, msg, "Sender does not match your username: " + msg.getUsername());
+      return;
+    }
+    synchronized (presenceLock) {
+      PresenceSnapshot snapshot = getPresence();
+      clientThread.subscribePresence();
+      reply(clientThread, msg, new PresenceSync(snapshot.getVersion(), snapshot.getUsernames()));
+    }
+  }
+
+  /**
+   * Process directory query. The page is read from the sorted directory, so only the users on it are
+   * looked at
+   * @param msg given by user
+   * @param clientThread delivering messages to the user
+   * @throws IOException will be ignored for unexpected input
+   */
+  private void handleDirectoryQuery(DirectoryQuery msg, ClientThread clientThread) throws IOException {
+    if (clients.get(clientThread.getUserName()) != clientThread) {
+      sendFailedMessage(clientThread, msg, "You are not connected.");
+      return;
+    }
+    if (!clientThread.getUserName().equals(msg.getUsername())) {
+      sendFailedMessage(clientThread, msg, "Sender does not match your username: " + msg.getUsername());
+      return;
+    }
+    if (msg.getPageSize() < 1 || msg.getPageSize() > UserDirectory.MAX_PAGE_SIZE) {
+      sendFailedMessage(clientThread, msg, "Invalid page size: " + msg.getPageSize());
+      return;
+    }
+    UserDirectory.Page page = directory.page(msg.getPrefix(), msg.getCursor(), msg.getPageSize());
+    reply(clientThread, msg, new DirectoryResp(page.getUsernames(), page.getNextCursor()));
+  }
+
+  /**
+   * Process history query. The page is read on the history's own threads and sent when it is ready,
+   * so a page read from disk does not hold up this thread
+   * @param msg given by user
+   * @param clientThread delivering messages to the user
+   * @throws IOException will be ignored for unexpected input
+   */
+  private void handleHistoryQuery(HistoryQuery msg, ClientThread clientThread) throws IOException {
+    if (clients.get(clientThread.getUserName()) != clientThread) {
+      sendFailedMessage(clientThread, msg, "You are not connected.");
+      return;
+    }
+    if (!clientThread.getUserName().equals(msg.getUsername())) {
+      sendFailedMessage(clientThread, msg, "Sender does not match your username: " + msg.getUsername());
+      return;
+    }
+    if (msg.getCount() < 1 || msg.getCount() > MessageHistory.MAX_COUNT) {
+      sendFailedMessage(clientThread, msg, "Invalid history count: " + msg.getCount());
+      return;
+    }
+    MessageHistory current = history;
+    if (current == null) {
+      sendFailedMessage(clientThread, msg, "History is not available.");
+      return;
+    }
+    current.fetchAsync(MessageHistory.conversation(msg.getUsername(), msg.getPeer()), msg.getBeforeSequence(),
+        msg.getCount()).whenComplete((page, failure) -> reply(clientThread, msg,
+        failure == null ? page : new FailedMessage("History could not be read.")));
+  }
+
+  /**
+   * Process broadcast message. The message is encoded once, journaled, and every recipient is handed
+   * the same frame, then the sender gets an acknowledgement tagged with the message's request id
    * @param msg given by user
-   * @param out of the user
+   * @param sender delivering messages to the sender of the broadcast
    * @throws IOException will be ignored for unexpected input
    */
-  public void broadcastMessage(BroadcastMessage msg, DataOutputStream out) throws IOException {
-    for (String user : clients.keySet()) {
-      if (msg.getSenderUsername() != null && msg.getSenderUsername().equals(user)) {
-        new FailedMessage("").send(out);
+  public void broadcastMessage(BroadcastMessage msg, ClientThread sender) throws IOException {
+    EncodedMessage frame = new EncodedMessage(msg);
+    journal(frame, MessageHistory.GLOBAL_ROOM);
+    for (ClientThread recipient : clients.values()) {
+      if (msg.getSenderUsername() != null && msg.getSenderUsername().equals(recipient.getUserName())) {
         continue;
       }
-      clients.get(user).receiveMessage(msg);
+      recipient.receiveMessage(frame);
+    }
+    sender.receiveMessage(ack(msg));
+  }
+
+  /**
+   * Append a routed message to the journal, if there is one, and to the history kept over it. A message
+   * the journal cannot take is counted by the journal and still delivered
+   * @param message the message as its recipients get it
+   * @param conversation the conversation the message belongs to
+   */
+  private void journal(Message message, String conversation) {
+    MessageJournal current = journal;
+    if (current != null) {
+      long sequence = current.append(message);
+      MessageHistory currentHistory = history;
+      if (sequence > 0 && currentHistory != null && currentHistory.getJournal() == current) {
+        currentHistory.record(conversation, sequence, message);
+      }
+    }
+  }
+
+  /**
+   * Process join room message
+   * @param msg given by user
+   * @param clientThread delivering messages to the user
+   * @throws IOException will be ignored for unexpected input
+   */
+  private void handleJoinRoomMessage(JoinRoomMessage msg, ClientThread clientThread) throws IOException {
+    String roomName = msg.getRoomName();
+    if (!checkRoomRequest(msg.getUsername(), roomName, clientThread, msg)) {
+      return;
+    }
+    boolean joined = rooms.join(roomName, clientThread);
+    reply(clientThread, msg, new RoomResp(joined, roomName,
+        joined ? "Joined room: " + roomName : "Already in room: " + roomName));
+  }
+
+  /**
+   * Process leave room message
+   * @param msg given by user
+   * @param clientThread delivering messages to the user
+   * @throws IOException will be ignored for unexpected input
+   */
+  private void handleLeaveRoomMessage(LeaveRoomMessage msg, ClientThread clientThread) throws IOException {
+    String roomName = msg.getRoomName();
+    if (!checkRoomRequest(msg.getUsername(), roomName, clientThread, msg)) {
+      return;
+    }
+    boolean left = rooms.leave(roomName, clientThread);
+    reply(clientThread, msg, new RoomResp(left, roomName,
+        left ? "Left room: " + roomName : "Not in room: " + roomName));
+  }
+
+  /**
+   * Process room message. Only the room's members are visited, and they all get the same encoded frame
+   * @param msg given by user
+   * @param clientThread delivering messages to the user
+   * @throws IOException will be ignored for unexpected input
+   */
+  private void handleRoomMessage(RoomMessage msg, ClientThread clientThread) throws IOException {
+    String roomName = msg.getRoomName();
+    if (!checkRoomRequest(msg.getSenderUsername(), roomName, clientThread, msg)) {
+      return;
+    }
+    if (!rooms.isMember(roomName, clientThread)) {
+      sendFailedMessage(clientThread, msg, "You are not in room: " + roomName);
+      return;
+    }
+    EncodedMessage frame = new EncodedMessage(msg);
+    for (ClientThread member : rooms.getMembers(roomName)) {
+      if (member != clientThread) {
+        member.receiveMessage(frame);
+      }
+    }
+    clientThread.receiveMessage(ack(msg));
+  }
+
+  /**
+   * Check that a room request comes from a connected user speaking for themselves about a valid room
+   * @param username the username in the request
+   * @param roomName the room in the request
+   * @param clientThread delivering messages to the user
+   * @param request the room request, whose request id any failure is tagged with
+   * @return true if the request may go ahead, otherwise the user has been told why not
+   * @throws IOException will be ignored for unexpected input
+   */
+  private boolean checkRoomRequest(String username, String roomName, ClientThread clientThread,
+      Message request) throws IOException {
+    if (clients.get(clientThread.getUserName()) != clientThread) {
+      sendFailedMessage(clientThread, request, "You are not connected.");
+      return false;
+    }
+    if (!clientThread.getUserName().equals(username)) {
+      sendFailedMessage(clientThread, request, "Sender does not match your username: " + username);
+      return false;
+    }
+    if (!RoomIndex.isValidRoomName(roomName)) {
+      sendFailedMessage(clientThread, request, "Invalid room name: " + roomName);
+      return false;
     }
+    return true;
   }
 
   /**
    * Process fail message
-   * @param dataOut of the user
+   * @param clientThread delivering messages to the user
+   * @param request the request that failed, whose request id the failure is tagged with
    * @param errorMessage will be sent to user
    * @throws IOException will be ignored for unexpected input
    */
-  private void sendFailedMessage(DataOutputStream dataOut, String errorMessage) throws IOException {
+  private void sendFailedMessage(ClientThread clientThread, Message request, String errorMessage)
+      throws IOException {
     FailedMessage fm = new FailedMessage(errorMessage);
-    fm.send(dataOut);
+    reply(clientThread, request, fm);
+  }
+
+  /**
+   * Send the answer to a request, tagged with the request's id so a client with many requests in flight
+   * can tell which one it answers
+   * @param clientThread delivering messages to the user
+   * @param request the request being answered
+   * @param response the answer, a new message only this user gets
+   */
+  private static void reply(ClientThread clientThread, Message request, Message response) {
+    response.setRequestId(request.getRequestId());
+    clientThread.receiveMessage(response);
+  }
+
+  /**
+   * @param request a broadcast, room or tagged direct message that went through
+   * @return the empty FailedMessage acknowledging it, tagged with the request's id
+   */
+  private static FailedMessage ack(Message request) {
+    if (request.getRequestId() == 0) {
+      return BROADCAST_ACK;
+    }
+    FailedMessage ack = new FailedMessage("");
+    ack.setRequestId(request.getRequestId());
+    return ack;
   }
 
   /**
@@ -280,6 +1181,327 @@ public class ChatServer {
     return threadPool;
   }
 
+  /**
+   *
+   * @return how connections are served by this server
+   */
+  public ServerMode getMode() {
+    return mode;
+  }
+
+  /**
+   *
+   * @return event loops of this server, null unless started in NIO mode
+   */
+  public NioEventLoop[] getEventLoops() {
+    return eventLoops;
+  }
+
+  /**
+   *
+   * @return outbound queue limits applied to each new connection
+   */
+  public QueueLimits getQueueLimits() {
+    return queueLimits;
+  }
+
+  /**
+   * Set the outbound queue limits applied to connections made from now on
+   * @param queueLimits the most one user's queue may hold and what to do when it is full
+   */
+  public void setQueueLimits(QueueLimits queueLimits) {
+    this.queueLimits = Objects.requireNonNull(queueLimits);
+  }
+
+  /**
+   *
+   * @return how each new connection shares its writes between replies and chat traffic
+   */
+  public LaneWeights getLaneWeights() {
+    return laneWeights;
+  }
+
+  /**
+   * Set how connections made from now on share each batch of writes between replies in the control lane
+   * and chat traffic in the bulk lane
+   * @param laneWeights the most messages of each lane taken per round
+   */
+  public void setLaneWeights(LaneWeights laneWeights) {
+    this.laneWeights = Objects.requireNonNull(laneWeights);
+  }
+
+  /**
+   *
+   * @return how the writer of each new blocking connection waits for messages
+   */
+  public WaitStrategy getWriterWaitStrategy() {
+    return writerWaitStrategy;
+  }
+
+  /**
+   * Set how the writers of blocking connections made from now on wait while their queue is empty. NIO
+   * connections are written by their event loop, which never waits on a queue
+   * @param writerWaitStrategy SPIN_THEN_PARK to trade some CPU for latency, or BLOCK
+   */
+  public void setWriterWaitStrategy(WaitStrategy writerWaitStrategy) {
+    this.writerWaitStrategy = Objects.requireNonNull(writerWaitStrategy);
+  }
+
+  /**
+   *
+   * @return how fast each new connection may send each category of message
+   */
+  public RateLimits getRateLimits() {
+    return rateLimits;
+  }
+
+  /**
+   * Set how fast connections made from now on may send each category of message
+   * @param rateLimits the limits, RateLimits.UNLIMITED to not limit anything
+   */
+  public void setRateLimits(RateLimits rateLimits) {
+    this.rateLimits = Objects.requireNonNull(rateLimits);
+  }
+
+  /**
+   *
+   * @return how many messages were rejected for going over their sender's rate limits
+   */
+  public long getRateLimitRejections() {
+    return rateLimitRejections.get();
+  }
+
+  /**
+   *
+   * @return how long a new connection may take to send its ConnectMessage, in milliseconds
+   */
+  public int getHandshakeTimeoutMillis() {
+    return handshakeTimeoutMillis;
+  }
+
+  /**
+   * Set how long connections made from now on may take to send their ConnectMessage
+   * @param handshakeTimeoutMillis the timeout in milliseconds
+   */
+  public void setHandshakeTimeoutMillis(int handshakeTimeoutMillis) {
+    if (handshakeTimeoutMillis < 1) {
+      throw new IllegalArgumentException("handshakeTimeoutMillis must be at least 1");
+    }
+    this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+  }
+
+  /**
+   *
+   * @return how many connections may be waiting for their ConnectMessage at once
+   */
+  public int getMaxPendingHandshakes() {
+    return maxPendingHandshakes;
+  }
+
+  /**
+   * Set how many connections may be waiting for their ConnectMessage at once, new connections over the
+   * limit are closed right after accept
+   * @param maxPendingHandshakes the most pending handshakes
+   */
+  public void setMaxPendingHandshakes(int maxPendingHandshakes) {
+    if (maxPendingHandshakes < 1) {
+      throw new IllegalArgumentException("maxPendingHandshakes must be at least 1");
+    }
+    this.maxPendingHandshakes = maxPendingHandshakes;
+  }
+
+  /**
+   *
+   * @return the journal routed broadcasts, direct messages and insults are appended to, or null
+   */
+  public MessageJournal getJournal() {
+    return journal;
+  }
+
+  /**
+   * Set the journal routed broadcasts, direct messages and insults are appended to from now on. The
+   * server does not close it
+   * @param journal the journal, or null to stop journaling
+   */
+  public void setJournal(MessageJournal journal) {
+    this.journal = journal;
+  }
+
+  /**
+   *
+   * @return the history HistoryQuery is answered from, or null
+   */
+  public MessageHistory getHistory() {
+    return history;
+  }
+
+  /**
+   * Set the history HistoryQuery is answered from. Only messages journaled to the history's own journal
+   * are added to it, so it should be kept over the server's journal. The server does not close it
+   * @param history the history, or null to refuse history queries
+   */
+  public void setHistory(MessageHistory history) {
+    this.history = history;
+  }
+
+  /**
+   *
+   * @return the mailbox direct messages to users who are not connected are kept in, or null
+   */
+  public OfflineMailbox getMailbox() {
+    return mailbox;
+  }
+
+  /**
+   * Set the mailbox direct messages to users who are not connected are kept in until they connect.
+   * Without one such messages are refused with "Recipient not found"
+   * @param mailbox the mailbox, or null to refuse messages to users who are not connected
+   */
+  public void setMailbox(OfflineMailbox mailbox) {
+    this.mailbox = mailbox;
+    HashedTimerWheel.Timeout previous = mailboxSweep;
+    if (previous != null) {
+      previous.cancel();
+    }
+    mailboxSweep = mailbox == null ? null : scheduleMailboxSweep(mailbox);
+  }
+
+  /**
+   * Throw away the mailbox's expired messages now and then, even while nothing new is stored. The
+   * sweep runs on the connection thread pool, the timer only starts it
+   * @param swept the mailbox
+   * @return the timeout starting the next sweep
+   */
+  private HashedTimerWheel.Timeout scheduleMailboxSweep(OfflineMailbox swept) {
+    return timer.schedule(() -> {
+      if (mailbox == swept) {
+        threadPool.execute(swept::expire);
+        mailboxSweep = scheduleMailboxSweep(swept);
+      }
+    }, MAILBOX_SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   *
+   * @return how long a lost connection's session may be resumed for, in milliseconds, 0 if never
+   */
+  public int getResumeGraceMillis() {
+    return resumeGraceMillis;
+  }
+
+  /**
+   * Set how long the sessions of connections lost from now on may be resumed for. Only connections made
+   * while this is above 0 get a resume token
+   * @param resumeGraceMillis the grace period in milliseconds, or 0 to remove users as soon as their
+   *                          connection is lost
+   */
+  public void setResumeGraceMillis(int resumeGraceMillis) {
+    if (resumeGraceMillis < 0) {
+      throw new IllegalArgumentException("resumeGraceMillis must not be negative");
+    }
+    this.resumeGraceMillis = resumeGraceMillis;
+  }
+
+  /**
+   *
+   * @return how long a connection may be quiet before it is pinged, in milliseconds, 0 if never
+   */
+  public int getHeartbeatIntervalMillis() {
+    return heartbeatIntervalMillis;
+  }
+
+  /**
+   * Set how long connections made from now on may be quiet before they are pinged
+   * @param heartbeatIntervalMillis the interval in milliseconds, or 0 to never ping
+   */
+  public void setHeartbeatIntervalMillis(int heartbeatIntervalMillis) {
+    if (heartbeatIntervalMillis < 0) {
+      throw new IllegalArgumentException("heartbeatIntervalMillis must not be negative");
+    }
+    this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+  }
+
+  /**
+   *
+   * @return how long a connection may be quiet before it is treated as lost, in milliseconds, 0 if
+   *         forever
+   */
+  public int getIdleTimeoutMillis() {
+    return idleTimeoutMillis;
+  }
+
+  /**
+   * Set how long connections made from now on may be quiet before they are treated as lost. It should
+   * be a few heartbeat intervals, so a live client has time to answer a ping
+   * @param idleTimeoutMillis the timeout in milliseconds, or 0 to never close quiet connections
+   */
+  public void setIdleTimeoutMillis(int idleTimeoutMillis) {
+    if (idleTimeoutMillis < 0) {
+      throw new IllegalArgumentException("idleTimeoutMillis must not be negative");
+    }
+    this.idleTimeoutMillis = idleTimeoutMillis;
+  }
+
+  /**
+   *
+   * @return how many connections were closed for being quiet too long
+   */
+  public long getIdleEvictions() {
+    return idleEvictions.get();
+  }
+
+  /**
+   *
+   * @return the timer driving heartbeats, idle eviction, handshake deadlines and expiry
+   */
+  public HashedTimerWheel getTimer() {
+    return timer;
+  }
+
+  /**
+   *
+   * @return the number of connections still waiting for their ConnectMessage
+   */
+  public int getPendingHandshakeCount() {
+    return pendingHandshakes.size();
+  }
+
+  /**
+   *
+   * @return the number of messages waiting to be delivered to each connected user
+   */
+  public Map<String, Integer> getQueueDepths() {
+    Map<String, Integer> depths = new TreeMap<>();
+    for (Map.Entry<String, ClientThread> entry : clients.entrySet()) {
+      depths.put(entry.getKey(), entry.getValue().getQueueDepth());
+    }
+    return depths;
+  }
+
+  /**
+   *
+   * @return the named rooms and their members
+   */
+  public RoomIndex getRooms() {
+    return rooms;
+  }
+
+  /**
+   *
+   * @return the connected usernames in sorted order
+   */
+  public UserDirectory getDirectory() {
+    return directory;
+  }
+
+  /**
+   *
+   * @return the pool of frame buffers used to relay and encode messages
+   */
+  public FramePool getFramePool() {
+    return framePool;
+  }
+
   /**
    *
    * @return InsultGenerator of this server
@@ -328,6 +1550,7 @@ public class ChatServer {
   public String toString() {
     return "ChatServer{" +
         "port=" + port +
+        ", mode=" + mode +
         ", serverSocket=" + serverSocket +
         ", clients=" + clients +
         '}';
@@ -335,12 +1558,24 @@ public class ChatServer {
 
   /**
    * main of server
-   * @param args from users
+   * @param args from users, optionally the connection mode (BLOCKING, VIRTUAL_THREADS or NIO) and a
+   *             directory to journal routed messages and keep their history in
    */
   public static void main(String[] args) {
     int port = 18888;
-    ChatServer server = new ChatServer(port);
+    ServerMode mode = args.length > 0 ? ServerMode.valueOf(args[0].toUpperCase()) : ServerMode.BLOCKING;
+    ChatServer server = new ChatServer(port, mode);
+    server.setMailbox(new OfflineMailbox());
+    server.setResumeGraceMillis(DEFAULT_RESUME_GRACE_MILLIS);
+    server.setHeartbeatIntervalMillis(DEFAULT_HEARTBEAT_INTERVAL_MILLIS);
+    server.setIdleTimeoutMillis(DEFAULT_IDLE_TIMEOUT_MILLIS);
+    server.setRateLimits(DEFAULT_RATE_LIMITS);
     try {
+      if (args.length > 1) {
+        MessageJournal journal = new MessageJournal(Path.of(args[1]));
+        server.setJournal(journal);
+        server.setHistory(new MessageHistory(journal));
+      }
       server.start();
     } catch (IOException e) {
       throw new RuntimeException("Failed to start chat server", e);
@@ -5,17 +5,36 @@ import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import messageModel.BroadcastMessage;
 import messageModel.ConnectMessage;
 import messageModel.ConnectResp;
 import messageModel.DirectMessage;
+import messageModel.DirectoryQuery;
+import messageModel.DirectoryResp;
 import messageModel.DisconnectMessage;
 import messageModel.DisconnectResp;
 import messageModel.FailedMessage;
+import messageModel.HistoryQuery;
+import messageModel.HistoryResp;
 import messageModel.InsultMessage;
+import messageModel.JoinRoomMessage;
+import messageModel.LeaveRoomMessage;
 import messageModel.Message;
+import messageModel.PingMessage;
+import messageModel.PongMessage;
+import messageModel.PresenceDelta;
+import messageModel.PresenceSync;
 import messageModel.QueryResp;
 import messageModel.QueryUsers;
+import messageModel.RoomMessage;
+import messageModel.RoomResp;
+import messageModel.SubscribePresence;
+import messageModel.WireFormat;
+import protocol.Protocol;
 
 /**
  * Represents a Client object that allows a user to connect and disconnect to a chat room server,
@@ -23,6 +42,19 @@ import messageModel.QueryUsers;
  * and check other user's name that are currently within the server
  */
 public class Client {
+  /**
+   * Most usernames shown for one "who prefix" command
+   */
+  public static final int DIRECTORY_PAGE_SIZE = 50;
+  /**
+   * Most messages shown for one "history" command
+   */
+  public static final int HISTORY_PAGE_SIZE = 20;
+
+  /**
+   * How long logoff waits for the server to confirm before closing the connection anyway
+   */
+  public static final int ANSWER_TIMEOUT_SECONDS = 5;
 
   private final String host;
   private final int port;
@@ -44,7 +76,8 @@ public class Client {
   }
 
   /**
-   * Disconnect the client from the server
+   * Disconnect the client from the server. The answer is read straight from the stream, so this is only
+   * safe when no listener thread is reading it too
    *
    * @param socket the socket connecting the client and the server
    * @param username the username of the user this client is talking to; the username that is trying to
@@ -78,7 +111,7 @@ public class Client {
 
   /**
    * Helper method that get all usernames who are currently connected to the server but don't show to
-   * the user
+   * the user. Like {@link #disconnect}, it reads the answer itself
    *
    * @param out given output stream
    * @param in given input stream
@@ -110,7 +143,7 @@ public class Client {
 
   /**
    * Send a broadcast message to all other users connected to the server, if failed, a failed message
-   * will be shown
+   * will be shown. The acknowledgement is read here, see {@link #disconnect}
    *
    * @param out given output stream
    * @param in given input stream
@@ -142,6 +175,71 @@ public class Client {
     insult.send(out);
   }
 
+  /**
+   * Join a room, the server's answer arrives as a RoomResp
+   *
+   * @param username the username of the user joining
+   * @param roomName the room to join
+   * @param out given output stream
+   * @throws IOException if output stream is invalid
+   */
+  public static void joinRoom(String username, String roomName, DataOutputStream out) throws IOException {
+    new JoinRoomMessage(username, roomName).send(out);
+  }
+
+  /**
+   * Leave a room, the server's answer arrives as a RoomResp
+   *
+   * @param username the username of the user leaving
+   * @param roomName the room to leave
+   * @param out given output stream
+   * @throws IOException if output stream is invalid
+   */
+  public static void leaveRoom(String username, String roomName, DataOutputStream out) throws IOException {
+    new LeaveRoomMessage(username, roomName).send(out);
+  }
+
+  /**
+   * Send a message to the other members of a room the user is in
+   *
+   * @param roomName the room to send to
+   * @param out given output stream
+   * @param content the content of the message
+   * @param senderName the username of the sender
+   * @throws IOException if output stream is invalid
+   */
+  public static void sendRoomMessage(String roomName, DataOutputStream out, String content, String senderName)
+      throws IOException {
+    new RoomMessage(senderName, roomName, content).send(out);
+  }
+
+  /**
+   * Ask for one page of the connected users whose names start with a prefix, the answer arrives as a
+   * DirectoryResp
+   *
+   * @param username the username of the user asking
+   * @param prefix the start every returned username shares
+   * @param cursor the cursor from the previous page, or empty for the first page
+   * @param out given output stream
+   * @throws IOException if output stream is invalid
+   */
+  public static void queryDirectory(String username, String prefix, String cursor, DataOutputStream out)
+      throws IOException {
+    new DirectoryQuery(username, prefix, cursor, DIRECTORY_PAGE_SIZE).send(out);
+  }
+
+  /**
+   * Ask the server for the connected users and every change after that, the answers arrive as a
+   * PresenceSync followed by PresenceDeltas
+   *
+   * @param username the username of the user subscribing
+   * @param out given output stream
+   * @throws IOException if output stream is invalid
+   */
+  public static void subscribePresence(String username, DataOutputStream out) throws IOException {
+    new SubscribePresence(username).send(out);
+  }
+
   /**
    *
    * @return the host address of the server
@@ -183,19 +281,18 @@ public class Client {
       out = new DataOutputStream(socket.getOutputStream());
       in = new DataInputStream(socket.getInputStream());
 
-      ConnectMessage connectQuest = new ConnectMessage(username);
+      ConnectMessage connectQuest = new ConnectMessage(username, Protocol.MAX_VERSION);
       connectQuest.send(out);
       ConnectResp response = ConnectResp.receive(in);
       if (response.getSuccess()) {
         System.out.println("Successfully connected to server");
-        Thread listener = new Thread(() -> {
-          try {
-            receiveMessage(in);
-          } catch (IOException ignored) {
-          }
-        });
+        PendingRequests requests =
+            new PendingRequests(WireFormat.negotiate(response.getProtocolVersion()), out);
+        PresenceView presence = new PresenceView(username);
+        Thread listener = new Thread(() -> receiveMessage(in, presence, requests));
         listener.start();
-        talker(in, out, socket, username);
+        requests.write(new SubscribePresence(username));
+        talker(socket, username, presence, requests);
         listener.interrupt();
 
       } else {
@@ -209,28 +306,53 @@ public class Client {
   }
 
   /**
-   * helper method that assist in receiving command from user
+   * helper method that assist in receiving command from user. Commands never read from the server
+   * themselves: each request is sent tagged and its answer is printed when the listener thread hands it
+   * over, so the next command does not wait for the last one. Insult targets are checked against the
+   * client's own copy of who is connected, so sending one does not wait on a user list from the server.
+   * Direct messages go to the server as they are, since it keeps them for users who are not connected
    *
-   * @param out given output stream
-   * @param in given input stream
    * @param socket the socket connecting the client and the server
    * @param username  the username of the user this client is talking to
-   * @throws IOException if input output stream or the socket is invalid
+   * @param presence who is connected, kept up to date by the listener thread
+   * @param requests the requests in flight, answered by the listener thread
+   * @throws IOException if output stream or the socket is invalid
    */
-  public static void talker(DataInputStream in, DataOutputStream out, Socket socket, String username) throws IOException {
+  public static void talker(Socket socket, String username, PresenceView presence, PendingRequests requests)
+      throws IOException {
     Scanner sc = new Scanner(System.in);
     String userNotFound = "user not found";
     System.out.println("type ? to see command menu");
     boolean running = true;
     while (running) {
       String command = sc.nextLine();
+      if (presence.claimResync()) {
+        requests.write(new SubscribePresence(username));
+      }
       if (command.equals("?")) {
         System.out.println(ErrorMessage.getMenu());
       } else if (command.equals("logoff")) {
-        disconnect(socket, username, out, in);
+        try {
+          printAnswer(awaitAnswer(requests.send(new DisconnectMessage(username))));
+        } finally {
+          socket.close();
+        }
         running = false;
       } else if (command.equals("who")) {
-        queryUser(out, in, username);
+        if (presence.isSynced() && !presence.isStale()) {
+          System.out.println(presence.getUsernames());
+        } else {
+          requests.send(new QueryUsers(username)).thenAccept(Client::printAnswer);
+        }
+      } else if (command.startsWith("who ") && command.length() > "who ".length()) {
+        String prefix = command.substring("who ".length());
+        requests.send(new DirectoryQuery(username, prefix, "", DIRECTORY_PAGE_SIZE))
+            .thenAccept(Client::printAnswer);
+      } else if (command.equals("history")) {
+        requests.send(new HistoryQuery(username, "", HISTORY_PAGE_SIZE, 0)).thenAccept(Client::printAnswer);
+      } else if (command.startsWith("history @") && command.length() > "history @".length()) {
+        requests.send(new HistoryQuery(username, command.substring("history @".length()), HISTORY_PAGE_SIZE, 0))
+            .thenAccept(Client::printAnswer);
       } else if (command.startsWith("@")) {
         String receiverName = command.split(" ")[0];
         String message = "";
@@ -239,32 +361,27 @@ public class Client {
         } else {
           message = command.substring(receiverName.length() + 1);
         }
-        List<String> users = queryUserQuiet(out, in, username);
         if (!receiverName.equals("@all")) {
-          boolean foundUser = false;
-          for (String user : users) {
-            if (receiverName.substring(1).equals(user)) {
-              sendMessage(receiverName.substring(1), out, message, username);
-              foundUser = true;
-            }
-          }
-          if (!foundUser) {
-            System.out.println(userNotFound);
-          }
+          requests.send(new DirectMessage(username, receiverName.substring(1), message))
+              .thenAccept(Client::printAnswer);
         } else {
-          broadCast(out, in, message, username);
+          requests.send(new BroadcastMessage(username, message)).thenAccept(Client::printAnswer);
         }
+      } else if (command.startsWith("join #") && command.length() > "join #".length()) {
+        requests.send(new JoinRoomMessage(username, command.substring("join #".length())))
+            .thenAccept(Client::printAnswer);
+      } else if (command.startsWith("leave #") && command.length() > "leave #".length()) {
+        requests.send(new LeaveRoomMessage(username, command.substring("leave #".length())))
+            .thenAccept(Client::printAnswer);
+      } else if (command.startsWith("#") && command.indexOf(' ') > 1) {
+        int space = command.indexOf(' ');
+        requests.send(new RoomMessage(username, command.substring(1, space), command.substring(space + 1)))
+            .thenAccept(Client::printAnswer);
       } else if (command.startsWith("!")) {
-        List<String> users = queryUserQuiet(out, in, username);
         String receiverName = command.substring(1);
-        boolean foundUser = false;
-        for (String user : users) {
-          if (receiverName.equals(user)) {
-            sendInsult(username, receiverName, out);
-            foundUser = true;
-          }
-        }
-        if (!foundUser) {
+        if (presence.contains(receiverName)) {
+          requests.send(new InsultMessage(username, receiverName)).thenAccept(Client::printAnswer);
+        } else {
           System.out.println(userNotFound);
         }
       } else {
@@ -274,6 +391,53 @@ public class Client {
     sc.close();
   }
 
+  /**
+   * Wait for the answer to a request the talker cannot go on without
+   *
+   * @param answer the future of the request
+   * @return the answer, or null if the connection cannot carry request ids
+   * @throws IOException if the connection was lost or the server did not answer in time
+   */
+  private static Message awaitAnswer(CompletableFuture<Message> answer) throws IOException {
+    try {
+      return answer.get(ANSWER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for the server", e);
+    } catch (ExecutionException | TimeoutException e) {
+      throw new IOException("No answer from the server", e);
+    }
+  }
+
+  /**
+   * Show the server's answer to a request. Empty FailedMessages only acknowledge a message that went
+   * through, so nothing is shown for them
+   *
+   * @param answer the answer, or null if the connection cannot carry request ids
+   */
+  static void printAnswer(Message answer) {
+    if (answer instanceof FailedMessage) {
+      String error = ((FailedMessage) answer).getErrorMessage();
+      if (!error.isEmpty()) {
+        System.out.println(error);
+      }
+    } else if (answer instanceof QueryResp) {
+      System.out.println(((QueryResp) answer).getUsernames());
+    } else if (answer instanceof DirectoryResp) {
+      DirectoryResp page = (DirectoryResp) answer;
+      System.out.println(page.getUsernames() + (page.hasMore() ? " and more" : ""));
+    } else if (answer instanceof HistoryResp) {
+      for (HistoryResp.Entry entry : ((HistoryResp) answer).getEntries()) {
+        System.out.println(entry.getMessage() + "; sender: " + entry.getSenderUsername()
+            + (entry.getRecipientUsername().isEmpty() ? " to all." : " to " + entry.getRecipientUsername()));
+      }
+    } else if (answer instanceof RoomResp) {
+      System.out.println(((RoomResp) answer).getMessage());
+    } else if (answer instanceof DisconnectResp) {
+      System.out.println(((DisconnectResp) answer).getMessage());
+    }
+  }
+
   /**
    * Helper method that assist another thread actively listening on message received by this client sent
    * by other users within the chatroom
@@ -282,18 +446,59 @@ public class Client {
    * @throws IOException if given input stream is invalid
    */
   public static void receiveMessage(DataInputStream in) throws IOException {
+    receiveMessage(in, new PresenceView(null));
+  }
+
+  /**
+   * Helper method that assist another thread actively listening on message received by this client sent
+   * by other users within the chatroom, and keeps the client's copy of who is connected up to date
+   *
+   * @param in given input stream
+   * @param presence who is connected, updated from presence messages
+   * @throws IOException if given input stream is invalid
+   */
+  public static void receiveMessage(DataInputStream in, PresenceView presence) throws IOException {
+    receiveMessage(in, presence, new PendingRequests(WireFormat.V1, null));
+  }
+
+  /**
+   * Read everything the server sends on the one thread reading the connection. Answers to tagged
+   * requests complete their futures, everything else is shown to the user or applied to the client's
+   * copy of who is connected. Once the connection is lost every pending request fails
+   *
+   * @param in given input stream
+   * @param presence who is connected, updated from presence messages
+   * @param requests the requests in flight on this connection
+   */
+  public static void receiveMessage(DataInputStream in, PresenceView presence, PendingRequests requests) {
     try {
       while (true) {
-        Message message = Message.receive(in);
+        Message message = requests.getFormat().read(in);
+        if (requests.complete(message)) {
+          continue;
+        }
         if (message instanceof BroadcastMessage) {
           BroadcastMessage broadcast = (BroadcastMessage) message;
           System.out.println(broadcast.getMessage() + "; sender: " + broadcast.getSenderUsername() + "to all.");
         } else if (message instanceof DirectMessage) {
           DirectMessage directMessage = (DirectMessage) message;
           System.out.println(directMessage.getMessage() + "; sender: " + directMessage.getSenderUsername());
+        } else if (message instanceof RoomMessage) {
+          RoomMessage roomMessage = (RoomMessage) message;
+          System.out.println(roomMessage.getMessage() + "; sender: " + roomMessage.getSenderUsername()
+              + " in #" + roomMessage.getRoomName());
+        } else if (message instanceof PresenceSync) {
+          presence.apply((PresenceSync) message);
+        } else if (message instanceof PresenceDelta) {
+          presence.apply((PresenceDelta) message);
+        } else if (message instanceof PingMessage) {
+          requests.write(new PongMessage(((PingMessage) message).getTimestamp()));
+        } else {
+          printAnswer(message);
         }
       }
-    } catch (IOException ignored) {
+    } catch (IOException e) {
+      requests.failAll(e);
     }
   }
 
@@ -3,19 +3,68 @@ import java.net.DatagramSocket;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import messageModel.FailedMessage;
 import messageModel.Message;
+import messageModel.PooledFrame;
+import messageModel.WireFormat;
+import protocol.Protocol;
 
 /**
  * Represents a ClientThread object that receives direct or group messages from other users and transfer
  * the messages to the user client to show to the user
  */
 public class ClientThread implements Runnable {
+  private static final int MAX_BATCH = 256;
+  private static final int BATCH_BUFFER_SIZE = 8 * 1024;
+  /**
+   * A backlog is asked for more once the queue is down to this many messages
+   */
+  private static final int BACKLOG_LOW_WATER = MAX_BATCH;
+
+  /**
+   * Queued after the last message to tell the writer to close the connection
+   */
+  static final Message CLOSE_SIGNAL = new Message() {
+    @Override
+    public void send(DataOutputStream out) {
+    }
+  };
+
   private DataOutputStream outStream;
   private String userName;
-  private BlockingQueue<Message> messageLine;
+  private PriorityMailbox messageLine;
+  private Closeable connection;
+  private QueueLimits limits;
+  private volatile boolean closing;
+  private volatile boolean evicted;
+  private volatile boolean detached;
+  private volatile ResumableSession session;
+  private volatile long lastReadNanos = System.nanoTime();
+  private final AtomicReference<HashedTimerWheel.Timeout> timeout = new AtomicReference<>();
+  private volatile WireFormat wireFormat = WireFormat.V1;
+  private volatile boolean presenceSubscribed;
+  private final AtomicBoolean closeQueued = new AtomicBoolean();
+  private final AtomicReference<BooleanSupplier> backlog = new AtomicReference<>();
+  private final AtomicBoolean refilling = new AtomicBoolean();
+  private final AtomicInteger queuedMessages = new AtomicInteger();
+  private final AtomicLong queuedBytes = new AtomicLong();
+  private final AtomicLong droppedMessages = new AtomicLong();
+  private final AtomicLong rateLimitedMessages = new AtomicLong();
+  private volatile RateLimits rateLimits = RateLimits.UNLIMITED;
+  private volatile TokenBucket[] rateBuckets = RateLimits.UNLIMITED.newBuckets();
+  private final Set<String> rooms = ConcurrentHashMap.newKeySet();
+  private final Object handOverLock = new Object();
+  private volatile ClientThread handedTo;
 
   /**
    * Construct a ClientThread object that receives direct or group messages from other users and transfer
@@ -25,10 +74,53 @@ public class ClientThread implements Runnable {
    * @param userName the username of the user receiving messages
    */
   public ClientThread(DataOutputStream outStream, String userName) {
+    this(outStream, userName, null);
+  }
+
+  /**
+   * Construct a ClientThread object that owns the connection to the user client, so the connection
+   * can be closed once every queued message has been written
+   *
+   * @param outStream the output stream to sent message to the user client
+   * @param userName the username of the user receiving messages
+   * @param connection the connection to close when this user is disconnected, may be null
+   */
+  public ClientThread(DataOutputStream outStream, String userName, Closeable connection) {
+    this(outStream, userName, connection, QueueLimits.UNBOUNDED);
+  }
+
+  /**
+   * Construct a ClientThread object whose outbound queue is bounded by the given limits
+   *
+   * @param outStream the output stream to sent message to the user client
+   * @param userName the username of the user receiving messages
+   * @param connection the connection to close when this user is disconnected, may be null
+   * @param limits the most this user's queue may hold and what to do when it is full
+   */
+  public ClientThread(DataOutputStream outStream, String userName, Closeable connection, QueueLimits limits) {
+    this(outStream, userName, connection, limits, WaitStrategy.BLOCK);
+  }
+
+  /**
+   * Construct a ClientThread object whose outbound queue is bounded by the given limits and whose writer
+   * waits for messages the given way. The queue is a PriorityMailbox whose lanes are ring buffers sized
+   * for the limits, with room for the twice-the-limits allowance of DROP_BROADCASTS, the eviction notice
+   * and the close signal
+   *
+   * @param outStream the output stream to sent message to the user client
+   * @param userName the username of the user receiving messages
+   * @param connection the connection to close when this user is disconnected, may be null
+   * @param limits the most this user's queue may hold and what to do when it is full
+   * @param waitStrategy how the writer waits while the queue is empty
+   */
+  public ClientThread(DataOutputStream outStream, String userName, Closeable connection, QueueLimits limits,
+      WaitStrategy waitStrategy) {
     this.outStream = outStream;
     this.userName = userName;
-    this.messageLine = new LinkedBlockingQueue<>() {
-    };
+    this.connection = connection;
+    this.limits = limits;
+    int capacity = (int) Math.min(MpscRingBuffer.MAX_CAPACITY, 2L * limits.getMaxMessages() + 2);
+    this.messageLine = new PriorityMailbox(capacity, LaneWeights.DEFAULT, waitStrategy);
   }
 
   /**
@@ -40,27 +132,531 @@ public class ClientThread implements Runnable {
   }
 
   /**
-   * start the thread to send received message to the user client
+   *
+   * @return names of the rooms the user is in, kept up to date by the server's RoomIndex
+   */
+  Set<String> getRooms() {
+    return this.rooms;
+  }
+
+  /**
+   *
+   * @return the username of the user receiving messages
+   */
+  public String getUsername() {
+    return this.userName;
+  }
+
+  /**
+   * Set the username once the user finished the connect handshake
+   *
+   * @param userName the username of the user receiving messages
+   */
+  void setUserName(String userName) {
+    this.userName = userName;
+  }
+
+  /**
+   * start the thread to send received message to the user client. The thread waits on the queue while
+   * there is nothing to send, as its wait strategy says. Once woken it takes everything queued so far
+   * into one buffered write, so a burst of messages costs a single flush. The close signal may be taken
+   * ahead of replies queued before it in the control lane, so once it is seen the thread keeps writing
+   * until the queue is empty. If a write fails the connection is only closed, the server notices it is
+   * gone and decides whether the user's messages keep queuing for a resumed session
    */
   public void run() {
-    while (true) {
-      if (this.messageLine.size() > 0) {
-        try {
-          this.messageLine.remove().send(outStream);
-        } catch (IOException e) {
-          throw new RuntimeException(e);
+    List<Message> batch = new ArrayList<>(MAX_BATCH);
+    BufferedOutputStream buffered = new BufferedOutputStream(outStream, BATCH_BUFFER_SIZE);
+    DataOutputStream batchOut = new DataOutputStream(new FlushOnDemandOutputStream(buffered));
+    boolean lost = false;
+    try {
+      boolean closeRequested = false;
+      while (!closeRequested || !this.messageLine.isEmpty()) {
+        this.messageLine.awaitNotEmpty();
+        takeBatch(batch, MAX_BATCH);
+        int written = 0;
+        for (Message message : batch) {
+          if (message == CLOSE_SIGNAL) {
+            closeRequested = true;
+            continue;
+          }
+          wireFormat.write(message, batchOut);
+          onDelivered(message.getEncodedSize());
+          release(message);
+          written++;
+        }
+        batch.clear();
+        if (written > 0) {
+          buffered.flush();
         }
       }
+    } catch (IOException e) {
+      lost = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      if (lost) {
+        closeSocket();
+      } else {
+        closeConnection();
+      }
     }
   }
 
   /**
-   * Receive message from chat server to be prepared to send to user client
+   * Receive message from chat server to be prepared to send to user client. If the queue is over its
+   * limits the slow consumer policy decides what gets dropped. Messages arriving after the user started
+   * disconnecting are dropped, unless the connection was lost and the session may still be resumed
    *
    * @param message message received from chat server
    */
   public void receiveMessage(Message message) {
-    this.messageLine.add(message);
+    if (this.closing && (!this.detached || this.evicted)) {
+      if (this.evicted) {
+        abort();
+      }
+      release(message);
+      return;
+    }
+    int size = message.getEncodedSize();
+    if (!admit(message, size)) {
+      this.droppedMessages.incrementAndGet();
+      release(message);
+      return;
+    }
+    this.queuedMessages.incrementAndGet();
+    this.queuedBytes.addAndGet(size);
+    if (!this.messageLine.offer(message)) {
+      this.queuedMessages.decrementAndGet();
+      this.queuedBytes.addAndGet(-size);
+      this.droppedMessages.incrementAndGet();
+      release(message);
+      return;
+    }
+    ClientThread next = this.handedTo;
+    if (next != null) {
+      handQueuedTo(next);
+    }
+  }
+
+  /**
+   * Record that a queued message has been handed to the connection
+   *
+   * @param size the encoded size of the message
+   */
+  protected void onDelivered(int size) {
+    this.queuedMessages.decrementAndGet();
+    this.queuedBytes.addAndGet(-size);
+    if (this.backlog.get() != null && this.queuedMessages.get() <= BACKLOG_LOW_WATER) {
+      refillFromBacklog();
+    }
+  }
+
+  /**
+   * Count a message about to be written in the user's session. If the session was resumed on another
+   * connection in the meantime the message is handed to that connection instead
+   *
+   * @param message the message taken from the queue
+   * @return true if this connection should write the message
+   */
+  private boolean recordSent(Message message) {
+    ResumableSession current = this.session;
+    if (current == null || current.record(this, message)) {
+      return true;
+    }
+    current.getOwner().receiveMessage(message);
+    return false;
+  }
+
+  /**
+   * Take up to a batch of queued messages and count them in the user's session, leaving out any the
+   * session handed to the connection that resumed it. Taking and counting happen under the lock a
+   * resuming connection takes the queue over with, so each message is either counted here, and written
+   * again from the session if the client missed it, or handed over in queue order, never both or out of
+   * order
+   *
+   * @param batch an empty list to add the messages to write to, oldest first
+   * @param max the most messages to take
+   */
+  protected void takeBatch(List<Message> batch, int max) {
+    synchronized (this.handOverLock) {
+      this.messageLine.drainTo(batch, max);
+      int kept = 0;
+      for (Message message : batch) {
+        if (message == CLOSE_SIGNAL || recordSent(message)) {
+          batch.set(kept++, message);
+        } else {
+          onDelivered(message.getEncodedSize());
+        }
+      }
+      batch.subList(kept, batch.size()).clear();
+    }
+  }
+
+  /**
+   * Hand every message still queued to a connection resuming this one's session, in order. A message
+   * queued here by a sender that looked this connection up just before the hand-over is passed on by the
+   * sender itself once queued, so it still reaches the new connection ahead of that sender's later
+   * messages
+   *
+   * @param next delivering messages to the user from now on
+   */
+  void handQueuedTo(ClientThread next) {
+    List<Message> taken = new ArrayList<>();
+    synchronized (this.handOverLock) {
+      this.handedTo = next;
+      this.messageLine.drainTo(taken);
+      for (Message message : taken) {
+        if (message != CLOSE_SIGNAL) {
+          onDelivered(message.getEncodedSize());
+          next.receiveMessage(message);
+        }
+      }
+    }
+  }
+
+  /**
+   * Set where more messages come from once the queue drains, such as the messages that waited for the
+   * user while they were away. The backlog is asked for more on whichever thread delivers the message
+   * that takes the queue low, and is dropped once it says nothing is left
+   *
+   * @param backlog queues the next messages itself and returns true while more are left
+   */
+  void setBacklog(BooleanSupplier backlog) {
+    this.backlog.set(backlog);
+    if (this.queuedMessages.get() <= BACKLOG_LOW_WATER) {
+      refillFromBacklog();
+    }
+  }
+
+  /**
+   * Ask the backlog for more, on one thread at a time
+   */
+  private void refillFromBacklog() {
+    if (!this.refilling.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      BooleanSupplier current = this.backlog.get();
+      if (current != null && !current.getAsBoolean()) {
+        this.backlog.compareAndSet(current, null);
+      }
+    } finally {
+      this.refilling.set(false);
+    }
+  }
+
+  /**
+   * Decide whether a new message may be queued, applying the slow consumer policy if it does not fit
+   *
+   * @param message the new message
+   * @param size the encoded size of the new message
+   * @return true if the message should be queued
+   */
+  private boolean admit(Message message, int size) {
+    if (this.limits.fits(this.queuedMessages.get() + 1L, this.queuedBytes.get() + size, 1)) {
+      return true;
+    }
+    switch (this.limits.getPolicy()) {
+      case DROP_OLDEST:
+        while (!this.limits.fits(this.queuedMessages.get() + 1L, this.queuedBytes.get() + size, 1)) {
+          Message oldest = this.messageLine.poll(Lane.BULK);
+          if (oldest == null) {
+            oldest = this.messageLine.poll(Lane.CONTROL);
+          }
+          if (oldest == null || oldest == CLOSE_SIGNAL) {
+            break;
+          }
+          onDelivered(oldest.getEncodedSize());
+          this.droppedMessages.incrementAndGet();
+          release(oldest);
+        }
+        return true;
+      case DROP_BROADCASTS:
+        if (message.getMessageType() == Protocol.BROADCAST_MESSAGE
+            || message.getMessageType() == Protocol.ROOM_MESSAGE) {
+          return false;
+        }
+        if (this.limits.fits(this.queuedMessages.get() + 1L, this.queuedBytes.get() + size, 2)) {
+          return true;
+        }
+        disconnectSlowConsumer();
+        return false;
+      default:
+        disconnectSlowConsumer();
+        return false;
+    }
+  }
+
+  /**
+   * Throw away what is queued and tell the user they are being disconnected for not keeping up
+   */
+  private void disconnectSlowConsumer() {
+    this.evicted = true;
+    Message dropped;
+    while ((dropped = this.messageLine.poll()) != null) {
+      onDelivered(dropped.getEncodedSize());
+      this.droppedMessages.incrementAndGet();
+      release(dropped);
+    }
+    FailedMessage notice = new FailedMessage("Disconnected: too many undelivered messages.");
+    this.queuedMessages.incrementAndGet();
+    this.queuedBytes.addAndGet(notice.getEncodedSize());
+    this.messageLine.add(notice);
+    closeAfterFlush();
+  }
+
+  /**
+   * Give a message that has been written or dropped back to its pool, if it was borrowed from one
+   *
+   * @param message the message
+   */
+  protected static void release(Message message) {
+    if (message instanceof PooledFrame) {
+      ((PooledFrame) message).release();
+    }
+  }
+
+  /**
+   * Close the connection to the user client once every message already queued has been written
+   */
+  public void closeAfterFlush() {
+    this.closing = true;
+    if (this.closeQueued.compareAndSet(false, true)) {
+      this.messageLine.add(CLOSE_SIGNAL);
+    }
+  }
+
+  /**
+   * Close the connection but keep queuing the user's messages, so a connection resuming the session can
+   * take them over
+   */
+  void detach() {
+    this.detached = true;
+    abort();
+  }
+
+  /**
+   *
+   * @return true if the connection was lost or taken over but the session may still be resumed
+   */
+  boolean isDetached() {
+    return this.detached;
+  }
+
+  /**
+   *
+   * @return true if the user was disconnected for not keeping up with their messages
+   */
+  boolean isEvicted() {
+    return this.evicted;
+  }
+
+  /**
+   * Record that something arrived from the user client, which shows the connection is alive
+   */
+  void markRead() {
+    this.lastReadNanos = System.nanoTime();
+  }
+
+  /**
+   *
+   * @return the System.nanoTime() when something last arrived from the user client
+   */
+  long getLastReadNanos() {
+    return this.lastReadNanos;
+  }
+
+  /**
+   * Set the one timeout pending for this connection, such as its next liveness check or handshake
+   * deadline, cancelling the one it replaces
+   *
+   * @param next the new timeout, or null to only cancel the current one
+   */
+  void replaceTimeout(HashedTimerWheel.Timeout next) {
+    HashedTimerWheel.Timeout previous = this.timeout.getAndSet(next);
+    if (previous != null && previous != next) {
+      previous.cancel();
+    }
+  }
+
+  /**
+   * Set how fast the user may send each category of message, starting from full buckets
+   *
+   * @param rateLimits the limits
+   */
+  void setRateLimits(RateLimits rateLimits) {
+    this.rateBuckets = rateLimits.newBuckets();
+    this.rateLimits = rateLimits;
+  }
+
+  /**
+   *
+   * @return how fast the user may send each category of message
+   */
+  public RateLimits getRateLimits() {
+    return this.rateLimits;
+  }
+
+  /**
+   * Charge one message to the user's budget for its category
+   *
+   * @param category the category of the message
+   * @return true if the budget allows the message, false if it should be rejected
+   */
+  boolean tryAcquire(RateCategory category) {
+    TokenBucket bucket = this.rateBuckets[category.ordinal()];
+    return bucket == null || bucket.tryAcquire();
+  }
+
+  /**
+   * Set how the writer shares each batch between replies in the control lane and chat traffic in the
+   * bulk lane
+   *
+   * @param laneWeights the weights
+   */
+  void setLaneWeights(LaneWeights laneWeights) {
+    this.messageLine.setWeights(laneWeights);
+  }
+
+  /**
+   *
+   * @return how the writer shares each batch between the control and bulk lanes
+   */
+  public LaneWeights getLaneWeights() {
+    return this.messageLine.getWeights();
+  }
+
+  /**
+   * Count one message rejected for going over the user's rate limits
+   */
+  void countRateLimited() {
+    this.rateLimitedMessages.incrementAndGet();
+  }
+
+  /**
+   *
+   * @return the number of messages from the user rejected for going over their rate limits
+   */
+  public long getRateLimitedMessages() {
+    return this.rateLimitedMessages.get();
+  }
+
+  /**
+   *
+   * @return the session the user may resume on a new connection, or null
+   */
+  ResumableSession getSession() {
+    return this.session;
+  }
+
+  /**
+   * Set the session the user may resume on a new connection, before any message is written
+   *
+   * @param session the session
+   */
+  void setSession(ResumableSession session) {
+    this.session = session;
+  }
+
+  /**
+   *
+   * @return true if this user is being disconnected
+   */
+  public boolean isClosing() {
+    return this.closing;
+  }
+
+  /**
+   * Close the connection to the user client right away
+   */
+  protected void closeConnection() {
+    closeSocket();
+    closeAfterFlush();
+  }
+
+  /**
+   * Close the connection to the user client without starting to disconnect the user
+   */
+  private void closeSocket() {
+    if (this.connection != null) {
+      try {
+        this.connection.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  /**
+   *
+   * @return the framing used for messages after the connect handshake
+   */
+  public WireFormat getWireFormat() {
+    return this.wireFormat;
+  }
+
+  /**
+   * Set the framing negotiated in the connect handshake, before any later message is queued
+   *
+   * @param wireFormat the negotiated framing
+   */
+  void setWireFormat(WireFormat wireFormat) {
+    this.wireFormat = wireFormat;
+  }
+
+  /**
+   *
+   * @return true if the user asked to be pushed every user joining or leaving
+   */
+  boolean isPresenceSubscribed() {
+    return this.presenceSubscribed;
+  }
+
+  /**
+   * Start pushing every user joining or leaving to this user
+   */
+  void subscribePresence() {
+    this.presenceSubscribed = true;
+  }
+
+  /**
+   *
+   * @return the number of messages queued and not yet handed to the connection
+   */
+  public int getQueueDepth() {
+    return this.queuedMessages.get();
+  }
+
+  /**
+   *
+   * @return the encoded bytes queued and not yet handed to the connection
+   */
+  public long getQueuedBytes() {
+    return this.queuedBytes.get();
+  }
+
+  /**
+   *
+   * @return the number of messages dropped by the slow consumer policy
+   */
+  public long getDroppedMessages() {
+    return this.droppedMessages.get();
+  }
+
+  /**
+   *
+   * @return the most this user's queue may hold and what to do when it is full
+   */
+  public QueueLimits getLimits() {
+    return this.limits;
+  }
+
+  /**
+   * Close the connection without waiting for queued messages, used when a user evicted as a slow
+   * consumer keeps receiving traffic and has not taken the goodbye message
+   */
+  protected void abort() {
+    closeConnection();
   }
 
   /**
@@ -112,4 +708,33 @@ public class ClientThread implements Runnable {
     return a &&
         b;
   }
+
+  /**
+   * Passes writes through but ignores the flush every Message.send ends with, so the writer decides
+   * when a batch goes out
+   */
+  private static class FlushOnDemandOutputStream extends FilterOutputStream {
+
+    /**
+     * @param out the stream to write through to
+     */
+    FlushOnDemandOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    /**
+     * Ignored, the writer flushes once per batch
+     */
+    @Override
+    public void flush() {
+    }
+  }
 }
@@ -10,9 +10,15 @@ public class ErrorMessage {
       + " ? : show the command menu\n"
       + " logoff : disconnect from the server\n"
       + " who : show other connected users in the server\n"
+      + " who prefix : show connected users whose names start with the prefix\n"
       + " @user + message : sends a message directly to the given user\n"
       + " @all + message: sends a message to all connected users in the server\n"
-      + " !user : sends a random insult message directly to the given user\n";
+      + " !user : sends a random insult message directly to the given user\n"
+      + " join #room : joins the given room, creating it if needed\n"
+      + " leave #room : leaves the given room\n"
+      + " #room + message : sends a message to the other members of the given room\n"
+      + " history : shows the last messages sent to all users\n"
+      + " history @user : shows the last direct messages between you and the given user\n";
   private final static String error = "Invalid command, please use one of the following commands: \n";
 
   /**
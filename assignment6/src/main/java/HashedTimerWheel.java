@@ -0,0 +1,363 @@
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents one timer shared by every connection, for heartbeats, idle eviction, handshake deadlines and
+ * expiry sweeps. Time is cut into ticks and the ticks are laid out on a wheel of buckets, each bucket a
+ * doubly linked list of the timeouts due in that slot, with a count of how many more turns of the wheel
+ * they wait. Scheduling and cancelling are O(1) whatever the number of timeouts, and the timer thread
+ * only visits one bucket per tick, so a hundred thousand idle connections cost next to nothing.
+ * <p>
+ * Any thread may schedule or cancel. New and cancelled timeouts are handed to the timer thread through
+ * lock-free queues and moved into or out of the wheel on the next tick. A timeout fires up to one tick
+ * late, never early. Tasks run on the timer thread, so they should only hand work to whichever thread
+ * owns it. The thread is started by the first schedule, so an unused timer costs no thread
+ */
+public class HashedTimerWheel implements Closeable {
+  public static final long DEFAULT_TICK_MILLIS = 100;
+  public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+  /**
+   * States of the timer, INIT is also the state of a timeout that has neither fired nor been cancelled
+   */
+  private static final int INIT = 0;
+  private static final int STARTED = 1;
+  private static final int STOPPED = 2;
+  /**
+   * States of a timeout
+   */
+  private static final int EXPIRED = 1;
+  private static final int CANCELLED = 2;
+  private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+  private final String name;
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+  private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger state = new AtomicInteger(INIT);
+  private final AtomicLong pending = new AtomicLong();
+  private volatile long startTime;
+  private volatile Thread worker;
+  private long tick;
+
+  /**
+   * Construct a timer with the default tick and wheel size
+   *
+   * @param name the name of the timer thread
+   */
+  public HashedTimerWheel(String name) {
+    this(name, DEFAULT_TICK_MILLIS, DEFAULT_TICKS_PER_WHEEL);
+  }
+
+  /**
+   * Construct a timer
+   *
+   * @param name the name of the timer thread
+   * @param tickMillis how long one tick lasts, the precision of the timer
+   * @param ticksPerWheel how many buckets the wheel has, rounded up to a power of two
+   */
+  public HashedTimerWheel(String name, long tickMillis, int ticksPerWheel) {
+    if (tickMillis < 1 || ticksPerWheel < 1 || ticksPerWheel > 1 << 30) {
+      throw new IllegalArgumentException("tickMillis and ticksPerWheel must be positive");
+    }
+    int size = Integer.highestOneBit(ticksPerWheel);
+    if (size < ticksPerWheel) {
+      size <<= 1;
+    }
+    this.name = name;
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+  }
+
+  /**
+   * Run a task once after a delay
+   *
+   * @param task the task, run on the timer thread
+   * @param delay how long to wait
+   * @param unit the unit of the delay
+   * @return the timeout, which can be cancelled until it fires
+   * @throws IllegalStateException if the timer was closed
+   */
+  public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+    start();
+    long deadline = System.nanoTime() + Math.max(0, unit.toNanos(delay)) - startTime;
+    Timeout timeout = new Timeout(this, task, deadline);
+    pending.incrementAndGet();
+    added.add(timeout);
+    return timeout;
+  }
+
+  /**
+   * Start the timer thread unless it is running already
+   */
+  private void start() {
+    switch (state.get()) {
+      case INIT:
+        synchronized (this) {
+          if (state.get() == INIT) {
+            startTime = System.nanoTime();
+            Thread thread = new Thread(this::run, name);
+            thread.setDaemon(true);
+            worker = thread;
+            state.set(STARTED);
+            thread.start();
+          }
+        }
+        break;
+      case STARTED:
+        break;
+      default:
+        throw new IllegalStateException("Timer is closed");
+    }
+  }
+
+  /**
+   * Turn the wheel one bucket per tick until closed
+   */
+  private void run() {
+    while (state.get() == STARTED) {
+      long now = waitForNextTick();
+      if (now < 0) {
+        break;
+      }
+      removeCancelled();
+      transferAdded();
+      wheel[(int) (tick & mask)].expire(now);
+      tick++;
+    }
+  }
+
+  /**
+   * @return the time since the timer started, in nanoseconds, once the next tick is due, or -1 if the
+   *         timer was closed while waiting
+   */
+  private long waitForNextTick() {
+    long deadline = tickNanos * (tick + 1);
+    while (true) {
+      long now = System.nanoTime() - startTime;
+      long sleepMillis = (deadline - now + 999_999) / 1_000_000;
+      if (sleepMillis <= 0) {
+        return now;
+      }
+      try {
+        Thread.sleep(sleepMillis);
+      } catch (InterruptedException e) {
+        if (state.get() == STOPPED) {
+          return -1;
+        }
+      }
+    }
+  }
+
+  /**
+   * Move the timeouts scheduled since the last tick into their buckets. A timeout already past its
+   * deadline goes into the current bucket and fires on this tick
+   */
+  private void transferAdded() {
+    for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+      Timeout timeout = added.poll();
+      if (timeout == null) {
+        return;
+      }
+      if (timeout.state.get() != INIT) {
+        pending.decrementAndGet();
+        continue;
+      }
+      long due = timeout.deadline / tickNanos;
+      timeout.remainingRounds = (due - tick) / wheel.length;
+      wheel[(int) (Math.max(due, tick) & mask)].add(timeout);
+    }
+  }
+
+  /**
+   * Take the timeouts cancelled since the last tick out of their buckets
+   */
+  private void removeCancelled() {
+    Timeout timeout;
+    while ((timeout = cancelled.poll()) != null) {
+      if (timeout.bucket != null) {
+        timeout.bucket.remove(timeout);
+      }
+    }
+  }
+
+  /**
+   *
+   * @return how many timeouts are scheduled and have neither fired nor been taken out after cancelling
+   */
+  public long getPendingCount() {
+    return pending.get();
+  }
+
+  /**
+   *
+   * @return how long one tick lasts, in milliseconds
+   */
+  public long getTickMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+  }
+
+  /**
+   * Stop the timer thread, timeouts that have not fired yet never will
+   */
+  @Override
+  public void close() {
+    if (state.getAndSet(STOPPED) == STARTED) {
+      worker.interrupt();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "HashedTimerWheel{name:" + name + ", tickMillis:" + getTickMillis() + ", buckets:" + wheel.length
+        + ", pending:" + pending.get() + "}";
+  }
+
+  /**
+   * Represents a scheduled task, which can be cancelled until it fires
+   */
+  public static final class Timeout {
+    private final HashedTimerWheel timer;
+    private final Runnable task;
+    private final long deadline;
+    private final AtomicInteger state = new AtomicInteger(INIT);
+    private long remainingRounds;
+    private Bucket bucket;
+    private Timeout previous;
+    private Timeout next;
+
+    /**
+     * @param timer the timer the task is scheduled on
+     * @param task the task
+     * @param deadline when the task is due, in nanoseconds since the timer started
+     */
+    private Timeout(HashedTimerWheel timer, Runnable task, long deadline) {
+      this.timer = timer;
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * Make sure the task does not run
+     *
+     * @return false if it already ran or was cancelled before
+     */
+    public boolean cancel() {
+      if (!state.compareAndSet(INIT, CANCELLED)) {
+        return false;
+      }
+      timer.cancelled.add(this);
+      return true;
+    }
+
+    /**
+     *
+     * @return true if the task was cancelled before it ran
+     */
+    public boolean isCancelled() {
+      return state.get() == CANCELLED;
+    }
+
+    /**
+     *
+     * @return true if the task ran
+     */
+    public boolean isExpired() {
+      return state.get() == EXPIRED;
+    }
+
+    /**
+     * Run the task unless it was cancelled, on the timer thread. A task that throws does not stop the
+     * timer
+     */
+    private void expire() {
+      if (!state.compareAndSet(INIT, EXPIRED)) {
+        return;
+      }
+      try {
+        task.run();
+      } catch (RuntimeException ignored) {
+      }
+    }
+  }
+
+  /**
+   * Represents the timeouts due in one slot of the wheel, only touched by the timer thread
+   */
+  private final class Bucket {
+    private Timeout head;
+    private Timeout tail;
+
+    /**
+     * @param timeout the timeout to add at the end
+     */
+    private void add(Timeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = timeout;
+        tail = timeout;
+      } else {
+        tail.next = timeout;
+        timeout.previous = tail;
+        tail = timeout;
+      }
+    }
+
+    /**
+     * Fire every timeout in this bucket whose last round has come, and count one more round gone for
+     * the rest
+     *
+     * @param now the current time in nanoseconds since the timer started
+     */
+    private void expire(long now) {
+      Timeout timeout = head;
+      while (timeout != null) {
+        Timeout next = timeout.next;
+        if (timeout.isCancelled()) {
+          remove(timeout);
+        } else if (timeout.remainingRounds <= 0 && timeout.deadline <= now) {
+          remove(timeout);
+          timeout.expire();
+        } else {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+    }
+
+    /**
+     * Unlink a timeout in O(1)
+     *
+     * @param timeout a timeout in this bucket
+     */
+    private void remove(Timeout timeout) {
+      if (timeout.previous != null) {
+        timeout.previous.next = timeout.next;
+      } else {
+        head = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.previous = timeout.previous;
+      } else {
+        tail = timeout.previous;
+      }
+      timeout.previous = null;
+      timeout.next = null;
+      timeout.bucket = null;
+      pending.decrementAndGet();
+    }
+  }
+}
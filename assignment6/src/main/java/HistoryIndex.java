@@ -0,0 +1,278 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents an on-disk index from each conversation to where its messages sit in a
+ * {@link MessageJournal}. Every conversation has its own file of fixed-size entries, a journal sequence
+ * number and the record's offset in its segment, in sequence order, so the messages before any
+ * sequence number are found with a binary search and read straight from the journal without scanning.
+ * A checkpoint file remembers the last sequence number indexed. Entries are only added by one thread,
+ * lookups may run on any thread
+ */
+public class HistoryIndex implements Closeable {
+  static final int ENTRY_SIZE = 12;
+  private static final int MAX_OPEN_FILES = 256;
+  private static final String INDEX_SUFFIX = ".idx";
+  private static final String CHECKPOINT_FILE = "checkpoint";
+
+  private final Path directory;
+  private final Map<String, IndexFile> open;
+  private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+  private volatile long checkpoint;
+
+  /**
+   * Open the index in the given directory, creating it if needed
+   *
+   * @param directory the directory holding the index files
+   * @throws IOException if the directory or the checkpoint cannot be read
+   */
+  public HistoryIndex(Path directory) throws IOException {
+    this.directory = directory;
+    this.open = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, IndexFile> eldest) {
+        if (size() > MAX_OPEN_FILES) {
+          eldest.getValue().close();
+          return true;
+        }
+        return false;
+      }
+    };
+    Files.createDirectories(directory);
+    Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+    if (Files.exists(checkpointFile)) {
+      this.checkpoint = ByteBuffer.wrap(Files.readAllBytes(checkpointFile)).getLong();
+    }
+  }
+
+  /**
+   * Add a message to a conversation's index. A sequence number the file already covers is skipped, so
+   * records indexed again after a restart are not listed twice
+   *
+   * @param conversation the conversation the message belongs to
+   * @param sequence the journal sequence number of the message
+   * @param offset where the record starts in its segment
+   * @throws IOException if the index file cannot be written
+   */
+  public void add(String conversation, long sequence, int offset) throws IOException {
+    IndexFile file = open.get(conversation);
+    if (file == null) {
+      file = new IndexFile(FileChannel.open(path(conversation), StandardOpenOption.CREATE,
+          StandardOpenOption.READ, StandardOpenOption.WRITE));
+      open.put(conversation, file);
+    }
+    if (sequence <= file.lastSequence) {
+      return;
+    }
+    entry.clear();
+    entry.putLong(sequence).putInt(offset).flip();
+    file.channel.write(entry, file.channel.size());
+    file.lastSequence = sequence;
+    file.dirty = true;
+  }
+
+  /**
+   * Force every index file written since the last checkpoint and record that everything up to the
+   * given sequence number is indexed
+   *
+   * @param sequence the last journal sequence number indexed
+   * @throws IOException if a file cannot be written
+   */
+  public void checkpoint(long sequence) throws IOException {
+    for (IndexFile file : open.values()) {
+      if (file.dirty) {
+        file.channel.force(false);
+        file.dirty = false;
+      }
+    }
+    Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+    Files.write(temporary, ByteBuffer.allocate(Long.BYTES).putLong(sequence).array());
+    Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    checkpoint = sequence;
+  }
+
+  /**
+   * Find the newest messages of a conversation before a sequence number
+   *
+   * @param conversation the conversation
+   * @param beforeSequence only messages with a lower sequence number are returned
+   * @param count the most messages to return
+   * @return the sequence number and offset of each message, oldest first
+   * @throws IOException if the index file cannot be read
+   */
+  public List<Position> find(String conversation, long beforeSequence, int count) throws IOException {
+    List<Position> found = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(path(conversation), StandardOpenOption.READ)) {
+      long entries = channel.size() / ENTRY_SIZE;
+      ByteBuffer probe = ByteBuffer.allocate(ENTRY_SIZE);
+      long low = 0;
+      long high = entries;
+      while (low < high) {
+        long middle = (low + high) >>> 1;
+        probe.clear();
+        readFully(channel, probe, middle * ENTRY_SIZE);
+        if (probe.getLong(0) < beforeSequence) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      long first = Math.max(0, low - count);
+      ByteBuffer page = ByteBuffer.allocate((int) (low - first) * ENTRY_SIZE);
+      readFully(channel, page, first * ENTRY_SIZE);
+      page.flip();
+      while (page.remaining() >= ENTRY_SIZE) {
+        found.add(new Position(page.getLong(), page.getInt()));
+      }
+    } catch (NoSuchFileException e) {
+      return found;
+    }
+    return found;
+  }
+
+  /**
+   * @param channel the file to read
+   * @param target filled completely
+   * @param position where to start reading
+   * @throws IOException if the file ends first
+   */
+  private static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+    while (target.hasRemaining()) {
+      int read = channel.read(target, position);
+      if (read < 0) {
+        throw new IOException("Index file ends early");
+      }
+      position += read;
+    }
+  }
+
+  /**
+   * Name each conversation's file after a hash of the conversation, since usernames may hold characters
+   * a file name cannot. Whoever reads the messages back checks they belong to the conversation
+   *
+   * @param conversation the conversation
+   * @return the path of its index file
+   */
+  private Path path(String conversation) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(conversation.getBytes(StandardCharsets.UTF_8));
+      return directory.resolve(Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + INDEX_SUFFIX);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is always available", e);
+    }
+  }
+
+  /**
+   *
+   * @return the last journal sequence number known to be indexed
+   */
+  public long getCheckpoint() {
+    return checkpoint;
+  }
+
+  /**
+   * Close every open index file, forcing the ones written since the last checkpoint
+   */
+  @Override
+  public void close() {
+    for (IndexFile file : open.values()) {
+      file.close();
+    }
+    open.clear();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "HistoryIndex{directory:" + directory + ", checkpoint:" + checkpoint + ", openFiles:" + open.size()
+        + "}";
+  }
+
+  /**
+   * Represents where one message of a conversation sits in the journal
+   */
+  public static class Position {
+    private final long sequence;
+    private final int offset;
+
+    /**
+     * @param sequence the journal sequence number of the message
+     * @param offset where the record starts in its segment
+     */
+    Position(long sequence, int offset) {
+      this.sequence = sequence;
+      this.offset = offset;
+    }
+
+    /**
+     *
+     * @return the journal sequence number of the message
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    /**
+     *
+     * @return where the record starts in its segment
+     */
+    public int getOffset() {
+      return offset;
+    }
+  }
+
+  /**
+   * Represents an index file open for appending
+   */
+  private static final class IndexFile {
+    private final FileChannel channel;
+    private long lastSequence;
+    private boolean dirty;
+
+    /**
+     * @param channel the open file, whose last entry is read to skip entries it already has
+     * @throws IOException if the last entry cannot be read
+     */
+    private IndexFile(FileChannel channel) throws IOException {
+      this.channel = channel;
+      long size = channel.size() - channel.size() % ENTRY_SIZE;
+      if (size > 0) {
+        ByteBuffer last = ByteBuffer.allocate(Long.BYTES);
+        readFully(channel, last, size - ENTRY_SIZE);
+        this.lastSequence = last.getLong(0);
+      }
+      channel.truncate(size);
+    }
+
+    /**
+     * Close the file, forcing it first if it has unforced entries
+     */
+    private void close() {
+      try {
+        if (dirty) {
+          channel.force(false);
+        }
+        channel.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+}
@@ -0,0 +1,93 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import messageModel.Message;
+import messageModel.WireFormat;
+
+/**
+ * Represents one record read back from a {@link MessageJournal}: the frame of a routed message as it
+ * travelled on the wire, with its sequence number and the time it was journaled
+ */
+public class JournalEntry {
+  private final long sequence;
+  private final int offset;
+  private final long timestamp;
+  private final WireFormat format;
+  private final byte[] frame;
+
+  /**
+   * Construct a JournalEntry
+   *
+   * @param sequence the sequence number of the record
+   * @param offset where the record starts in its segment
+   * @param timestamp when the record was appended, in milliseconds since the epoch
+   * @param format the wire format of the frame
+   * @param frame the whole frame, which must not be modified afterwards
+   */
+  public JournalEntry(long sequence, int offset, long timestamp, WireFormat format, byte[] frame) {
+    this.sequence = sequence;
+    this.offset = offset;
+    this.timestamp = timestamp;
+    this.format = format;
+    this.frame = frame;
+  }
+
+  /**
+   *
+   * @return the sequence number of the record
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   *
+   * @return where the record starts in its segment, which together with the sequence number lets
+   *         {@link MessageJournal#read(long, int)} find it again without scanning
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   *
+   * @return when the record was appended, in milliseconds since the epoch
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   *
+   * @return the wire format of the frame
+   */
+  public WireFormat getFormat() {
+    return format;
+  }
+
+  /**
+   *
+   * @return a read-only view of the frame
+   */
+  public ByteBuffer getFrame() {
+    return ByteBuffer.wrap(frame).asReadOnlyBuffer();
+  }
+
+  /**
+   * Decode the frame
+   *
+   * @return the journaled message
+   * @throws IOException if the frame cannot be decoded
+   */
+  public Message getMessage() throws IOException {
+    return format.decode(ByteBuffer.wrap(frame));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "JournalEntry{sequence:" + sequence + ", offset:" + offset + ", timestamp:" + timestamp + ", format:" + format
+        + ", frameLength:" + frame.length + "}";
+  }
+}
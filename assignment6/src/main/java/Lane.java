@@ -0,0 +1,41 @@
+import messageModel.Message;
+import protocol.Protocol;
+
+/**
+ * Represents the outbound lanes of a PriorityMailbox. Replies and session traffic go in the control
+ * lane, chat traffic in the bulk lane
+ */
+public enum Lane {
+  /**
+   * Responses to the user's own requests, failures, acknowledgements, presence, pings and pongs
+   */
+  CONTROL,
+  /**
+   * Broadcasts, room messages, direct messages and insults sent to the user, and anything else
+   */
+  BULK;
+
+  /**
+   * @param message a message queued for a user
+   * @return the lane the message goes in
+   */
+  public static Lane of(Message message) {
+    switch (message.getMessageType()) {
+      case Protocol.CONNECT_RESPONSE:
+      case Protocol.VERSIONED_CONNECT_RESPONSE:
+      case Protocol.OTHER:
+      case Protocol.QUERY_USER_RESPONSE:
+      case Protocol.FAILED_MESSAGE:
+      case Protocol.ROOM_RESPONSE:
+      case Protocol.PRESENCE_SYNC:
+      case Protocol.PRESENCE_DELTA:
+      case Protocol.DIRECTORY_RESPONSE:
+      case Protocol.HISTORY_RESPONSE:
+      case Protocol.PING:
+      case Protocol.PONG:
+        return CONTROL;
+      default:
+        return BULK;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+import java.util.Objects;
+
+/**
+ * Represents how a PriorityMailbox shares each batch between its lanes: up to the control weight of
+ * control messages are taken, then up to the bulk weight of bulk messages, and again until the batch is
+ * full or both lanes are empty. A control message therefore waits behind at most the bulk weight of
+ * bulk messages, and the bulk lane still moves while the control lane is flooded
+ */
+public class LaneWeights {
+  /**
+   * Weights applied to each user unless changed
+   */
+  public static final LaneWeights DEFAULT = new LaneWeights(64, 16);
+
+  private final int control;
+  private final int bulk;
+
+  /**
+   * Construct LaneWeights
+   *
+   * @param control most control messages taken per round
+   * @param bulk most bulk messages taken per round
+   */
+  public LaneWeights(int control, int bulk) {
+    if (control < 1 || bulk < 1) {
+      throw new IllegalArgumentException("Lane weights must be positive");
+    }
+    this.control = control;
+    this.bulk = bulk;
+  }
+
+  /**
+   *
+   * @return most control messages taken per round
+   */
+  public int getControl() {
+    return control;
+  }
+
+  /**
+   *
+   * @return most bulk messages taken per round
+   */
+  public int getBulk() {
+    return bulk;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof LaneWeights that)) {
+      return false;
+    }
+    return control == that.control && bulk == that.bulk;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(control, bulk);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "LaneWeights{control=" + control + ", bulk=" + bulk + "}";
+  }
+}
@@ -0,0 +1,174 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Represents a histogram of latencies in the style of HdrHistogram: values are counted in buckets whose
+ * width grows with the value, so every recorded value is kept to within 0.1% while the whole range from
+ * 1 up to the highest trackable value fits in a few tens of kilobytes. Any number of threads may record
+ * at once
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 11;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+  private final long highestTrackableValue;
+  private final AtomicLongArray counts;
+  private final AtomicLong totalCount;
+  private final AtomicLong sum;
+  private final AtomicLong min;
+  private final AtomicLong max;
+
+  /**
+   * Construct an empty LatencyHistogram
+   *
+   * @param highestTrackableValue the largest value kept to full precision, larger values are counted as
+   *                              this value but still reported by {@link #getMax()}
+   */
+  public LatencyHistogram(long highestTrackableValue) {
+    if (highestTrackableValue < SUB_BUCKET_COUNT) {
+      throw new IllegalArgumentException("highestTrackableValue must be at least " + SUB_BUCKET_COUNT);
+    }
+    this.highestTrackableValue = highestTrackableValue;
+    this.counts = new AtomicLongArray(indexOf(highestTrackableValue) + 1);
+    this.totalCount = new AtomicLong();
+    this.sum = new AtomicLong();
+    this.min = new AtomicLong(Long.MAX_VALUE);
+    this.max = new AtomicLong();
+  }
+
+  /**
+   * Count one value
+   *
+   * @param value the value, negative values are counted as 0
+   */
+  public void record(long value) {
+    long clamped = Math.max(0, value);
+    counts.incrementAndGet(indexOf(Math.min(clamped, highestTrackableValue)));
+    totalCount.incrementAndGet();
+    sum.addAndGet(clamped);
+    min.accumulateAndGet(clamped, Math::min);
+    max.accumulateAndGet(clamped, Math::max);
+  }
+
+  /**
+   * Add every value counted by another histogram to this one
+   *
+   * @param other a histogram with the same highest trackable value
+   */
+  public void add(LatencyHistogram other) {
+    if (other.highestTrackableValue != highestTrackableValue) {
+      throw new IllegalArgumentException("Histograms track different ranges");
+    }
+    for (int i = 0; i < other.counts.length(); i++) {
+      long count = other.counts.get(i);
+      if (count != 0) {
+        counts.addAndGet(i, count);
+      }
+    }
+    totalCount.addAndGet(other.getTotalCount());
+    sum.addAndGet(other.sum.get());
+    min.accumulateAndGet(other.min.get(), Math::min);
+    max.accumulateAndGet(other.max.get(), Math::max);
+  }
+
+  /**
+   * Find the value below which the given share of recorded values fall
+   *
+   * @param percentile between 0 and 100
+   * @return the highest value equivalent to the one at that percentile, or 0 if nothing was recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    long total = getTotalCount();
+    if (total == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) (Math.min(100.0, percentile) / 100.0 * total + 0.5));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return Math.min(highestEquivalentValue(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   *
+   * @return the number of values recorded
+   */
+  public long getTotalCount() {
+    return totalCount.get();
+  }
+
+  /**
+   *
+   * @return the smallest value recorded, or 0 if nothing was recorded
+   */
+  public long getMin() {
+    return getTotalCount() == 0 ? 0 : min.get();
+  }
+
+  /**
+   *
+   * @return the largest value recorded, or 0 if nothing was recorded
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   *
+   * @return the mean of the recorded values, or 0 if nothing was recorded
+   */
+  public double getMean() {
+    long total = getTotalCount();
+    return total == 0 ? 0 : (double) sum.get() / total;
+  }
+
+  /**
+   *
+   * @return the largest value kept to full precision
+   */
+  public long getHighestTrackableValue() {
+    return highestTrackableValue;
+  }
+
+  /**
+   * Find the bucket of a value. Values below the sub-bucket count each get their own bucket, above that
+   * every doubling of the value shares half as many buckets per unit
+   *
+   * @param value a value between 0 and the highest trackable value
+   * @return the index of its bucket
+   */
+  private static int indexOf(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+    return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+  }
+
+  /**
+   * @param index the index of a bucket
+   * @return the largest value that falls in that bucket
+   */
+  private static long highestEquivalentValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+    long subBucket = index - (long) shift * SUB_BUCKET_HALF_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "LatencyHistogram{count:" + getTotalCount() + ", p50:" + getValueAtPercentile(50)
+        + ", p99:" + getValueAtPercentile(99) + ", max:" + getMax() + "}";
+  }
+}
@@ -0,0 +1,476 @@
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import messageModel.BroadcastMessage;
+import messageModel.DirectMessage;
+
+/**
+ * Represents a headless load test: a number of simulated users connect to a ChatServer and send a mix
+ * of direct messages, broadcasts, insults and who queries at a fixed total rate, while every reply and
+ * delivery is timed. Sending is open loop, each operation is timed from when it was due rather than when
+ * it actually went out, so a server that falls behind shows up in the latencies instead of quietly
+ * slowing the senders down. Every user is a {@link ChatClient}, so answers are matched to operations by
+ * request id and any number of operations per user can be in flight.
+ * Timestamps travel inside the message text and are only read by the process that wrote them, so
+ * several generators with different username prefixes can load one server from separate processes
+ */
+public class LoadGenerator {
+  private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+  private static final long DRAIN_TIMEOUT_MILLIS = 5000;
+  private static final long DISCONNECT_TIMEOUT_MILLIS = 2000;
+  private static final char FIELD_SEPARATOR = ':';
+
+  private final String host;
+  private final int port;
+  private final int users;
+  private final double ratePerSecond;
+  private final LoadMix mix;
+  private final int payloadBytes;
+  private final String usernamePrefix;
+  private final String runPrefix;
+  private final LatencyHistogram connectHistogram;
+  private final Map<LoadOperation, LatencyHistogram> latencies;
+  private final Map<LoadOperation, AtomicLong> sent;
+  private final AtomicLong directDelivered;
+  private final AtomicLong delivered;
+  private final AtomicLong errors;
+  private final AtomicLong inFlight;
+  private final List<SimulatedUser> simulatedUsers;
+
+  /**
+   * Construct a LoadGenerator
+   *
+   * @param host the host address of the server
+   * @param port the port number the server is listening
+   * @param users number of simulated users
+   * @param ratePerSecond operations sent per second by all users together
+   * @param mix the share of each operation
+   * @param payloadBytes length of the text of direct messages and broadcasts
+   * @param usernamePrefix prefix of the simulated usernames, must differ between generators sharing a
+   *                       server
+   */
+  public LoadGenerator(String host, int port, int users, double ratePerSecond, LoadMix mix,
+      int payloadBytes, String usernamePrefix) {
+    if (users < 1 || ratePerSecond <= 0 || payloadBytes < 0) {
+      throw new IllegalArgumentException("users and rate must be positive, payloadBytes not negative");
+    }
+    this.host = host;
+    this.port = port;
+    this.users = users;
+    this.ratePerSecond = ratePerSecond;
+    this.mix = mix;
+    this.payloadBytes = payloadBytes;
+    this.usernamePrefix = usernamePrefix;
+    this.runPrefix = UUID.randomUUID().toString() + FIELD_SEPARATOR;
+    this.connectHistogram = new LatencyHistogram(HIGHEST_TRACKABLE_NANOS);
+    this.latencies = new EnumMap<>(LoadOperation.class);
+    this.sent = new EnumMap<>(LoadOperation.class);
+    for (LoadOperation operation : LoadOperation.values()) {
+      latencies.put(operation, new LatencyHistogram(HIGHEST_TRACKABLE_NANOS));
+      sent.put(operation, new AtomicLong());
+    }
+    this.directDelivered = new AtomicLong();
+    this.delivered = new AtomicLong();
+    this.errors = new AtomicLong();
+    this.inFlight = new AtomicLong();
+    this.simulatedUsers = new ArrayList<>();
+  }
+
+  /**
+   * Connect every user, send for the given time, wait for what is in flight and disconnect. A
+   * LoadGenerator runs once
+   *
+   * @param durationMillis how long to send for
+   * @return the measurements
+   * @throws IOException if a user cannot connect
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public LoadReport run(long durationMillis) throws IOException, InterruptedException {
+    if (!simulatedUsers.isEmpty()) {
+      throw new IllegalStateException("A LoadGenerator runs once");
+    }
+    try {
+      for (int i = 0; i < users; i++) {
+        simulatedUsers.add(connect(usernamePrefix + i));
+      }
+      int senderCount = Math.min(users, Runtime.getRuntime().availableProcessors());
+      long start = System.nanoTime();
+      long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+      List<Thread> senders = new ArrayList<>();
+      for (int s = 0; s < senderCount; s++) {
+        int senderIndex = s;
+        Thread sender = new Thread(() -> sendLoop(senderIndex, senderCount, start, end),
+            "load-sender-" + s);
+        senders.add(sender);
+        sender.start();
+      }
+      for (Thread sender : senders) {
+        sender.join();
+      }
+      long elapsed = System.nanoTime() - start;
+      drain();
+      return report(elapsed);
+    } finally {
+      disconnectAll();
+    }
+  }
+
+  /**
+   * Connect one user and time the connect handshake
+   *
+   * @param username the username to log in as
+   * @return the connected user
+   * @throws IOException if the connection or handshake fails
+   */
+  private SimulatedUser connect(String username) throws IOException {
+    long start = System.nanoTime();
+    SimulatedUser user = new SimulatedUser(username);
+    connectHistogram.record(System.nanoTime() - start);
+    return user;
+  }
+
+  /**
+   * Send this sender's share of the operations, each due at a fixed interval after the last
+   *
+   * @param senderIndex which sender this is, it drives the users whose index matches modulo count
+   * @param senderCount number of senders
+   * @param start System.nanoTime() when sending starts
+   * @param end System.nanoTime() when sending stops
+   */
+  private void sendLoop(int senderIndex, int senderCount, long start, long end) {
+    List<SimulatedUser> mine = new ArrayList<>();
+    for (int i = senderIndex; i < simulatedUsers.size(); i += senderCount) {
+      mine.add(simulatedUsers.get(i));
+    }
+    Random random = new Random();
+    long interval = (long) (TimeUnit.SECONDS.toNanos(1) * senderCount / ratePerSecond);
+    long due = start + interval * senderIndex / senderCount;
+    int cursor = 0;
+    while (due < end) {
+      long now = System.nanoTime();
+      if (now < due) {
+        LockSupport.parkNanos(due - now);
+        continue;
+      }
+      SimulatedUser user = mine.get(cursor++ % mine.size());
+      if (user.open) {
+        send(user, mix.pick(random), simulatedUsers.get(random.nextInt(simulatedUsers.size())), due);
+      }
+      due += interval;
+    }
+  }
+
+  /**
+   * Send one operation. It is counted as in flight until its answer arrives, answers to insults and who
+   * queries are timed, direct messages and broadcasts are timed at their recipients
+   *
+   * @param user the sending user
+   * @param operation what to send
+   * @param target the other user of a direct message or insult
+   * @param due System.nanoTime() when the operation was due
+   */
+  private void send(SimulatedUser user, LoadOperation operation, SimulatedUser target, long due) {
+    inFlight.incrementAndGet();
+    CompletableFuture<?> answer;
+    switch (operation) {
+      case DIRECT:
+        answer = user.client.sendDirect(target.username, payload(due));
+        break;
+      case BROADCAST:
+        answer = user.client.broadcast(payload(due));
+        break;
+      case INSULT:
+        answer = user.client.insult(target.username);
+        break;
+      case WHO:
+        answer = user.client.queryUsers();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown operation: " + operation);
+    }
+    sent.get(operation).incrementAndGet();
+    answer.whenComplete((result, failure) -> recordAnswer(operation, due, failure));
+  }
+
+  /**
+   * @param operation the operation that was answered
+   * @param due System.nanoTime() when it was due
+   * @param failure why it failed, or null if it succeeded
+   */
+  private void recordAnswer(LoadOperation operation, long due, Throwable failure) {
+    if (failure != null) {
+      errors.incrementAndGet();
+    } else if (operation == LoadOperation.INSULT || operation == LoadOperation.WHO) {
+      latencies.get(operation).record(System.nanoTime() - due);
+    }
+    inFlight.decrementAndGet();
+  }
+
+  /**
+   * Build the text of a timed message: this run's prefix, the due time and padding up to the payload
+   * size
+   *
+   * @param due System.nanoTime() when the message was due
+   * @return the text
+   */
+  private String payload(long due) {
+    StringBuilder text = new StringBuilder(Math.max(payloadBytes, runPrefix.length() + 21));
+    text.append(runPrefix).append(due).append(FIELD_SEPARATOR);
+    while (text.length() < payloadBytes) {
+      text.append('x');
+    }
+    return text.toString();
+  }
+
+  /**
+   * Read the due time out of a timed message written by this run
+   *
+   * @param text the message text
+   * @return the due time, or -1 if the message is not one of ours
+   */
+  private long dueTime(String text) {
+    if (!text.startsWith(runPrefix)) {
+      return -1;
+    }
+    int end = text.indexOf(FIELD_SEPARATOR, runPrefix.length());
+    if (end < 0) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(text, runPrefix.length(), end, 10);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * @param operation the operation that sent the message
+   * @param text the message text
+   * @param now System.nanoTime() when it was read
+   */
+  private void recordDelivery(LoadOperation operation, String text, long now) {
+    long due = dueTime(text);
+    if (due < 0) {
+      return;
+    }
+    latencies.get(operation).record(now - due);
+    delivered.incrementAndGet();
+    if (operation == LoadOperation.DIRECT) {
+      directDelivered.incrementAndGet();
+    }
+  }
+
+  /**
+   * Wait until every answer and direct message in flight has arrived, or give up after a while
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private void drain() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+    while (System.currentTimeMillis() < deadline) {
+      if (inFlight.get() == 0 && directDelivered.get() >= sent.get(LoadOperation.DIRECT).get()) {
+        return;
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Log every user off and wait for the server to confirm
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private void disconnectAll() throws InterruptedException {
+    List<CompletableFuture<Void>> confirmations = new ArrayList<>();
+    for (SimulatedUser user : simulatedUsers) {
+      if (user.open) {
+        user.open = false;
+        confirmations.add(user.client.disconnect());
+      }
+    }
+    long deadline = System.currentTimeMillis() + DISCONNECT_TIMEOUT_MILLIS;
+    for (CompletableFuture<Void> confirmation : confirmations) {
+      try {
+        confirmation.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+      } catch (ExecutionException | TimeoutException ignored) {
+      }
+    }
+    for (SimulatedUser user : simulatedUsers) {
+      user.client.close();
+    }
+  }
+
+  /**
+   * @param elapsed length of the sending phase in nanoseconds
+   * @return the measurements so far
+   */
+  private LoadReport report(long elapsed) {
+    Map<LoadOperation, Long> counts = new EnumMap<>(LoadOperation.class);
+    for (Map.Entry<LoadOperation, AtomicLong> entry : sent.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().get());
+    }
+    return new LoadReport(users, elapsed, connectHistogram, latencies, counts, delivered.get(),
+        errors.get());
+  }
+
+  /**
+   *
+   * @return number of simulated users
+   */
+  public int getUsers() {
+    return users;
+  }
+
+  /**
+   *
+   * @return operations sent per second by all users together
+   */
+  public double getRatePerSecond() {
+    return ratePerSecond;
+  }
+
+  /**
+   *
+   * @return the share of each operation
+   */
+  public LoadMix getMix() {
+    return mix;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "LoadGenerator{host:" + host + ", port:" + port + ", users:" + users + ", ratePerSecond:"
+        + ratePerSecond + ", mix:" + mix + ", payloadBytes:" + payloadBytes + ", usernamePrefix:"
+        + usernamePrefix + "}";
+  }
+
+  /**
+   * Run a load test and print the report as CSV.
+   * Args: host port users rate seconds [mix] [payloadBytes] [usernamePrefix]. A host of embedded or
+   * embedded:MODE starts a ChatServer in this JVM on a free port instead, the port argument is then
+   * ignored
+   *
+   * @param args the settings above
+   * @throws IOException if the server cannot be reached
+   * @throws InterruptedException if interrupted while running
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length < 5) {
+      System.out.println("usage: LoadGenerator host port users rate seconds [direct,broadcast,insult,who]"
+          + " [payloadBytes] [usernamePrefix]");
+      return;
+    }
+    String host = args[0];
+    int port = Integer.parseInt(args[1]);
+    int users = Integer.parseInt(args[2]);
+    double rate = Double.parseDouble(args[3]);
+    long millis = TimeUnit.SECONDS.toMillis(Long.parseLong(args[4]));
+    LoadMix mix = args.length > 5 ? LoadMix.parse(args[5]) : LoadMix.DEFAULT;
+    int payloadBytes = args.length > 6 ? Integer.parseInt(args[6]) : 64;
+    String prefix = args.length > 7 ? args[7] : "load";
+    ChatServer embedded = null;
+    if (host.startsWith("embedded")) {
+      ServerMode mode = host.contains(":")
+          ? ServerMode.valueOf(host.substring(host.indexOf(':') + 1).toUpperCase()) : ServerMode.NIO;
+      try (ServerSocket probe = new ServerSocket(0)) {
+        port = probe.getLocalPort();
+      }
+      embedded = startEmbedded(port, mode);
+      host = "localhost";
+    }
+    try {
+      new LoadGenerator(host, port, users, rate, mix, payloadBytes, prefix).run(millis).print(System.out);
+    } finally {
+      if (embedded != null) {
+        embedded.stop();
+      }
+    }
+  }
+
+  /**
+   * Start a ChatServer on a daemon thread and wait until it accepts connections
+   *
+   * @param port the port to listen on
+   * @param mode how the server serves connections
+   * @return the running server
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private static ChatServer startEmbedded(int port, ServerMode mode) throws InterruptedException {
+    ChatServer server = new ChatServer(port, mode);
+    Thread serverThread = new Thread(() -> {
+      try {
+        server.start();
+      } catch (IOException ignored) {
+      }
+    }, "embedded-server");
+    serverThread.setDaemon(true);
+    serverThread.start();
+    while (server.getServerSocket() == null || !server.getServerSocket().isBound()) {
+      Thread.sleep(10);
+    }
+    return server;
+  }
+
+  /**
+   * Represents one simulated user: its client, which also tells it about messages from other users.
+   * Only one sender thread ever sends for a user
+   */
+  private final class SimulatedUser implements ChatListener {
+    private final String username;
+    private final ChatClient client;
+    private volatile boolean open;
+
+    /**
+     * Connect the user
+     *
+     * @param username the username to log in as
+     * @throws IOException if the connection or handshake fails
+     */
+    private SimulatedUser(String username) throws IOException {
+      this.username = username;
+      this.open = true;
+      this.client = ChatClient.connect(host, port, username, this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDirectMessage(DirectMessage message) {
+      recordDelivery(LoadOperation.DIRECT, message.getMessage(), System.nanoTime());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onBroadcast(BroadcastMessage message) {
+      recordDelivery(LoadOperation.BROADCAST, message.getMessage(), System.nanoTime());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onClosed(IOException cause) {
+      if (cause != null && open) {
+        open = false;
+        errors.incrementAndGet();
+      }
+    }
+  }
+}
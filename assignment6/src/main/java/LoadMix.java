@@ -0,0 +1,138 @@
+import java.util.Random;
+
+/**
+ * Represents the relative weights of the operations a LoadGenerator sends: direct messages,
+ * broadcasts, insults and who queries
+ */
+public class LoadMix {
+  /**
+   * Mostly direct messages with some broadcasts, insults and who queries
+   */
+  public static final LoadMix DEFAULT = new LoadMix(70, 10, 10, 10);
+
+  private final int directWeight;
+  private final int broadcastWeight;
+  private final int insultWeight;
+  private final int whoWeight;
+  private final int totalWeight;
+
+  /**
+   * Construct a LoadMix
+   *
+   * @param directWeight weight of direct messages
+   * @param broadcastWeight weight of broadcasts
+   * @param insultWeight weight of insults
+   * @param whoWeight weight of who queries
+   */
+  public LoadMix(int directWeight, int broadcastWeight, int insultWeight, int whoWeight) {
+    if (directWeight < 0 || broadcastWeight < 0 || insultWeight < 0 || whoWeight < 0) {
+      throw new IllegalArgumentException("Weights cannot be negative");
+    }
+    this.totalWeight = directWeight + broadcastWeight + insultWeight + whoWeight;
+    if (totalWeight == 0) {
+      throw new IllegalArgumentException("At least one weight must be positive");
+    }
+    this.directWeight = directWeight;
+    this.broadcastWeight = broadcastWeight;
+    this.insultWeight = insultWeight;
+    this.whoWeight = whoWeight;
+  }
+
+  /**
+   * Parse a mix written as four comma separated weights, direct,broadcast,insult,who
+   *
+   * @param text the weights, for example 70,10,10,10
+   * @return the mix
+   */
+  public static LoadMix parse(String text) {
+    String[] parts = text.split(",");
+    if (parts.length != 4) {
+      throw new IllegalArgumentException("Expected direct,broadcast,insult,who weights: " + text);
+    }
+    return new LoadMix(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+        Integer.parseInt(parts[2].trim()), Integer.parseInt(parts[3].trim()));
+  }
+
+  /**
+   * Pick the next operation at random according to the weights
+   *
+   * @param random the source of randomness
+   * @return the operation
+   */
+  public LoadOperation pick(Random random) {
+    int roll = random.nextInt(totalWeight);
+    if (roll < directWeight) {
+      return LoadOperation.DIRECT;
+    }
+    roll -= directWeight;
+    if (roll < broadcastWeight) {
+      return LoadOperation.BROADCAST;
+    }
+    roll -= broadcastWeight;
+    return roll < insultWeight ? LoadOperation.INSULT : LoadOperation.WHO;
+  }
+
+  /**
+   *
+   * @return weight of direct messages
+   */
+  public int getDirectWeight() {
+    return directWeight;
+  }
+
+  /**
+   *
+   * @return weight of broadcasts
+   */
+  public int getBroadcastWeight() {
+    return broadcastWeight;
+  }
+
+  /**
+   *
+   * @return weight of insults
+   */
+  public int getInsultWeight() {
+    return insultWeight;
+  }
+
+  /**
+   *
+   * @return weight of who queries
+   */
+  public int getWhoWeight() {
+    return whoWeight;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    LoadMix that = (LoadMix) o;
+    return directWeight == that.directWeight && broadcastWeight == that.broadcastWeight
+        && insultWeight == that.insultWeight && whoWeight == that.whoWeight;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return ((directWeight * 31 + broadcastWeight) * 31 + insultWeight) * 31 + whoWeight;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return directWeight + "," + broadcastWeight + "," + insultWeight + "," + whoWeight;
+  }
+}
@@ -0,0 +1,22 @@
+/**
+ * Represents the operations a LoadGenerator sends, and how each one's latency is measured
+ */
+public enum LoadOperation {
+  /**
+   * A DirectMessage to another simulated user, timed from send until the recipient reads it
+   */
+  DIRECT,
+  /**
+   * A BroadcastMessage, timed from send until each recipient reads it
+   */
+  BROADCAST,
+  /**
+   * An InsultMessage, timed from send until the sender reads the server's acknowledgement, which comes
+   * after the insult went out to everyone
+   */
+  INSULT,
+  /**
+   * A QueryUsers, timed from send until the sender reads the QueryResp
+   */
+  WHO
+}
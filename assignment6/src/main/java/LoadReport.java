@@ -0,0 +1,176 @@
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents the outcome of one LoadGenerator run: how long connecting took, the latency of every
+ * operation, and how many operations were sent and messages delivered per second
+ */
+public class LoadReport {
+  private final int users;
+  private final long elapsedNanos;
+  private final LatencyHistogram connectHistogram;
+  private final Map<LoadOperation, LatencyHistogram> latencies;
+  private final Map<LoadOperation, Long> sent;
+  private final long delivered;
+  private final long errors;
+
+  /**
+   * Construct a LoadReport
+   *
+   * @param users number of simulated users
+   * @param elapsedNanos length of the sending phase in nanoseconds
+   * @param connectHistogram connect handshake times in nanoseconds
+   * @param latencies latencies of each operation in nanoseconds
+   * @param sent number of each operation sent
+   * @param delivered number of timed messages read by recipients
+   * @param errors number of failed messages and broken connections
+   */
+  public LoadReport(int users, long elapsedNanos, LatencyHistogram connectHistogram,
+      Map<LoadOperation, LatencyHistogram> latencies, Map<LoadOperation, Long> sent, long delivered,
+      long errors) {
+    this.users = users;
+    this.elapsedNanos = elapsedNanos;
+    this.connectHistogram = connectHistogram;
+    this.latencies = new EnumMap<>(latencies);
+    this.sent = new EnumMap<>(sent);
+    this.delivered = delivered;
+    this.errors = errors;
+  }
+
+  /**
+   *
+   * @return number of simulated users
+   */
+  public int getUsers() {
+    return users;
+  }
+
+  /**
+   *
+   * @return length of the sending phase in nanoseconds
+   */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   *
+   * @return connect handshake times in nanoseconds
+   */
+  public LatencyHistogram getConnectHistogram() {
+    return connectHistogram;
+  }
+
+  /**
+   * @param operation an operation
+   * @return its latencies in nanoseconds
+   */
+  public LatencyHistogram getLatencies(LoadOperation operation) {
+    return latencies.get(operation);
+  }
+
+  /**
+   * @param operation an operation
+   * @return how many were sent
+   */
+  public long getSent(LoadOperation operation) {
+    return sent.getOrDefault(operation, 0L);
+  }
+
+  /**
+   *
+   * @return number of operations sent, all kinds together
+   */
+  public long getTotalSent() {
+    long total = 0;
+    for (long count : sent.values()) {
+      total += count;
+    }
+    return total;
+  }
+
+  /**
+   *
+   * @return number of timed messages read by recipients
+   */
+  public long getDelivered() {
+    return delivered;
+  }
+
+  /**
+   *
+   * @return number of failed messages and broken connections
+   */
+  public long getErrors() {
+    return errors;
+  }
+
+  /**
+   *
+   * @return operations sent per second
+   */
+  public double getSentPerSecond() {
+    return perSecond(getTotalSent());
+  }
+
+  /**
+   *
+   * @return timed messages delivered per second
+   */
+  public double getDeliveredPerSecond() {
+    return perSecond(delivered);
+  }
+
+  /**
+   * @param count a number of events during the sending phase
+   * @return the number per second
+   */
+  private double perSecond(long count) {
+    return elapsedNanos == 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  /**
+   * Print the report as CSV, one row per latency histogram followed by the totals
+   *
+   * @param out where to print
+   */
+  public void print(PrintStream out) {
+    out.println("metric,count,p50Us,p99Us,p999Us,maxUs");
+    printRow(out, "connect", connectHistogram);
+    for (LoadOperation operation : LoadOperation.values()) {
+      printRow(out, operation.name(), latencies.get(operation));
+    }
+    out.printf("users,%d%nsentPerSec,%.1f%ndeliveredPerSec,%.1f%nerrors,%d%n", users,
+        getSentPerSecond(), getDeliveredPerSecond(), errors);
+  }
+
+  /**
+   * @param out where to print
+   * @param metric label of the row
+   * @param histogram values in nanoseconds
+   */
+  private static void printRow(PrintStream out, String metric, LatencyHistogram histogram) {
+    out.println(metric + "," + histogram.getTotalCount() + "," + micros(histogram.getValueAtPercentile(50))
+        + "," + micros(histogram.getValueAtPercentile(99)) + ","
+        + micros(histogram.getValueAtPercentile(99.9)) + "," + micros(histogram.getMax()));
+  }
+
+  /**
+   * @param nanos a duration in nanoseconds
+   * @return the duration in whole microseconds
+   */
+  private static long micros(long nanos) {
+    return TimeUnit.NANOSECONDS.toMicros(nanos);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "LoadReport{users:" + users + ", sent:" + getTotalSent() + ", delivered:" + delivered
+        + ", errors:" + errors + ", elapsedNanos:" + elapsedNanos + "}";
+  }
+}
@@ -0,0 +1,414 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import messageModel.BroadcastMessage;
+import messageModel.DirectMessage;
+import messageModel.EncodedMessage;
+import messageModel.ForwardedDirectMessage;
+import messageModel.HistoryResp;
+import messageModel.Message;
+
+/**
+ * Represents the history of the global room and of every direct conversation, read a page at a time
+ * for HistoryQuery. The newest messages of each conversation sit in a ring buffer the routing threads
+ * add to without taking a lock. Older ones are found through a {@link HistoryIndex} over a
+ * {@link MessageJournal}, kept up to date by a background thread reading the journal as it grows, so
+ * routing never waits on the index and a query never scans the journal. Pages are read on a separate
+ * pool of threads, so a query that goes to disk never holds up a thread that routes messages
+ */
+public class MessageHistory implements Closeable {
+  /**
+   * The conversation every broadcast belongs to
+   */
+  public static final String GLOBAL_ROOM = "";
+  public static final int DEFAULT_RING_CAPACITY = 256;
+  /**
+   * The most messages a single page may ask for
+   */
+  public static final int MAX_COUNT = 500;
+
+  private static final char SEPARATOR = '\u0000';
+  private static final int READER_THREADS = 2;
+  private static final long INDEX_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long CHECKPOINT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final MessageJournal journal;
+  private final HistoryIndex index;
+  private final int ringCapacity;
+  private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+  private final ExecutorService readers;
+  private final Thread indexer;
+  private final AtomicLong indexFailures = new AtomicLong();
+  private volatile long indexedSequence;
+  private volatile boolean closed;
+
+  /**
+   * Keep the history of the messages appended to a journal, with the default ring capacity
+   *
+   * @param journal the journal routed messages are appended to
+   * @throws IOException if the index cannot be opened
+   */
+  public MessageHistory(MessageJournal journal) throws IOException {
+    this(journal, DEFAULT_RING_CAPACITY);
+  }
+
+  /**
+   * Keep the history of the messages appended to a journal. The index lives in the journal's directory
+   * and picks up from its last checkpoint
+   *
+   * @param journal the journal routed messages are appended to
+   * @param ringCapacity how many of the newest messages of each conversation are kept in memory
+   * @throws IOException if the index cannot be opened
+   */
+  public MessageHistory(MessageJournal journal, int ringCapacity) throws IOException {
+    if (ringCapacity < 1) {
+      throw new IllegalArgumentException("ringCapacity must be at least 1");
+    }
+    this.journal = journal;
+    this.ringCapacity = ringCapacity;
+    this.index = new HistoryIndex(journal.getDirectory().resolve("index"));
+    this.indexedSequence = index.getCheckpoint();
+    this.readers = Executors.newFixedThreadPool(READER_THREADS, task -> {
+      Thread thread = new Thread(task, "history-reader");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.indexer = new Thread(this::indexLoop, "history-indexer-" + journal.getDirectory().getFileName());
+    this.indexer.setDaemon(true);
+    this.indexer.start();
+  }
+
+  /**
+   * @param user a user taking part in the conversation
+   * @param peer the other user, or an empty string for the global room
+   * @return the conversation between the two users, the same whichever way round they are given
+   */
+  public static String conversation(String user, String peer) {
+    if (peer.isEmpty()) {
+      return GLOBAL_ROOM;
+    }
+    return user.compareTo(peer) <= 0 ? user + SEPARATOR + peer : peer + SEPARATOR + user;
+  }
+
+  /**
+   * @param message a routed message
+   * @return the conversation it belongs to, or null if it is not kept in the history
+   */
+  public static String conversationOf(Message message) {
+    if (message instanceof ForwardedDirectMessage) {
+      ForwardedDirectMessage forwarded = (ForwardedDirectMessage) message;
+      return conversation(forwarded.getSenderUsername(), forwarded.getRecipientUsername());
+    }
+    if (message instanceof EncodedMessage) {
+      message = ((EncodedMessage) message).getMessage();
+    }
+    if (message instanceof BroadcastMessage) {
+      return GLOBAL_ROOM;
+    }
+    if (message instanceof DirectMessage) {
+      DirectMessage direct = (DirectMessage) message;
+      return conversation(direct.getSenderUsername(), direct.getRecipientUsername());
+    }
+    return null;
+  }
+
+  /**
+   * Add a message just appended to the journal to its conversation's ring, called by the routing
+   * threads. Nothing is decoded or locked
+   *
+   * @param conversation the conversation the message belongs to
+   * @param sequence the journal sequence number of the message
+   * @param message the message as its recipients get it
+   */
+  public void record(String conversation, long sequence, Message message) {
+    Ring ring = rings.get(conversation);
+    if (ring == null) {
+      ring = rings.computeIfAbsent(conversation, key -> new Ring(ringCapacity));
+    }
+    ring.add(sequence, System.currentTimeMillis(), message);
+  }
+
+  /**
+   * Read a page of a conversation's history on the history's reader threads
+   *
+   * @param conversation the conversation
+   * @param beforeSequence only messages with a lower sequence number are returned, 0 for the newest
+   * @param count the most messages to return
+   * @return a future of the page, completed exceptionally if the journal or index cannot be read
+   */
+  public CompletableFuture<HistoryResp> fetchAsync(String conversation, long beforeSequence, int count) {
+    CompletableFuture<HistoryResp> page = new CompletableFuture<>();
+    try {
+      readers.execute(() -> {
+        try {
+          page.complete(fetch(conversation, beforeSequence, count));
+        } catch (IOException | RuntimeException e) {
+          page.completeExceptionally(e);
+        }
+      });
+    } catch (RuntimeException e) {
+      page.completeExceptionally(new IOException("History is closed", e));
+    }
+    return page;
+  }
+
+  /**
+   * Read a page of a conversation's history. The ring answers as much as it holds, the rest comes from
+   * the index, where each message is found by a binary search and read straight from the journal. A
+   * message that cannot be read or decoded is left out of the page, so the page may be short, but its
+   * cursor is the oldest sequence number looked at and the end is only reported once the index has
+   * nothing older either
+   *
+   * @param conversation the conversation
+   * @param beforeSequence only messages with a lower sequence number are returned, 0 for the newest
+   * @param count the most messages to return
+   * @return the page, oldest message first
+   * @throws IOException if the journal or index cannot be read
+   */
+  public HistoryResp fetch(String conversation, long beforeSequence, int count) throws IOException {
+    long before = beforeSequence <= 0 ? Long.MAX_VALUE : beforeSequence;
+    List<HistoryResp.Entry> entries = new ArrayList<>(Math.min(count, MAX_COUNT));
+    long oldest = before;
+    Ring ring = rings.get(conversation);
+    if (ring != null) {
+      for (Slot slot : ring.newest(before, count)) {
+        oldest = Math.min(oldest, slot.sequence);
+        HistoryResp.Entry entry = toEntry(slot.sequence, slot.timestamp, slot.message);
+        if (entry != null) {
+          entries.add(entry);
+        }
+      }
+    }
+    boolean exhausted = false;
+    if (entries.size() < count) {
+      List<HistoryIndex.Position> positions = index.find(conversation, oldest, count - entries.size());
+      exhausted = positions.size() < count - entries.size();
+      for (HistoryIndex.Position position : positions) {
+        oldest = Math.min(oldest, position.getSequence());
+        JournalEntry record = journal.read(position.getSequence(), position.getOffset());
+        if (record == null) {
+          continue;
+        }
+        Message message;
+        try {
+          message = record.getMessage();
+        } catch (IOException e) {
+          continue;
+        }
+        if (conversation.equals(conversationOf(message))) {
+          HistoryResp.Entry entry = toEntry(record.getSequence(), record.getTimestamp(), message);
+          if (entry != null) {
+            entries.add(entry);
+          }
+        }
+      }
+    }
+    entries.sort(Comparator.comparingLong(HistoryResp.Entry::getSequence));
+    long nextBefore = exhausted ? 0 : oldest;
+    return new HistoryResp(entries, nextBefore);
+  }
+
+  /**
+   * @param sequence the journal sequence number of the message
+   * @param timestamp when the message was routed
+   * @param message the message as its recipients got it
+   * @return the history entry of the message, or null if it cannot be decoded
+   */
+  private static HistoryResp.Entry toEntry(long sequence, long timestamp, Message message) {
+    try {
+      if (message instanceof EncodedMessage) {
+        message = ((EncodedMessage) message).getMessage();
+      }
+    } catch (UncheckedIOException e) {
+      return null;
+    }
+    if (message instanceof BroadcastMessage) {
+      BroadcastMessage broadcast = (BroadcastMessage) message;
+      return new HistoryResp.Entry(sequence, timestamp, broadcast.getSenderUsername(), GLOBAL_ROOM,
+          broadcast.getMessage());
+    }
+    if (message instanceof DirectMessage) {
+      DirectMessage direct = (DirectMessage) message;
+      return new HistoryResp.Entry(sequence, timestamp, direct.getSenderUsername(),
+          direct.getRecipientUsername(), direct.getMessage());
+    }
+    return null;
+  }
+
+  /**
+   * Index the journal as it grows until the history closes, checkpointing about once a second. A
+   * record that cannot be decoded is skipped, anything else that fails is tried again next time
+   */
+  private void indexLoop() {
+    long lastCheckpoint = System.nanoTime();
+    while (!closed) {
+      try {
+        journal.replay(indexedSequence + 1, this::indexEntry);
+        if (indexedSequence > index.getCheckpoint()
+            && System.nanoTime() - lastCheckpoint >= CHECKPOINT_INTERVAL_NANOS) {
+          index.checkpoint(indexedSequence);
+          lastCheckpoint = System.nanoTime();
+        }
+      } catch (IOException | UncheckedIOException e) {
+        indexFailures.incrementAndGet();
+      }
+      LockSupport.parkNanos(this, INDEX_INTERVAL_NANOS);
+    }
+  }
+
+  /**
+   * @param entry the next record of the journal
+   */
+  private void indexEntry(JournalEntry entry) {
+    String conversation;
+    try {
+      conversation = conversationOf(entry.getMessage());
+    } catch (IOException | UncheckedIOException e) {
+      conversation = null;
+    }
+    if (conversation != null) {
+      try {
+        index.add(conversation, entry.getSequence(), entry.getOffset());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    indexedSequence = entry.getSequence();
+  }
+
+  /**
+   * Stop indexing and reading, checkpoint what was indexed and close the index. The journal is left
+   * open
+   */
+  @Override
+  public void close() {
+    closed = true;
+    readers.shutdown();
+    LockSupport.unpark(indexer);
+    try {
+      indexer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      if (indexedSequence > index.getCheckpoint()) {
+        index.checkpoint(indexedSequence);
+      }
+    } catch (IOException ignored) {
+    }
+    index.close();
+  }
+
+  /**
+   *
+   * @return the journal the history is kept from
+   */
+  public MessageJournal getJournal() {
+    return journal;
+  }
+
+  /**
+   *
+   * @return the last journal sequence number the index has caught up with
+   */
+  public long getIndexedSequence() {
+    return indexedSequence;
+  }
+
+  /**
+   *
+   * @return how many times indexing failed and had to be tried again
+   */
+  public long getIndexFailures() {
+    return indexFailures.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "MessageHistory{conversations:" + rings.size() + ", ringCapacity:" + ringCapacity
+        + ", indexedSequence:" + indexedSequence + ", closed:" + closed + "}";
+  }
+
+  /**
+   * Represents one message in a ring
+   */
+  private static final class Slot {
+    private final long position;
+    private final long sequence;
+    private final long timestamp;
+    private final Message message;
+
+    /**
+     * @param position how many messages the ring had taken before this one
+     * @param sequence the journal sequence number of the message
+     * @param timestamp when the message was routed
+     * @param message the message as its recipients got it
+     */
+    private Slot(long position, long sequence, long timestamp, Message message) {
+      this.position = position;
+      this.sequence = sequence;
+      this.timestamp = timestamp;
+      this.message = message;
+    }
+  }
+
+  /**
+   * Represents the newest messages of one conversation. Writers claim a position with one atomic
+   * increment and overwrite the oldest slot, readers check each slot still holds the position they
+   * expect, so a slot overwritten while being read is skipped rather than returned out of place
+   */
+  private static final class Ring {
+    private final AtomicReferenceArray<Slot> slots;
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * @param capacity how many messages the ring holds
+     */
+    private Ring(int capacity) {
+      this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * @param sequence the journal sequence number of the message
+     * @param timestamp when the message was routed
+     * @param message the message as its recipients got it
+     */
+    private void add(long sequence, long timestamp, Message message) {
+      long position = next.getAndIncrement();
+      slots.set((int) (position % slots.length()), new Slot(position, sequence, timestamp, message));
+    }
+
+    /**
+     * @param beforeSequence only messages with a lower sequence number are returned
+     * @param count the most messages to return
+     * @return the newest messages before the sequence number, newest first
+     */
+    private List<Slot> newest(long beforeSequence, int count) {
+      List<Slot> found = new ArrayList<>();
+      long head = next.get();
+      long oldest = Math.max(0, head - slots.length());
+      for (long position = head - 1; position >= oldest && found.size() < count; position--) {
+        Slot slot = slots.get((int) (position % slots.length()));
+        if (slot != null && slot.position == position && slot.sequence < beforeSequence) {
+          found.add(slot);
+        }
+      }
+      return found;
+    }
+  }
+}
@@ -0,0 +1,599 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import messageModel.EncodedMessage;
+import messageModel.FrameView;
+import messageModel.Message;
+import messageModel.WireFormat;
+
+/**
+ * Represents an append-only journal of the messages the server routed, kept in memory-mapped segment
+ * files in one directory. Every record gets the next sequence number and is copied into the mapped
+ * segment under a short lock, so appending costs a memory copy and no system call. A background thread
+ * forces what was appended to disk every commit interval, one force covering every record appended
+ * since the last, which is the group commit. {@link #sync()} forces right away for callers that have to
+ * know a record is on disk.
+ * A segment is named after the sequence number of its first record and starts with a magic number.
+ * Each record is its length, a CRC32C of the rest, the sequence number, the time it was appended, the
+ * protocol version of the frame and the frame itself, exactly as it travelled on the wire. A record that
+ * does not fit rolls over to a new segment. Opening a journal picks up after the last intact record.
+ * Records are read back through read-only mappings of the segments, kept open until the journal closes
+ */
+public class MessageJournal implements Closeable {
+  /**
+   * Segment size used unless another is given
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * How often the background thread forces new records to disk unless another interval is given
+   */
+  public static final long DEFAULT_COMMIT_INTERVAL_MICROS = 1000;
+
+  static final int SEGMENT_MAGIC = 0x434A4E4C;
+  static final int SEGMENT_HEADER_SIZE = 4;
+  static final int RECORD_HEADER_SIZE = 25;
+  private static final int MIN_SEGMENT_SIZE = 1024;
+  private static final int CHECKED_OFFSET = 8;
+  private static final String SEGMENT_SUFFIX = ".journal";
+
+  private final Path directory;
+  private final int segmentSize;
+  private final long commitIntervalNanos;
+  private final Object appendLock = new Object();
+  private final Object syncLock = new Object();
+  private final CRC32C appendChecksum = new CRC32C();
+  private final List<Segment> rolled = new ArrayList<>();
+  private final ConcurrentSkipListMap<Long, Path> segmentFiles = new ConcurrentSkipListMap<>();
+  private final Map<Long, MappedByteBuffer> readMappings = new ConcurrentHashMap<>();
+  private final AtomicLong failedAppends = new AtomicLong();
+  private final Thread committer;
+  private Segment current;
+  private long lastSequence;
+  private volatile long appendedSequence;
+  private volatile long durableSequence;
+  private volatile boolean closed;
+
+  /**
+   * Open the journal in the given directory with the default segment size and commit interval,
+   * creating it if needed
+   *
+   * @param directory the directory holding the segment files
+   * @throws IOException if the directory or its last segment cannot be opened
+   */
+  public MessageJournal(Path directory) throws IOException {
+    this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_COMMIT_INTERVAL_MICROS);
+  }
+
+  /**
+   * Open the journal in the given directory, creating it if needed
+   *
+   * @param directory the directory holding the segment files
+   * @param segmentSize the size of each segment file in bytes, which also caps the size of a record
+   * @param commitIntervalMicros how often the background thread forces new records to disk
+   * @throws IOException if the directory or its last segment cannot be opened
+   */
+  public MessageJournal(Path directory, int segmentSize, long commitIntervalMicros) throws IOException {
+    if (segmentSize < MIN_SEGMENT_SIZE || commitIntervalMicros < 1) {
+      throw new IllegalArgumentException("segmentSize must be at least " + MIN_SEGMENT_SIZE
+          + " and commitIntervalMicros positive");
+    }
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.commitIntervalNanos = TimeUnit.MICROSECONDS.toNanos(commitIntervalMicros);
+    Files.createDirectories(directory);
+    recover();
+    this.committer = new Thread(this::commitLoop, "journal-commit-" + directory.getFileName());
+    this.committer.setDaemon(true);
+    this.committer.start();
+  }
+
+  /**
+   * Open the newest segment and find the end of its last intact record. Anything after it, such as a
+   * record torn by a crash, is cleared so it cannot be mistaken for a record later
+   *
+   * @throws IOException if the segment cannot be opened
+   */
+  private void recover() throws IOException {
+    List<Path> segments = listSegments(directory);
+    for (Path segment : segments) {
+      segmentFiles.put(firstSequence(segment), segment);
+    }
+    if (segments.isEmpty()) {
+      return;
+    }
+    Path newest = segments.get(segments.size() - 1);
+    Segment segment = Segment.open(newest, firstSequence(newest), segmentSize, false);
+    long sequence = segment.firstSequence - 1;
+    int position = SEGMENT_HEADER_SIZE;
+    int end;
+    while ((end = recordEnd(segment.buffer, position, appendChecksum)) > 0) {
+      sequence = segment.buffer.getLong(position + CHECKED_OFFSET);
+      position = end;
+    }
+    if (position + 4 <= segment.buffer.capacity() && segment.buffer.getInt(position) != 0) {
+      for (int i = position; i < segment.buffer.capacity(); i++) {
+        segment.buffer.put(i, (byte) 0);
+      }
+      segment.buffer.force();
+    }
+    segment.position = position;
+    segment.forcedPosition = position;
+    current = segment;
+    lastSequence = sequence;
+    appendedSequence = sequence;
+    durableSequence = sequence;
+  }
+
+  /**
+   * Append a message. A message encoded for its recipients is journaled in the format it was encoded
+   * in, anything else is encoded as a version 2 frame
+   *
+   * @param message the message, which should not carry a request id
+   * @return the sequence number of the record, or -1 if it could not be appended
+   */
+  public long append(Message message) {
+    if (message instanceof EncodedMessage) {
+      EncodedMessage encoded = (EncodedMessage) message;
+      try {
+        return append(encoded.getSourceFormat(), encoded.getFrame(encoded.getSourceFormat()));
+      } catch (IOException e) {
+        failedAppends.incrementAndGet();
+        return -1;
+      }
+    }
+    try {
+      return append(WireFormat.V2, WireFormat.V2.encode(message));
+    } catch (IOException e) {
+      failedAppends.incrementAndGet();
+      return -1;
+    }
+  }
+
+  /**
+   * Append an encoded frame
+   *
+   * @param format the wire format of the frame
+   * @param frame the whole frame from its position to its limit, which is left unchanged
+   * @return the sequence number of the record, or -1 if it could not be appended
+   */
+  public long append(WireFormat format, ByteBuffer frame) {
+    int length = frame.remaining();
+    synchronized (appendLock) {
+      int start = reserve(length);
+      if (start < 0) {
+        return -1;
+      }
+      current.buffer.put(start + RECORD_HEADER_SIZE, frame, frame.position(), length);
+      return commitRecord(start, format, length);
+    }
+  }
+
+  /**
+   * Append the frame a view is on, straight from the buffer it was read into
+   *
+   * @param view the view of a whole frame
+   * @return the sequence number of the record, or -1 if it could not be appended
+   */
+  public long append(FrameView view) {
+    int length = view.getFrameLength();
+    synchronized (appendLock) {
+      int start = reserve(length);
+      if (start < 0) {
+        return -1;
+      }
+      current.writer.position(start + RECORD_HEADER_SIZE);
+      view.copyTo(current.writer);
+      return commitRecord(start, view.getFormat(), length);
+    }
+  }
+
+  /**
+   * Find room for a record, rolling over to a new segment if the current one is full. Called with the
+   * append lock held
+   *
+   * @param length the length of the frame
+   * @return where the record starts in the current segment, or -1 if it cannot be appended
+   */
+  private int reserve(int length) {
+    int recordSize = RECORD_HEADER_SIZE + length;
+    if (closed || recordSize > segmentSize - SEGMENT_HEADER_SIZE) {
+      failedAppends.incrementAndGet();
+      return -1;
+    }
+    if (current == null || current.position + recordSize > segmentSize) {
+      try {
+        Path path = directory.resolve(segmentName(lastSequence + 1));
+        Segment next = Segment.open(path, lastSequence + 1, segmentSize, true);
+        segmentFiles.put(lastSequence + 1, path);
+        if (current != null) {
+          rolled.add(current);
+        }
+        current = next;
+      } catch (IOException e) {
+        failedAppends.incrementAndGet();
+        return -1;
+      }
+    }
+    return current.position;
+  }
+
+  /**
+   * Fill in the header of a record whose frame is already copied, length last so a reader never sees a
+   * record before it is complete. Called with the append lock held
+   *
+   * @param start where the record starts
+   * @param format the wire format of the frame
+   * @param length the length of the frame
+   * @return the sequence number of the record
+   */
+  private long commitRecord(int start, WireFormat format, int length) {
+    MappedByteBuffer buffer = current.buffer;
+    long sequence = ++lastSequence;
+    buffer.putLong(start + CHECKED_OFFSET, sequence);
+    buffer.putLong(start + CHECKED_OFFSET + 8, System.currentTimeMillis());
+    buffer.put(start + CHECKED_OFFSET + 16, (byte) format.getVersion());
+    int end = start + RECORD_HEADER_SIZE + length;
+    buffer.putInt(start + 4, checksum(buffer, start + CHECKED_OFFSET, end, appendChecksum));
+    buffer.putInt(start, length);
+    current.position = end;
+    appendedSequence = sequence;
+    return sequence;
+  }
+
+  /**
+   * Force every record appended so far to disk. Concurrent callers share the work, a caller that finds
+   * its records already forced returns at once
+   *
+   * @return the sequence number of the last record known to be on disk
+   */
+  public long sync() {
+    synchronized (syncLock) {
+      List<Segment> full;
+      Segment segment;
+      int position;
+      long sequence;
+      synchronized (appendLock) {
+        full = new ArrayList<>(rolled);
+        rolled.clear();
+        segment = current;
+        position = segment == null ? 0 : segment.position;
+        sequence = appendedSequence;
+      }
+      for (Segment done : full) {
+        done.force(done.position);
+        done.close();
+      }
+      if (segment != null) {
+        segment.force(position);
+      }
+      durableSequence = sequence;
+      return sequence;
+    }
+  }
+
+  /**
+   * Force new records to disk every commit interval until the journal is closed
+   */
+  private void commitLoop() {
+    while (!closed) {
+      LockSupport.parkNanos(this, commitIntervalNanos);
+      if (appendedSequence != durableSequence) {
+        sync();
+      }
+    }
+  }
+
+  /**
+   * Read the records from a sequence number on, up to the last one appended when the call started.
+   * Appending is not held up while records are read
+   *
+   * @param fromSequence the first sequence number wanted
+   * @param consumer given every record in sequence order
+   * @throws IOException if a segment cannot be read
+   */
+  public void replay(long fromSequence, Consumer<JournalEntry> consumer) throws IOException {
+    long upTo = appendedSequence;
+    Long first = segmentFiles.floorKey(fromSequence);
+    CRC32C checksum = new CRC32C();
+    for (long segmentStart : segmentFiles.tailMap(first == null ? 0L : first).keySet()) {
+      MappedByteBuffer buffer = readMapping(segmentStart);
+      int position = SEGMENT_HEADER_SIZE;
+      int end;
+      while ((end = recordEnd(buffer, position, checksum)) > 0) {
+        long sequence = buffer.getLong(position + CHECKED_OFFSET);
+        if (sequence > upTo) {
+          return;
+        }
+        if (sequence >= fromSequence) {
+          consumer.accept(readEntry(buffer, position, end, sequence));
+        }
+        position = end;
+      }
+    }
+  }
+
+  /**
+   * Read one record straight from where it was found before, see {@link JournalEntry#getOffset()}
+   *
+   * @param sequence the sequence number of the record
+   * @param offset where the record starts in its segment
+   * @return the record, or null if there is no intact record with that sequence number there
+   * @throws IOException if the segment cannot be read
+   */
+  public JournalEntry read(long sequence, int offset) throws IOException {
+    Long segmentStart = segmentFiles.floorKey(sequence);
+    if (segmentStart == null || sequence > appendedSequence || offset < SEGMENT_HEADER_SIZE) {
+      return null;
+    }
+    MappedByteBuffer buffer = readMapping(segmentStart);
+    int end = recordEnd(buffer, offset, new CRC32C());
+    if (end < 0 || buffer.getLong(offset + CHECKED_OFFSET) != sequence) {
+      return null;
+    }
+    return readEntry(buffer, offset, end, sequence);
+  }
+
+  /**
+   * @param segmentStart the sequence number of the first record of a segment
+   * @return a read-only mapping of the whole segment, mapped on first use
+   * @throws IOException if the segment cannot be mapped
+   */
+  private MappedByteBuffer readMapping(long segmentStart) throws IOException {
+    MappedByteBuffer buffer = readMappings.get(segmentStart);
+    if (buffer == null) {
+      try (FileChannel channel = FileChannel.open(segmentFiles.get(segmentStart), StandardOpenOption.READ)) {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      MappedByteBuffer raced = readMappings.putIfAbsent(segmentStart, buffer);
+      if (raced != null) {
+        buffer = raced;
+      }
+    }
+    return buffer;
+  }
+
+  /**
+   * @param buffer the segment
+   * @param start where the record starts
+   * @param end where the record ends
+   * @param sequence the sequence number of the record
+   * @return the record
+   * @throws IOException if the record names an unknown protocol version
+   */
+  private static JournalEntry readEntry(ByteBuffer buffer, int start, int end, long sequence)
+      throws IOException {
+    long timestamp = buffer.getLong(start + CHECKED_OFFSET + 8);
+    int version = buffer.get(start + CHECKED_OFFSET + 16);
+    WireFormat format = null;
+    for (WireFormat candidate : WireFormat.values()) {
+      if (candidate.getVersion() == version) {
+        format = candidate;
+      }
+    }
+    if (format == null) {
+      throw new IOException("Unknown protocol version " + version + " in record " + sequence);
+    }
+    byte[] frame = new byte[end - start - RECORD_HEADER_SIZE];
+    buffer.get(start + RECORD_HEADER_SIZE, frame);
+    return new JournalEntry(sequence, start, timestamp, format, frame);
+  }
+
+  /**
+   * Check the record at a position
+   *
+   * @param buffer the segment
+   * @param start where the record would start
+   * @param checksum reused to check the record
+   * @return where the record ends, or -1 if there is no intact record there
+   */
+  private static int recordEnd(ByteBuffer buffer, int start, CRC32C checksum) {
+    if (start + RECORD_HEADER_SIZE > buffer.capacity()) {
+      return -1;
+    }
+    int length = buffer.getInt(start);
+    if (length <= 0 || length > buffer.capacity() - start - RECORD_HEADER_SIZE) {
+      return -1;
+    }
+    int end = start + RECORD_HEADER_SIZE + length;
+    return checksum(buffer, start + CHECKED_OFFSET, end, checksum) == buffer.getInt(start + 4) ? end : -1;
+  }
+
+  /**
+   * @param buffer the segment
+   * @param from first byte covered
+   * @param to end of the bytes covered
+   * @param checksum reused for the calculation
+   * @return the CRC32C of the bytes
+   */
+  private static int checksum(ByteBuffer buffer, int from, int to, CRC32C checksum) {
+    checksum.reset();
+    checksum.update(buffer.duplicate().limit(to).position(from));
+    return (int) checksum.getValue();
+  }
+
+  /**
+   * @param directory the journal directory
+   * @return the segment files, oldest first
+   * @throws IOException if the directory cannot be listed
+   */
+  private static List<Path> listSegments(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+    }
+  }
+
+  /**
+   * @param firstSequence the sequence number of the first record of a segment
+   * @return the file name of the segment, which sorts in sequence order
+   */
+  static String segmentName(long firstSequence) {
+    return String.format("%020d%s", firstSequence, SEGMENT_SUFFIX);
+  }
+
+  /**
+   * @param segment the path of a segment
+   * @return the sequence number of its first record
+   */
+  private static long firstSequence(Path segment) {
+    String name = segment.getFileName().toString();
+    return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  /**
+   * Stop the background thread, force everything appended to disk and close the segment files. Later
+   * appends fail
+   */
+  @Override
+  public void close() {
+    closed = true;
+    LockSupport.unpark(committer);
+    try {
+      committer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    sync();
+    synchronized (appendLock) {
+      if (current != null) {
+        current.close();
+      }
+    }
+    readMappings.clear();
+  }
+
+  /**
+   *
+   * @return the directory holding the segment files
+   */
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   *
+   * @return the sequence number of the last record appended, 0 if there is none
+   */
+  public long getLastSequence() {
+    return appendedSequence;
+  }
+
+  /**
+   *
+   * @return the sequence number of the last record known to be on disk
+   */
+  public long getDurableSequence() {
+    return durableSequence;
+  }
+
+  /**
+   *
+   * @return the number of appends that failed, because the journal was closed, the record was larger
+   *         than a segment or a new segment could not be created
+   */
+  public long getFailedAppends() {
+    return failedAppends.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "MessageJournal{directory:" + directory + ", segmentSize:" + segmentSize + ", lastSequence:"
+        + appendedSequence + ", durableSequence:" + durableSequence + "}";
+  }
+
+  /**
+   * Represents one mapped segment file that records are appended to
+   */
+  private static final class Segment {
+    private final long firstSequence;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ByteBuffer writer;
+    private int position;
+    private int forcedPosition;
+
+    /**
+     * @param firstSequence the sequence number of the segment's first record
+     * @param channel the open segment file
+     * @param buffer the whole file mapped for writing
+     */
+    private Segment(long firstSequence, FileChannel channel, MappedByteBuffer buffer) {
+      this.firstSequence = firstSequence;
+      this.channel = channel;
+      this.buffer = buffer;
+      this.writer = buffer.duplicate();
+      this.position = SEGMENT_HEADER_SIZE;
+      this.forcedPosition = 0;
+    }
+
+    /**
+     * Map a segment file, writing its magic number if it is new
+     *
+     * @param path the segment file
+     * @param firstSequence the sequence number of its first record
+     * @param size the size of the mapping, an existing file that is larger is mapped whole
+     * @param create true to create a new segment, false to open an existing one
+     * @return the mapped segment
+     * @throws IOException if the file cannot be mapped or is not a segment
+     */
+    private static Segment open(Path path, long firstSequence, int size, boolean create) throws IOException {
+      FileChannel channel = create
+          ? FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+              StandardOpenOption.WRITE)
+          : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      try {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+        if (create) {
+          buffer.putInt(0, SEGMENT_MAGIC);
+        } else if (buffer.getInt(0) != SEGMENT_MAGIC) {
+          throw new IOException("Not a journal segment: " + path);
+        }
+        return new Segment(firstSequence, channel, buffer);
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+    /**
+     * Force the bytes written since the last force
+     *
+     * @param upTo end of the bytes to force
+     */
+    private void force(int upTo) {
+      if (upTo > forcedPosition) {
+        buffer.force(forcedPosition, upTo - forcedPosition);
+        forcedPosition = upTo;
+      }
+    }
+
+    /**
+     * Close the file, the mapping stays valid until it is collected
+     */
+    private void close() {
+      try {
+        channel.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+}
@@ -0,0 +1,610 @@
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Represents a bounded queue many threads put into and one thread takes from, kept in an array ring
+ * instead of linked nodes, so putting allocates nothing. A producer claims a slot with one
+ * compare-and-set on the producer index and then fills it, it never locks and never waits for another
+ * producer to finish. The ring starts small and doubles up to its capacity as the queue grows, linking
+ * the old ring to the new one, so an idle queue costs a few dozen bytes however large it may grow.
+ * <p>
+ * Indexes count two per element, leaving the lowest bit of the producer index to mark a ring being
+ * doubled, which producers wait out. Taking is meant for one thread, the writer, and is serialized by a
+ * consumer lock: the slow consumer policy and a resuming session also take messages out from under the
+ * writer, so the lock keeps them correct, and the writer pays one uncontended lock per poll or batch.
+ * Elements from one producer are taken in the order they were put. Only the writer may block in take,
+ * how it waits is set by the {@link WaitStrategy}
+ *
+ * @param <E> the type of the elements
+ */
+public class MpscRingBuffer<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+  public static final int DEFAULT_INITIAL_CAPACITY = 16;
+  public static final int MAX_CAPACITY = 1 << 30;
+
+  /**
+   * How many times a thread spins before parking, with SPIN_THEN_PARK, or before yielding while it waits
+   * for another thread to finish a put
+   */
+  private static final int SPIN_TRIES = 256;
+  private static final long PUT_BACKOFF_NANOS = 10_000;
+  /**
+   * Left in the old ring where the next element went into the new ring instead
+   */
+  private static final Object JUMP = new Object();
+  /**
+   * Left in the old ring's link slot once the consumer moved on
+   */
+  private static final Object CONSUMED = new Object();
+  private static final int CONTINUE = 0;
+  private static final int RETRY = 1;
+  private static final int FULL = 2;
+  private static final int RESIZE = 3;
+
+  private final long maxIndexCapacity;
+  private final WaitStrategy waitStrategy;
+  private final AtomicLong producerIndex = new AtomicLong();
+  private final AtomicLong producerLimit = new AtomicLong();
+  private final AtomicLong consumerIndex = new AtomicLong();
+  private final Object consumerLock = new Object();
+  private volatile AtomicReferenceArray<Object> producerBuffer;
+  private volatile long producerMask;
+  private AtomicReferenceArray<Object> consumerBuffer;
+  private long consumerMask;
+  private final AtomicReference<Thread> waiter;
+
+  /**
+   * Construct a queue that starts small and blocks when empty
+   *
+   * @param capacity the most elements the queue holds, rounded up to a power of two
+   */
+  public MpscRingBuffer(int capacity) {
+    this(DEFAULT_INITIAL_CAPACITY, capacity, WaitStrategy.BLOCK);
+  }
+
+  /**
+   * Construct a queue
+   *
+   * @param initialCapacity how many elements the first ring holds, rounded up to a power of two
+   * @param capacity the most elements the queue holds, rounded up to a power of two
+   * @param waitStrategy how the taking thread waits while the queue is empty
+   */
+  public MpscRingBuffer(int initialCapacity, int capacity, WaitStrategy waitStrategy) {
+    this(initialCapacity, capacity, waitStrategy, new AtomicReference<>());
+  }
+
+  /**
+   * Construct a queue whose producers wake whichever thread is parked in the given slot, so one thread
+   * can wait on several queues at once
+   *
+   * @param initialCapacity how many elements the first ring holds, rounded up to a power of two
+   * @param capacity the most elements the queue holds, rounded up to a power of two
+   * @param waitStrategy how the taking thread waits while the queue is empty
+   * @param waiter the slot the taking thread parks in, shared by the queues it waits on
+   */
+  MpscRingBuffer(int initialCapacity, int capacity, WaitStrategy waitStrategy, AtomicReference<Thread> waiter) {
+    if (initialCapacity < 2 || capacity < 2 || capacity > MAX_CAPACITY) {
+      throw new IllegalArgumentException("Capacities must be between 2 and " + MAX_CAPACITY);
+    }
+    int max = roundUpToPowerOfTwo(capacity);
+    int initial = Math.min(roundUpToPowerOfTwo(initialCapacity), max);
+    this.maxIndexCapacity = (long) max << 1;
+    this.waitStrategy = Objects.requireNonNull(waitStrategy);
+    this.waiter = waiter;
+    long mask = (long) (initial - 1) << 1;
+    AtomicReferenceArray<Object> buffer = new AtomicReferenceArray<>(initial + 1);
+    this.producerBuffer = buffer;
+    this.producerMask = mask;
+    this.consumerBuffer = buffer;
+    this.consumerMask = mask;
+    this.producerLimit.set(mask + 2 == maxIndexCapacity ? maxIndexCapacity : mask);
+  }
+
+  /**
+   * Put an element unless the queue is full, without locking
+   *
+   * @param e the element
+   * @return false if the queue is full
+   */
+  @Override
+  public boolean offer(E e) {
+    Objects.requireNonNull(e);
+    AtomicReferenceArray<Object> buffer;
+    long mask;
+    long index;
+    while (true) {
+      long limit = producerLimit.get();
+      index = producerIndex.get();
+      if ((index & 1) == 1) {
+        Thread.yield();
+        continue;
+      }
+      mask = producerMask;
+      buffer = producerBuffer;
+      if (limit <= index) {
+        int result = offerSlowPath(mask, index, limit);
+        if (result == RETRY) {
+          continue;
+        }
+        if (result == FULL) {
+          return false;
+        }
+        if (result == RESIZE) {
+          resize(buffer, mask, index, e);
+          signal();
+          return true;
+        }
+      }
+      if (producerIndex.compareAndSet(index, index + 2)) {
+        break;
+      }
+    }
+    buffer.lazySet(offset(index, mask), e);
+    signal();
+    return true;
+  }
+
+  /**
+   * Decide what to do when the producer index reached the cached limit: raise the limit if the consumer
+   * made room, report the queue full, or claim the right to double the ring
+   *
+   * @param mask the mask of the current ring
+   * @param index the producer index
+   * @param limit the cached limit
+   * @return CONTINUE, RETRY, FULL or RESIZE
+   */
+  private int offerSlowPath(long mask, long index, long limit) {
+    long consumed = consumerIndex.get();
+    long ringCapacity = mask + 2 == maxIndexCapacity ? maxIndexCapacity : mask;
+    if (consumed + ringCapacity > index) {
+      return producerLimit.compareAndSet(limit, consumed + ringCapacity) ? CONTINUE : RETRY;
+    }
+    if (maxIndexCapacity - (index - consumed) <= 0) {
+      return FULL;
+    }
+    return producerIndex.compareAndSet(index, index + 1) ? RESIZE : RETRY;
+  }
+
+  /**
+   * Put an element into a ring twice the size and link the old ring to it. Only the producer that set
+   * the resize bit gets here, the others wait until it is cleared
+   *
+   * @param oldBuffer the full ring
+   * @param oldMask the mask of the full ring
+   * @param index the producer index, without the resize bit
+   * @param e the element
+   */
+  private void resize(AtomicReferenceArray<Object> oldBuffer, long oldMask, long index, E e) {
+    AtomicReferenceArray<Object> newBuffer = new AtomicReferenceArray<>(2 * (oldBuffer.length() - 1) + 1);
+    long newMask = (long) (newBuffer.length() - 2) << 1;
+    producerBuffer = newBuffer;
+    producerMask = newMask;
+    newBuffer.lazySet(offset(index, newMask), e);
+    oldBuffer.lazySet(linkOffset(oldMask), newBuffer);
+    long available = maxIndexCapacity - (index - consumerIndex.get());
+    producerLimit.lazySet(index + Math.min(newMask, available));
+    producerIndex.lazySet(index + 2);
+    oldBuffer.lazySet(offset(index, oldMask), JUMP);
+  }
+
+  /**
+   * Wake the taking thread if it is parked. Only the producer that clears the waiter unparks it, so a
+   * storm of producers does not unpark it over and over
+   */
+  private void signal() {
+    if (waiter.get() != null) {
+      Thread parked = waiter.getAndSet(null);
+      if (parked != null) {
+        LockSupport.unpark(parked);
+      }
+    }
+  }
+
+  /**
+   * Take the oldest element
+   *
+   * @return the element, or null if the queue is empty
+   */
+  @Override
+  public E poll() {
+    synchronized (consumerLock) {
+      return pollLocked();
+    }
+  }
+
+  /**
+   * @return the oldest element, or null if the queue is empty
+   */
+  private E pollLocked() {
+    AtomicReferenceArray<Object> buffer = consumerBuffer;
+    long index = consumerIndex.get();
+    int offset = offset(index, consumerMask);
+    Object e = waitForElement(buffer, offset, index);
+    if (e == null) {
+      return null;
+    }
+    if (e == JUMP) {
+      buffer = nextBuffer(buffer, consumerMask);
+      offset = offset(index, consumerMask);
+      e = buffer.get(offset);
+    }
+    buffer.lazySet(offset, null);
+    consumerIndex.lazySet(index + 2);
+    return castElement(e);
+  }
+
+  /**
+   * Read a slot, waiting for the producer that claimed it to fill it. The producer may have been
+   * descheduled in between, so after a short spin the thread yields to it
+   *
+   * @param buffer the consumer's ring
+   * @param offset the slot
+   * @param index the consumer index
+   * @return the element, JUMP, or null if nothing was claimed there
+   */
+  private Object waitForElement(AtomicReferenceArray<Object> buffer, int offset, long index) {
+    Object e = buffer.get(offset);
+    if (e != null) {
+      return e;
+    }
+    if (index == producerIndex.get()) {
+      return null;
+    }
+    for (int spins = 0; (e = buffer.get(offset)) == null; spins++) {
+      if (spins < SPIN_TRIES) {
+        Thread.onSpinWait();
+      } else {
+        Thread.yield();
+      }
+    }
+    return e;
+  }
+
+  /**
+   * Move the consumer to the ring the old one links to
+   *
+   * @param buffer the old ring
+   * @param mask the mask of the old ring
+   * @return the new ring
+   */
+  private AtomicReferenceArray<Object> nextBuffer(AtomicReferenceArray<Object> buffer, long mask) {
+    int link = linkOffset(mask);
+    AtomicReferenceArray<Object> next = castBuffer(buffer.get(link));
+    buffer.lazySet(link, CONSUMED);
+    consumerBuffer = next;
+    consumerMask = (long) (next.length() - 2) << 1;
+    return next;
+  }
+
+  /**
+   * @return the oldest element without taking it, or null if the queue is empty
+   */
+  @Override
+  public E peek() {
+    synchronized (consumerLock) {
+      long index = consumerIndex.get();
+      Object e = waitForElement(consumerBuffer, offset(index, consumerMask), index);
+      if (e == JUMP) {
+        AtomicReferenceArray<Object> next = nextBuffer(consumerBuffer, consumerMask);
+        e = next.get(offset(index, consumerMask));
+      }
+      return e == null ? null : castElement(e);
+    }
+  }
+
+  /**
+   * Take the oldest element, waiting as the wait strategy says while the queue is empty
+   *
+   * @return the element
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Override
+  public E take() throws InterruptedException {
+    while (true) {
+      E e = poll();
+      if (e != null) {
+        return e;
+      }
+      awaitNotEmpty(false, 0);
+    }
+  }
+
+  /**
+   * Take the oldest element, waiting up to a timeout while the queue is empty
+   *
+   * @param timeout how long to wait
+   * @param unit the unit of the timeout
+   * @return the element, or null if the timeout passed first
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Override
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (true) {
+      E e = poll();
+      if (e != null) {
+        return e;
+      }
+      if (!awaitNotEmpty(true, deadline)) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Wait as the wait strategy says until something is queued, without taking it, so the taking thread
+   * can then take a whole batch at once
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void awaitNotEmpty() throws InterruptedException {
+    awaitNotEmpty(false, 0);
+  }
+
+  /**
+   * @param timed whether to give up at the deadline
+   * @param deadline the System.nanoTime() to give up at
+   * @return false if the deadline passed first
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private boolean awaitNotEmpty(boolean timed, long deadline) throws InterruptedException {
+    return await(this::isEmpty, waiter, waitStrategy, timed, deadline);
+  }
+
+  /**
+   * Spin if the wait strategy says so, then park until a producer puts something. The waiter is
+   * published before the queues are checked again, and producers read it after claiming their slot, so
+   * a wakeup cannot be lost
+   *
+   * @param empty whether every queue waited on is empty
+   * @param waiter the slot the producers of those queues wake
+   * @param waitStrategy how to wait
+   * @param timed whether to give up at the deadline
+   * @param deadline the System.nanoTime() to give up at
+   * @return false if the deadline passed first
+   * @throws InterruptedException if interrupted while waiting
+   */
+  static boolean await(BooleanSupplier empty, AtomicReference<Thread> waiter, WaitStrategy waitStrategy,
+      boolean timed, long deadline) throws InterruptedException {
+    int spins = waitStrategy == WaitStrategy.SPIN_THEN_PARK ? SPIN_TRIES : 0;
+    while (empty.getAsBoolean()) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      long remaining = deadline - System.nanoTime();
+      if (timed && remaining <= 0) {
+        return false;
+      }
+      if (spins > 0) {
+        spins--;
+        Thread.onSpinWait();
+        continue;
+      }
+      waiter.set(Thread.currentThread());
+      if (empty.getAsBoolean()) {
+        if (timed) {
+          LockSupport.parkNanos(waiter, remaining);
+        } else {
+          LockSupport.park(waiter);
+        }
+      }
+      waiter.set(null);
+    }
+    return true;
+  }
+
+  /**
+   * Put an element, waiting for room while the queue is full
+   *
+   * @param e the element
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Override
+  public void put(E e) throws InterruptedException {
+    while (!offer(e)) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      LockSupport.parkNanos(this, PUT_BACKOFF_NANOS);
+    }
+  }
+
+  /**
+   * Put an element, waiting up to a timeout for room while the queue is full
+   *
+   * @param e the element
+   * @param timeout how long to wait
+   * @param unit the unit of the timeout
+   * @return false if the queue was still full at the timeout
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Override
+  public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!offer(e)) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      LockSupport.parkNanos(this, Math.min(remaining, PUT_BACKOFF_NANOS));
+    }
+    return true;
+  }
+
+  /**
+   * Take every element queued so far
+   *
+   * @param c the collection to add them to
+   * @return how many were taken
+   */
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Take up to a number of the oldest elements under one lock
+   *
+   * @param c the collection to add them to
+   * @param maxElements the most to take
+   * @return how many were taken
+   */
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    Objects.requireNonNull(c);
+    if (c == this) {
+      throw new IllegalArgumentException("Cannot drain a queue into itself");
+    }
+    synchronized (consumerLock) {
+      int taken = 0;
+      E e;
+      while (taken < maxElements && (e = pollLocked()) != null) {
+        c.add(e);
+        taken++;
+      }
+      return taken;
+    }
+  }
+
+  /**
+   *
+   * @return how many elements are queued
+   */
+  @Override
+  public int size() {
+    long after = consumerIndex.get();
+    while (true) {
+      long before = after;
+      long produced = producerIndex.get();
+      after = consumerIndex.get();
+      if (before == after) {
+        return (int) Math.min((produced - after) >> 1, Integer.MAX_VALUE);
+      }
+    }
+  }
+
+  /**
+   *
+   * @return true if nothing is queued or being put
+   */
+  @Override
+  public boolean isEmpty() {
+    return consumerIndex.get() == producerIndex.get();
+  }
+
+  /**
+   *
+   * @return how many more elements fit
+   */
+  @Override
+  public int remainingCapacity() {
+    return getCapacity() - size();
+  }
+
+  /**
+   *
+   * @return the most elements the queue holds
+   */
+  public int getCapacity() {
+    return (int) (maxIndexCapacity >> 1);
+  }
+
+  /**
+   *
+   * @return how the taking thread waits while the queue is empty
+   */
+  public WaitStrategy getWaitStrategy() {
+    return waitStrategy;
+  }
+
+  /**
+   * Copy the queued elements, oldest first, under the consumer lock. Elements put while copying may or
+   * may not be included
+   *
+   * @return an iterator over the copy, which cannot remove
+   */
+  @Override
+  public Iterator<E> iterator() {
+    List<E> snapshot = new ArrayList<>();
+    synchronized (consumerLock) {
+      AtomicReferenceArray<Object> buffer = consumerBuffer;
+      long mask = consumerMask;
+      long end = producerIndex.get() & ~1L;
+      for (long index = consumerIndex.get(); index < end; index += 2) {
+        Object e = buffer.get(offset(index, mask));
+        if (e == JUMP) {
+          Object link = buffer.get(linkOffset(mask));
+          if (!(link instanceof AtomicReferenceArray)) {
+            break;
+          }
+          buffer = castBuffer(link);
+          mask = (long) (buffer.length() - 2) << 1;
+          e = buffer.get(offset(index, mask));
+        }
+        if (e == null) {
+          break;
+        }
+        snapshot.add(castElement(e));
+      }
+    }
+    return Collections.unmodifiableList(snapshot).iterator();
+  }
+
+  /**
+   * @param link a ring read from a link slot
+   * @return the ring
+   */
+  @SuppressWarnings("unchecked")
+  private static AtomicReferenceArray<Object> castBuffer(Object link) {
+    return (AtomicReferenceArray<Object>) link;
+  }
+
+  /**
+   * @param e an element read from a ring
+   * @return the element
+   */
+  @SuppressWarnings("unchecked")
+  private E castElement(Object e) {
+    return (E) e;
+  }
+
+  /**
+   * @param index an index counting two per element
+   * @param mask the mask of the ring
+   * @return the slot of the index in the ring
+   */
+  private static int offset(long index, long mask) {
+    return (int) ((index & mask) >> 1);
+  }
+
+  /**
+   * @param mask the mask of the ring
+   * @return the slot after the last element slot, which links to the next ring
+   */
+  private static int linkOffset(long mask) {
+    return (int) ((mask + 2) >> 1);
+  }
+
+  /**
+   * @param value a positive value at most MAX_CAPACITY
+   * @return the smallest power of two at least the value
+   */
+  private static int roundUpToPowerOfTwo(int value) {
+    int power = Integer.highestOneBit(value);
+    return power < value ? power << 1 : power;
+  }
+}
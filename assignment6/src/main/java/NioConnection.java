@@ -0,0 +1,403 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import messageModel.ConnectMessage;
+import messageModel.EncodedMessage;
+import messageModel.FrameCodecV2;
+import messageModel.FrameDecoder;
+import messageModel.FrameView;
+import messageModel.Message;
+import messageModel.PooledFrame;
+import messageModel.PresenceReply;
+import messageModel.ResumeMessage;
+import protocol.Protocol;
+import messageModel.WireFormat;
+
+/**
+ * Represents a ClientThread whose messages are written by an NioEventLoop instead of a dedicated thread.
+ * Any thread may queue messages, but reads, writes and closing only ever happen on the owning loop
+ */
+public class NioConnection extends ClientThread {
+  private static final int INITIAL_READ_BUFFER = 8 * 1024;
+  private static final int MAX_READ_BUFFER = FrameCodecV2.MAX_PREFIXED_FRAME_LENGTH;
+  private static final int MAX_GATHER = 64;
+  private static final int RECIPIENT_FIELD = 1;
+
+  private final ChatServer server;
+  private final NioEventLoop loop;
+  private final SocketChannel channel;
+  private final ArrayDeque<ByteBuffer> pendingWrites;
+  private final ArrayDeque<PooledFrame> pendingFrames;
+  private final ArrayDeque<Message> pendingMessages;
+  private final ArrayDeque<ByteBuffer> messageEnds;
+  private final List<Message> staged;
+  private final FrameView view;
+  private final AtomicBoolean flushScheduled;
+  private final ByteBuffer[] writeBatch;
+  private SelectionKey key;
+  private ByteBuffer readBuffer;
+  private String lastRecipient;
+  private boolean connected;
+  private volatile boolean aborted;
+  private volatile boolean handshakeExpired;
+  private boolean relayCharged;
+
+  /**
+   * Construct a connection for a channel that has not finished the connect handshake yet
+   *
+   * @param server the chat server handling decoded messages
+   * @param loop the event loop owning the channel
+   * @param channel the accepted non-blocking channel
+   */
+  public NioConnection(ChatServer server, NioEventLoop loop, SocketChannel channel) {
+    super(null, null, channel, server.getQueueLimits());
+    setRateLimits(server.getRateLimits());
+    setLaneWeights(server.getLaneWeights());
+    this.server = server;
+    this.loop = loop;
+    this.channel = channel;
+    this.pendingWrites = new ArrayDeque<>();
+    this.pendingFrames = new ArrayDeque<>();
+    this.pendingMessages = new ArrayDeque<>();
+    this.messageEnds = new ArrayDeque<>();
+    this.staged = new ArrayList<>(MAX_GATHER);
+    this.view = new FrameView();
+    this.flushScheduled = new AtomicBoolean();
+    this.writeBatch = new ByteBuffer[MAX_GATHER];
+    this.readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+  }
+
+  /**
+   * Set the selection key once the channel is registered
+   *
+   * @param key the selection key of the channel
+   */
+  void setKey(SelectionKey key) {
+    this.key = key;
+  }
+
+  /**
+   * Ask the event loop to close the connection if its ConnectMessage has not arrived by now. Called by
+   * the server's timer once the handshake timeout passes
+   */
+  void expireHandshake() {
+    handshakeExpired = true;
+    scheduleFlush();
+  }
+
+  /**
+   * There is no writer thread for this connection, the event loop writes its messages
+   */
+  @Override
+  public void run() {
+  }
+
+  /**
+   * Queue a message and ask the event loop to write it
+   *
+   * @param message message received from chat server
+   */
+  @Override
+  public void receiveMessage(Message message) {
+    super.receiveMessage(message);
+    scheduleFlush();
+  }
+
+  /**
+   * Close the connection once every queued message has been written
+   */
+  @Override
+  public void closeAfterFlush() {
+    super.closeAfterFlush();
+    scheduleFlush();
+  }
+
+  /**
+   * Read whatever is available and dispatch each whole frame, must be called on the event loop
+   */
+  void onReadable() {
+    try {
+      int read = channel.read(readBuffer);
+      if (read < 0) {
+        closeConnection();
+        return;
+      }
+      markRead();
+      readBuffer.flip();
+      Message message;
+      while (!isClosing()) {
+        if (relayNext()) {
+          continue;
+        }
+        if ((message = decodeNext()) == null) {
+          break;
+        }
+        dispatch(message);
+      }
+      readBuffer.compact();
+      if (!readBuffer.hasRemaining()) {
+        growReadBuffer();
+      }
+    } catch (IOException e) {
+      closeConnection();
+    }
+  }
+
+  /**
+   * Encode the queued messages and write as much as the socket accepts, must be called on the event loop.
+   * Pre-encoded frames are written straight from their shared bytes with a gathering write
+   */
+  void flush() {
+    flushScheduled.set(false);
+    if (!channel.isOpen()) {
+      return;
+    }
+    if (aborted || (handshakeExpired && !connected)) {
+      closeConnection();
+      return;
+    }
+    try {
+      boolean socketFull = false;
+      while (!socketFull && fillPendingWrites()) {
+        int count = 0;
+        for (ByteBuffer pending : pendingWrites) {
+          if (count == writeBatch.length) {
+            break;
+          }
+          writeBatch[count++] = pending;
+        }
+        channel.write(writeBatch, 0, count);
+        socketFull = writeBatch[count - 1].hasRemaining();
+        Arrays.fill(writeBatch, 0, count, null);
+        while (!pendingWrites.isEmpty() && !pendingWrites.peek().hasRemaining()) {
+          ByteBuffer written = pendingWrites.poll();
+          if (!messageEnds.isEmpty() && messageEnds.peek() == written) {
+            messageEnds.poll();
+            onDelivered(pendingMessages.poll().getEncodedSize());
+          }
+          if (!pendingFrames.isEmpty() && pendingFrames.peek().getBuffer() == written) {
+            pendingFrames.poll().release();
+          }
+        }
+      }
+      if (socketFull) {
+        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        return;
+      }
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+      if (isClosing() && getMessageLine().isEmpty()) {
+        closeConnection();
+      }
+    } catch (IOException e) {
+      closeConnection();
+    }
+  }
+
+  /**
+   * Ask the event loop to close the connection without writing what is queued
+   */
+  @Override
+  protected void abort() {
+    aborted = true;
+    scheduleFlush();
+  }
+
+  /**
+   * Move queued messages into the write list, but only up to one gathering write's worth, so a backlog
+   * stays in the message queue where the slow consumer policy can still act on it. The messages are taken
+   * as one batch under a single lock of the queue. Each message is kept in order alongside the last of its
+   * buffers, so it counts as delivered, by the size it was queued with, once all of its bytes are written,
+   * whatever the format made of it. Pooled frames are kept the same way, so each goes back to its pool once
+   * its bytes are written. A presence reply goes in as its header and the snapshot's shared bytes around
+   * the requester's own entry
+   *
+   * @return true if there is anything to write
+   * @throws IOException if a message cannot be encoded
+   */
+  private boolean fillPendingWrites() throws IOException {
+    takeBatch(staged, MAX_GATHER - pendingWrites.size());
+    for (Message message : staged) {
+      if (message == CLOSE_SIGNAL) {
+        continue;
+      }
+      int buffers = pendingWrites.size();
+      if (message instanceof EncodedMessage) {
+        pendingWrites.add(((EncodedMessage) message).getFrame(getWireFormat()));
+      } else if (message instanceof PresenceReply) {
+        for (ByteBuffer part : ((PresenceReply) message).getFrame(getWireFormat())) {
+          if (part.hasRemaining()) {
+            pendingWrites.add(part);
+          }
+        }
+      } else {
+        PooledFrame frame = message instanceof PooledFrame
+            ? (PooledFrame) message : getWireFormat().encodePooled(message, server.getFramePool());
+        if (frame == null) {
+          pendingWrites.add(getWireFormat().encode(message));
+        } else {
+          pendingWrites.add(getWireFormat().encode(frame));
+          pendingFrames.add(frame);
+        }
+      }
+      if (pendingWrites.size() > buffers) {
+        pendingMessages.add(message);
+        messageEnds.add(pendingWrites.peekLast());
+      } else {
+        onDelivered(message.getEncodedSize());
+      }
+    }
+    staged.clear();
+    return !pendingWrites.isEmpty();
+  }
+
+  /**
+   * Close the channel and tell the server the connection is gone, which removes the user unless their
+   * session may be resumed. Pooled frames still waiting to be written go back to their pool, a resumed
+   * session replays its own copies of them
+   */
+  @Override
+  protected void closeConnection() {
+    if (connected) {
+      connected = false;
+      server.connectionLost(getUserName(), this);
+    } else {
+      server.endHandshake(channel);
+    }
+    while (!pendingFrames.isEmpty()) {
+      pendingFrames.poll().release();
+    }
+    super.closeConnection();
+    if (key != null) {
+      key.cancel();
+    }
+  }
+
+  /**
+   * Hand the next frame straight to its recipient if it is a direct message the server can relay without
+   * decoding. The last recipient's name is kept, so a sender talking to the same user again does not
+   * decode it again. The frame is charged to the sender's direct message budget first. A frame over the
+   * budget, or one the server does not relay, is decoded and goes the normal path next, which rejects it
+   * or handles it without charging it twice
+   *
+   * @return true if a frame was relayed and consumed
+   * @throws IOException if the frame is malformed
+   */
+  private boolean relayNext() throws IOException {
+    if (!connected) {
+      return false;
+    }
+    int length = getWireFormat().frameLength(readBuffer);
+    if (length < 0) {
+      return false;
+    }
+    view.wrap(getWireFormat(), readBuffer, readBuffer.position(), length);
+    if (view.getMessageType() != Protocol.DIRECT_MESSAGE) {
+      return false;
+    }
+    if (!view.fieldEquals(RECIPIENT_FIELD, lastRecipient)) {
+      lastRecipient = view.getString(RECIPIENT_FIELD);
+    }
+    if (!relayCharged && !tryAcquire(RateCategory.DIRECT)) {
+      return false;
+    }
+    relayCharged = true;
+    if (!server.relayDirectFrame(view, lastRecipient, this)) {
+      return false;
+    }
+    relayCharged = false;
+    readBuffer.position(readBuffer.position() + length);
+    return true;
+  }
+
+  /**
+   * Decode the next frame, the connect handshake is always version 1 and later frames use the negotiated
+   * format
+   *
+   * @return the decoded message, or null if more bytes are needed
+   * @throws IOException if the frame cannot be decoded
+   */
+  private Message decodeNext() throws IOException {
+    return connected ? getWireFormat().decodeRouted(readBuffer) : FrameDecoder.decode(readBuffer);
+  }
+
+  /**
+   * Treat the first frame as the connect handshake and route the rest through the server. The handshake
+   * either starts a new session or resumes one
+   *
+   * @param message the decoded message
+   * @throws IOException if the handshake frame is neither a ConnectMessage nor a ResumeMessage
+   */
+  private void dispatch(Message message) throws IOException {
+    if (connected) {
+      if (relayCharged) {
+        relayCharged = false;
+        server.handleMessage(message, this);
+      } else if (server.admit(message, this)) {
+        server.handleMessage(message, this);
+      }
+      return;
+    }
+    if (message instanceof ResumeMessage) {
+      ResumeMessage resumeMessage = (ResumeMessage) message;
+      setUserName(resumeMessage.getUsername().trim());
+      setWireFormat(WireFormat.negotiate(resumeMessage.getMaxVersion()));
+      server.endHandshake(channel);
+      replaceTimeout(null);
+      connected = server.resumeClient(resumeMessage, this);
+      if (!connected) {
+        server.refuseResume(this);
+      }
+      return;
+    }
+    if (!(message instanceof ConnectMessage)) {
+      throw new IOException("Expected a connect message but got type " + message.getMessageType());
+    }
+    ConnectMessage connectMessage = (ConnectMessage) message;
+    setUserName(connectMessage.getUsername().trim());
+    setWireFormat(WireFormat.negotiate(connectMessage.getMaxVersion()));
+    server.endHandshake(channel);
+    replaceTimeout(null);
+    connected = true;
+    server.addClient(getUserName(), this);
+  }
+
+  /**
+   * Ask the owning loop to flush, at most once until the flush runs
+   */
+  private void scheduleFlush() {
+    if (flushScheduled.compareAndSet(false, true)) {
+      loop.scheduleFlush(this);
+    }
+  }
+
+  /**
+   * Double the read buffer for a frame bigger than the current buffer, up to the size of the largest
+   * valid frame with its length prefix
+   *
+   * @throws IOException if the frame is bigger than any valid frame
+   */
+  private void growReadBuffer() throws IOException {
+    if (readBuffer.capacity() >= MAX_READ_BUFFER) {
+      throw new IOException("Frame too large");
+    }
+    ByteBuffer bigger = ByteBuffer.allocate(Math.min(readBuffer.capacity() * 2, MAX_READ_BUFFER));
+    readBuffer.flip();
+    bigger.put(readBuffer);
+    readBuffer = bigger;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "username: " + getUserName() + ", current message queue: " + getMessageLine().toString()
+        + ", channel: " + channel;
+  }
+}
@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Represents one selector thread of the NIO server. Every connection is owned by exactly one event loop,
+ * which does all of its reads, writes and closing, other threads only hand work over through queues
+ */
+public class NioEventLoop implements Runnable {
+  private final ChatServer server;
+  private final Selector selector;
+  private final Queue<SocketChannel> pendingChannels;
+  private final Queue<NioConnection> pendingFlushes;
+  private final AtomicBoolean wakeupPending;
+  private volatile boolean running;
+
+  /**
+   * Construct an event loop routing decoded messages to the given server
+   *
+   * @param server the chat server handling decoded messages
+   * @throws IOException if the selector cannot be opened
+   */
+  public NioEventLoop(ChatServer server) throws IOException {
+    this.server = server;
+    this.selector = Selector.open();
+    this.pendingChannels = new ConcurrentLinkedQueue<>();
+    this.pendingFlushes = new ConcurrentLinkedQueue<>();
+    this.wakeupPending = new AtomicBoolean();
+    this.running = true;
+  }
+
+  /**
+   * Hand a newly accepted channel over to this loop
+   *
+   * @param channel the accepted channel
+   */
+  public void register(SocketChannel channel) {
+    pendingChannels.add(channel);
+    wakeup();
+  }
+
+  /**
+   * Ask this loop to write out the queued messages of a connection
+   *
+   * @param connection the connection with queued messages
+   */
+  void scheduleFlush(NioConnection connection) {
+    pendingFlushes.add(connection);
+    wakeup();
+  }
+
+  /**
+   * Stop this loop and close every connection it owns
+   */
+  public void shutdown() {
+    running = false;
+    selector.wakeup();
+  }
+
+  /**
+   * Run the select loop until shut down
+   */
+  @Override
+  public void run() {
+    try {
+      while (running) {
+        selector.select();
+        wakeupPending.set(false);
+        registerPendingChannels();
+        flushPendingConnections();
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          NioConnection connection = (NioConnection) key.attachment();
+          if (!key.isValid()) {
+            connection.closeConnection();
+            continue;
+          }
+          if (key.isReadable()) {
+            connection.onReadable();
+          }
+          if (key.isValid() && key.isWritable()) {
+            connection.flush();
+          }
+        }
+      }
+    } catch (IOException | ClosedSelectorException e) {
+      System.out.println("Event loop stopped: " + e.getMessage());
+    } finally {
+      closeAll();
+    }
+  }
+
+  /**
+   *
+   * @return the number of connections owned by this loop
+   */
+  public int getConnectionCount() {
+    return selector.isOpen() ? selector.keys().size() : 0;
+  }
+
+  /**
+   * Wake the selector, at most once per select round
+   */
+  private void wakeup() {
+    if (wakeupPending.compareAndSet(false, true)) {
+      selector.wakeup();
+    }
+  }
+
+  /**
+   * Register the channels accepted since the last round
+   */
+  private void registerPendingChannels() {
+    SocketChannel channel;
+    while ((channel = pendingChannels.poll()) != null) {
+      try {
+        channel.configureBlocking(false);
+        NioConnection connection = new NioConnection(server, this, channel);
+        connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+        connection.replaceTimeout(server.getTimer().schedule(connection::expireHandshake,
+            server.getHandshakeTimeoutMillis(), TimeUnit.MILLISECONDS));
+      } catch (IOException e) {
+        server.endHandshake(channel);
+        try {
+          channel.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+
+  /**
+   * Write the messages queued for connections since the last round
+   */
+  private void flushPendingConnections() {
+    NioConnection connection;
+    while ((connection = pendingFlushes.poll()) != null) {
+      connection.flush();
+    }
+  }
+
+  /**
+   * Close every connection and the selector
+   */
+  private void closeAll() {
+    if (!selector.isOpen()) {
+      return;
+    }
+    for (SelectionKey key : selector.keys()) {
+      ((NioConnection) key.attachment()).closeConnection();
+    }
+    try {
+      selector.close();
+    } catch (IOException ignored) {
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "NioEventLoop{connections: " + getConnectionCount() + ", running: " + running + "}";
+  }
+}
@@ -0,0 +1,370 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import messageModel.DirectMessage;
+import messageModel.Message;
+import messageModel.WireFormat;
+
+/**
+ * Represents the direct messages waiting for users who are not connected. Each message is kept as its
+ * version 1 frame in an append-only store of direct memory segments, so waiting messages cost the heap
+ * only a few numbers each. A segment is given back once every message in it was delivered or expired,
+ * which happens at the latest one time to live after it filled up. Every user may have a bounded number
+ * of messages waiting, and the store as a whole a bounded number of bytes.
+ * <p>
+ * Messages are handed to a returning user a burst at a time, and only while the user's outbound queue is
+ * under half its {@link QueueLimits}, so a long backlog neither trips the slow consumer policy nor
+ * crowds out live traffic. The rest is handed over as the queue drains. Messages stored while the user
+ * was away arrive in the order they were sent, live messages may arrive in between
+ */
+public class OfflineMailbox {
+  public static final int DEFAULT_MAX_MESSAGES_PER_USER = 10_000;
+  public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+  public static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.DAYS.toMillis(7);
+  /**
+   * The most messages handed to a user at once
+   */
+  public static final int DELIVERY_BURST = 1024;
+
+  private static final int SEGMENT_SIZE = 1024 * 1024;
+  private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+  private final int maxMessagesPerUser;
+  private final int maxSegments;
+  private final long timeToLiveMillis;
+  private final Map<String, Box> boxes = new HashMap<>();
+  private final List<Segment> segments = new ArrayList<>();
+  private final ArrayDeque<ByteBuffer> spareBuffers = new ArrayDeque<>();
+  private Segment current;
+  private long storedMessages;
+  private long expiredMessages;
+  private long rejectedMessages;
+  private long lastSweep;
+
+  /**
+   * Construct an OfflineMailbox with the default limits
+   */
+  public OfflineMailbox() {
+    this(DEFAULT_MAX_MESSAGES_PER_USER, DEFAULT_MAX_BYTES, DEFAULT_TIME_TO_LIVE_MILLIS);
+  }
+
+  /**
+   * Construct an OfflineMailbox
+   *
+   * @param maxMessagesPerUser the most messages waiting for one user
+   * @param maxBytes the most bytes of direct memory the store may take, rounded up to whole segments
+   * @param timeToLiveMillis how long a message waits before it is thrown away
+   */
+  public OfflineMailbox(int maxMessagesPerUser, long maxBytes, long timeToLiveMillis) {
+    if (maxMessagesPerUser < 1 || maxBytes < 1 || timeToLiveMillis < 1) {
+      throw new IllegalArgumentException("Mailbox limits must be positive");
+    }
+    this.maxMessagesPerUser = maxMessagesPerUser;
+    this.maxSegments = (int) Math.min(Integer.MAX_VALUE, (maxBytes + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+    this.timeToLiveMillis = timeToLiveMillis;
+  }
+
+  /**
+   * Keep a direct message for its recipient until they connect
+   *
+   * @param message the direct message
+   * @return true if the message was stored, false if the recipient's mailbox or the store is full
+   */
+  public synchronized boolean store(DirectMessage message) {
+    long now = System.currentTimeMillis();
+    if (now - lastSweep >= SWEEP_INTERVAL_MILLIS) {
+      expire(now);
+    }
+    Box box = boxes.get(message.getRecipientUsername());
+    if (box != null && box.size == maxMessagesPerUser) {
+      rejectedMessages++;
+      return false;
+    }
+    ByteBuffer frame;
+    try {
+      frame = WireFormat.V1.encode(message);
+    } catch (IOException e) {
+      rejectedMessages++;
+      return false;
+    }
+    Segment segment = segmentFor(frame.remaining());
+    if (segment == null) {
+      rejectedMessages++;
+      return false;
+    }
+    int offset = segment.buffer.position();
+    int length = frame.remaining();
+    segment.buffer.put(frame);
+    segment.live++;
+    if (box == null) {
+      box = new Box();
+      boxes.put(message.getRecipientUsername(), box);
+    }
+    box.add(segment, offset, length, now + timeToLiveMillis);
+    storedMessages++;
+    return true;
+  }
+
+  /**
+   * Hand the next burst of a user's waiting messages to their queue, stopping early once the queue is
+   * half full. A message that expired is thrown away instead
+   *
+   * @param username the user
+   * @param clientThread delivering messages to the user
+   * @return true if messages are still waiting, so this should be called again once the queue drains
+   */
+  public synchronized boolean deliver(String username, ClientThread clientThread) {
+    Box box = boxes.get(username);
+    if (box == null) {
+      return false;
+    }
+    long now = System.currentTimeMillis();
+    QueueLimits limits = clientThread.getLimits();
+    int delivered = 0;
+    while (box.size > 0 && delivered < DELIVERY_BURST && !clientThread.isClosing()) {
+      int head = box.head;
+      Segment segment = box.segments[head];
+      if (box.expiries[head] > now) {
+        int length = box.lengths[head];
+        long depth = clientThread.getQueueDepth();
+        if (depth > 0 && !limits.fits(2 * (depth + 1), 2 * (clientThread.getQueuedBytes() + length), 1)) {
+          break;
+        }
+        Message message = read(segment, box.offsets[head], length);
+        if (message != null) {
+          clientThread.receiveMessage(message);
+          delivered++;
+        }
+      } else {
+        expiredMessages++;
+      }
+      box.removeHead();
+      release(segment);
+    }
+    if (box.size > 0) {
+      return true;
+    }
+    boxes.remove(username);
+    return false;
+  }
+
+  /**
+   * Throw away every message past its time to live and give back the segments that empties
+   */
+  public synchronized void expire() {
+    expire(System.currentTimeMillis());
+  }
+
+  /**
+   * @param now the current time in milliseconds since the epoch
+   */
+  private void expire(long now) {
+    lastSweep = now;
+    Iterator<Box> iterator = boxes.values().iterator();
+    while (iterator.hasNext()) {
+      Box box = iterator.next();
+      while (box.size > 0 && box.expiries[box.head] <= now) {
+        Segment segment = box.segments[box.head];
+        box.removeHead();
+        release(segment);
+        expiredMessages++;
+      }
+      if (box.size == 0) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * @param length the length of the frame to store
+   * @return the segment to append the frame to, or null if it would take the store over its limit
+   */
+  private Segment segmentFor(int length) {
+    if (length > SEGMENT_SIZE) {
+      return null;
+    }
+    if (current != null && current.buffer.remaining() >= length) {
+      return current;
+    }
+    if (segments.size() >= maxSegments) {
+      return null;
+    }
+    ByteBuffer buffer = spareBuffers.poll();
+    current = new Segment(buffer != null ? buffer : ByteBuffer.allocateDirect(SEGMENT_SIZE));
+    segments.add(current);
+    return current;
+  }
+
+  /**
+   * Count one message of a segment as gone, giving the segment back once nothing in it is waiting and
+   * nothing more will be appended to it. One spare buffer is kept so a steady trickle does not allocate
+   *
+   * @param segment the segment the message was in
+   */
+  private void release(Segment segment) {
+    segment.live--;
+    if (segment.live > 0) {
+      return;
+    }
+    if (segment == current) {
+      segment.buffer.clear();
+      return;
+    }
+    segments.remove(segment);
+    if (spareBuffers.isEmpty()) {
+      segment.buffer.clear();
+      spareBuffers.add(segment.buffer);
+    }
+  }
+
+  /**
+   * @param segment the segment holding the frame
+   * @param offset where the frame starts
+   * @param length the length of the frame
+   * @return the decoded message, or null if it cannot be decoded
+   */
+  private static Message read(Segment segment, int offset, int length) {
+    ByteBuffer frame = segment.buffer.duplicate();
+    frame.limit(offset + length).position(offset);
+    try {
+      return WireFormat.V1.decode(frame);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   *
+   * @param username the user
+   * @return how many messages are waiting for the user, including expired ones not thrown away yet
+   */
+  public synchronized int getWaitingCount(String username) {
+    Box box = boxes.get(username);
+    return box == null ? 0 : box.size;
+  }
+
+  /**
+   *
+   * @return how many segments of direct memory the store holds
+   */
+  public synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  /**
+   *
+   * @return how many messages were ever stored
+   */
+  public synchronized long getStoredMessages() {
+    return storedMessages;
+  }
+
+  /**
+   *
+   * @return how many messages were thrown away after their time to live
+   */
+  public synchronized long getExpiredMessages() {
+    return expiredMessages;
+  }
+
+  /**
+   *
+   * @return how many messages were refused because a mailbox or the store was full
+   */
+  public synchronized long getRejectedMessages() {
+    return rejectedMessages;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    return "OfflineMailbox{users:" + boxes.size() + ", segments:" + segments.size() + ", stored:"
+        + storedMessages + ", expired:" + expiredMessages + ", rejected:" + rejectedMessages + "}";
+  }
+
+  /**
+   * Represents one direct memory segment of the store
+   */
+  private static final class Segment {
+    private final ByteBuffer buffer;
+    private int live;
+
+    /**
+     * @param buffer the cleared buffer to append frames to
+     */
+    private Segment(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+  }
+
+  /**
+   * Represents the messages waiting for one user, oldest first, as a ring of parallel arrays that grows
+   * as needed
+   */
+  private static final class Box {
+    private Segment[] segments = new Segment[4];
+    private int[] offsets = new int[4];
+    private int[] lengths = new int[4];
+    private long[] expiries = new long[4];
+    private int head;
+    private int size;
+
+    /**
+     * @param segment the segment the frame is in
+     * @param offset where the frame starts
+     * @param length the length of the frame
+     * @param expiresAt when the message expires, in milliseconds since the epoch
+     */
+    private void add(Segment segment, int offset, int length, long expiresAt) {
+      if (size == segments.length) {
+        grow();
+      }
+      int tail = (head + size) % segments.length;
+      segments[tail] = segment;
+      offsets[tail] = offset;
+      lengths[tail] = length;
+      expiries[tail] = expiresAt;
+      size++;
+    }
+
+    /**
+     * Forget the oldest message
+     */
+    private void removeHead() {
+      segments[head] = null;
+      head = (head + 1) % segments.length;
+      size--;
+    }
+
+    /**
+     * Double the capacity, moving the messages to the start of the new arrays
+     */
+    private void grow() {
+      int capacity = segments.length * 2;
+      Segment[] newSegments = new Segment[capacity];
+      int[] newOffsets = new int[capacity];
+      int[] newLengths = new int[capacity];
+      long[] newExpiries = new long[capacity];
+      for (int i = 0; i < size; i++) {
+        int from = (head + i) % segments.length;
+        newSegments[i] = segments[from];
+        newOffsets[i] = offsets[from];
+        newLengths[i] = lengths[from];
+        newExpiries[i] = expiries[from];
+      }
+      segments = newSegments;
+      offsets = newOffsets;
+      lengths = newLengths;
+      expiries = newExpiries;
+      head = 0;
+    }
+  }
+}
@@ -0,0 +1,164 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import messageModel.Message;
+import messageModel.WireFormat;
+
+/**
+ * Represents the requests a client has sent and not had answered yet. Each request is tagged with a new
+ * request id, and the one thread reading from the server hands every tagged answer to the future of the
+ * request it belongs to, so any number of requests can be in flight on one connection. Anything that is
+ * not an answer, such as messages from other users, is left for the reader to handle itself
+ */
+public class PendingRequests {
+  private final WireFormat format;
+  private final DataOutputStream out;
+  private final AtomicInteger lastRequestId = new AtomicInteger();
+  private final Map<Integer, CompletableFuture<Message>> pending = new ConcurrentHashMap<>();
+  private volatile IOException closed;
+
+  /**
+   * Construct a PendingRequests for a connection
+   *
+   * @param format the wire format agreed in the connect handshake
+   * @param out the output stream every request is written to, or null if the caller writes requests
+   *            itself after {@link #register(Message)}
+   */
+  public PendingRequests(WireFormat format, DataOutputStream out) {
+    this.format = format;
+    this.out = out;
+  }
+
+  /**
+   * Tag a request with a new request id and write it. Writes from different threads do not interleave.
+   * A version 1 connection cannot carry request ids, so the request goes out untagged, its answer
+   * arrives like any other message and the future completes with null once the request is written
+   *
+   * @param request the request to send, it must not be sent again
+   * @return a future completed with the answer, or exceptionally if the connection is lost first
+   * @throws IOException if the request cannot be written
+   */
+  public CompletableFuture<Message> send(Message request) throws IOException {
+    if (format == WireFormat.V1) {
+      write(request);
+      return CompletableFuture.completedFuture(null);
+    }
+    CompletableFuture<Message> answer = register(request);
+    try {
+      write(request);
+    } catch (IOException e) {
+      pending.remove(request.getRequestId());
+      throw e;
+    }
+    return answer;
+  }
+
+  /**
+   * Tag a request with a new request id and wait for its answer, leaving the caller to write it. Used
+   * by clients that write from their own thread
+   *
+   * @param request the request about to be sent, it must not be sent again
+   * @return a future completed with the answer, or exceptionally if the connection is lost first
+   * @throws IOException if the connection is already lost
+   */
+  public CompletableFuture<Message> register(Message request) throws IOException {
+    IOException failure = closed;
+    if (failure != null) {
+      throw failure;
+    }
+    int requestId = lastRequestId.updateAndGet(last -> last == Integer.MAX_VALUE ? 1 : last + 1);
+    CompletableFuture<Message> answer = new CompletableFuture<>();
+    pending.put(requestId, answer);
+    request.setRequestId(requestId);
+    failure = closed;
+    if (failure != null && pending.remove(requestId, answer)) {
+      answer.completeExceptionally(failure);
+    }
+    return answer;
+  }
+
+  /**
+   * Give up on a registered request that could not be sent
+   *
+   * @param request the request
+   * @param cause why it could not be sent
+   */
+  public void fail(Message request, IOException cause) {
+    CompletableFuture<Message> answer = pending.remove(request.getRequestId());
+    if (answer != null) {
+      answer.completeExceptionally(cause);
+    }
+  }
+
+  /**
+   * Write a message without waiting for an answer, such as one the server never answers
+   *
+   * @param message the message to write
+   * @throws IOException if the message cannot be written
+   */
+  public void write(Message message) throws IOException {
+    synchronized (out) {
+      format.write(message, out);
+    }
+  }
+
+  /**
+   * Hand a message from the server to the request it answers, called by the reading thread
+   *
+   * @param message a message read from the server
+   * @return true if the message answered a pending request, false if the caller should handle it
+   */
+  public boolean complete(Message message) {
+    if (message.getRequestId() == 0) {
+      return false;
+    }
+    CompletableFuture<Message> answer = pending.remove(message.getRequestId());
+    if (answer == null) {
+      return false;
+    }
+    answer.complete(message);
+    return true;
+  }
+
+  /**
+   * Fail every pending request and every later one, once the connection is lost
+   *
+   * @param cause why the connection was lost
+   */
+  public void failAll(IOException cause) {
+    closed = cause;
+    for (Integer requestId : pending.keySet()) {
+      CompletableFuture<Message> answer = pending.remove(requestId);
+      if (answer != null) {
+        answer.completeExceptionally(cause);
+      }
+    }
+  }
+
+  /**
+   *
+   * @return the number of requests sent and not answered yet
+   */
+  public int size() {
+    return pending.size();
+  }
+
+  /**
+   *
+   * @return the wire format of the connection
+   */
+  public WireFormat getFormat() {
+    return format;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "PendingRequests{format:" + format + ", pending:" + pending.size() + "}";
+  }
+}
@@ -0,0 +1,143 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import messageModel.PresenceDelta;
+import messageModel.PresenceSync;
+
+/**
+ * Represents a client's own copy of who is connected, kept up to date from the server's presence
+ * subscription so recipients can be checked without asking the server. A PresenceSync replaces the
+ * copy, and each PresenceDelta must carry the next sequence number. A delta that skips a number means
+ * a change was missed, so the copy is marked stale until the next PresenceSync arrives. The listener
+ * thread applies messages while the talker thread reads, so every method is synchronized
+ */
+public class PresenceView {
+  private final String username;
+  private final Set<String> usernames;
+  private long sequence;
+  private boolean synced;
+  private boolean stale;
+  private boolean resyncRequested;
+
+  /**
+   * Construct an empty PresenceView
+   *
+   * @param username the username of this client, never reported as another connected user
+   */
+  public PresenceView(String username) {
+    this.username = username;
+    this.usernames = new HashSet<>();
+  }
+
+  /**
+   * Replace the copy with a full list from the server
+   *
+   * @param sync every connected user as of a sequence number
+   */
+  public synchronized void apply(PresenceSync sync) {
+    usernames.clear();
+    usernames.addAll(sync.getUsernames());
+    sequence = sync.getSequence();
+    synced = true;
+    stale = false;
+    resyncRequested = false;
+  }
+
+  /**
+   * Apply one change. Deltas from before the last PresenceSync are ignored, and a delta that skips a
+   * sequence number marks the copy stale
+   *
+   * @param delta a user joining or leaving
+   * @return true if the change was applied
+   */
+  public synchronized boolean apply(PresenceDelta delta) {
+    if (!synced || stale || delta.getSequence() <= sequence) {
+      return false;
+    }
+    if (delta.getSequence() != sequence + 1) {
+      stale = true;
+      return false;
+    }
+    if (delta.isJoined()) {
+      usernames.add(delta.getUsername());
+    } else {
+      usernames.remove(delta.getUsername());
+    }
+    sequence = delta.getSequence();
+    return true;
+  }
+
+  /**
+   * Check a recipient before sending to it. Until the first PresenceSync arrives nothing is known, so
+   * every other username is let through and the server has the final word
+   *
+   * @param name a username
+   * @return true if the user is someone else who is connected, as far as this copy knows
+   */
+  public synchronized boolean contains(String name) {
+    if (name == null || name.equals(username)) {
+      return false;
+    }
+    return !synced || usernames.contains(name);
+  }
+
+  /**
+   * Claim the job of subscribing again after a missed change, so only one new subscription is sent per
+   * gap
+   *
+   * @return true if the copy is stale and nobody has asked for a new PresenceSync yet
+   */
+  public synchronized boolean claimResync() {
+    if (!stale || resyncRequested) {
+      return false;
+    }
+    resyncRequested = true;
+    return true;
+  }
+
+  /**
+   *
+   * @return the other connected users in sorted order
+   */
+  public synchronized List<String> getUsernames() {
+    List<String> others = new ArrayList<>(usernames);
+    others.remove(username);
+    Collections.sort(others);
+    return others;
+  }
+
+  /**
+   *
+   * @return the sequence number of the last change applied
+   */
+  public synchronized long getSequence() {
+    return sequence;
+  }
+
+  /**
+   *
+   * @return true once a PresenceSync has arrived
+   */
+  public synchronized boolean isSynced() {
+    return synced;
+  }
+
+  /**
+   *
+   * @return true if a change was missed since the last PresenceSync
+   */
+  public synchronized boolean isStale() {
+    return stale;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    return "PresenceView{sequence:" + sequence + ", users:" + usernames.size() + ", synced:" + synced
+        + ", stale:" + stale + "}";
+  }
+}
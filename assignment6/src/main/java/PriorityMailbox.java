@@ -0,0 +1,281 @@
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import messageModel.Message;
+
+/**
+ * Represents a user's outbound queue split into two lanes, each an MpscRingBuffer, so replies to the
+ * user's own requests are not stuck behind a backlog of chat traffic. Each message goes in the lane
+ * {@link Lane#of} picks, and the writer takes batches shared between the lanes by the
+ * {@link LaneWeights}, control first. The writer parks once for both lanes.
+ * <p>
+ * Ordering guarantees:
+ * <ul>
+ *   <li>Messages in the same lane are taken in the order they were put, and messages put by one thread
+ *   into one lane keep that thread's order.</li>
+ *   <li>A control message may be taken before bulk messages put earlier, so a reply can arrive before
+ *   chat traffic sent to the user before it was asked for.</li>
+ *   <li>A bulk message is only taken before a control message put earlier while more than the control
+ *   weight of control messages are waiting, and at most the bulk weight of them per round.</li>
+ *   <li>The close signal goes in the bulk lane like any other message, so it is taken after everything
+ *   queued before it in the bulk lane, but may be taken before control messages queued before it while
+ *   more than the control weight of them are waiting. A writer that sees it keeps taking until both lanes
+ *   are empty.</li>
+ * </ul>
+ * A resumable session numbers messages as they are written, so its sequence numbers follow the order
+ * the lanes are taken in, not the order messages were put
+ */
+public class PriorityMailbox extends AbstractQueue<Message> implements BlockingQueue<Message> {
+  private final MpscRingBuffer<Message> control;
+  private final MpscRingBuffer<Message> bulk;
+  private final AtomicReference<Thread> waiter = new AtomicReference<>();
+  private final WaitStrategy waitStrategy;
+  private volatile LaneWeights weights;
+
+  /**
+   * Construct a PriorityMailbox
+   *
+   * @param capacity the most messages each lane holds, rounded up to a power of two
+   * @param weights how batches are shared between the lanes
+   * @param waitStrategy how the writer waits while both lanes are empty
+   */
+  public PriorityMailbox(int capacity, LaneWeights weights, WaitStrategy waitStrategy) {
+    this.control = new MpscRingBuffer<>(MpscRingBuffer.DEFAULT_INITIAL_CAPACITY, capacity, waitStrategy, waiter);
+    this.bulk = new MpscRingBuffer<>(MpscRingBuffer.DEFAULT_INITIAL_CAPACITY, capacity, waitStrategy, waiter);
+    this.weights = Objects.requireNonNull(weights);
+    this.waitStrategy = waitStrategy;
+  }
+
+  /**
+   * @param lane a lane
+   * @return the queue of the lane
+   */
+  private MpscRingBuffer<Message> queue(Lane lane) {
+    return lane == Lane.CONTROL ? control : bulk;
+  }
+
+  /**
+   * Put a message in its lane unless the lane is full, without locking
+   *
+   * @param message the message
+   * @return false if the lane is full
+   */
+  @Override
+  public boolean offer(Message message) {
+    return queue(Lane.of(message)).offer(message);
+  }
+
+  /**
+   * Put a message in its lane, waiting for room while the lane is full
+   *
+   * @param message the message
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Override
+  public void put(Message message) throws InterruptedException {
+    queue(Lane.of(message)).put(message);
+  }
+
+  /**
+   * Put a message in its lane, waiting up to a timeout for room while the lane is full
+   *
+   * @param message the message
+   * @param timeout how long to wait
+   * @param unit the unit of the timeout
+   * @return false if the lane was still full at the timeout
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Override
+  public boolean offer(Message message, long timeout, TimeUnit unit) throws InterruptedException {
+    return queue(Lane.of(message)).offer(message, timeout, unit);
+  }
+
+  /**
+   * Take the oldest control message, or the oldest bulk message if no control message is waiting
+   *
+   * @return the message, or null if both lanes are empty
+   */
+  @Override
+  public Message poll() {
+    Message message = control.poll();
+    return message != null ? message : bulk.poll();
+  }
+
+  /**
+   * Take the oldest message of one lane
+   *
+   * @param lane the lane
+   * @return the message, or null if the lane is empty
+   */
+  public Message poll(Lane lane) {
+    return queue(lane).poll();
+  }
+
+  /**
+   * @return the message poll would take, or null if both lanes are empty
+   */
+  @Override
+  public Message peek() {
+    Message message = control.peek();
+    return message != null ? message : bulk.peek();
+  }
+
+  /**
+   * Take the next message, waiting as the wait strategy says while both lanes are empty
+   *
+   * @return the message
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Override
+  public Message take() throws InterruptedException {
+    while (true) {
+      Message message = poll();
+      if (message != null) {
+        return message;
+      }
+      awaitNotEmpty();
+    }
+  }
+
+  /**
+   * Take the next message, waiting up to a timeout while both lanes are empty
+   *
+   * @param timeout how long to wait
+   * @param unit the unit of the timeout
+   * @return the message, or null if the timeout passed first
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Override
+  public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (true) {
+      Message message = poll();
+      if (message != null) {
+        return message;
+      }
+      if (!MpscRingBuffer.await(this::isEmpty, waiter, waitStrategy, true, deadline)) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Wait as the wait strategy says until either lane has a message, without taking it
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void awaitNotEmpty() throws InterruptedException {
+    MpscRingBuffer.await(this::isEmpty, waiter, waitStrategy, false, 0);
+  }
+
+  /**
+   * Take every message queued so far, shared between the lanes by the weights
+   *
+   * @param c the collection to add them to
+   * @return how many were taken
+   */
+  @Override
+  public int drainTo(Collection<? super Message> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Take up to a number of messages in rounds, each round up to the control weight of control messages
+   * then up to the bulk weight of bulk messages
+   *
+   * @param c the collection to add them to
+   * @param maxElements the most to take
+   * @return how many were taken
+   */
+  @Override
+  public int drainTo(Collection<? super Message> c, int maxElements) {
+    if (c == this) {
+      throw new IllegalArgumentException("Cannot drain a queue into itself");
+    }
+    LaneWeights current = weights;
+    int taken = 0;
+    while (taken < maxElements) {
+      int round = control.drainTo(c, Math.min(current.getControl(), maxElements - taken));
+      if (taken + round < maxElements) {
+        round += bulk.drainTo(c, Math.min(current.getBulk(), maxElements - taken - round));
+      }
+      if (round == 0) {
+        break;
+      }
+      taken += round;
+    }
+    return taken;
+  }
+
+  /**
+   *
+   * @return how many messages are queued in both lanes
+   */
+  @Override
+  public int size() {
+    return control.size() + bulk.size();
+  }
+
+  /**
+   * @param lane a lane
+   * @return how many messages are queued in the lane
+   */
+  public int size(Lane lane) {
+    return queue(lane).size();
+  }
+
+  /**
+   *
+   * @return true if both lanes are empty
+   */
+  @Override
+  public boolean isEmpty() {
+    return control.isEmpty() && bulk.isEmpty();
+  }
+
+  /**
+   *
+   * @return how many more messages fit in the bulk lane, the one that fills up
+   */
+  @Override
+  public int remainingCapacity() {
+    return bulk.remainingCapacity();
+  }
+
+  /**
+   *
+   * @return how batches are shared between the lanes
+   */
+  public LaneWeights getWeights() {
+    return weights;
+  }
+
+  /**
+   * Set how batches taken from now on are shared between the lanes
+   *
+   * @param weights the weights
+   */
+  public void setWeights(LaneWeights weights) {
+    this.weights = Objects.requireNonNull(weights);
+  }
+
+  /**
+   * Copy the queued messages, control lane first, each lane oldest first
+   *
+   * @return an iterator over the copy, which cannot remove
+   */
+  @Override
+  public Iterator<Message> iterator() {
+    List<Message> snapshot = new ArrayList<>();
+    control.forEach(snapshot::add);
+    bulk.forEach(snapshot::add);
+    return Collections.unmodifiableList(snapshot).iterator();
+  }
+}
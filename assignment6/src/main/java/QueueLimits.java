@@ -0,0 +1,106 @@
+import java.util.Objects;
+
+/**
+ * Represents the most a single user's outbound queue may hold, by message count and by encoded bytes,
+ * and what to do when a new message does not fit
+ */
+public class QueueLimits {
+  /**
+   * No limit at all
+   */
+  public static final QueueLimits UNBOUNDED =
+      new QueueLimits(Integer.MAX_VALUE, Long.MAX_VALUE, SlowConsumerPolicy.DROP_OLDEST);
+
+  private final int maxMessages;
+  private final long maxBytes;
+  private final SlowConsumerPolicy policy;
+
+  /**
+   * Construct QueueLimits
+   *
+   * @param maxMessages most messages queued for one user
+   * @param maxBytes most encoded bytes queued for one user
+   * @param policy what to do when a new message does not fit
+   */
+  public QueueLimits(int maxMessages, long maxBytes, SlowConsumerPolicy policy) {
+    if (maxMessages < 1 || maxBytes < 1) {
+      throw new IllegalArgumentException("Queue limits must be positive");
+    }
+    this.maxMessages = maxMessages;
+    this.maxBytes = maxBytes;
+    this.policy = Objects.requireNonNull(policy);
+  }
+
+  /**
+   *
+   * @return most messages queued for one user
+   */
+  public int getMaxMessages() {
+    return maxMessages;
+  }
+
+  /**
+   *
+   * @return most encoded bytes queued for one user
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   *
+   * @return what to do when a new message does not fit
+   */
+  public SlowConsumerPolicy getPolicy() {
+    return policy;
+  }
+
+  /**
+   * @param messages queued message count
+   * @param bytes queued byte count
+   * @param factor how many times the limits to allow
+   * @return true if the counts are within the limits times the factor
+   */
+  public boolean fits(long messages, long bytes, int factor) {
+    return messages <= (long) maxMessages * factor && bytes <= saturatedMultiply(maxBytes, factor);
+  }
+
+  /**
+   * @param value a positive value
+   * @param factor a positive factor
+   * @return value times factor, or Long.MAX_VALUE on overflow
+   */
+  private static long saturatedMultiply(long value, int factor) {
+    return value > Long.MAX_VALUE / factor ? Long.MAX_VALUE : value * factor;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof QueueLimits that)) {
+      return false;
+    }
+    return maxMessages == that.maxMessages && maxBytes == that.maxBytes && policy == that.policy;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(maxMessages, maxBytes, policy);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "QueueLimits{maxMessages=" + maxMessages + ", maxBytes=" + maxBytes + ", policy=" + policy + "}";
+  }
+}
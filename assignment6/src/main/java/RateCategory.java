@@ -0,0 +1,67 @@
+import protocol.Protocol;
+
+/**
+ * Represents the budgets a user's messages are charged to by their RateLimits
+ */
+public enum RateCategory {
+  /**
+   * Broadcasts and room messages, which fan out to many users
+   */
+  BROADCAST("broadcasts"),
+  /**
+   * Direct messages
+   */
+  DIRECT("direct messages"),
+  /**
+   * Insults
+   */
+  INSULT("insults"),
+  /**
+   * Queries of users, the directory and history, presence subscriptions, joining and leaving rooms and
+   * pings
+   */
+  QUERY("queries");
+
+  private final String description;
+
+  /**
+   * @param description what the category holds, for error messages
+   */
+  RateCategory(String description) {
+    this.description = description;
+  }
+
+  /**
+   *
+   * @return what the category holds, for error messages
+   */
+  public String getDescription() {
+    return description;
+  }
+
+  /**
+   * @param messageType the type of a message read from a user
+   * @return the budget the message is charged to, or null if it is never limited
+   */
+  public static RateCategory of(int messageType) {
+    switch (messageType) {
+      case Protocol.BROADCAST_MESSAGE:
+      case Protocol.ROOM_MESSAGE:
+        return BROADCAST;
+      case Protocol.DIRECT_MESSAGE:
+        return DIRECT;
+      case Protocol.SEND_INSULT:
+        return INSULT;
+      case Protocol.QUERY_CONNECTED_USERS:
+      case Protocol.QUERY_DIRECTORY:
+      case Protocol.HISTORY_QUERY:
+      case Protocol.SUBSCRIBE_PRESENCE:
+      case Protocol.JOIN_ROOM:
+      case Protocol.LEAVE_ROOM:
+      case Protocol.PING:
+        return QUERY;
+      default:
+        return null;
+    }
+  }
+}
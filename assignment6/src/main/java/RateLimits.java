@@ -0,0 +1,141 @@
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Represents how fast a single user may send each category of message, as a steady rate and a burst
+ * allowed on top of it. A category without a limit is never charged
+ */
+public class RateLimits {
+  /**
+   * No limit at all
+   */
+  public static final RateLimits UNLIMITED = new RateLimits(new double[RateCategory.values().length],
+      new int[RateCategory.values().length]);
+
+  private final double[] ratesPerSecond;
+  private final int[] bursts;
+
+  /**
+   * @param ratesPerSecond the rate of each category by ordinal, 0 if it is not limited
+   * @param bursts the burst of each category by ordinal, 0 if it is not limited
+   */
+  private RateLimits(double[] ratesPerSecond, int[] bursts) {
+    this.ratesPerSecond = ratesPerSecond;
+    this.bursts = bursts;
+  }
+
+  /**
+   * Copy these limits with one category limited
+   *
+   * @param category the category
+   * @param ratePerSecond how many messages of the category a user may send each second
+   * @param burst how many messages of the category a user may send at once after being quiet
+   * @return the new limits
+   * @throws IllegalArgumentException if the rate or burst is not positive
+   */
+  public RateLimits with(RateCategory category, double ratePerSecond, int burst) {
+    if (!(ratePerSecond > 0) || Double.isInfinite(ratePerSecond) || burst < 1) {
+      throw new IllegalArgumentException("Rate limits must be positive");
+    }
+    double[] newRates = ratesPerSecond.clone();
+    int[] newBursts = bursts.clone();
+    newRates[category.ordinal()] = ratePerSecond;
+    newBursts[category.ordinal()] = burst;
+    return new RateLimits(newRates, newBursts);
+  }
+
+  /**
+   * Copy these limits with one category not limited
+   *
+   * @param category the category
+   * @return the new limits
+   */
+  public RateLimits without(RateCategory category) {
+    double[] newRates = ratesPerSecond.clone();
+    int[] newBursts = bursts.clone();
+    newRates[category.ordinal()] = 0;
+    newBursts[category.ordinal()] = 0;
+    return new RateLimits(newRates, newBursts);
+  }
+
+  /**
+   * @param category the category
+   * @return true if messages of the category are limited
+   */
+  public boolean isLimited(RateCategory category) {
+    return bursts[category.ordinal()] > 0;
+  }
+
+  /**
+   * @param category the category
+   * @return how many messages of the category a user may send each second, 0 if it is not limited
+   */
+  public double getRatePerSecond(RateCategory category) {
+    return ratesPerSecond[category.ordinal()];
+  }
+
+  /**
+   * @param category the category
+   * @return how many messages of the category a user may send at once, 0 if it is not limited
+   */
+  public int getBurst(RateCategory category) {
+    return bursts[category.ordinal()];
+  }
+
+  /**
+   * Make the full buckets one user's messages are charged to
+   *
+   * @return a bucket for each category by ordinal, null for a category that is not limited
+   */
+  public TokenBucket[] newBuckets() {
+    TokenBucket[] buckets = new TokenBucket[bursts.length];
+    for (int i = 0; i < buckets.length; i++) {
+      if (bursts[i] > 0) {
+        buckets[i] = new TokenBucket(ratesPerSecond[i], bursts[i]);
+      }
+    }
+    return buckets;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof RateLimits that)) {
+      return false;
+    }
+    return Arrays.equals(ratesPerSecond, that.ratesPerSecond) && Arrays.equals(bursts, that.bursts);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(Arrays.hashCode(ratesPerSecond), Arrays.hashCode(bursts));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("RateLimits{");
+    for (RateCategory category : RateCategory.values()) {
+      if (builder.length() > "RateLimits{".length()) {
+        builder.append(", ");
+      }
+      builder.append(category).append('=');
+      if (isLimited(category)) {
+        builder.append(getRatePerSecond(category)).append("/s burst ").append(getBurst(category));
+      } else {
+        builder.append("unlimited");
+      }
+    }
+    return builder.append('}').toString();
+  }
+}
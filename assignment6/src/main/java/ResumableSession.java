@@ -0,0 +1,157 @@
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import messageModel.ConnectResp;
+import messageModel.Message;
+import messageModel.PooledFrame;
+
+/**
+ * Represents a user's session, which can outlive the connection it started on. Every frame written to
+ * the user after the ConnectResp is counted, so the n-th frame has sequence number n without the number
+ * taking any room on the wire and shared frames stay shared, and the last frames written are kept. A
+ * client that reconnects with the session's resume token and the sequence number of the last frame it
+ * read gets the frames it missed again, numbered as before, followed by everything queued since
+ */
+public class ResumableSession {
+  public static final int DEFAULT_REPLAY_CAPACITY = 1024;
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+  private static final int TOKEN_BYTES = 18;
+
+  private final String token;
+  private final String username;
+  private final Message[] replay;
+  private ClientThread owner;
+  private long sentSequence;
+  private HashedTimerWheel.Timeout expiry;
+
+  /**
+   * Start a session with the default replay capacity
+   *
+   * @param username the user the session belongs to
+   * @param owner delivering messages to the user
+   */
+  public ResumableSession(String username, ClientThread owner) {
+    this(username, owner, DEFAULT_REPLAY_CAPACITY);
+  }
+
+  /**
+   * Start a session with a new random resume token
+   *
+   * @param username the user the session belongs to
+   * @param owner delivering messages to the user
+   * @param replayCapacity how many of the last frames written are kept to be sent again
+   */
+  public ResumableSession(String username, ClientThread owner, int replayCapacity) {
+    if (replayCapacity < 1) {
+      throw new IllegalArgumentException("replayCapacity must be at least 1");
+    }
+    byte[] bytes = new byte[TOKEN_BYTES];
+    RANDOM.nextBytes(bytes);
+    this.token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    this.username = username;
+    this.owner = owner;
+    this.replay = new Message[replayCapacity];
+  }
+
+  /**
+   * Count a message its owner is about to write and keep it. A pooled frame is copied, since its buffer
+   * is reused once written. The ConnectResp is not counted
+   *
+   * @param writer the ClientThread writing the message
+   * @param message the message
+   * @return false if the session was taken over by another connection, which should write the message
+   *         instead
+   */
+  public synchronized boolean record(ClientThread writer, Message message) {
+    if (message instanceof ConnectResp) {
+      return true;
+    }
+    if (writer != owner) {
+      return false;
+    }
+    sentSequence++;
+    replay[(int) (sentSequence % replay.length)] =
+        message instanceof PooledFrame ? ((PooledFrame) message).copy() : message;
+    return true;
+  }
+
+  /**
+   * Move the session to a new connection. The frames after the last one the client read are handed
+   * back, and the count goes back to that frame, so they get the same sequence numbers when they are
+   * written again
+   *
+   * @param newOwner delivering messages to the user from now on
+   * @param lastSequence the sequence number of the last frame the client read
+   * @return the frames to write again, oldest first, or null if the client claims frames that were never
+   *         written or missed frames that are no longer kept
+   */
+  public synchronized List<Message> takeOver(ClientThread newOwner, long lastSequence) {
+    if (lastSequence > sentSequence || lastSequence < sentSequence - replay.length || lastSequence < 0) {
+      return null;
+    }
+    List<Message> missed = new ArrayList<>((int) (sentSequence - lastSequence));
+    for (long sequence = lastSequence + 1; sequence <= sentSequence; sequence++) {
+      missed.add(replay[(int) (sequence % replay.length)]);
+    }
+    sentSequence = lastSequence;
+    owner = newOwner;
+    setExpiry(null);
+    return missed;
+  }
+
+  /**
+   * Set when the session is given up unless resumed, cancelling the previous deadline. A session that
+   * is taken over has its deadline cancelled
+   *
+   * @param expiry the timeout giving the session up, or null
+   */
+  public synchronized void setExpiry(HashedTimerWheel.Timeout expiry) {
+    if (this.expiry != null && this.expiry != expiry) {
+      this.expiry.cancel();
+    }
+    this.expiry = expiry;
+  }
+
+  /**
+   *
+   * @return the token a client resumes the session with
+   */
+  public String getToken() {
+    return token;
+  }
+
+  /**
+   *
+   * @return the user the session belongs to
+   */
+  public String getUsername() {
+    return username;
+  }
+
+  /**
+   *
+   * @return the ClientThread delivering messages to the user
+   */
+  public synchronized ClientThread getOwner() {
+    return owner;
+  }
+
+  /**
+   *
+   * @return the sequence number of the last frame written
+   */
+  public synchronized long getSentSequence() {
+    return sentSequence;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized String toString() {
+    return "ResumableSession{username:" + username + ", sentSequence:" + sentSequence + ", replayCapacity:"
+        + replay.length + "}";
+  }
+}
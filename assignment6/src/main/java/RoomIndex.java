@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Represents the named rooms on a server, indexed from room name to members so a message for a room
+ * only visits that room's members. Members are keyed by username and matched by identity, the same way
+ * the server's user map is. Every ClientThread also keeps the names of its rooms, so leaving them all on
+ * disconnect only visits the rooms the user is actually in. A room exists while it has members
+ */
+public class RoomIndex {
+  /**
+   * Longest room name accepted, in characters
+   */
+  public static final int MAX_ROOM_NAME_LENGTH = 64;
+
+  private final ConcurrentHashMap<String, ConcurrentHashMap<String, ClientThread>> rooms;
+
+  /**
+   * Construct an empty RoomIndex
+   */
+  public RoomIndex() {
+    this.rooms = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * @param roomName a room name sent by a user
+   * @return true if it is not empty, not too long and has no whitespace
+   */
+  public static boolean isValidRoomName(String roomName) {
+    if (roomName == null || roomName.isEmpty() || roomName.length() > MAX_ROOM_NAME_LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < roomName.length(); i++) {
+      if (Character.isWhitespace(roomName.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Add a user to a room, creating the room if needed. An older connection holding the same username
+   * is replaced
+   *
+   * @param roomName the room to join
+   * @param member delivering messages to the user
+   * @return true if the user was not in the room yet
+   */
+  public boolean join(String roomName, ClientThread member) {
+    ClientThread[] previous = new ClientThread[1];
+    rooms.compute(roomName, (name, members) -> {
+      ConcurrentHashMap<String, ClientThread> current = members == null ? new ConcurrentHashMap<>() : members;
+      previous[0] = current.put(member.getUserName(), member);
+      return current;
+    });
+    if (previous[0] == member) {
+      return false;
+    }
+    if (previous[0] != null) {
+      previous[0].getRooms().remove(roomName);
+    }
+    member.getRooms().add(roomName);
+    return true;
+  }
+
+  /**
+   * Remove a user from a room, removing the room once it is empty. The connection is matched by identity
+   * since ClientThread equality does not tell two connections with the same username apart
+   *
+   * @param roomName the room to leave
+   * @param member delivering messages to the user
+   * @return true if the user was in the room
+   */
+  public boolean leave(String roomName, ClientThread member) {
+    boolean[] left = new boolean[1];
+    rooms.computeIfPresent(roomName, (name, members) -> {
+      members.computeIfPresent(member.getUserName(), (username, current) -> {
+        left[0] = current == member;
+        return left[0] ? null : current;
+      });
+      return members.isEmpty() ? null : members;
+    });
+    member.getRooms().remove(roomName);
+    return left[0];
+  }
+
+  /**
+   * Remove a user from every room it is in
+   *
+   * @param member delivering messages to the user
+   */
+  public void leaveAll(ClientThread member) {
+    for (String roomName : new ArrayList<>(member.getRooms())) {
+      leave(roomName, member);
+    }
+  }
+
+  /**
+   * @param roomName a room
+   * @param member delivering messages to a user
+   * @return true if that connection is in the room
+   */
+  public boolean isMember(String roomName, ClientThread member) {
+    ConcurrentHashMap<String, ClientThread> members = rooms.get(roomName);
+    return members != null && members.get(member.getUserName()) == member;
+  }
+
+  /**
+   * @param roomName a room
+   * @return a live view of the room's members, empty if the room does not exist
+   */
+  public Collection<ClientThread> getMembers(String roomName) {
+    ConcurrentHashMap<String, ClientThread> members = rooms.get(roomName);
+    return members == null ? Collections.emptyList() : Collections.unmodifiableCollection(members.values());
+  }
+
+  /**
+   *
+   * @return number of rooms with at least one member
+   */
+  public int getRoomCount() {
+    return rooms.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "RoomIndex{rooms:" + rooms.size() + "}";
+  }
+}
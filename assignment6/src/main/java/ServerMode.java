@@ -0,0 +1,29 @@
+/**
+ * Represents the ways a ChatServer can run its connections
+ */
+public enum ServerMode {
+  /**
+   * One reader task and one ClientThread writer per connection, using blocking socket streams
+   */
+  BLOCKING,
+  /**
+   * Same as BLOCKING, but every reader and writer task runs on its own virtual thread. Needs Java 21,
+   * older runtimes fall back to platform threads
+   */
+  VIRTUAL_THREADS,
+  /**
+   * A few selector event loops shared by every connection, using non-blocking channels
+   */
+  NIO;
+
+  /**
+   * Java 19 and 20 have virtual threads only as a preview, which fails without --enable-preview, so
+   * only Java 21 and later count
+   *
+   * @return false for VIRTUAL_THREADS on a runtime before Java 21, where it falls back to platform
+   * threads, true otherwise
+   */
+  public boolean isAvailable() {
+    return this != VIRTUAL_THREADS || Runtime.version().feature() >= 21;
+  }
+}
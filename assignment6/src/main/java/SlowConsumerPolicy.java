@@ -0,0 +1,18 @@
+/**
+ * Represents what a ClientThread does when its outbound queue goes over its QueueLimits
+ */
+public enum SlowConsumerPolicy {
+  /**
+   * Drop the oldest queued messages until the new one fits, chat traffic in the bulk lane before replies
+   * in the control lane
+   */
+  DROP_OLDEST,
+  /**
+   * Drop new broadcasts and room messages but keep queuing everything else, up to twice the limits
+   */
+  DROP_BROADCASTS,
+  /**
+   * Send the user a FailedMessage and disconnect them
+   */
+  DISCONNECT
+}
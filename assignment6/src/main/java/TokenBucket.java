@@ -0,0 +1,99 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents a token bucket holding up to a burst of tokens and refilled at a steady rate. Rather than a
+ * token count and a refill time, the whole state is one atomic long: the time at which the bucket will
+ * be full again. Taking a token pushes that time one refill interval later, and is refused if that
+ * would put it more than a full bucket's worth of intervals ahead of now. So a token is taken with one
+ * compare-and-set, no lock and no timer, and any thread may take tokens
+ */
+public class TokenBucket {
+  private final double ratePerSecond;
+  private final int burst;
+  private final long intervalNanos;
+  private final long capacityNanos;
+  private final AtomicLong fullAt;
+
+  /**
+   * Construct a full bucket
+   *
+   * @param ratePerSecond how many tokens are added each second
+   * @param burst the most tokens the bucket holds
+   */
+  public TokenBucket(double ratePerSecond, int burst) {
+    if (!(ratePerSecond > 0) || Double.isInfinite(ratePerSecond) || burst < 1) {
+      throw new IllegalArgumentException("ratePerSecond and burst must be positive");
+    }
+    this.ratePerSecond = ratePerSecond;
+    this.burst = burst;
+    this.intervalNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+    if (intervalNanos > Long.MAX_VALUE / 4 / burst) {
+      throw new IllegalArgumentException("ratePerSecond is too low for the burst");
+    }
+    this.capacityNanos = intervalNanos * burst;
+    this.fullAt = new AtomicLong(System.nanoTime());
+  }
+
+  /**
+   * Take one token if there is one
+   *
+   * @return true if a token was taken
+   */
+  public boolean tryAcquire() {
+    return tryAcquire(System.nanoTime());
+  }
+
+  /**
+   * Take one token if there is one
+   *
+   * @param now the current System.nanoTime()
+   * @return true if a token was taken
+   */
+  public boolean tryAcquire(long now) {
+    while (true) {
+      long current = fullAt.get();
+      long next = (current - now < 0 ? now : current) + intervalNanos;
+      if (next - now > capacityNanos) {
+        return false;
+      }
+      if (fullAt.compareAndSet(current, next)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @param now the current System.nanoTime()
+   * @return how many tokens the bucket holds
+   */
+  public int getAvailableTokens(long now) {
+    long owed = Math.max(0, fullAt.get() - now);
+    return (int) ((capacityNanos - owed) / intervalNanos);
+  }
+
+  /**
+   *
+   * @return how many tokens are added each second
+   */
+  public double getRatePerSecond() {
+    return ratePerSecond;
+  }
+
+  /**
+   *
+   * @return the most tokens the bucket holds
+   */
+  public int getBurst() {
+    return burst;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "TokenBucket{ratePerSecond:" + ratePerSecond + ", burst:" + burst + ", available:"
+        + getAvailableTokens(System.nanoTime()) + "}";
+  }
+}
@@ -0,0 +1,119 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Represents the connected usernames in sorted order, so a page of the users whose names start with a
+ * prefix can be found in O(log n + page) without looking at anyone else. The server keeps it in step
+ * with its user map. Pages are resumed with a cursor, the last username of the previous page, so users
+ * coming and going between pages never make a page repeat or skip a name that was there throughout
+ */
+public class UserDirectory {
+  /**
+   * Most usernames returned in one page
+   */
+  public static final int MAX_PAGE_SIZE = 1000;
+
+  private final ConcurrentSkipListSet<String> usernames;
+
+  /**
+   * Construct an empty UserDirectory
+   */
+  public UserDirectory() {
+    this.usernames = new ConcurrentSkipListSet<>();
+  }
+
+  /**
+   * @param username a user who connected
+   */
+  public void add(String username) {
+    usernames.add(username);
+  }
+
+  /**
+   * @param username a user who disconnected
+   */
+  public void remove(String username) {
+    usernames.remove(username);
+  }
+
+  /**
+   * Find one page of the usernames starting with a prefix
+   *
+   * @param prefix the start every returned username shares, empty for everyone
+   * @param cursor the last username of the previous page, or empty for the first page
+   * @param pageSize the most usernames to return, at most {@link #MAX_PAGE_SIZE}
+   * @return the page, with the cursor of the next page or empty if this is the last one
+   */
+  public Page page(String prefix, String cursor, int pageSize) {
+    if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+      throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_PAGE_SIZE);
+    }
+    NavigableSet<String> tail = cursor.isEmpty() || cursor.compareTo(prefix) < 0
+        ? usernames.tailSet(prefix, true) : usernames.tailSet(cursor, false);
+    List<String> names = new ArrayList<>(Math.min(pageSize, 64));
+    Iterator<String> iterator = tail.iterator();
+    while (iterator.hasNext()) {
+      String username = iterator.next();
+      if (!username.startsWith(prefix)) {
+        break;
+      }
+      if (names.size() == pageSize) {
+        return new Page(names, names.get(pageSize - 1));
+      }
+      names.add(username);
+    }
+    return new Page(names, "");
+  }
+
+  /**
+   *
+   * @return the number of usernames in the directory
+   */
+  public int size() {
+    return usernames.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "UserDirectory{users:" + usernames.size() + "}";
+  }
+
+  /**
+   * Represents one page of a directory query
+   */
+  public static class Page {
+    private final List<String> usernames;
+    private final String nextCursor;
+
+    /**
+     * @param usernames the usernames on the page, in sorted order
+     * @param nextCursor where the next page starts, or empty if there is none
+     */
+    Page(List<String> usernames, String nextCursor) {
+      this.usernames = usernames;
+      this.nextCursor = nextCursor;
+    }
+
+    /**
+     *
+     * @return the usernames on the page, in sorted order
+     */
+    public List<String> getUsernames() {
+      return usernames;
+    }
+
+    /**
+     *
+     * @return where the next page starts, or empty if there is none
+     */
+    public String getNextCursor() {
+      return nextCursor;
+    }
+  }
+}
@@ -0,0 +1,14 @@
+/**
+ * Represents how the thread taking from an MpscRingBuffer waits while it is empty
+ */
+public enum WaitStrategy {
+  /**
+   * Spin a short while before parking, so a message arriving right after a batch is picked up without
+   * the cost of parking and being woken
+   */
+  SPIN_THEN_PARK,
+  /**
+   * Park straight away, using no CPU while there is nothing to take
+   */
+  BLOCK
+}
@@ -14,6 +14,7 @@ import protocol.Protocol;
  */
 public class ConnectMessage extends Message {
   private String username;
+  private int maxVersion;
 
   /**
    * Construct a ConnectMessage containing a username indicating this user is trying to connect to
@@ -21,8 +22,19 @@ public class ConnectMessage extends Message {
    * @param username the user who is trying to connect to the server
    */
   public ConnectMessage(String username) {
+    this(username, Protocol.VERSION_1);
+  }
+
+  /**
+   * Construct a ConnectMessage that also offers the highest protocol version the client speaks. Above
+   * version 1 it is sent as a {@link Protocol#VERSIONED_CONNECT_MESSAGE}
+   * @param username the user who is trying to connect to the server
+   * @param maxVersion the highest protocol version the client speaks
+   */
+  public ConnectMessage(String username, int maxVersion) {
     this.messageType = Protocol.CONNECT_MESSAGE;
     this.username = username;
+    this.maxVersion = maxVersion;
   }
 
   /**
@@ -33,6 +45,14 @@ public class ConnectMessage extends Message {
     return username;
   }
 
+  /**
+   *
+   * @return the highest protocol version the client speaks
+   */
+  public int getMaxVersion() {
+    return maxVersion;
+  }
+
   /**
    * Send the request username to the given output stream
    *
@@ -41,8 +61,14 @@ public class ConnectMessage extends Message {
    */
   @Override
   public void send(DataOutputStream out) throws IOException {
-    out.writeInt(messageType);
-    out.writeUTF(username);
+    if (maxVersion > Protocol.VERSION_1) {
+      out.writeInt(Protocol.VERSIONED_CONNECT_MESSAGE);
+      out.writeUTF(username);
+      out.writeInt(maxVersion);
+    } else {
+      out.writeInt(messageType);
+      out.writeUTF(username);
+    }
     out.flush();
   }
 
@@ -59,6 +85,19 @@ public class ConnectMessage extends Message {
     return new ConnectMessage(username);
   }
 
+  /**
+   * Receive a versioned connect message, the message type has already been read
+   *
+   * @param in the given input stream
+   * @return a new ConnectMessage object that contain the request username and highest version
+   * @throws IOException if the provided input stream is invalid
+   */
+  public static ConnectMessage receiveVersioned(DataInputStream in) throws IOException {
+    String username = in.readUTF();
+    int maxVersion = in.readInt();
+    return new ConnectMessage(username, maxVersion);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -73,7 +112,7 @@ public class ConnectMessage extends Message {
     if (!super.equals(o)) {
       return false;
     }
-    return Objects.equals(getUsername(), that.getUsername());
+    return getMaxVersion() == that.getMaxVersion() && Objects.equals(getUsername(), that.getUsername());
   }
 
   /**
@@ -81,7 +120,7 @@ public class ConnectMessage extends Message {
    */
   @Override
   public int hashCode() {
-    return Objects.hash(super.hashCode(), getUsername());
+    return Objects.hash(super.hashCode(), getUsername(), getMaxVersion());
   }
 
   /**
@@ -89,6 +128,6 @@ public class ConnectMessage extends Message {
    */
   @Override
   public String toString() {
-    return "ConnectMessage{messageType:" + super.messageType + ", username:" + username + "}";
+    return "ConnectMessage{messageType:" + super.messageType + ", username:" + username + ", maxVersion:" + maxVersion + "}";
   }
 }
@@ -15,6 +15,8 @@ import protocol.Protocol;
 public class ConnectResp extends Message {
   private boolean isSuccess;
   private String message;
+  private int protocolVersion;
+  private String resumeToken;
 
   /**
    * Construct a ConnectResp object containing whether the connection request is successful and a message
@@ -24,9 +26,36 @@ public class ConnectResp extends Message {
    * @param message detailed information describing the connection response
    */
   public ConnectResp(boolean success, String message) {
+    this(success, message, Protocol.VERSION_1);
+  }
+
+  /**
+   * Construct a ConnectResp object that also tells the client which protocol version the rest of the
+   * connection uses. Above version 1 it is sent as a {@link Protocol#VERSIONED_CONNECT_RESPONSE}
+   *
+   * @param success connection request result
+   * @param message detailed information describing the connection response
+   * @param protocolVersion the negotiated protocol version
+   */
+  public ConnectResp(boolean success, String message, int protocolVersion) {
+    this(success, message, protocolVersion, "");
+  }
+
+  /**
+   * Construct a ConnectResp object that also hands the client a token to resume the session with on a
+   * new connection. The token is only sent above version 1
+   *
+   * @param success connection request result
+   * @param message detailed information describing the connection response
+   * @param protocolVersion the negotiated protocol version
+   * @param resumeToken the token to resume the session with, or empty if it cannot be resumed
+   */
+  public ConnectResp(boolean success, String message, int protocolVersion, String resumeToken) {
     this.messageType = Protocol.CONNECT_RESPONSE;
     this.isSuccess = success;
     this.message = message;
+    this.protocolVersion = protocolVersion;
+    this.resumeToken = resumeToken;
   }
 
   /**
@@ -45,6 +74,22 @@ public class ConnectResp extends Message {
     return message;
   }
 
+  /**
+   *
+   * @return the protocol version the rest of the connection uses
+   */
+  public int getProtocolVersion() {
+    return protocolVersion;
+  }
+
+  /**
+   *
+   * @return the token to resume the session with on a new connection, or empty if it cannot be resumed
+   */
+  public String getResumeToken() {
+    return resumeToken;
+  }
+
   /**
    * Send the connection request result and connection detailed information
    * to the given output stream
@@ -54,9 +99,14 @@ public class ConnectResp extends Message {
    */
   @Override
   public void send(DataOutputStream out) throws IOException {
-    out.writeInt(messageType);
+    boolean versioned = protocolVersion > Protocol.VERSION_1;
+    out.writeInt(versioned ? Protocol.VERSIONED_CONNECT_RESPONSE : messageType);
     out.writeBoolean(isSuccess);
     out.writeUTF(message);
+    if (versioned) {
+      out.writeInt(protocolVersion);
+      out.writeUTF(resumeToken);
+    }
     out.flush();
   }
 
@@ -72,6 +122,9 @@ public class ConnectResp extends Message {
     int msgType = in.readInt();
     boolean success = in.readBoolean();
     String message = in.readUTF();
+    if (msgType == Protocol.VERSIONED_CONNECT_RESPONSE) {
+      return new ConnectResp(success, message, in.readInt(), in.readUTF());
+    }
     return new ConnectResp(success, message);
   }
 
@@ -89,8 +142,9 @@ public class ConnectResp extends Message {
     if (!super.equals(o)) {
       return false;
     }
-    return getSuccess() == that.getSuccess() && Objects.equals(getMessage(),
-        that.getMessage());
+    return getSuccess() == that.getSuccess() && getProtocolVersion() == that.getProtocolVersion()
+        && Objects.equals(getMessage(), that.getMessage())
+        && Objects.equals(getResumeToken(), that.getResumeToken());
   }
 
   /**
@@ -98,7 +152,7 @@ public class ConnectResp extends Message {
    */
   @Override
   public int hashCode() {
-    return Objects.hash(super.hashCode(), getSuccess(), getMessage());
+    return Objects.hash(super.hashCode(), getSuccess(), getMessage(), getProtocolVersion(), getResumeToken());
   }
 
   /**
@@ -106,6 +160,6 @@ public class ConnectResp extends Message {
    */
   @Override
   public String toString() {
-    return "ConnectResp{messageType:" + super.messageType + ", success:" + isSuccess + ", message:" + message + "}";
+    return "ConnectResp{messageType:" + super.messageType + ", success:" + isSuccess + ", message:" + message + ", protocolVersion:" + protocolVersion + ", resumable:" + !resumeToken.isEmpty() + "}";
   }
 }
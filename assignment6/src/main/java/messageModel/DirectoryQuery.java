@@ -0,0 +1,134 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+import protocol.Protocol;
+
+/**
+ * Represents a request for one page of the connected users whose names start with a prefix. The first
+ * page is asked for with an empty cursor, each later one with the cursor from the previous DirectoryResp
+ */
+public class DirectoryQuery extends Message {
+  private final String username;
+  private final String prefix;
+  private final String cursor;
+  private final int pageSize;
+
+  /**
+   * Construct a DirectoryQuery
+   *
+   * @param username the username of the user asking
+   * @param prefix the start every returned username shares, empty for everyone
+   * @param cursor the cursor from the previous page, or empty for the first page
+   * @param pageSize the most usernames to return
+   */
+  public DirectoryQuery(String username, String prefix, String cursor, int pageSize) {
+    this.messageType = Protocol.QUERY_DIRECTORY;
+    this.username = username;
+    this.prefix = prefix;
+    this.cursor = cursor;
+    this.pageSize = pageSize;
+  }
+
+  /**
+   *
+   * @return the username of the user asking
+   */
+  public String getUsername() {
+    return username;
+  }
+
+  /**
+   *
+   * @return the start every returned username shares, empty for everyone
+   */
+  public String getPrefix() {
+    return prefix;
+  }
+
+  /**
+   *
+   * @return the cursor from the previous page, or empty for the first page
+   */
+  public String getCursor() {
+    return cursor;
+  }
+
+  /**
+   *
+   * @return the most usernames to return
+   */
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Send the username, prefix, cursor and page size to the given output stream
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    out.writeInt(messageType);
+    out.writeUTF(username);
+    out.writeUTF(prefix);
+    out.writeUTF(cursor);
+    out.writeInt(pageSize);
+    out.flush();
+  }
+
+  /**
+   * Receive a username, prefix, cursor and page size from the given input stream, whose message type has
+   * already been read
+   *
+   * @param in the given input stream
+   * @return a new DirectoryQuery containing the received information
+   * @throws IOException if the given input stream is invalid
+   */
+  public static DirectoryQuery receive(DataInputStream in) throws IOException {
+    String username = in.readUTF();
+    String prefix = in.readUTF();
+    String cursor = in.readUTF();
+    int pageSize = in.readInt();
+    return new DirectoryQuery(username, prefix, cursor, pageSize);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof DirectoryQuery that)) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+    return getPageSize() == that.getPageSize()
+        && Objects.equals(getUsername(), that.getUsername())
+        && Objects.equals(getPrefix(), that.getPrefix())
+        && Objects.equals(getCursor(), that.getCursor());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), getUsername(), getPrefix(), getCursor(), getPageSize());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "DirectoryQuery{messageType:" + super.messageType + ", username:" + username + ", prefix:" + prefix + ", cursor:" + cursor + ", pageSize:" + pageSize + "}";
+  }
+}
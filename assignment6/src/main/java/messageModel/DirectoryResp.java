@@ -0,0 +1,123 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import protocol.Protocol;
+
+/**
+ * Represents one page of connected users answering a DirectoryQuery, in sorted order, with the cursor
+ * to ask for the next page
+ */
+public class DirectoryResp extends Message {
+  private final List<String> usernames;
+  private final String nextCursor;
+
+  /**
+   * Construct a DirectoryResp
+   *
+   * @param usernames the usernames on the page, in sorted order
+   * @param nextCursor the cursor of the next page, or empty if this is the last one
+   */
+  public DirectoryResp(List<String> usernames, String nextCursor) {
+    this.messageType = Protocol.DIRECTORY_RESPONSE;
+    this.usernames = usernames;
+    this.nextCursor = nextCursor;
+  }
+
+  /**
+   *
+   * @return the usernames on the page, in sorted order
+   */
+  public List<String> getUsernames() {
+    return usernames;
+  }
+
+  /**
+   *
+   * @return the cursor of the next page, or empty if this is the last one
+   */
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  /**
+   *
+   * @return true if there is another page after this one
+   */
+  public boolean hasMore() {
+    return !nextCursor.isEmpty();
+  }
+
+  /**
+   * Send the usernames and next cursor to the given output stream
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    out.writeInt(messageType);
+    out.writeInt(usernames.size());
+    for (String username : usernames) {
+      out.writeUTF(username);
+    }
+    out.writeUTF(nextCursor);
+    out.flush();
+  }
+
+  /**
+   * Receive usernames and a next cursor from the given input stream, whose message type has already
+   * been read
+   *
+   * @param in the given input stream
+   * @return a new DirectoryResp containing the received information
+   * @throws IOException if the given input stream is invalid
+   */
+  public static DirectoryResp receive(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    List<String> usernames = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      usernames.add(in.readUTF());
+    }
+    String nextCursor = in.readUTF();
+    return new DirectoryResp(usernames, nextCursor);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof DirectoryResp that)) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+    return Objects.equals(getUsernames(), that.getUsernames())
+        && Objects.equals(getNextCursor(), that.getNextCursor());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), getUsernames(), getNextCursor());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "DirectoryResp{messageType:" + super.messageType + ", usernames:" + usernames + ", nextCursor:" + nextCursor + "}";
+  }
+}
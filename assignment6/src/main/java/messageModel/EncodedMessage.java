@@ -0,0 +1,194 @@
+package messageModel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Represents a message that was encoded once into an immutable frame, so the same bytes can be handed
+ * to any number of recipients without encoding the message again for each of them. The frame in the
+ * source format is known up front, frames for other wire formats are made the first time a recipient
+ * asks for them
+ */
+public class EncodedMessage extends Message {
+  private final WireFormat sourceFormat;
+  private final byte[] frame;
+  private final AtomicReferenceArray<byte[]> frames;
+  private volatile Message message;
+
+  /**
+   * Construct an EncodedMessage by encoding the given message. The frame is shared by every recipient,
+   * so a request id the message was tagged with is left out
+   *
+   * @param message the message to encode
+   * @throws IOException if the message cannot be encoded
+   */
+  public EncodedMessage(Message message) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    message.send(new DataOutputStream(bytes));
+    this.messageType = message.getMessageType();
+    this.message = message.getRequestId() == 0 ? message : null;
+    this.sourceFormat = WireFormat.V1;
+    this.frame = bytes.toByteArray();
+    this.frames = new AtomicReferenceArray<>(WireFormat.values().length);
+    this.frames.set(sourceFormat.ordinal(), frame);
+  }
+
+  /**
+   * Construct an EncodedMessage around a frame that was received as-is. The message is only decoded if
+   * someone asks for it or for the frame in another format
+   *
+   * @param messageType the message type of the frame
+   * @param sourceFormat the wire format the frame is in
+   * @param frame the whole frame, which must not be modified afterwards
+   */
+  protected EncodedMessage(int messageType, WireFormat sourceFormat, byte[] frame) {
+    this.messageType = messageType;
+    this.sourceFormat = sourceFormat;
+    this.frame = frame;
+    this.frames = new AtomicReferenceArray<>(WireFormat.values().length);
+    this.frames.set(sourceFormat.ordinal(), frame);
+  }
+
+  /**
+   *
+   * @return the message that was encoded, decoded from the frame on first use if it was received as-is
+   */
+  public Message getMessage() {
+    Message decoded = message;
+    if (decoded == null) {
+      try {
+        decoded = sourceFormat.decode(ByteBuffer.wrap(frame));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      message = decoded;
+    }
+    return decoded;
+  }
+
+  /**
+   *
+   * @return the wire format the frame was first encoded or received in
+   */
+  public WireFormat getSourceFormat() {
+    return sourceFormat;
+  }
+
+  /**
+   *
+   * @return a read-only view of the version 1 frame, each call returns an independent position
+   */
+  public ByteBuffer getFrame() {
+    try {
+      return getFrame(WireFormat.V1);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Get the frame in the given wire format, encoding it on first use. Concurrent first uses may both
+   * encode, but they produce the same bytes and only one is kept
+   *
+   * @param format the wire format of the recipient
+   * @return a read-only view of the encoded frame, each call returns an independent position
+   * @throws IOException if the message cannot be encoded in the given format
+   */
+  public ByteBuffer getFrame(WireFormat format) throws IOException {
+    return ByteBuffer.wrap(frameBytes(format)).asReadOnlyBuffer();
+  }
+
+  /**
+   * Get the bytes of the frame in the given wire format, encoding it on first use
+   *
+   * @param format the wire format of the recipient
+   * @return the frame bytes, which must not be modified
+   * @throws IOException if the message cannot be encoded in the given format
+   */
+  private byte[] frameBytes(WireFormat format) throws IOException {
+    byte[] bytes = frames.get(format.ordinal());
+    if (bytes == null) {
+      ByteBuffer encoded = format.encode(getMessage());
+      bytes = Arrays.copyOf(encoded.array(), encoded.limit());
+      if (!frames.compareAndSet(format.ordinal(), null, bytes)) {
+        bytes = frames.get(format.ordinal());
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   *
+   * @return the number of bytes in the frame in its source format
+   */
+  public int getFrameLength() {
+    return frame.length;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getEncodedSize() {
+    return frame.length;
+  }
+
+  /**
+   * Write the version 1 frame to the given output stream as-is
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    send(out, WireFormat.V1);
+  }
+
+  /**
+   * Write the frame in the given wire format to the given output stream as-is
+   *
+   * @param out the given output stream
+   * @param format the wire format of the recipient
+   * @throws IOException if the provided output stream is invalid
+   */
+  public void send(DataOutputStream out, WireFormat format) throws IOException {
+    out.write(frameBytes(format));
+    out.flush();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof EncodedMessage that)) {
+      return false;
+    }
+    return sourceFormat == that.sourceFormat && Arrays.equals(frame, that.frame);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(frame);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "EncodedMessage{messageType:" + super.messageType + ", sourceFormat:" + sourceFormat
+        + ", frameLength:" + frame.length + ", message:" + message + "}";
+  }
+}
@@ -0,0 +1,151 @@
+package messageModel;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import protocol.Protocol;
+
+/**
+ * Represents a direct message the server received and forwards as its original frame. Only the sender
+ * and recipient are read up front, the body is only checked in place by isWellFormed unless someone
+ * asks for the decoded message, and the original frame is written to a recipient speaking the same wire
+ * format byte for byte
+ */
+public class ForwardedDirectMessage extends EncodedMessage {
+  private static final int V1_TYPE_SIZE = 4;
+  /**
+   * Sender, recipient and body
+   */
+  public static final int DIRECT_MESSAGE_FIELDS = 3;
+
+  private final String senderUsername;
+  private final String recipientUsername;
+
+  /**
+   * Construct a ForwardedDirectMessage around a received frame
+   *
+   * @param format the wire format the frame is in
+   * @param frame the whole frame
+   * @param senderUsername the sender read from the frame
+   * @param recipientUsername the recipient read from the frame
+   */
+  private ForwardedDirectMessage(WireFormat format, byte[] frame, String senderUsername,
+      String recipientUsername) {
+    super(Protocol.DIRECT_MESSAGE, format, frame);
+    this.senderUsername = senderUsername;
+    this.recipientUsername = recipientUsername;
+  }
+
+  /**
+   * Read the sender and recipient of a whole direct message frame, leaving the body undecoded
+   *
+   * @param format the wire format the frame is in
+   * @param frame the whole frame, which must not be modified afterwards
+   * @return a message forwarding the frame
+   * @throws IOException if the frame is not a well-formed direct message
+   */
+  public static ForwardedDirectMessage fromFrame(WireFormat format, byte[] frame) throws IOException {
+    if (format == WireFormat.V1) {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+      if (in.readInt() != Protocol.DIRECT_MESSAGE) {
+        throw new IOException("Not a direct message frame");
+      }
+      return new ForwardedDirectMessage(format, frame, in.readUTF(), in.readUTF());
+    }
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(frame);
+      FrameCodecV2.readVarint(buffer);
+      if (FrameCodecV2.readVarint(buffer) != Protocol.DIRECT_MESSAGE
+          || buffer.get() != FrameCodecV2.NO_FLAGS) {
+        throw new IOException("Not a direct message frame");
+      }
+      String sender = FrameCodecV2.readString(buffer);
+      String recipient = FrameCodecV2.readString(buffer);
+      if (FrameCodecV2.readVarint(buffer) != buffer.remaining()) {
+        throw new IOException("Malformed direct message body");
+      }
+      return new ForwardedDirectMessage(format, frame, sender, recipient);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Malformed direct message frame", e);
+    }
+  }
+
+  /**
+   * Read a version 1 direct message from a stream whose message type has already been read. The body is
+   * copied straight into the frame without being decoded
+   *
+   * @param in the given input stream
+   * @return a message forwarding the frame
+   * @throws IOException if the given input stream is invalid
+   */
+  public static ForwardedDirectMessage receive(DataInputStream in) throws IOException {
+    byte[] sender = readUtfBytes(in);
+    byte[] recipient = readUtfBytes(in);
+    int bodyLength = in.readUnsignedShort();
+    byte[] frame = new byte[V1_TYPE_SIZE + sender.length + recipient.length + 2 + bodyLength];
+    ByteBuffer header = ByteBuffer.wrap(frame);
+    header.putInt(Protocol.DIRECT_MESSAGE).put(sender).put(recipient).putShort((short) bodyLength);
+    in.readFully(frame, header.position(), bodyLength);
+    return fromFrame(WireFormat.V1, frame);
+  }
+
+  /**
+   * Read one writeUTF string without decoding it
+   *
+   * @param in the given input stream
+   * @return the string's length prefix and bytes
+   * @throws IOException if the given input stream is invalid
+   */
+  private static byte[] readUtfBytes(DataInputStream in) throws IOException {
+    int length = in.readUnsignedShort();
+    byte[] bytes = new byte[2 + length];
+    bytes[0] = (byte) (length >>> 8);
+    bytes[1] = (byte) length;
+    in.readFully(bytes, 2, length);
+    return bytes;
+  }
+
+  /**
+   * Check the frame's sender, recipient and body are well-formed text filling the frame exactly, without
+   * decoding them
+   *
+   * @return false if decoding the frame would fail
+   */
+  public boolean isWellFormed() {
+    try {
+      WireFormat format = getSourceFormat();
+      return new FrameView().wrap(format, getFrame(format), 0, getFrameLength())
+          .hasWellFormedStrings(DIRECT_MESSAGE_FIELDS);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   *
+   * @return the direct message's sender's username
+   */
+  public String getSenderUsername() {
+    return senderUsername;
+  }
+
+  /**
+   *
+   * @return the direct message's receiver's username
+   */
+  public String getRecipientUsername() {
+    return recipientUsername;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "ForwardedDirectMessage{messageType:" + super.messageType + ", senderUsername:"
+        + senderUsername + ", recipientUsername:" + recipientUsername + ", sourceFormat:"
+        + getSourceFormat() + ", frameLength:" + getFrameLength() + "}";
+  }
+}
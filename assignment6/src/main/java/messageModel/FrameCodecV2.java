@@ -0,0 +1,699 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import protocol.Protocol;
+
+/**
+ * Encodes and decodes protocol version 2 frames. Every frame starts with a varint holding the number of
+ * bytes that follow, so a reader can skip or forward a frame without looking inside it:
+ *
+ * <pre>
+ * varint length | varint messageType | byte flags | [varint requestId] | fields
+ * </pre>
+ *
+ * Strings are a varint byte count followed by UTF-8, booleans are one byte, sequence numbers are eight
+ * byte longs and list sizes are varints. The only flag is {@link #FLAG_REQUEST_ID}, every other bit must
+ * be 0. Frames can be encoded straight into a caller's buffer, such as one from a {@link FramePool},
+ * without any intermediate copies
+ */
+public class FrameCodecV2 {
+
+  /**
+   * Returned by {@link #frameLength(ByteBuffer)} when the buffer does not hold a whole frame yet
+   */
+  public static final int INCOMPLETE = -1;
+
+  /**
+   * Largest number of bytes allowed after the length prefix
+   */
+  public static final int MAX_FRAME_LENGTH = 1024 * 1024;
+
+  /**
+   * Largest number of bytes a whole frame may take, length prefix included
+   */
+  public static final int MAX_PREFIXED_FRAME_LENGTH = MAX_FRAME_LENGTH + varintSize(MAX_FRAME_LENGTH);
+
+  /**
+   * Flags of a frame without optional header fields
+   */
+  public static final int NO_FLAGS = 0;
+
+  /**
+   * Set when a request id follows the flags. A client tags a request with an id and the server tags its
+   * answer with the same id, see {@link Message#getRequestId()}
+   */
+  public static final int FLAG_REQUEST_ID = 0x01;
+
+  private static final int MAX_VARINT_SIZE = 5;
+
+  /**
+   * Construct a FrameCodecV2, all methods are static
+   */
+  private FrameCodecV2() {}
+
+  /**
+   * Encode a message into a buffer ready to be written to a channel
+   *
+   * @param message the message to encode
+   * @return a buffer in read mode holding the whole frame, length prefix included
+   * @throws IOException if the message type has no version 2 encoding
+   */
+  public static ByteBuffer encode(Message message) throws IOException {
+    ByteBuffer frame = ByteBuffer.allocate(encodedLength(message));
+    encode(message, frame);
+    frame.flip();
+    return frame;
+  }
+
+  /**
+   * Encode a message into the given buffer at its position, without allocating
+   *
+   * @param message the message to encode
+   * @param target the buffer in write mode, with at least {@link #encodedLength(Message)} remaining
+   * @throws IOException if the message type has no version 2 encoding
+   */
+  public static void encode(Message message, ByteBuffer target) throws IOException {
+    putVarint(target, bodyLength(message));
+    putVarint(target, message.getMessageType());
+    putHeaderFlags(target, message.getRequestId());
+    putFields(target, message);
+  }
+
+  /**
+   * Work out the size of a message's frame without encoding it
+   *
+   * @param message the message to measure
+   * @return the frame length in bytes including the length prefix
+   * @throws IOException if the message type has no version 2 encoding
+   */
+  public static int encodedLength(Message message) throws IOException {
+    int bodyLength = bodyLength(message);
+    return varintSize(bodyLength) + bodyLength;
+  }
+
+  /**
+   * Work out the size of a message's frame after the length prefix
+   *
+   * @param message the message to measure
+   * @return the body length in bytes
+   * @throws IOException if the message type has no version 2 encoding
+   */
+  private static int bodyLength(Message message) throws IOException {
+    return varintSize(message.getMessageType()) + putHeaderFlags(null, message.getRequestId())
+        + putFields(null, message);
+  }
+
+  /**
+   * Write the flags byte and, if there is one, the request id, or only count their bytes
+   *
+   * @param target where the header fields are written, or null to only count them
+   * @param requestId the request id, or 0 if the frame is not tagged
+   * @return the number of bytes the header fields take
+   */
+  static int putHeaderFlags(ByteBuffer target, int requestId) {
+    if (requestId == 0) {
+      if (target != null) {
+        target.put((byte) NO_FLAGS);
+      }
+      return 1;
+    }
+    if (target != null) {
+      target.put((byte) FLAG_REQUEST_ID);
+    }
+    return 1 + putVarint(target, requestId);
+  }
+
+  /**
+   * Read the flags byte and the request id after it, if there is one
+   *
+   * @param body the frame body positioned at the flags
+   * @return the request id, or 0 if the frame is not tagged
+   * @throws IOException if an unknown flag is set or the request id is not positive
+   */
+  static int readHeaderFlags(ByteBuffer body) throws IOException {
+    int flags = body.get() & 0xFF;
+    if ((flags & ~FLAG_REQUEST_ID) != 0) {
+      throw new IOException("Unsupported frame flags: " + flags);
+    }
+    if (flags == NO_FLAGS) {
+      return 0;
+    }
+    int requestId = readVarint(body);
+    if (requestId <= 0) {
+      throw new IOException("Invalid request id: " + requestId);
+    }
+    return requestId;
+  }
+
+  /**
+   * Write a message as one frame to the given output stream
+   *
+   * @param message the message to write
+   * @param out the given output stream
+   * @throws IOException if the message cannot be encoded or the stream is invalid
+   */
+  public static void write(Message message, DataOutputStream out) throws IOException {
+    ByteBuffer frame = encode(message);
+    out.write(frame.array(), 0, frame.limit());
+    out.flush();
+  }
+
+  /**
+   * Read one whole frame from the given input stream and decode it
+   *
+   * @param in the given input stream
+   * @return the decoded message
+   * @throws IOException if the stream ends or the frame cannot be decoded
+   */
+  public static Message read(DataInputStream in) throws IOException {
+    return decode(ByteBuffer.wrap(readFrame(in)));
+  }
+
+  /**
+   * Read one whole frame from the given input stream without decoding it
+   *
+   * @param in the given input stream
+   * @return the frame bytes, length prefix included
+   * @throws IOException if the stream ends or the length prefix is malformed or too large
+   */
+  public static byte[] readFrame(DataInputStream in) throws IOException {
+    byte[] prefix = new byte[MAX_VARINT_SIZE];
+    int prefixLength = 0;
+    int length = 0;
+    for (int shift = 0; ; shift += 7) {
+      if (shift >= 7 * MAX_VARINT_SIZE) {
+        throw new IOException("Malformed frame length");
+      }
+      int b = in.readUnsignedByte();
+      prefix[prefixLength++] = (byte) b;
+      length |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        break;
+      }
+    }
+    checkLength(length);
+    byte[] frame = new byte[prefixLength + length];
+    System.arraycopy(prefix, 0, frame, 0, prefixLength);
+    in.readFully(frame, prefixLength, length);
+    return frame;
+  }
+
+  /**
+   * Read the message type of a whole frame starting at the buffer's position without consuming it
+   *
+   * @param buffer the buffer in read mode, holding at least one whole frame
+   * @return the message type
+   * @throws IOException if the frame header is malformed
+   */
+  public static int peekType(ByteBuffer buffer) throws IOException {
+    ByteBuffer header = buffer.duplicate();
+    try {
+      readVarint(header);
+      return readVarint(header);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Frame shorter than its header", e);
+    }
+  }
+
+  /**
+   * Read the flags of a whole frame starting at the buffer's position without consuming it
+   *
+   * @param buffer the buffer in read mode, holding at least one whole frame
+   * @return the flags byte
+   * @throws IOException if the frame header is malformed
+   */
+  public static int peekFlags(ByteBuffer buffer) throws IOException {
+    ByteBuffer header = buffer.duplicate();
+    try {
+      readVarint(header);
+      readVarint(header);
+      return header.get() & 0xFF;
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Frame shorter than its header", e);
+    }
+  }
+
+  /**
+   * Find the length of the frame starting at the buffer's position without consuming it
+   *
+   * @param buffer the buffer in read mode
+   * @return the frame length in bytes including the length prefix, or {@link #INCOMPLETE}
+   * @throws IOException if the length prefix is malformed or too large
+   */
+  public static int frameLength(ByteBuffer buffer) throws IOException {
+    int offset = buffer.position();
+    int length = 0;
+    for (int shift = 0; ; shift += 7) {
+      if (offset == buffer.limit()) {
+        return INCOMPLETE;
+      }
+      if (shift >= 7 * MAX_VARINT_SIZE) {
+        throw new IOException("Malformed frame length");
+      }
+      int b = buffer.get(offset++);
+      length |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        break;
+      }
+    }
+    checkLength(length);
+    int total = offset - buffer.position() + length;
+    return buffer.remaining() < total ? INCOMPLETE : total;
+  }
+
+  /**
+   * Decode one message from the buffer if a whole frame is available. The buffer's position is moved
+   * past the frame only when a message is returned
+   *
+   * @param buffer the buffer in read mode
+   * @return the decoded message, or null if more bytes are needed
+   * @throws IOException if the frame cannot be decoded
+   */
+  public static Message decode(ByteBuffer buffer) throws IOException {
+    int length = frameLength(buffer);
+    if (length == INCOMPLETE) {
+      return null;
+    }
+    int end = buffer.position() + length;
+    readVarint(buffer);
+    ByteBuffer body = buffer.slice();
+    body.limit(end - buffer.position());
+    buffer.position(end);
+    return decodeBody(body);
+  }
+
+  /**
+   * Decode the part of a frame after the length prefix
+   *
+   * @param body the frame body, exactly one frame long
+   * @return the decoded message
+   * @throws IOException if the frame cannot be decoded
+   */
+  private static Message decodeBody(ByteBuffer body) throws IOException {
+    try {
+      int messageType = readVarint(body);
+      int requestId = readHeaderFlags(body);
+      Message message = readFields(body, messageType);
+      if (body.hasRemaining()) {
+        throw new IOException("Frame longer than its fields");
+      }
+      message.setRequestId(requestId);
+      return message;
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Frame shorter than its fields", e);
+    }
+  }
+
+  /**
+   * Write the fields of a message, or only count their bytes
+   *
+   * @param target where the fields are written, or null to only count them
+   * @param message the message to write
+   * @return the number of bytes the fields take
+   * @throws IOException if the message type has no version 2 encoding
+   */
+  private static int putFields(ByteBuffer target, Message message) throws IOException {
+    switch (message.getMessageType()) {
+      case Protocol.CONNECT_MESSAGE:
+        return putString(target, ((ConnectMessage) message).getUsername());
+      case Protocol.CONNECT_RESPONSE:
+        ConnectResp connectResp = (ConnectResp) message;
+        return putBoolean(target, connectResp.getSuccess()) + putString(target, connectResp.getMessage());
+      case Protocol.DISCONNECT_MESSAGE:
+        return putString(target, ((DisconnectMessage) message).getUsername());
+      case Protocol.QUERY_CONNECTED_USERS:
+        return putString(target, ((QueryUsers) message).getUsername());
+      case Protocol.QUERY_USER_RESPONSE:
+        List<String> usernames = ((QueryResp) message).getUsernames();
+        int length = putVarint(target, usernames.size());
+        for (String username : usernames) {
+          length += putString(target, username);
+        }
+        return length;
+      case Protocol.BROADCAST_MESSAGE:
+        BroadcastMessage broadcast = (BroadcastMessage) message;
+        return putString(target, broadcast.getSenderUsername()) + putString(target, broadcast.getMessage());
+      case Protocol.DIRECT_MESSAGE:
+        DirectMessage direct = (DirectMessage) message;
+        return putString(target, direct.getSenderUsername())
+            + putString(target, direct.getRecipientUsername())
+            + putString(target, direct.getMessage());
+      case Protocol.FAILED_MESSAGE:
+        return putString(target, ((FailedMessage) message).getErrorMessage());
+      case Protocol.SEND_INSULT:
+        InsultMessage insult = (InsultMessage) message;
+        return putString(target, insult.getSenderUsername()) + putString(target, insult.getRecipientUsername());
+      case Protocol.OTHER:
+        DisconnectResp disconnectResp = (DisconnectResp) message;
+        return putBoolean(target, disconnectResp.isSuccess()) + putString(target, disconnectResp.getMessage());
+      case Protocol.JOIN_ROOM:
+        JoinRoomMessage join = (JoinRoomMessage) message;
+        return putString(target, join.getUsername()) + putString(target, join.getRoomName());
+      case Protocol.LEAVE_ROOM:
+        LeaveRoomMessage leave = (LeaveRoomMessage) message;
+        return putString(target, leave.getUsername()) + putString(target, leave.getRoomName());
+      case Protocol.ROOM_MESSAGE:
+        RoomMessage room = (RoomMessage) message;
+        return putString(target, room.getSenderUsername()) + putString(target, room.getRoomName())
+            + putString(target, room.getMessage());
+      case Protocol.ROOM_RESPONSE:
+        RoomResp roomResp = (RoomResp) message;
+        return putBoolean(target, roomResp.isSuccess()) + putString(target, roomResp.getRoomName())
+            + putString(target, roomResp.getMessage());
+      case Protocol.SUBSCRIBE_PRESENCE:
+        return putString(target, ((SubscribePresence) message).getUsername());
+      case Protocol.PRESENCE_SYNC:
+        PresenceSync sync = (PresenceSync) message;
+        int syncLength = putLong(target, sync.getSequence()) + putVarint(target, sync.getUsernames().size());
+        for (String username : sync.getUsernames()) {
+          syncLength += putString(target, username);
+        }
+        return syncLength;
+      case Protocol.PRESENCE_DELTA:
+        PresenceDelta delta = (PresenceDelta) message;
+        return putLong(target, delta.getSequence()) + putBoolean(target, delta.isJoined())
+            + putString(target, delta.getUsername());
+      case Protocol.QUERY_DIRECTORY:
+        DirectoryQuery directory = (DirectoryQuery) message;
+        return putString(target, directory.getUsername()) + putString(target, directory.getPrefix())
+            + putString(target, directory.getCursor()) + putVarint(target, directory.getPageSize());
+      case Protocol.DIRECTORY_RESPONSE:
+        DirectoryResp page = (DirectoryResp) message;
+        int pageLength = putVarint(target, page.getUsernames().size());
+        for (String username : page.getUsernames()) {
+          pageLength += putString(target, username);
+        }
+        return pageLength + putString(target, page.getNextCursor());
+      case Protocol.HISTORY_QUERY:
+        HistoryQuery history = (HistoryQuery) message;
+        return putString(target, history.getUsername()) + putString(target, history.getPeer())
+            + putVarint(target, history.getCount()) + putLong(target, history.getBeforeSequence());
+      case Protocol.RESUME_SESSION:
+        ResumeMessage resume = (ResumeMessage) message;
+        return putString(target, resume.getUsername()) + putString(target, resume.getResumeToken())
+            + putLong(target, resume.getLastSequence()) + putVarint(target, resume.getMaxVersion());
+      case Protocol.PING:
+        return putLong(target, ((PingMessage) message).getTimestamp());
+      case Protocol.PONG:
+        return putLong(target, ((PongMessage) message).getTimestamp());
+      case Protocol.HISTORY_RESPONSE:
+        HistoryResp historyPage = (HistoryResp) message;
+        int historyLength = putVarint(target, historyPage.getEntries().size());
+        for (HistoryResp.Entry entry : historyPage.getEntries()) {
+          historyLength += putLong(target, entry.getSequence()) + putLong(target, entry.getTimestamp())
+              + putString(target, entry.getSenderUsername()) + putString(target, entry.getRecipientUsername())
+              + putString(target, entry.getMessage());
+        }
+        return historyLength + putLong(target, historyPage.getNextBeforeSequence());
+      default:
+        throw new IOException("Unknown message type: " + message.getMessageType());
+    }
+  }
+
+  /**
+   * Read the fields of a message of the given type
+   *
+   * @param body the frame body positioned after the flags
+   * @param messageType the message type from the frame header
+   * @return the decoded message
+   * @throws IOException if the type is unknown or a field is malformed
+   */
+  private static Message readFields(ByteBuffer body, int messageType) throws IOException {
+    switch (messageType) {
+      case Protocol.CONNECT_MESSAGE:
+        return new ConnectMessage(readString(body));
+      case Protocol.CONNECT_RESPONSE:
+        return new ConnectResp(body.get() != 0, readString(body));
+      case Protocol.DISCONNECT_MESSAGE:
+        return new DisconnectMessage(readString(body));
+      case Protocol.QUERY_CONNECTED_USERS:
+        return new QueryUsers(readString(body));
+      case Protocol.QUERY_USER_RESPONSE:
+        int count = readVarint(body);
+        if (count > body.remaining()) {
+          throw new IOException("Malformed user count: " + count);
+        }
+        List<String> usernames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          usernames.add(readString(body));
+        }
+        return new QueryResp(usernames);
+      case Protocol.BROADCAST_MESSAGE:
+        return new BroadcastMessage(readString(body), readString(body));
+      case Protocol.DIRECT_MESSAGE:
+        return new DirectMessage(readString(body), readString(body), readString(body));
+      case Protocol.FAILED_MESSAGE:
+        return new FailedMessage(readString(body));
+      case Protocol.SEND_INSULT:
+        return new InsultMessage(readString(body), readString(body));
+      case Protocol.OTHER:
+        return new DisconnectResp(body.get() != 0, readString(body));
+      case Protocol.JOIN_ROOM:
+        return new JoinRoomMessage(readString(body), readString(body));
+      case Protocol.LEAVE_ROOM:
+        return new LeaveRoomMessage(readString(body), readString(body));
+      case Protocol.ROOM_MESSAGE:
+        return new RoomMessage(readString(body), readString(body), readString(body));
+      case Protocol.ROOM_RESPONSE:
+        return new RoomResp(body.get() != 0, readString(body), readString(body));
+      case Protocol.SUBSCRIBE_PRESENCE:
+        return new SubscribePresence(readString(body));
+      case Protocol.PRESENCE_SYNC:
+        long sequence = body.getLong();
+        int users = readVarint(body);
+        if (users > body.remaining()) {
+          throw new IOException("Malformed user count: " + users);
+        }
+        List<String> present = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+          present.add(readString(body));
+        }
+        return new PresenceSync(sequence, present);
+      case Protocol.PRESENCE_DELTA:
+        return new PresenceDelta(body.getLong(), body.get() != 0, readString(body));
+      case Protocol.QUERY_DIRECTORY:
+        return new DirectoryQuery(readString(body), readString(body), readString(body), readVarint(body));
+      case Protocol.DIRECTORY_RESPONSE:
+        int listed = readVarint(body);
+        if (listed > body.remaining()) {
+          throw new IOException("Malformed user count: " + listed);
+        }
+        List<String> page = new ArrayList<>(listed);
+        for (int i = 0; i < listed; i++) {
+          page.add(readString(body));
+        }
+        return new DirectoryResp(page, readString(body));
+      case Protocol.HISTORY_QUERY:
+        return new HistoryQuery(readString(body), readString(body), readVarint(body), body.getLong());
+      case Protocol.RESUME_SESSION:
+        return new ResumeMessage(readString(body), readString(body), body.getLong(), readVarint(body));
+      case Protocol.PING:
+        return new PingMessage(body.getLong());
+      case Protocol.PONG:
+        return new PongMessage(body.getLong());
+      case Protocol.HISTORY_RESPONSE:
+        int historyCount = readVarint(body);
+        if (historyCount > body.remaining()) {
+          throw new IOException("Malformed entry count: " + historyCount);
+        }
+        List<HistoryResp.Entry> entries = new ArrayList<>(historyCount);
+        for (int i = 0; i < historyCount; i++) {
+          entries.add(new HistoryResp.Entry(body.getLong(), body.getLong(), readString(body), readString(body),
+              readString(body)));
+        }
+        return new HistoryResp(entries, body.getLong());
+      default:
+        throw new IOException("Unknown message type: " + messageType);
+    }
+  }
+
+  /**
+   * Write an unsigned varint, seven bits per byte with the high bit set on every byte but the last
+   *
+   * @param target where the varint is written, or null to only count it
+   * @param value the value, treated as unsigned
+   * @return the number of bytes the varint takes
+   */
+  static int putVarint(ByteBuffer target, int value) {
+    if (target == null) {
+      return varintSize(value);
+    }
+    int size = 1;
+    while ((value & ~0x7F) != 0) {
+      target.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+      size++;
+    }
+    target.put((byte) value);
+    return size;
+  }
+
+  /**
+   *
+   * @param value the value, treated as unsigned
+   * @return the number of bytes the value takes as a varint
+   */
+  static int varintSize(int value) {
+    int size = 1;
+    while ((value & ~0x7F) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  /**
+   * Write a boolean as one byte
+   *
+   * @param target where the boolean is written, or null to only count it
+   * @param value the boolean
+   * @return the number of bytes written
+   */
+  private static int putBoolean(ByteBuffer target, boolean value) {
+    if (target != null) {
+      target.put((byte) (value ? 1 : 0));
+    }
+    return 1;
+  }
+
+  /**
+   * Write a long as eight big-endian bytes
+   *
+   * @param target where the long is written, or null to only count it
+   * @param value the long
+   * @return the number of bytes written
+   */
+  private static int putLong(ByteBuffer target, long value) {
+    if (target != null) {
+      target.putLong(value);
+    }
+    return Long.BYTES;
+  }
+
+  /**
+   * Read an unsigned varint
+   *
+   * @param buffer the buffer positioned at the varint
+   * @return the value
+   * @throws IOException if the varint is longer than five bytes
+   */
+  static int readVarint(ByteBuffer buffer) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 7 * MAX_VARINT_SIZE; shift += 7) {
+      int b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  /**
+   * Write a string as a varint byte count followed by its UTF-8 bytes, encoding the characters directly
+   * into the target. Unpaired surrogates become '?', like {@link String#getBytes(java.nio.charset.Charset)}
+   *
+   * @param target where the string is written, or null to only count it
+   * @param value the string
+   * @return the number of bytes the string takes, byte count included
+   */
+  private static int putString(ByteBuffer target, String value) {
+    int length = utf8Length(value);
+    int size = putVarint(target, length) + length;
+    if (target == null) {
+      return size;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        target.put((byte) c);
+      } else if (c < 0x800) {
+        target.put((byte) (0xC0 | (c >> 6))).put((byte) (0x80 | (c & 0x3F)));
+      } else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && i + 1 < value.length()
+            && Character.isLowSurrogate(value.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, value.charAt(++i));
+          target.put((byte) (0xF0 | (codePoint >> 18)))
+              .put((byte) (0x80 | ((codePoint >> 12) & 0x3F)))
+              .put((byte) (0x80 | ((codePoint >> 6) & 0x3F)))
+              .put((byte) (0x80 | (codePoint & 0x3F)));
+        } else {
+          target.put((byte) '?');
+        }
+      } else {
+        target.put((byte) (0xE0 | (c >> 12)))
+            .put((byte) (0x80 | ((c >> 6) & 0x3F)))
+            .put((byte) (0x80 | (c & 0x3F)));
+      }
+    }
+    return size;
+  }
+
+  /**
+   *
+   * @param value the string
+   * @return the number of bytes the string takes in UTF-8
+   */
+  private static int utf8Length(String value) {
+    int length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        length++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Read a string written by {@link #putString(ByteBuffer, String)}
+   *
+   * @param buffer the buffer positioned at the string
+   * @return the string
+   * @throws IOException if the byte count runs past the frame
+   */
+  static String readString(ByteBuffer buffer) throws IOException {
+    int length = readVarint(buffer);
+    if (length < 0 || length > buffer.remaining()) {
+      throw new IOException("Malformed string length: " + length);
+    }
+    if (buffer.hasArray()) {
+      String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+          StandardCharsets.UTF_8);
+      buffer.position(buffer.position() + length);
+      return value;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reject frames longer than {@link #MAX_FRAME_LENGTH}
+   *
+   * @param length the length from the frame prefix
+   * @throws IOException if the length is out of range
+   */
+  private static void checkLength(int length) throws IOException {
+    if (length < 0 || length > MAX_FRAME_LENGTH) {
+      throw new IOException("Frame too large: " + length);
+    }
+  }
+}
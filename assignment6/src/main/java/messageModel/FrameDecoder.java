@@ -0,0 +1,151 @@
+package messageModel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import protocol.Protocol;
+
+/**
+ * Decodes protocol version 1 messages from a non-blocking byte buffer. Frames have no length header, so the decoder walks
+ * the field layout of each message type to find out whether a whole frame has arrived before handing
+ * it to {@link Message#receive(DataInputStream)}
+ */
+public class FrameDecoder {
+
+  /**
+   * Returned by {@link #frameLength(ByteBuffer)} when the buffer does not hold a whole frame yet
+   */
+  public static final int INCOMPLETE = -1;
+
+  private static final int INT_SIZE = 4;
+  private static final int LONG_SIZE = 8;
+  private static final int UTF_LENGTH_SIZE = 2;
+
+  /**
+   * Construct a FrameDecoder, all methods are static
+   */
+  private FrameDecoder() {}
+
+  /**
+   * Find the length of the frame starting at the buffer's position without consuming it
+   *
+   * @param buffer the buffer in read mode
+   * @return the frame length in bytes, or {@link #INCOMPLETE} if more bytes are needed
+   * @throws IOException if the frame has an unknown message type
+   */
+  public static int frameLength(ByteBuffer buffer) throws IOException {
+    int start = buffer.position();
+    int limit = buffer.limit();
+    if (limit - start < INT_SIZE) {
+      return INCOMPLETE;
+    }
+    int messageType = buffer.getInt(start);
+    int offset = start + INT_SIZE;
+    switch (messageType) {
+      case Protocol.CONNECT_MESSAGE:
+      case Protocol.DISCONNECT_MESSAGE:
+      case Protocol.QUERY_CONNECTED_USERS:
+      case Protocol.FAILED_MESSAGE:
+      case Protocol.SUBSCRIBE_PRESENCE:
+        offset = skipUtf(buffer, offset, 1);
+        break;
+      case Protocol.BROADCAST_MESSAGE:
+      case Protocol.SEND_INSULT:
+      case Protocol.JOIN_ROOM:
+      case Protocol.LEAVE_ROOM:
+        offset = skipUtf(buffer, offset, 2);
+        break;
+      case Protocol.DIRECT_MESSAGE:
+      case Protocol.ROOM_MESSAGE:
+        offset = skipUtf(buffer, offset, 3);
+        break;
+      case Protocol.VERSIONED_CONNECT_MESSAGE:
+        offset = skipUtf(buffer, offset, 1);
+        if (offset != INCOMPLETE) {
+          offset = offset + INT_SIZE > limit ? INCOMPLETE : offset + INT_SIZE;
+        }
+        break;
+      case Protocol.QUERY_DIRECTORY:
+        offset = skipUtf(buffer, offset, 3);
+        if (offset != INCOMPLETE) {
+          offset = offset + INT_SIZE > limit ? INCOMPLETE : offset + INT_SIZE;
+        }
+        break;
+      case Protocol.HISTORY_QUERY:
+        offset = skipUtf(buffer, offset, 2);
+        if (offset != INCOMPLETE) {
+          offset = offset + INT_SIZE + LONG_SIZE > limit ? INCOMPLETE : offset + INT_SIZE + LONG_SIZE;
+        }
+        break;
+      case Protocol.RESUME_SESSION:
+        offset = skipUtf(buffer, offset, 2);
+        if (offset != INCOMPLETE) {
+          offset = offset + LONG_SIZE + INT_SIZE > limit ? INCOMPLETE : offset + LONG_SIZE + INT_SIZE;
+        }
+        break;
+      case Protocol.PING:
+      case Protocol.PONG:
+        offset = offset + LONG_SIZE > limit ? INCOMPLETE : offset + LONG_SIZE;
+        break;
+      default:
+        throw new IOException("Unknown message type: " + messageType);
+    }
+    return offset == INCOMPLETE ? INCOMPLETE : offset - start;
+  }
+
+  /**
+   * Decode one message from the buffer if a whole frame is available. The buffer's position is moved
+   * past the frame only when a message is returned
+   *
+   * @param buffer the buffer in read mode
+   * @return the decoded message, or null if more bytes are needed
+   * @throws IOException if the frame cannot be decoded
+   */
+  public static Message decode(ByteBuffer buffer) throws IOException {
+    int length = frameLength(buffer);
+    if (length == INCOMPLETE) {
+      return null;
+    }
+    byte[] frame = new byte[length];
+    buffer.get(frame);
+    return Message.receive(new DataInputStream(new ByteArrayInputStream(frame)));
+  }
+
+  /**
+   * Encode a message into a buffer ready to be written to a channel
+   *
+   * @param message the message to encode
+   * @return a buffer in read mode holding the whole frame
+   * @throws IOException if the message cannot be encoded
+   */
+  public static ByteBuffer encode(Message message) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    message.send(new DataOutputStream(bytes));
+    return ByteBuffer.wrap(bytes.toByteArray());
+  }
+
+  /**
+   * Skip over a number of writeUTF strings
+   *
+   * @param buffer the buffer in read mode
+   * @param offset absolute index of the first string
+   * @param count number of strings to skip
+   * @return absolute index after the last string, or {@link #INCOMPLETE}
+   */
+  private static int skipUtf(ByteBuffer buffer, int offset, int count) {
+    for (int i = 0; i < count; i++) {
+      if (buffer.limit() - offset < UTF_LENGTH_SIZE) {
+        return INCOMPLETE;
+      }
+      int length = buffer.getShort(offset) & 0xFFFF;
+      offset += UTF_LENGTH_SIZE + length;
+      if (offset > buffer.limit()) {
+        return INCOMPLETE;
+      }
+    }
+    return offset;
+  }
+}
@@ -0,0 +1,98 @@
+package messageModel;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Represents a pool of reusable frames of one buffer size, so relaying and encoding messages does not
+ * allocate once the pool is warm. Frames can be acquired on one thread and released on another. Frames
+ * bigger than the buffer size are allocated for the occasion and never pooled, and a frame that is
+ * never released is simply left to the garbage collector
+ */
+public class FramePool {
+  private final int bufferSize;
+  private final BlockingQueue<PooledFrame> free;
+
+  /**
+   * Construct an empty FramePool
+   *
+   * @param bufferSize capacity of each pooled buffer in bytes
+   * @param maxPooled most frames kept for reuse at once
+   */
+  public FramePool(int bufferSize, int maxPooled) {
+    if (bufferSize < 1 || maxPooled < 1) {
+      throw new IllegalArgumentException("bufferSize and maxPooled must be at least 1");
+    }
+    this.bufferSize = bufferSize;
+    this.free = new ArrayBlockingQueue<>(maxPooled);
+  }
+
+  /**
+   * Take a frame with room for at least the given number of bytes
+   *
+   * @param messageType the message type of the frame about to be written
+   * @param format the wire format of the frame about to be written
+   * @param capacity the number of bytes needed
+   * @return a frame whose buffer is cleared and in write mode
+   */
+  public PooledFrame acquire(int messageType, WireFormat format, int capacity) {
+    PooledFrame frame = null;
+    if (capacity <= bufferSize) {
+      frame = free.poll();
+      if (frame == null) {
+        frame = new PooledFrame(this, ByteBuffer.allocate(bufferSize));
+      }
+    } else {
+      frame = new PooledFrame(null, ByteBuffer.allocate(capacity));
+    }
+    frame.reset(messageType, format);
+    return frame;
+  }
+
+  /**
+   * Copy a whole frame out of a buffer, for example a connection's read buffer, into a pooled frame
+   *
+   * @param view the frame to copy
+   * @return a frame holding a copy of the bytes, in read mode
+   */
+  public PooledFrame copyOf(FrameView view) {
+    PooledFrame frame = acquire(view.getMessageType(), view.getFormat(), view.getFrameLength());
+    view.copyTo(frame.getBuffer());
+    frame.getBuffer().flip();
+    return frame;
+  }
+
+  /**
+   * Give a frame back to the pool
+   *
+   * @param frame a frame acquired from this pool that nobody uses any more
+   */
+  void release(PooledFrame frame) {
+    free.offer(frame);
+  }
+
+  /**
+   *
+   * @return capacity of each pooled buffer in bytes
+   */
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   *
+   * @return number of frames waiting to be reused
+   */
+  public int getPooledCount() {
+    return free.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "FramePool{bufferSize:" + bufferSize + ", pooled:" + free.size() + "}";
+  }
+}
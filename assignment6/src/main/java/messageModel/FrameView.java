@@ -0,0 +1,377 @@
+package messageModel;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import protocol.Protocol;
+
+/**
+ * Represents a reusable read-only view over one whole frame sitting in a buffer, such as a connection's
+ * read buffer. Wrapping a frame only reads its header, string fields are found and compared on demand
+ * without decoding them, so routing a frame through a view allocates nothing. Fields are numbered from
+ * 0 in the order the message writes them, and only message types made of string fields are supported
+ */
+public class FrameView {
+  private static final int V1_TYPE_SIZE = 4;
+  private static final int V1_STRING_LENGTH_SIZE = 2;
+
+  private WireFormat format;
+  private ByteBuffer buffer;
+  private int start;
+  private int end;
+  private int messageType;
+  private int requestId;
+  private int fieldsStart;
+
+  /**
+   * Point this view at a whole frame. Nothing is copied, so the view is only valid until the buffer's
+   * bytes change
+   *
+   * @param format the wire format of the frame
+   * @param buffer the buffer holding the frame
+   * @param start absolute index of the first byte of the frame
+   * @param length the frame length, as returned by {@link WireFormat#frameLength(ByteBuffer)}
+   * @return this view
+   * @throws IOException if the frame header is malformed
+   */
+  public FrameView wrap(WireFormat format, ByteBuffer buffer, int start, int length) throws IOException {
+    this.format = format;
+    this.buffer = buffer;
+    this.start = start;
+    this.end = start + length;
+    this.requestId = 0;
+    if (format == WireFormat.V1) {
+      messageType = buffer.getInt(start);
+      fieldsStart = start + V1_TYPE_SIZE;
+      return this;
+    }
+    int offset = skipVarint(start);
+    messageType = varintAt(offset);
+    offset = skipVarint(offset);
+    int flags = offset < end ? buffer.get(offset) & 0xFF : -1;
+    if (flags == FrameCodecV2.FLAG_REQUEST_ID) {
+      requestId = varintAt(offset + 1);
+      if (requestId <= 0) {
+        throw new IOException("Unsupported frame header");
+      }
+      fieldsStart = skipVarint(offset + 1);
+      return this;
+    }
+    if (flags != FrameCodecV2.NO_FLAGS) {
+      throw new IOException("Unsupported frame header");
+    }
+    fieldsStart = offset + 1;
+    return this;
+  }
+
+  /**
+   *
+   * @return the wire format of the frame
+   */
+  public WireFormat getFormat() {
+    return format;
+  }
+
+  /**
+   *
+   * @return the request id the frame is tagged with, or 0 if it is not tagged
+   */
+  public int getRequestId() {
+    return requestId;
+  }
+
+  /**
+   *
+   * @return the message type of the frame
+   */
+  public int getMessageType() {
+    return messageType;
+  }
+
+  /**
+   *
+   * @return the frame length in bytes
+   */
+  public int getFrameLength() {
+    return end - start;
+  }
+
+  /**
+   * Compare a string field with a string without decoding the field. ASCII strings are compared byte by
+   * byte, anything else falls back to decoding the field
+   *
+   * @param index the field number
+   * @param value the string to compare with, null never matches
+   * @return true if the field holds the same characters
+   * @throws IOException if the frame does not have that field
+   */
+  public boolean fieldEquals(int index, String value) throws IOException {
+    if (value == null) {
+      return false;
+    }
+    int offset = fieldOffset(index);
+    int length = stringLength(offset);
+    int data = stringData(offset);
+    if (length != value.length()) {
+      return isAscii(data, length) ? false : getString(index).equals(value);
+    }
+    for (int i = 0; i < length; i++) {
+      byte b = buffer.get(data + i);
+      if (b < 0) {
+        return getString(index).equals(value);
+      }
+      if (b != value.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decode a string field
+   *
+   * @param index the field number
+   * @return the decoded string
+   * @throws IOException if the frame does not have that field
+   */
+  public String getString(int index) throws IOException {
+    int offset = fieldOffset(index);
+    int length = stringLength(offset);
+    if (format == WireFormat.V1) {
+      byte[] utf = new byte[V1_STRING_LENGTH_SIZE + length];
+      buffer.get(offset, utf);
+      return new DataInputStream(new ByteArrayInputStream(utf)).readUTF();
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(stringData(offset), bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Check that the frame is exactly the given number of string fields, each well-formed for the frame's
+   * format: modified UTF-8 as DataInputStream.readUTF accepts it for version 1, UTF-8 for version 2. The
+   * bytes are checked where they are, nothing is decoded
+   *
+   * @param fieldCount the number of string fields the message type has
+   * @return false if a field runs past the frame, bytes are left over, or a field is not valid text
+   */
+  public boolean hasWellFormedStrings(int fieldCount) {
+    try {
+      int offset = fieldsStart;
+      for (int i = 0; i < fieldCount; i++) {
+        int length = stringLength(offset);
+        int data = stringData(offset);
+        if (data + length > end) {
+          return false;
+        }
+        boolean valid = format == WireFormat.V1 ? isModifiedUtf8(data, length) : isUtf8(data, length);
+        if (!valid) {
+          return false;
+        }
+        offset = data + length;
+      }
+      return offset == end;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @param data absolute index of the first byte
+   * @param length number of bytes
+   * @return true if DataInputStream.readUTF would decode the bytes without error
+   */
+  private boolean isModifiedUtf8(int data, int length) {
+    int i = data;
+    int stop = data + length;
+    while (i < stop) {
+      int b = buffer.get(i) & 0xFF;
+      int continuation;
+      if (b < 0x80) {
+        continuation = 0;
+      } else if ((b & 0xE0) == 0xC0) {
+        continuation = 1;
+      } else if ((b & 0xF0) == 0xE0) {
+        continuation = 2;
+      } else {
+        return false;
+      }
+      if (i + continuation >= stop) {
+        return false;
+      }
+      for (int c = 1; c <= continuation; c++) {
+        if ((buffer.get(i + c) & 0xC0) != 0x80) {
+          return false;
+        }
+      }
+      i += continuation + 1;
+    }
+    return true;
+  }
+
+  /**
+   * @param data absolute index of the first byte
+   * @param length number of bytes
+   * @return true if the bytes are well-formed UTF-8, without overlong forms or surrogates
+   */
+  private boolean isUtf8(int data, int length) {
+    int i = data;
+    int stop = data + length;
+    while (i < stop) {
+      int b = buffer.get(i) & 0xFF;
+      if (b < 0x80) {
+        i++;
+        continue;
+      }
+      int continuation;
+      int min;
+      int max = 0xBF;
+      if (b >= 0xC2 && b <= 0xDF) {
+        continuation = 1;
+        min = 0x80;
+      } else if (b >= 0xE0 && b <= 0xEF) {
+        continuation = 2;
+        min = b == 0xE0 ? 0xA0 : 0x80;
+        max = b == 0xED ? 0x9F : 0xBF;
+      } else if (b >= 0xF0 && b <= 0xF4) {
+        continuation = 3;
+        min = b == 0xF0 ? 0x90 : 0x80;
+        max = b == 0xF4 ? 0x8F : 0xBF;
+      } else {
+        return false;
+      }
+      if (i + continuation >= stop) {
+        return false;
+      }
+      int second = buffer.get(i + 1) & 0xFF;
+      if (second < min || second > max) {
+        return false;
+      }
+      for (int c = 2; c <= continuation; c++) {
+        if ((buffer.get(i + c) & 0xC0) != 0x80) {
+          return false;
+        }
+      }
+      i += continuation + 1;
+    }
+    return true;
+  }
+
+  /**
+   * Copy the whole frame into the target buffer at its position
+   *
+   * @param target the buffer in write mode, with room for the frame
+   */
+  public void copyTo(ByteBuffer target) {
+    target.put(target.position(), buffer, start, end - start);
+    target.position(target.position() + end - start);
+  }
+
+  /**
+   * Find where a string field starts
+   *
+   * @param index the field number
+   * @return absolute index of the field's length prefix
+   * @throws IOException if the frame does not have that field
+   */
+  private int fieldOffset(int index) throws IOException {
+    if (messageType == Protocol.QUERY_USER_RESPONSE || messageType == Protocol.CONNECT_RESPONSE
+        || messageType == Protocol.OTHER || messageType == Protocol.VERSIONED_CONNECT_MESSAGE
+        || messageType == Protocol.ROOM_RESPONSE || messageType == Protocol.PRESENCE_SYNC
+        || messageType == Protocol.PRESENCE_DELTA || messageType == Protocol.DIRECTORY_RESPONSE
+        || messageType == Protocol.HISTORY_RESPONSE || messageType == Protocol.PING
+        || messageType == Protocol.PONG) {
+      throw new IOException("Message type " + messageType + " has fields that are not strings");
+    }
+    int offset = fieldsStart;
+    for (int i = 0; i < index; i++) {
+      offset = stringData(offset) + stringLength(offset);
+    }
+    if (stringData(offset) + stringLength(offset) > end) {
+      throw new IOException("Frame has no field " + index);
+    }
+    return offset;
+  }
+
+  /**
+   * @param offset absolute index of a string's length prefix
+   * @return the string's length in bytes
+   * @throws IOException if the length prefix runs past the frame
+   */
+  private int stringLength(int offset) throws IOException {
+    if (format == WireFormat.V1) {
+      if (offset + V1_STRING_LENGTH_SIZE > end) {
+        throw new IOException("Field runs past the frame");
+      }
+      return buffer.getShort(offset) & 0xFFFF;
+    }
+    return varintAt(offset);
+  }
+
+  /**
+   * @param offset absolute index of a string's length prefix
+   * @return absolute index of the string's first byte
+   * @throws IOException if the length prefix runs past the frame
+   */
+  private int stringData(int offset) throws IOException {
+    return format == WireFormat.V1 ? offset + V1_STRING_LENGTH_SIZE : skipVarint(offset);
+  }
+
+  /**
+   * @param offset absolute index of a varint
+   * @return the varint's value
+   * @throws IOException if the varint runs past the frame or is too long
+   */
+  private int varintAt(int offset) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      if (offset >= end) {
+        throw new IOException("Field runs past the frame");
+      }
+      int b = buffer.get(offset++);
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  /**
+   * @param offset absolute index of a varint
+   * @return absolute index after the varint
+   * @throws IOException if the varint runs past the frame or is too long
+   */
+  private int skipVarint(int offset) throws IOException {
+    varintAt(offset);
+    while ((buffer.get(offset) & 0x80) != 0) {
+      offset++;
+    }
+    return offset + 1;
+  }
+
+  /**
+   * @param data absolute index of the first byte
+   * @param length number of bytes
+   * @return true if none of the bytes has its high bit set
+   */
+  private boolean isAscii(int data, int length) {
+    for (int i = 0; i < length; i++) {
+      if (buffer.get(data + i) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "FrameView{format:" + format + ", messageType:" + messageType + ", frameLength:"
+        + (end - start) + "}";
+  }
+}
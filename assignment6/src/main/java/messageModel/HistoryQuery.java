@@ -0,0 +1,135 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+import protocol.Protocol;
+
+/**
+ * Represents a request for the last messages of a conversation: the global room when the peer is empty,
+ * otherwise the direct messages between the user asking and the peer. The newest page is asked for with
+ * a before sequence of 0, each older one with the next before sequence from the previous HistoryResp
+ */
+public class HistoryQuery extends Message {
+  private final String username;
+  private final String peer;
+  private final int count;
+  private final long beforeSequence;
+
+  /**
+   * Construct a HistoryQuery
+   *
+   * @param username the username of the user asking
+   * @param peer the other user of a direct conversation, or empty for the global room
+   * @param count the most messages to return
+   * @param beforeSequence only messages with a lower sequence number are returned, 0 for the newest
+   */
+  public HistoryQuery(String username, String peer, int count, long beforeSequence) {
+    this.messageType = Protocol.HISTORY_QUERY;
+    this.username = username;
+    this.peer = peer;
+    this.count = count;
+    this.beforeSequence = beforeSequence;
+  }
+
+  /**
+   *
+   * @return the username of the user asking
+   */
+  public String getUsername() {
+    return username;
+  }
+
+  /**
+   *
+   * @return the other user of a direct conversation, or empty for the global room
+   */
+  public String getPeer() {
+    return peer;
+  }
+
+  /**
+   *
+   * @return the most messages to return
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   *
+   * @return only messages with a lower sequence number are returned, 0 for the newest
+   */
+  public long getBeforeSequence() {
+    return beforeSequence;
+  }
+
+  /**
+   * Send the username, peer, count and before sequence to the given output stream
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    out.writeInt(messageType);
+    out.writeUTF(username);
+    out.writeUTF(peer);
+    out.writeInt(count);
+    out.writeLong(beforeSequence);
+    out.flush();
+  }
+
+  /**
+   * Receive a username, peer, count and before sequence from the given input stream, whose message type
+   * has already been read
+   *
+   * @param in the given input stream
+   * @return a new HistoryQuery containing the received information
+   * @throws IOException if the given input stream is invalid
+   */
+  public static HistoryQuery receive(DataInputStream in) throws IOException {
+    String username = in.readUTF();
+    String peer = in.readUTF();
+    int count = in.readInt();
+    long beforeSequence = in.readLong();
+    return new HistoryQuery(username, peer, count, beforeSequence);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof HistoryQuery that)) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+    return getCount() == that.getCount()
+        && getBeforeSequence() == that.getBeforeSequence()
+        && Objects.equals(getUsername(), that.getUsername())
+        && Objects.equals(getPeer(), that.getPeer());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), getUsername(), getPeer(), getCount(), getBeforeSequence());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "HistoryQuery{messageType:" + super.messageType + ", username:" + username + ", peer:" + peer + ", count:" + count + ", beforeSequence:" + beforeSequence + "}";
+  }
+}
@@ -0,0 +1,229 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import protocol.Protocol;
+
+/**
+ * Represents one page of a conversation's history answering a HistoryQuery, oldest message first, with
+ * the before sequence to ask for the next older page
+ */
+public class HistoryResp extends Message {
+  private final List<Entry> entries;
+  private final long nextBeforeSequence;
+
+  /**
+   * Construct a HistoryResp
+   *
+   * @param entries the messages on the page, oldest first
+   * @param nextBeforeSequence the before sequence of the next older page, or 0 if there is none
+   */
+  public HistoryResp(List<Entry> entries, long nextBeforeSequence) {
+    this.messageType = Protocol.HISTORY_RESPONSE;
+    this.entries = entries;
+    this.nextBeforeSequence = nextBeforeSequence;
+  }
+
+  /**
+   *
+   * @return the messages on the page, oldest first
+   */
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   *
+   * @return the before sequence of the next older page, or 0 if there is none
+   */
+  public long getNextBeforeSequence() {
+    return nextBeforeSequence;
+  }
+
+  /**
+   *
+   * @return true if there may be older messages than the ones on this page
+   */
+  public boolean hasMore() {
+    return nextBeforeSequence != 0;
+  }
+
+  /**
+   * Send the entries and next before sequence to the given output stream
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    out.writeInt(messageType);
+    out.writeInt(entries.size());
+    for (Entry entry : entries) {
+      out.writeLong(entry.getSequence());
+      out.writeLong(entry.getTimestamp());
+      out.writeUTF(entry.getSenderUsername());
+      out.writeUTF(entry.getRecipientUsername());
+      out.writeUTF(entry.getMessage());
+    }
+    out.writeLong(nextBeforeSequence);
+    out.flush();
+  }
+
+  /**
+   * Receive entries and a next before sequence from the given input stream, whose message type has
+   * already been read
+   *
+   * @param in the given input stream
+   * @return a new HistoryResp containing the received information
+   * @throws IOException if the given input stream is invalid
+   */
+  public static HistoryResp receive(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    List<Entry> entries = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      entries.add(new Entry(in.readLong(), in.readLong(), in.readUTF(), in.readUTF(), in.readUTF()));
+    }
+    long nextBeforeSequence = in.readLong();
+    return new HistoryResp(entries, nextBeforeSequence);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof HistoryResp that)) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+    return getNextBeforeSequence() == that.getNextBeforeSequence()
+        && Objects.equals(getEntries(), that.getEntries());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), getEntries(), getNextBeforeSequence());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "HistoryResp{messageType:" + super.messageType + ", entries:" + entries + ", nextBeforeSequence:" + nextBeforeSequence + "}";
+  }
+
+  /**
+   * Represents one message in a conversation's history
+   */
+  public static class Entry {
+    private final long sequence;
+    private final long timestamp;
+    private final String senderUsername;
+    private final String recipientUsername;
+    private final String message;
+
+    /**
+     * Construct an Entry
+     *
+     * @param sequence the journal sequence number of the message
+     * @param timestamp when the message was routed, in milliseconds since the epoch
+     * @param senderUsername the username of the sender
+     * @param recipientUsername the username of the recipient, or empty for the global room
+     * @param message the content of the message
+     */
+    public Entry(long sequence, long timestamp, String senderUsername, String recipientUsername,
+        String message) {
+      this.sequence = sequence;
+      this.timestamp = timestamp;
+      this.senderUsername = senderUsername;
+      this.recipientUsername = recipientUsername;
+      this.message = message;
+    }
+
+    /**
+     *
+     * @return the journal sequence number of the message
+     */
+    public long getSequence() {
+      return sequence;
+    }
+
+    /**
+     *
+     * @return when the message was routed, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    /**
+     *
+     * @return the username of the sender
+     */
+    public String getSenderUsername() {
+      return senderUsername;
+    }
+
+    /**
+     *
+     * @return the username of the recipient, or empty for the global room
+     */
+    public String getRecipientUsername() {
+      return recipientUsername;
+    }
+
+    /**
+     *
+     * @return the content of the message
+     */
+    public String getMessage() {
+      return message;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Entry that)) {
+        return false;
+      }
+      return sequence == that.sequence && timestamp == that.timestamp
+          && Objects.equals(senderUsername, that.senderUsername)
+          && Objects.equals(recipientUsername, that.recipientUsername)
+          && Objects.equals(message, that.message);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+      return Objects.hash(sequence, timestamp, senderUsername, recipientUsername, message);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      return "Entry{sequence:" + sequence + ", timestamp:" + timestamp + ", senderUsername:" + senderUsername + ", recipientUsername:" + recipientUsername + ", message:" + message + "}";
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+import protocol.Protocol;
+
+/**
+ * Represents a request from a user to join a named room, creating the room if nobody is in it yet
+ */
+public class JoinRoomMessage extends Message {
+  private final String username;
+  private final String roomName;
+
+  /**
+   * Construct a JoinRoomMessage
+   *
+   * @param username the username of the user joining
+   * @param roomName the name of the room to join
+   */
+  public JoinRoomMessage(String username, String roomName) {
+    this.messageType = Protocol.JOIN_ROOM;
+    this.username = username;
+    this.roomName = roomName;
+  }
+
+  /**
+   *
+   * @return the username of the user joining
+   */
+  public String getUsername() {
+    return username;
+  }
+
+  /**
+   *
+   * @return the name of the room to join
+   */
+  public String getRoomName() {
+    return roomName;
+  }
+
+  /**
+   * Send the username and room name to the given output stream
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    out.writeInt(messageType);
+    out.writeUTF(username);
+    out.writeUTF(roomName);
+    out.flush();
+  }
+
+  /**
+   * Receive a username and room name from the given input stream, whose message type has already been read
+   *
+   * @param in the given input stream
+   * @return a new JoinRoomMessage containing the received information
+   * @throws IOException if the given input stream is invalid
+   */
+  public static JoinRoomMessage receive(DataInputStream in) throws IOException {
+    String username = in.readUTF();
+    String roomName = in.readUTF();
+    return new JoinRoomMessage(username, roomName);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof JoinRoomMessage that)) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+    return Objects.equals(getUsername(), that.getUsername())
+        && Objects.equals(getRoomName(), that.getRoomName());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), getUsername(), getRoomName());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "JoinRoomMessage{messageType:" + super.messageType + ", username:" + username + ", roomName:" + roomName + "}";
+  }
+}
@@ -0,0 +1,104 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+import protocol.Protocol;
+
+/**
+ * Represents a request from a user to leave a named room. A room disappears once its last member leaves
+ */
+public class LeaveRoomMessage extends Message {
+  private final String username;
+  private final String roomName;
+
+  /**
+   * Construct a LeaveRoomMessage
+   *
+   * @param username the username of the user leaving
+   * @param roomName the name of the room to leave
+   */
+  public LeaveRoomMessage(String username, String roomName) {
+    this.messageType = Protocol.LEAVE_ROOM;
+    this.username = username;
+    this.roomName = roomName;
+  }
+
+  /**
+   *
+   * @return the username of the user leaving
+   */
+  public String getUsername() {
+    return username;
+  }
+
+  /**
+   *
+   * @return the name of the room to leave
+   */
+  public String getRoomName() {
+    return roomName;
+  }
+
+  /**
+   * Send the username and room name to the given output stream
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    out.writeInt(messageType);
+    out.writeUTF(username);
+    out.writeUTF(roomName);
+    out.flush();
+  }
+
+  /**
+   * Receive a username and room name from the given input stream, whose message type has already been read
+   *
+   * @param in the given input stream
+   * @return a new LeaveRoomMessage containing the received information
+   * @throws IOException if the given input stream is invalid
+   */
+  public static LeaveRoomMessage receive(DataInputStream in) throws IOException {
+    String username = in.readUTF();
+    String roomName = in.readUTF();
+    return new LeaveRoomMessage(username, roomName);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof LeaveRoomMessage that)) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+    return Objects.equals(getUsername(), that.getUsername())
+        && Objects.equals(getRoomName(), that.getRoomName());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), getUsername(), getRoomName());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "LeaveRoomMessage{messageType:" + super.messageType + ", username:" + username + ", roomName:" + roomName + "}";
+  }
+}
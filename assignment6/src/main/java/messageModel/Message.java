@@ -3,6 +3,8 @@ package messageModel;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import protocol.Protocol;
 /**
@@ -18,6 +20,10 @@ public abstract class Message {
    */
   protected int messageType;
 
+  private int encodedSize = -1;
+
+  private int requestId;
+
   /**
    *
    * @return the message type of the message
@@ -26,6 +32,29 @@ public abstract class Message {
     return messageType;
   }
 
+  /**
+   * Get the id a client tagged this request with, or that the server copied onto its answer. Only
+   * version 2 frames carry it, and it is not part of equals since it labels the frame rather than the
+   * message
+   *
+   * @return the request id, or 0 if the message is not tagged
+   */
+  public int getRequestId() {
+    return requestId;
+  }
+
+  /**
+   * Tag this message with a request id, before it is sent
+   *
+   * @param requestId a positive request id, or 0 to send the message untagged
+   */
+  public void setRequestId(int requestId) {
+    if (requestId < 0) {
+      throw new IllegalArgumentException("requestId must not be negative");
+    }
+    this.requestId = requestId;
+  }
+
   /**
    * send the content of the message object to the provided output stream
    *
@@ -34,6 +63,24 @@ public abstract class Message {
    */
   public abstract void send(DataOutputStream out) throws IOException;
 
+  /**
+   * Get the number of bytes this message takes on the wire, worked out on first use
+   *
+   * @return the encoded size of the message in bytes
+   */
+  public int getEncodedSize() {
+    if (encodedSize < 0) {
+      DataOutputStream counter = new DataOutputStream(OutputStream.nullOutputStream());
+      try {
+        send(counter);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      encodedSize = counter.size();
+    }
+    return encodedSize;
+  }
+
   /**
    * receive information from given input stream and return a new object containing the received
    * information in an easy and readable way
@@ -43,15 +90,31 @@ public abstract class Message {
    * @throws IOException if the given input stream is invalid
    */
   public static Message receive(DataInputStream in) throws IOException {
-    int messageType = in.readInt();
+    return receive(in.readInt(), in);
+  }
 
+  /**
+   * receive the rest of a message whose type has already been read from the given input stream
+   *
+   * @param messageType the message type read from the stream
+   * @param in the given input stream
+   * @return  a new message object containing the received information
+   * @throws IOException if the given input stream is invalid
+   */
+  public static Message receive(int messageType, DataInputStream in) throws IOException {
     switch (messageType) {
       case Protocol.CONNECT_MESSAGE:
         return ConnectMessage.receive(in);
+      case Protocol.VERSIONED_CONNECT_MESSAGE:
+        return ConnectMessage.receiveVersioned(in);
       case Protocol.DISCONNECT_MESSAGE:
         return DisconnectMessage.receive(in);
       case Protocol.QUERY_CONNECTED_USERS:
         return QueryUsers.receive(in);
+      case Protocol.QUERY_USER_RESPONSE:
+        return QueryResp.receive(in);
+      case Protocol.OTHER:
+        return DisconnectResp.receive(in);
       case Protocol.BROADCAST_MESSAGE:
         return BroadcastMessage.receive(in);
       case Protocol.DIRECT_MESSAGE:
@@ -60,6 +123,34 @@ public abstract class Message {
         return InsultMessage.receive(in);
       case Protocol.FAILED_MESSAGE:
         return FailedMessage.receive(in);
+      case Protocol.JOIN_ROOM:
+        return JoinRoomMessage.receive(in);
+      case Protocol.LEAVE_ROOM:
+        return LeaveRoomMessage.receive(in);
+      case Protocol.ROOM_MESSAGE:
+        return RoomMessage.receive(in);
+      case Protocol.ROOM_RESPONSE:
+        return RoomResp.receive(in);
+      case Protocol.SUBSCRIBE_PRESENCE:
+        return SubscribePresence.receive(in);
+      case Protocol.PRESENCE_SYNC:
+        return PresenceSync.receive(in);
+      case Protocol.PRESENCE_DELTA:
+        return PresenceDelta.receive(in);
+      case Protocol.QUERY_DIRECTORY:
+        return DirectoryQuery.receive(in);
+      case Protocol.DIRECTORY_RESPONSE:
+        return DirectoryResp.receive(in);
+      case Protocol.HISTORY_QUERY:
+        return HistoryQuery.receive(in);
+      case Protocol.HISTORY_RESPONSE:
+        return HistoryResp.receive(in);
+      case Protocol.RESUME_SESSION:
+        return ResumeMessage.receive(in);
+      case Protocol.PING:
+        return PingMessage.receive(in);
+      case Protocol.PONG:
+        return PongMessage.receive(in);
       default:
         throw new IOException("Unknown message type: " + messageType);
     }
@@ -0,0 +1,91 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+import protocol.Protocol;
+
+/**
+ * Represents a ping, sent by the server to a connection it has not heard from in a while and by clients
+ * that want to know the server is still there. Whoever gets one answers with a PongMessage carrying the
+ * same timestamp
+ */
+public class PingMessage extends Message {
+  private final long timestamp;
+
+  /**
+   * Construct a PingMessage
+   *
+   * @param timestamp when the ping was sent, in whatever clock the sender uses
+   */
+  public PingMessage(long timestamp) {
+    this.messageType = Protocol.PING;
+    this.timestamp = timestamp;
+  }
+
+  /**
+   *
+   * @return when the ping was sent, in whatever clock the sender uses
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Send the timestamp to the given output stream
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    out.writeInt(messageType);
+    out.writeLong(timestamp);
+    out.flush();
+  }
+
+  /**
+   * Receive a timestamp from the given input stream, whose message type has already been read
+   *
+   * @param in the given input stream
+   * @return a new PingMessage containing the received timestamp
+   * @throws IOException if the given input stream is invalid
+   */
+  public static PingMessage receive(DataInputStream in) throws IOException {
+    return new PingMessage(in.readLong());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof PingMessage that)) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+    return getTimestamp() == that.getTimestamp();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), getTimestamp());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "PingMessage{messageType:" + super.messageType + ", timestamp:" + timestamp + "}";
+  }
+}
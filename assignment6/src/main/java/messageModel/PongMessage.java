@@ -0,0 +1,90 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+import protocol.Protocol;
+
+/**
+ * Represents the answer to a PingMessage, carrying the ping's timestamp back so the side that pinged
+ * can tell how long the round trip took
+ */
+public class PongMessage extends Message {
+  private final long timestamp;
+
+  /**
+   * Construct a PongMessage
+   *
+   * @param timestamp the timestamp of the ping being answered
+   */
+  public PongMessage(long timestamp) {
+    this.messageType = Protocol.PONG;
+    this.timestamp = timestamp;
+  }
+
+  /**
+   *
+   * @return the timestamp of the ping being answered
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Send the timestamp to the given output stream
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    out.writeInt(messageType);
+    out.writeLong(timestamp);
+    out.flush();
+  }
+
+  /**
+   * Receive a timestamp from the given input stream, whose message type has already been read
+   *
+   * @param in the given input stream
+   * @return a new PongMessage containing the received timestamp
+   * @throws IOException if the given input stream is invalid
+   */
+  public static PongMessage receive(DataInputStream in) throws IOException {
+    return new PongMessage(in.readLong());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof PongMessage that)) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+    return getTimestamp() == that.getTimestamp();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), getTimestamp());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "PongMessage{messageType:" + super.messageType + ", timestamp:" + timestamp + "}";
+  }
+}
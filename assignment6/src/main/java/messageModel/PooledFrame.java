@@ -0,0 +1,110 @@
+package messageModel;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a frame held in a buffer borrowed from a {@link FramePool}. It is queued like any other
+ * message, and whoever writes it to the recipient releases it afterwards. A PooledFrame has exactly one
+ * recipient, because its buffer is reused as soon as it is released
+ */
+public class PooledFrame extends Message {
+  private final FramePool pool;
+  private final ByteBuffer buffer;
+  private WireFormat format;
+  private boolean released;
+
+  /**
+   * Construct a PooledFrame around a buffer
+   *
+   * @param pool the pool the frame goes back to, or null if it is not pooled
+   * @param buffer the buffer holding the frame
+   */
+  PooledFrame(FramePool pool, ByteBuffer buffer) {
+    this.pool = pool;
+    this.buffer = buffer;
+  }
+
+  /**
+   * Prepare the frame to be filled with a new message
+   *
+   * @param messageType the message type of the new frame
+   * @param format the wire format of the new frame
+   */
+  void reset(int messageType, WireFormat format) {
+    this.messageType = messageType;
+    this.format = format;
+    this.released = false;
+    buffer.clear();
+  }
+
+  /**
+   *
+   * @return the buffer holding the frame, in read mode once the frame is filled
+   */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   *
+   * @return the wire format of the frame
+   */
+  public WireFormat getFormat() {
+    return format;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getEncodedSize() {
+    return buffer.limit();
+  }
+
+  /**
+   * Write the frame to the given output stream as-is
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    out.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+    out.flush();
+  }
+
+  /**
+   * Copy the frame out of the pooled buffer, for keeping after the frame is released
+   *
+   * @return an EncodedMessage holding a copy of the frame
+   */
+  public EncodedMessage copy() {
+    byte[] copy = new byte[buffer.limit()];
+    buffer.duplicate().position(0).get(copy);
+    return new EncodedMessage(messageType, format, copy);
+  }
+
+  /**
+   * Give the buffer back to its pool once the frame has been written. Releasing twice does nothing
+   */
+  public void release() {
+    if (released) {
+      return;
+    }
+    released = true;
+    if (pool != null) {
+      pool.release(this);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "PooledFrame{messageType:" + super.messageType + ", format:" + format + ", frameLength:"
+        + buffer.limit() + "}";
+  }
+}
@@ -0,0 +1,120 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+import protocol.Protocol;
+
+/**
+ * Represents one user joining or leaving the server, pushed to every presence subscriber. Deltas are
+ * numbered one after another starting after the subscriber's PresenceSync, so a subscriber that sees a
+ * gap knows it missed a change and should subscribe again
+ */
+public class PresenceDelta extends Message {
+  private final long sequence;
+  private final boolean joined;
+  private final String username;
+
+  /**
+   * Construct a PresenceDelta
+   *
+   * @param sequence the presence sequence number this change brings the list to
+   * @param joined true if the user joined, false if they left
+   * @param username the username of the user who joined or left
+   */
+  public PresenceDelta(long sequence, boolean joined, String username) {
+    this.messageType = Protocol.PRESENCE_DELTA;
+    this.sequence = sequence;
+    this.joined = joined;
+    this.username = username;
+  }
+
+  /**
+   *
+   * @return the presence sequence number this change brings the list to
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   *
+   * @return true if the user joined, false if they left
+   */
+  public boolean isJoined() {
+    return joined;
+  }
+
+  /**
+   *
+   * @return the username of the user who joined or left
+   */
+  public String getUsername() {
+    return username;
+  }
+
+  /**
+   * Send the sequence number, direction and username to the given output stream
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    out.writeInt(messageType);
+    out.writeLong(sequence);
+    out.writeBoolean(joined);
+    out.writeUTF(username);
+    out.flush();
+  }
+
+  /**
+   * Receive a sequence number, direction and username from the given input stream, whose message type
+   * has already been read
+   *
+   * @param in the given input stream
+   * @return a new PresenceDelta containing the received information
+   * @throws IOException if the given input stream is invalid
+   */
+  public static PresenceDelta receive(DataInputStream in) throws IOException {
+    long sequence = in.readLong();
+    boolean joined = in.readBoolean();
+    String username = in.readUTF();
+    return new PresenceDelta(sequence, joined, username);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof PresenceDelta that)) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+    return getSequence() == that.getSequence() && isJoined() == that.isJoined()
+        && Objects.equals(getUsername(), that.getUsername());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), getSequence(), isJoined(), getUsername());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "PresenceDelta{messageType:" + super.messageType + ", sequence:" + sequence + ", joined:" + joined + ", username:" + username + "}";
+  }
+}
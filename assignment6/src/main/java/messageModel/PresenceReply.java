@@ -0,0 +1,102 @@
+package messageModel;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import protocol.Protocol;
+
+/**
+ * Represents the answer to a QueryUsers made from a {@link PresenceSnapshot}. On the wire it is a
+ * QueryResp listing every user in the snapshot except the one who asked, but it is written straight from
+ * the snapshot's shared bytes instead of being encoded name by name
+ */
+public class PresenceReply extends Message {
+  private final PresenceSnapshot snapshot;
+  private final int excluded;
+
+  /**
+   * Construct a PresenceReply
+   *
+   * @param snapshot the snapshot holding the encoded usernames
+   * @param excluded index of the username to leave out, or -1
+   */
+  PresenceReply(PresenceSnapshot snapshot, int excluded) {
+    this.messageType = Protocol.QUERY_USER_RESPONSE;
+    this.snapshot = snapshot;
+    this.excluded = excluded;
+  }
+
+  /**
+   *
+   * @return the snapshot the reply is made from
+   */
+  public PresenceSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   *
+   * @return the usernames listed in the reply
+   */
+  public List<String> getUsernames() {
+    return snapshot.getUsernames(excluded);
+  }
+
+  /**
+   * Get the frame in the given wire format as a header followed by read-only views of the snapshot's
+   * bytes, ready for a gathering write
+   *
+   * @param format the wire format of the recipient
+   * @return the parts of the frame, in order
+   * @throws IOException if the frame would be too long for the format
+   */
+  public ByteBuffer[] getFrame(WireFormat format) throws IOException {
+    return snapshot.frame(format, excluded, getRequestId());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int getEncodedSize() {
+    try {
+      return snapshot.frameLength(WireFormat.V1, excluded, 0);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Write the version 1 frame to the given output stream
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    send(out, WireFormat.V1);
+  }
+
+  /**
+   * Write the frame in the given wire format to the given output stream
+   *
+   * @param out the given output stream
+   * @param format the wire format of the recipient
+   * @throws IOException if the provided output stream is invalid
+   */
+  public void send(DataOutputStream out, WireFormat format) throws IOException {
+    snapshot.write(out, format, excluded, getRequestId());
+    out.flush();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "PresenceReply{messageType:" + super.messageType + ", version:" + snapshot.getVersion()
+        + ", users:" + getUsernames() + "}";
+  }
+}
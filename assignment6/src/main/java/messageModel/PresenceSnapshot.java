@@ -0,0 +1,270 @@
+package messageModel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import protocol.Protocol;
+
+/**
+ * Represents the users connected to a server at one version of its membership. The usernames are encoded
+ * once per wire format as the entries of a QueryResp, and every {@link PresenceReply} made from the
+ * snapshot shares those bytes. A reply leaves out the user asking by skipping that user's entry, so
+ * answering a query only costs a new frame header
+ */
+public class PresenceSnapshot {
+  private final long version;
+  private final String[] usernames;
+  private final AtomicReferenceArray<Entries> entries;
+
+  /**
+   * Construct a PresenceSnapshot
+   *
+   * @param version the membership version the usernames were read at
+   * @param usernames the connected usernames, without duplicates
+   */
+  public PresenceSnapshot(long version, Collection<String> usernames) {
+    this.version = version;
+    this.usernames = usernames.toArray(new String[0]);
+    Arrays.sort(this.usernames);
+    this.entries = new AtomicReferenceArray<>(WireFormat.values().length);
+  }
+
+  /**
+   *
+   * @return the membership version the usernames were read at
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   *
+   * @return the connected usernames in sorted order
+   */
+  public List<String> getUsernames() {
+    return Collections.unmodifiableList(Arrays.asList(usernames));
+  }
+
+  /**
+   *
+   * @return the number of connected users
+   */
+  public int size() {
+    return usernames.length;
+  }
+
+  /**
+   * Make the answer to a query from one user, listing everyone else
+   *
+   * @param requester the username of the user asking
+   * @return a reply sharing this snapshot's encoded usernames
+   */
+  public PresenceReply replyFor(String requester) {
+    int excluded = requester == null ? -1 : Arrays.binarySearch(usernames, requester);
+    return new PresenceReply(this, Math.max(-1, excluded));
+  }
+
+  /**
+   * @param excluded index of the username to leave out, or -1
+   * @return the usernames without the excluded one
+   */
+  List<String> getUsernames(int excluded) {
+    List<String> names = new ArrayList<>(Arrays.asList(usernames));
+    if (excluded >= 0) {
+      names.remove(excluded);
+    }
+    return names;
+  }
+
+  /**
+   * Get the frame of a QueryResp listing every username but the excluded one, as a header followed by
+   * read-only views of the shared entries. Nothing but the header is copied
+   *
+   * @param format the wire format of the recipient
+   * @param excluded index of the username to leave out, or -1
+   * @param requestId the id of the query being answered, or 0
+   * @return the parts of the frame, in order
+   * @throws IOException if the frame would be too long for the format
+   */
+  ByteBuffer[] frame(WireFormat format, int excluded, int requestId) throws IOException {
+    Entries encoded = entries(format);
+    int start = excluded >= 0 ? encoded.offsets[excluded] : encoded.bytes.length;
+    int end = excluded >= 0 ? encoded.offsets[excluded + 1] : encoded.bytes.length;
+    int count = excluded >= 0 ? usernames.length - 1 : usernames.length;
+    ByteBuffer header = format == WireFormat.V1
+        ? v1Header(count) : v2Header(count, encoded.bytes.length - (end - start), requestId);
+    ByteBuffer before = ByteBuffer.wrap(encoded.bytes, 0, start).slice().asReadOnlyBuffer();
+    if (end == encoded.bytes.length) {
+      return new ByteBuffer[] {header, before};
+    }
+    ByteBuffer after = ByteBuffer.wrap(encoded.bytes, end, encoded.bytes.length - end).slice()
+        .asReadOnlyBuffer();
+    return new ByteBuffer[] {header, before, after};
+  }
+
+  /**
+   * Write the frame of a QueryResp listing every username but the excluded one
+   *
+   * @param out the given output stream
+   * @param format the wire format of the recipient
+   * @param excluded index of the username to leave out, or -1
+   * @param requestId the id of the query being answered, or 0
+   * @throws IOException if the frame would be too long for the format or the stream is invalid
+   */
+  void write(DataOutputStream out, WireFormat format, int excluded, int requestId) throws IOException {
+    Entries encoded = entries(format);
+    int start = excluded >= 0 ? encoded.offsets[excluded] : encoded.bytes.length;
+    int end = excluded >= 0 ? encoded.offsets[excluded + 1] : encoded.bytes.length;
+    int count = excluded >= 0 ? usernames.length - 1 : usernames.length;
+    ByteBuffer header = format == WireFormat.V1
+        ? v1Header(count) : v2Header(count, encoded.bytes.length - (end - start), requestId);
+    out.write(header.array(), 0, header.limit());
+    out.write(encoded.bytes, 0, start);
+    out.write(encoded.bytes, end, encoded.bytes.length - end);
+  }
+
+  /**
+   * @param format the wire format of the recipient
+   * @param excluded index of the username to leave out, or -1
+   * @param requestId the id of the query being answered, or 0
+   * @return the number of bytes in the frame
+   * @throws IOException if the frame would be too long for the format
+   */
+  int frameLength(WireFormat format, int excluded, int requestId) throws IOException {
+    Entries encoded = entries(format);
+    int count = usernames.length;
+    int entriesLength = encoded.bytes.length;
+    if (excluded >= 0) {
+      count--;
+      entriesLength -= encoded.offsets[excluded + 1] - encoded.offsets[excluded];
+    }
+    if (format == WireFormat.V1) {
+      return 2 * Integer.BYTES + entriesLength;
+    }
+    int bodyLength = v2BodyLength(count, entriesLength, requestId);
+    return FrameCodecV2.varintSize(bodyLength) + bodyLength;
+  }
+
+  /**
+   * @param count number of usernames in the frame
+   * @param entriesLength number of bytes of username entries in the frame
+   * @param requestId the id of the query being answered, or 0
+   * @return the number of bytes after the version 2 length prefix
+   * @throws IOException if the frame would be too long
+   */
+  private static int v2BodyLength(int count, int entriesLength, int requestId) throws IOException {
+    long bodyLength = (long) FrameCodecV2.varintSize(Protocol.QUERY_USER_RESPONSE)
+        + FrameCodecV2.putHeaderFlags(null, requestId) + FrameCodecV2.varintSize(count) + entriesLength;
+    if (bodyLength > FrameCodecV2.MAX_FRAME_LENGTH) {
+      throw new IOException("Frame too long: " + bodyLength);
+    }
+    return (int) bodyLength;
+  }
+
+  /**
+   * @param count number of usernames in the frame
+   * @return the version 1 header: message type and user count
+   */
+  private static ByteBuffer v1Header(int count) {
+    ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+    header.putInt(Protocol.QUERY_USER_RESPONSE).putInt(count).flip();
+    return header;
+  }
+
+  /**
+   * @param count number of usernames in the frame
+   * @param entriesLength number of bytes of username entries in the frame
+   * @param requestId the id of the query being answered, or 0
+   * @return the version 2 header: length prefix, message type, flags, request id and user count
+   * @throws IOException if the frame would be too long
+   */
+  private static ByteBuffer v2Header(int count, int entriesLength, int requestId) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(20);
+    FrameCodecV2.putVarint(header, v2BodyLength(count, entriesLength, requestId));
+    FrameCodecV2.putVarint(header, Protocol.QUERY_USER_RESPONSE);
+    FrameCodecV2.putHeaderFlags(header, requestId);
+    FrameCodecV2.putVarint(header, count);
+    header.flip();
+    return header;
+  }
+
+  /**
+   * Get the encoded usernames for a wire format, encoding them on first use. Concurrent first uses may
+   * both encode, but they produce the same bytes and only one is kept
+   *
+   * @param format the wire format
+   * @return the encoded usernames
+   * @throws IOException if a username cannot be encoded
+   */
+  private Entries entries(WireFormat format) throws IOException {
+    Entries encoded = entries.get(format.ordinal());
+    if (encoded == null) {
+      encoded = encode(format);
+      if (!entries.compareAndSet(format.ordinal(), null, encoded)) {
+        encoded = entries.get(format.ordinal());
+      }
+    }
+    return encoded;
+  }
+
+  /**
+   * Encode every username the way the format writes QueryResp entries, remembering where each starts
+   *
+   * @param format the wire format
+   * @return the encoded usernames
+   * @throws IOException if a username cannot be encoded
+   */
+  private Entries encode(WireFormat format) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    int[] offsets = new int[usernames.length + 1];
+    ByteBuffer varint = ByteBuffer.allocate(5);
+    for (int i = 0; i < usernames.length; i++) {
+      offsets[i] = out.size();
+      if (format == WireFormat.V1) {
+        out.writeUTF(usernames[i]);
+      } else {
+        byte[] utf8 = usernames[i].getBytes(StandardCharsets.UTF_8);
+        varint.clear();
+        FrameCodecV2.putVarint(varint, utf8.length);
+        out.write(varint.array(), 0, varint.position());
+        out.write(utf8);
+      }
+    }
+    offsets[usernames.length] = out.size();
+    return new Entries(bytes.toByteArray(), offsets);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "PresenceSnapshot{version:" + version + ", users:" + usernames.length + "}";
+  }
+
+  /**
+   * The usernames encoded for one wire format, with the offset of each entry and the total length last
+   */
+  private static class Entries {
+    private final byte[] bytes;
+    private final int[] offsets;
+
+    /**
+     * @param bytes the encoded entries
+     * @param offsets where each entry starts, followed by the total length
+     */
+    Entries(byte[] bytes, int[] offsets) {
+      this.bytes = bytes;
+      this.offsets = offsets;
+    }
+  }
+}
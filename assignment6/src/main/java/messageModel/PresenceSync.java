@@ -0,0 +1,115 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import protocol.Protocol;
+
+/**
+ * Represents every user connected to the server as of a presence sequence number, sent in answer to a
+ * SubscribePresence. The subscriber is on the list too. Each PresenceDelta after it carries the next
+ * sequence number
+ */
+public class PresenceSync extends Message {
+  private final long sequence;
+  private final List<String> usernames;
+
+  /**
+   * Construct a PresenceSync
+   *
+   * @param sequence the presence sequence number the list is current as of
+   * @param usernames the usernames of every connected user
+   */
+  public PresenceSync(long sequence, List<String> usernames) {
+    this.messageType = Protocol.PRESENCE_SYNC;
+    this.sequence = sequence;
+    this.usernames = usernames;
+  }
+
+  /**
+   *
+   * @return the presence sequence number the list is current as of
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   *
+   * @return the usernames of every connected user
+   */
+  public List<String> getUsernames() {
+    return usernames;
+  }
+
+  /**
+   * Send the sequence number and usernames to the given output stream
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    out.writeInt(messageType);
+    out.writeLong(sequence);
+    out.writeInt(usernames.size());
+    for (String username : usernames) {
+      out.writeUTF(username);
+    }
+    out.flush();
+  }
+
+  /**
+   * Receive a sequence number and usernames from the given input stream, whose message type has already
+   * been read
+   *
+   * @param in the given input stream
+   * @return a new PresenceSync containing the received information
+   * @throws IOException if the given input stream is invalid
+   */
+  public static PresenceSync receive(DataInputStream in) throws IOException {
+    long sequence = in.readLong();
+    int count = in.readInt();
+    List<String> usernames = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      usernames.add(in.readUTF());
+    }
+    return new PresenceSync(sequence, usernames);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof PresenceSync that)) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+    return getSequence() == that.getSequence() && Objects.equals(getUsernames(), that.getUsernames());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), getSequence(), getUsernames());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "PresenceSync{messageType:" + super.messageType + ", sequence:" + sequence + ", usernames:" + usernames + "}";
+  }
+}
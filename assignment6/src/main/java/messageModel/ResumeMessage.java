@@ -0,0 +1,135 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+import protocol.Protocol;
+
+/**
+ * Represents a request to pick a session up on a new connection instead of logging in again. It is sent
+ * in place of the ConnectMessage, with the resume token from the session's ConnectResp and the
+ * sequence number of the last frame the client read, and is answered with a ConnectResp like a login
+ */
+public class ResumeMessage extends Message {
+  private final String username;
+  private final String resumeToken;
+  private final long lastSequence;
+  private final int maxVersion;
+
+  /**
+   * Construct a ResumeMessage
+   *
+   * @param username the username of the session
+   * @param resumeToken the resume token from the session's ConnectResp
+   * @param lastSequence the sequence number of the last frame read, 0 if none was
+   * @param maxVersion the highest protocol version the client speaks
+   */
+  public ResumeMessage(String username, String resumeToken, long lastSequence, int maxVersion) {
+    this.messageType = Protocol.RESUME_SESSION;
+    this.username = username;
+    this.resumeToken = resumeToken;
+    this.lastSequence = lastSequence;
+    this.maxVersion = maxVersion;
+  }
+
+  /**
+   *
+   * @return the username of the session
+   */
+  public String getUsername() {
+    return username;
+  }
+
+  /**
+   *
+   * @return the resume token from the session's ConnectResp
+   */
+  public String getResumeToken() {
+    return resumeToken;
+  }
+
+  /**
+   *
+   * @return the sequence number of the last frame read, 0 if none was
+   */
+  public long getLastSequence() {
+    return lastSequence;
+  }
+
+  /**
+   *
+   * @return the highest protocol version the client speaks
+   */
+  public int getMaxVersion() {
+    return maxVersion;
+  }
+
+  /**
+   * Send the username, resume token, last sequence and highest version to the given output stream
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    out.writeInt(messageType);
+    out.writeUTF(username);
+    out.writeUTF(resumeToken);
+    out.writeLong(lastSequence);
+    out.writeInt(maxVersion);
+    out.flush();
+  }
+
+  /**
+   * Receive a username, resume token, last sequence and highest version from the given input stream,
+   * whose message type has already been read
+   *
+   * @param in the given input stream
+   * @return a new ResumeMessage containing the received information
+   * @throws IOException if the given input stream is invalid
+   */
+  public static ResumeMessage receive(DataInputStream in) throws IOException {
+    String username = in.readUTF();
+    String resumeToken = in.readUTF();
+    long lastSequence = in.readLong();
+    int maxVersion = in.readInt();
+    return new ResumeMessage(username, resumeToken, lastSequence, maxVersion);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ResumeMessage that)) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+    return getLastSequence() == that.getLastSequence()
+        && getMaxVersion() == that.getMaxVersion()
+        && Objects.equals(getUsername(), that.getUsername())
+        && Objects.equals(getResumeToken(), that.getResumeToken());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), getUsername(), getResumeToken(), getLastSequence(), getMaxVersion());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "ResumeMessage{messageType:" + super.messageType + ", username:" + username + ", lastSequence:" + lastSequence + ", maxVersion:" + maxVersion + "}";
+  }
+}
@@ -0,0 +1,120 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+import protocol.Protocol;
+
+/**
+ * Represents a message sent to every other member of a named room. Users send it to the server, and the
+ * server hands the same message on to the room's members
+ */
+public class RoomMessage extends Message {
+  private final String senderUsername;
+  private final String roomName;
+  private final String message;
+
+  /**
+   * Construct a RoomMessage
+   *
+   * @param senderUsername the sender's username
+   * @param roomName the name of the room
+   * @param message the message for the room's members
+   */
+  public RoomMessage(String senderUsername, String roomName, String message) {
+    this.messageType = Protocol.ROOM_MESSAGE;
+    this.senderUsername = senderUsername;
+    this.roomName = roomName;
+    this.message = message;
+  }
+
+  /**
+   *
+   * @return the sender's username
+   */
+  public String getSenderUsername() {
+    return senderUsername;
+  }
+
+  /**
+   *
+   * @return the name of the room
+   */
+  public String getRoomName() {
+    return roomName;
+  }
+
+  /**
+   *
+   * @return the message for the room's members
+   */
+  public String getMessage() {
+    return message;
+  }
+
+  /**
+   * Send the sender username, room name and message to the given output stream
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    out.writeInt(messageType);
+    out.writeUTF(senderUsername);
+    out.writeUTF(roomName);
+    out.writeUTF(message);
+    out.flush();
+  }
+
+  /**
+   * Receive a sender username, room name and message from the given input stream, whose message type
+   * has already been read
+   *
+   * @param in the given input stream
+   * @return a new RoomMessage containing the received information
+   * @throws IOException if the given input stream is invalid
+   */
+  public static RoomMessage receive(DataInputStream in) throws IOException {
+    String senderUsername = in.readUTF();
+    String roomName = in.readUTF();
+    String message = in.readUTF();
+    return new RoomMessage(senderUsername, roomName, message);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof RoomMessage that)) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+    return Objects.equals(getSenderUsername(), that.getSenderUsername())
+        && Objects.equals(getRoomName(), that.getRoomName())
+        && Objects.equals(getMessage(), that.getMessage());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), getSenderUsername(), getRoomName(), getMessage());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "RoomMessage{messageType:" + super.messageType + ", senderUsername:" + senderUsername + ", roomName:" + roomName + ", message:" + message + "}";
+  }
+}
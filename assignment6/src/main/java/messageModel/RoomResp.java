@@ -0,0 +1,119 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+import protocol.Protocol;
+
+/**
+ * Represents the server's answer to a JoinRoomMessage or LeaveRoomMessage
+ */
+public class RoomResp extends Message {
+  private final boolean success;
+  private final String roomName;
+  private final String message;
+
+  /**
+   * Construct a RoomResp
+   *
+   * @param success whether the request succeeded
+   * @param roomName the name of the room the request was about
+   * @param message detailed information describing the result
+   */
+  public RoomResp(boolean success, String roomName, String message) {
+    this.messageType = Protocol.ROOM_RESPONSE;
+    this.success = success;
+    this.roomName = roomName;
+    this.message = message;
+  }
+
+  /**
+   *
+   * @return whether the request succeeded
+   */
+  public boolean isSuccess() {
+    return success;
+  }
+
+  /**
+   *
+   * @return the name of the room the request was about
+   */
+  public String getRoomName() {
+    return roomName;
+  }
+
+  /**
+   *
+   * @return detailed information describing the result
+   */
+  public String getMessage() {
+    return message;
+  }
+
+  /**
+   * Send the result, room name and detailed information to the given output stream
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    out.writeInt(messageType);
+    out.writeBoolean(success);
+    out.writeUTF(roomName);
+    out.writeUTF(message);
+    out.flush();
+  }
+
+  /**
+   * Receive a result, room name and detailed information from the given input stream, whose message
+   * type has already been read
+   *
+   * @param in the given input stream
+   * @return a new RoomResp containing the received information
+   * @throws IOException if the given input stream is invalid
+   */
+  public static RoomResp receive(DataInputStream in) throws IOException {
+    boolean success = in.readBoolean();
+    String roomName = in.readUTF();
+    String message = in.readUTF();
+    return new RoomResp(success, roomName, message);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof RoomResp that)) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+    return isSuccess() == that.isSuccess()
+        && Objects.equals(getRoomName(), that.getRoomName())
+        && Objects.equals(getMessage(), that.getMessage());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), isSuccess(), getRoomName(), getMessage());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "RoomResp{messageType:" + super.messageType + ", success:" + success + ", roomName:" + roomName + ", message:" + message + "}";
+  }
+}
@@ -0,0 +1,91 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+import protocol.Protocol;
+
+/**
+ * Represents a request from a user to be told who is connected. The server answers with one
+ * PresenceSync and then pushes a PresenceDelta for every user joining or leaving. Sending it again
+ * starts over with a new PresenceSync
+ */
+public class SubscribePresence extends Message {
+  private final String username;
+
+  /**
+   * Construct a SubscribePresence
+   *
+   * @param username the username of the user subscribing
+   */
+  public SubscribePresence(String username) {
+    this.messageType = Protocol.SUBSCRIBE_PRESENCE;
+    this.username = username;
+  }
+
+  /**
+   *
+   * @return the username of the user subscribing
+   */
+  public String getUsername() {
+    return username;
+  }
+
+  /**
+   * Send the username to the given output stream
+   *
+   * @param out the given output stream
+   * @throws IOException if the provided output stream is invalid
+   */
+  @Override
+  public void send(DataOutputStream out) throws IOException {
+    out.writeInt(messageType);
+    out.writeUTF(username);
+    out.flush();
+  }
+
+  /**
+   * Receive a username from the given input stream, whose message type has already been read
+   *
+   * @param in the given input stream
+   * @return a new SubscribePresence containing the received username
+   * @throws IOException if the given input stream is invalid
+   */
+  public static SubscribePresence receive(DataInputStream in) throws IOException {
+    return new SubscribePresence(in.readUTF());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof SubscribePresence that)) {
+      return false;
+    }
+    if (!super.equals(o)) {
+      return false;
+    }
+    return Objects.equals(getUsername(), that.getUsername());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), getUsername());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "SubscribePresence{messageType:" + super.messageType + ", username:" + username + "}";
+  }
+}
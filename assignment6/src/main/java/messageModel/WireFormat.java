@@ -0,0 +1,228 @@
+package messageModel;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import protocol.Protocol;
+
+/**
+ * Represents the framing a connection uses after its connect handshake. The handshake itself, the
+ * ConnectMessage and its ConnectResp, is always framed as version 1 so both sides can read it before
+ * they have agreed on anything
+ */
+public enum WireFormat {
+  /**
+   * A bare int type followed by writeUTF fields, see {@link FrameDecoder}
+   */
+  V1(Protocol.VERSION_1),
+  /**
+   * Length-prefixed frames with varint fields, see {@link FrameCodecV2}
+   */
+  V2(Protocol.VERSION_2);
+
+  private final int version;
+
+  /**
+   * Construct a WireFormat for a protocol version
+   *
+   * @param version the protocol version number
+   */
+  WireFormat(int version) {
+    this.version = version;
+  }
+
+  /**
+   *
+   * @return the protocol version number
+   */
+  public int getVersion() {
+    return version;
+  }
+
+  /**
+   * Pick the highest format both sides speak
+   *
+   * @param clientMaxVersion the highest version offered by the client
+   * @return the format to use for the rest of the connection
+   */
+  public static WireFormat negotiate(int clientMaxVersion) {
+    return clientMaxVersion >= Protocol.VERSION_2 ? V2 : V1;
+  }
+
+  /**
+   * Encode a message into a buffer ready to be written to a channel
+   *
+   * @param message the message to encode
+   * @return a buffer in read mode holding the whole frame
+   * @throws IOException if the message cannot be encoded
+   */
+  public ByteBuffer encode(Message message) throws IOException {
+    if (message instanceof EncodedMessage) {
+      return ((EncodedMessage) message).getFrame(this);
+    }
+    if (message instanceof PooledFrame) {
+      return checkFormat((PooledFrame) message).getBuffer();
+    }
+    if (message instanceof PresenceReply) {
+      ByteBuffer[] parts = ((PresenceReply) message).getFrame(this);
+      int length = 0;
+      for (ByteBuffer part : parts) {
+        length += part.remaining();
+      }
+      ByteBuffer frame = ByteBuffer.allocate(length);
+      for (ByteBuffer part : parts) {
+        frame.put(part);
+      }
+      return frame.flip();
+    }
+    if (this == V1 || message instanceof ConnectResp) {
+      return FrameDecoder.encode(message);
+    }
+    return FrameCodecV2.encode(message);
+  }
+
+  /**
+   * Encode a message straight into a frame borrowed from the pool, for formats and messages that support
+   * it. The caller releases the frame once it has been written
+   *
+   * @param message the message to encode
+   * @param pool the pool to borrow the frame from
+   * @return the frame in read mode, or null if the message has to go through {@link #encode(Message)}
+   * @throws IOException if the message cannot be encoded
+   */
+  public PooledFrame encodePooled(Message message, FramePool pool) throws IOException {
+    if (this == V1 || message instanceof ConnectResp || message instanceof EncodedMessage
+        || message instanceof PooledFrame || message instanceof PresenceReply) {
+      return null;
+    }
+    PooledFrame frame = pool.acquire(message.getMessageType(), this, FrameCodecV2.encodedLength(message));
+    FrameCodecV2.encode(message, frame.getBuffer());
+    frame.getBuffer().flip();
+    return frame;
+  }
+
+  /**
+   * Make sure a pooled frame can be written as-is to a connection using this format
+   *
+   * @param frame the frame about to be written
+   * @return the frame
+   * @throws IOException if the frame is in another format
+   */
+  private PooledFrame checkFormat(PooledFrame frame) throws IOException {
+    if (frame.getFormat() != this) {
+      throw new IOException("Cannot write a " + frame.getFormat() + " frame to a " + this + " connection");
+    }
+    return frame;
+  }
+
+  /**
+   * Write a message as one frame to the given output stream
+   *
+   * @param message the message to write
+   * @param out the given output stream
+   * @throws IOException if the message cannot be encoded or the stream is invalid
+   */
+  public void write(Message message, DataOutputStream out) throws IOException {
+    if (message instanceof EncodedMessage) {
+      ((EncodedMessage) message).send(out, this);
+    } else if (message instanceof PooledFrame) {
+      checkFormat((PooledFrame) message).send(out);
+    } else if (message instanceof PresenceReply) {
+      ((PresenceReply) message).send(out, this);
+    } else if (this == V1 || message instanceof ConnectResp) {
+      message.send(out);
+    } else {
+      FrameCodecV2.write(message, out);
+    }
+  }
+
+  /**
+   * Read one message from the given input stream, blocking until it has arrived
+   *
+   * @param in the given input stream
+   * @return the decoded message
+   * @throws IOException if the stream ends or the frame cannot be decoded
+   */
+  public Message read(DataInputStream in) throws IOException {
+    return this == V1 ? Message.receive(in) : FrameCodecV2.read(in);
+  }
+
+  /**
+   * Read one message like {@link #read(DataInputStream)}, except that a direct message comes back as a
+   * {@link ForwardedDirectMessage} whose body is only decoded when asked for
+   *
+   * @param in the given input stream
+   * @return the decoded message
+   * @throws IOException if the stream ends or the frame cannot be decoded
+   */
+  public Message readRouted(DataInputStream in) throws IOException {
+    if (this == V1) {
+      int messageType = in.readInt();
+      return messageType == Protocol.DIRECT_MESSAGE
+          ? ForwardedDirectMessage.receive(in) : Message.receive(messageType, in);
+    }
+    byte[] frame = FrameCodecV2.readFrame(in);
+    ByteBuffer buffer = ByteBuffer.wrap(frame);
+    return isForwardable(buffer) ? ForwardedDirectMessage.fromFrame(this, frame) : FrameCodecV2.decode(buffer);
+  }
+
+  /**
+   * A version 2 direct message is forwarded as-is unless it is tagged with a request id, which is meant
+   * for the server and must not reach the recipient
+   *
+   * @param buffer the buffer in read mode, holding at least one whole version 2 frame
+   * @return true if the frame can be forwarded without decoding it
+   * @throws IOException if the frame header is malformed
+   */
+  private static boolean isForwardable(ByteBuffer buffer) throws IOException {
+    return FrameCodecV2.peekType(buffer) == Protocol.DIRECT_MESSAGE
+        && FrameCodecV2.peekFlags(buffer) == FrameCodecV2.NO_FLAGS;
+  }
+
+  /**
+   * Find the length of the frame starting at the buffer's position without consuming it
+   *
+   * @param buffer the buffer in read mode
+   * @return the frame length in bytes, or a negative number if more bytes are needed
+   * @throws IOException if the frame header is malformed
+   */
+  public int frameLength(ByteBuffer buffer) throws IOException {
+    return this == V1 ? FrameDecoder.frameLength(buffer) : FrameCodecV2.frameLength(buffer);
+  }
+
+  /**
+   * Decode one message like {@link #decode(ByteBuffer)}, except that a direct message comes back as a
+   * {@link ForwardedDirectMessage} holding a copy of its frame, with the body never decoded
+   *
+   * @param buffer the buffer in read mode
+   * @return the decoded message, or null if more bytes are needed
+   * @throws IOException if the frame cannot be decoded
+   */
+  public Message decodeRouted(ByteBuffer buffer) throws IOException {
+    int length = frameLength(buffer);
+    if (length < 0) {
+      return null;
+    }
+    boolean forwardable = this == V1
+        ? buffer.getInt(buffer.position()) == Protocol.DIRECT_MESSAGE : isForwardable(buffer);
+    if (!forwardable) {
+      return decode(buffer);
+    }
+    byte[] frame = new byte[length];
+    buffer.get(frame);
+    return ForwardedDirectMessage.fromFrame(this, frame);
+  }
+
+  /**
+   * Decode one message from the buffer if a whole frame is available. The buffer's position is moved
+   * past the frame only when a message is returned
+   *
+   * @param buffer the buffer in read mode
+   * @return the decoded message, or null if more bytes are needed
+   * @throws IOException if the frame cannot be decoded
+   */
+  public Message decode(ByteBuffer buffer) throws IOException {
+    return this == V1 ? FrameDecoder.decode(buffer) : FrameCodecV2.decode(buffer);
+  }
+}
@@ -49,4 +49,82 @@ public class Protocol {
    * Other
    */
   public static final int OTHER = 28; //
+  /**
+   * Connect message that also carries the highest protocol version the client speaks
+   */
+  public static final int VERSIONED_CONNECT_MESSAGE = 29;
+  /**
+   * Connect response that also carries the protocol version used from now on
+   */
+  public static final int VERSIONED_CONNECT_RESPONSE = 30;
+  /**
+   * Join a named room
+   */
+  public static final int JOIN_ROOM = 31;
+  /**
+   * Leave a named room
+   */
+  public static final int LEAVE_ROOM = 32;
+  /**
+   * Message for the members of a named room
+   */
+  public static final int ROOM_MESSAGE = 33;
+  /**
+   * Answer to joining or leaving a room
+   */
+  public static final int ROOM_RESPONSE = 34;
+  /**
+   * Ask for the connected users once and for every change after that
+   */
+  public static final int SUBSCRIBE_PRESENCE = 35;
+  /**
+   * Every connected user as of a presence sequence number
+   */
+  public static final int PRESENCE_SYNC = 36;
+  /**
+   * One user joining or leaving, with the presence sequence number it brings the list to
+   */
+  public static final int PRESENCE_DELTA = 37;
+  /**
+   * Ask for one page of the connected users whose names start with a prefix
+   */
+  public static final int QUERY_DIRECTORY = 38;
+  /**
+   * One page of a directory query and the cursor of the next page
+   */
+  public static final int DIRECTORY_RESPONSE = 39;
+  /**
+   * Ask for the last messages of the global room or of a direct conversation, before a sequence number
+   */
+  public static final int HISTORY_QUERY = 40;
+  /**
+   * The messages answering a history query, oldest first, and where the next older page ends
+   */
+  public static final int HISTORY_RESPONSE = 41;
+  /**
+   * Pick a session up on a new connection, sent in place of the connect message with the session's
+   * resume token and the sequence number of the last frame the client read
+   */
+  public static final int RESUME_SESSION = 42;
+  /**
+   * Ask the other side to show it is still there, it answers with a pong carrying the same timestamp
+   */
+  public static final int PING = 43;
+  /**
+   * The answer to a ping
+   */
+  public static final int PONG = 44;
+
+  /**
+   * Protocol version 1: a bare int type followed by writeUTF fields
+   */
+  public static final int VERSION_1 = 1;
+  /**
+   * Protocol version 2: a varint length prefix, a varint type, a flags byte and varint length fields
+   */
+  public static final int VERSION_2 = 2;
+  /**
+   * Highest protocol version this code speaks
+   */
+  public static final int MAX_VERSION = VERSION_2;
 }
@@ -0,0 +1,140 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import messageModel.BroadcastMessage;
+import messageModel.DirectMessage;
+import messageModel.JoinRoomMessage;
+import messageModel.Message;
+import messageModel.RoomResp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ChatClientTest {
+
+  private ChatServer server;
+  private Thread serverThread;
+  private int assignedPort;
+
+  @BeforeEach
+  void setUp() throws IOException, InterruptedException {
+    ServerSocket probe = new ServerSocket(0);
+    assignedPort = probe.getLocalPort();
+    probe.close();
+    server = new ChatServer(assignedPort, ServerMode.NIO);
+    serverThread = new Thread(() -> {
+      try {
+        server.start();
+      } catch (IOException ignored) {
+      }
+    });
+    serverThread.start();
+    Thread.sleep(200);
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    server.stop();
+    serverThread.join(500);
+  }
+
+  private static class RecordingListener implements ChatListener {
+    private final BlockingQueue<Message> received = new LinkedBlockingQueue<>();
+    private final CompletableFuture<IOException> closed = new CompletableFuture<>();
+
+    @Override
+    public void onDirectMessage(DirectMessage message) {
+      received.add(message);
+    }
+
+    @Override
+    public void onBroadcast(BroadcastMessage message) {
+      received.add(message);
+    }
+
+    @Override
+    public void onClosed(IOException cause) {
+      closed.complete(cause);
+    }
+
+    private Message next() throws InterruptedException {
+      return received.poll(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  void testDirectBroadcastAndQuery() throws Exception {
+    RecordingListener annieListener = new RecordingListener();
+    RecordingListener bobListener = new RecordingListener();
+    ChatClient annie = ChatClient.connect("localhost", assignedPort, "annie", annieListener);
+    ChatClient bob = ChatClient.connect("localhost", assignedPort, "bob", bobListener);
+
+    annie.sendDirect("bob", "hi bob").get(5, TimeUnit.SECONDS);
+    assertEquals(new DirectMessage("annie", "bob", "hi bob"), bobListener.next());
+    bob.broadcast("hi all").get(5, TimeUnit.SECONDS);
+    assertEquals(new BroadcastMessage("bob", "hi all"), annieListener.next());
+    annie.insult("bob").get(5, TimeUnit.SECONDS);
+    Message insult = bobListener.next();
+    assertTrue(insult instanceof BroadcastMessage);
+    assertEquals("annie", ((BroadcastMessage) insult).getSenderUsername());
+    assertEquals(List.of("bob"), annie.queryUsers().get(5, TimeUnit.SECONDS));
+    assertEquals(new RoomResp(true, "club", "Joined room: club"),
+        bob.request(new JoinRoomMessage("bob", "club")).get(5, TimeUnit.SECONDS));
+    assertEquals(0, annie.getPendingCount());
+
+    annie.disconnect().get(5, TimeUnit.SECONDS);
+    assertNull(annieListener.closed.get(5, TimeUnit.SECONDS));
+    assertTrue(annie.isClosed());
+    bob.close();
+    assertNull(bobListener.closed.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void testFailuresCompleteExceptionally() throws Exception {
+    ChatClient annie = ChatClient.connect("localhost", assignedPort, "annie", new ChatListener() {});
+    ExecutionException unknown = assertThrows(ExecutionException.class,
+        () -> annie.sendDirect("nobody", "hello?").get(5, TimeUnit.SECONDS));
+    assertTrue(unknown.getCause() instanceof IOException);
+    assertEquals("Recipient not found: nobody", unknown.getCause().getMessage());
+
+    annie.close();
+    assertTrue(annie.broadcast("too late").isCompletedExceptionally());
+    assertTrue(annie.queryUsers().isCompletedExceptionally());
+  }
+
+  @Test
+  void testPipelinedSendsAreAllAnswered() throws Exception {
+    RecordingListener bobListener = new RecordingListener();
+    ChatClient annie = ChatClient.connect("localhost", assignedPort, "annie", new ChatListener() {});
+    ChatClient bob = ChatClient.connect("localhost", assignedPort, "bob", bobListener);
+    List<CompletableFuture<Void>> acks = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      acks.add(annie.sendDirect("bob", "message " + i));
+    }
+    CompletableFuture.allOf(acks.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(new DirectMessage("annie", "bob", "message " + i), bobListener.next());
+    }
+    assertEquals(0, annie.getPendingCount());
+    annie.close();
+    bob.close();
+  }
+
+  @Test
+  void testServerGoingAwayIsReported() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    ChatClient annie = ChatClient.connect("localhost", assignedPort, "annie", listener);
+    server.stop();
+    assertNotNull(listener.closed.get(5, TimeUnit.SECONDS));
+    assertTrue(annie.isClosed());
+    assertTrue(annie.toString().startsWith("ChatClient{username:annie"));
+  }
+}
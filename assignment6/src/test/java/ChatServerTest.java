@@ -3,6 +3,8 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.io.*;
 import java.net.Socket;
 import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import messageModel.*;
 import org.junit.jupiter.api.AfterEach;
@@ -373,6 +375,748 @@ public class ChatServerTest {
     clientSocket.close();
   }
 
+  @Test
+  void testPresenceSnapshotIsRebuiltOnlyOnMembershipChange() throws IOException, InterruptedException {
+    ClientConnection annie = new ClientConnection("localhost", assignedPort, "annie");
+    annie.connect();
+    ClientConnection bob = new ClientConnection("localhost", assignedPort, "bob");
+    bob.connect();
+
+    new QueryUsers("annie").send(annie.out);
+    assertEquals(Protocol.QUERY_USER_RESPONSE, annie.in.readInt());
+    assertEquals(new QueryResp(java.util.List.of("bob")), QueryResp.receive(annie.in));
+    messageModel.PresenceSnapshot first = server.getPresence();
+    new QueryUsers("bob").send(bob.out);
+    assertEquals(Protocol.QUERY_USER_RESPONSE, bob.in.readInt());
+    assertEquals(new QueryResp(java.util.List.of("annie")), QueryResp.receive(bob.in));
+    assertSame(first, server.getPresence());
+
+    bob.close();
+    long deadline = System.currentTimeMillis() + 2000;
+    while (server.getPresence().size() > 1 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(server.getPresence().getVersion() > first.getVersion());
+    new QueryUsers("annie").send(annie.out);
+    assertEquals(Protocol.QUERY_USER_RESPONSE, annie.in.readInt());
+    assertEquals(0, annie.in.readInt());
+    annie.close();
+  }
+
+  @Test
+  void testMoreUsersThanOldPoolSize() throws IOException {
+    java.util.List<ClientConnection> users = new java.util.ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      ClientConnection user = new ClientConnection("localhost", assignedPort, "user" + i);
+      user.connect();
+      users.add(user);
+    }
+    new QueryUsers("user0").send(users.get(0).out);
+    assertEquals(Protocol.QUERY_USER_RESPONSE, users.get(0).in.readInt());
+    assertEquals(24, users.get(0).in.readInt());
+    for (ClientConnection user : users) {
+      user.close();
+    }
+  }
+
+  @Test
+  void testStalledHandshakeDoesNotBlockAccept() throws IOException, InterruptedException {
+    server.setHandshakeTimeoutMillis(300);
+    Socket stalled = new Socket("localhost", assignedPort);
+    Thread.sleep(100);
+    assertEquals(1, server.getPendingHandshakeCount());
+
+    ClientConnection fast = new ClientConnection("localhost", assignedPort, "fast");
+    fast.connect();
+    assertTrue(server.getClients().containsKey("fast"));
+
+    stalled.setSoTimeout(2000);
+    assertEquals(-1, stalled.getInputStream().read());
+    assertEquals(0, server.getPendingHandshakeCount());
+    stalled.close();
+    fast.close();
+  }
+
+  @Test
+  void testPendingHandshakeLimit() throws IOException, InterruptedException {
+    server.setMaxPendingHandshakes(1);
+    Socket stalled = new Socket("localhost", assignedPort);
+    Thread.sleep(100);
+    Socket refused = new Socket("localhost", assignedPort);
+    refused.setSoTimeout(2000);
+    assertEquals(-1, refused.getInputStream().read());
+    assertEquals(1, server.getPendingHandshakeCount());
+    refused.close();
+    stalled.close();
+  }
+
+  @Test
+  void testInvalidHandshakeSettings() {
+    assertThrows(IllegalArgumentException.class, () -> server.setHandshakeTimeoutMillis(0));
+    assertThrows(IllegalArgumentException.class, () -> server.setMaxPendingHandshakes(0));
+    assertEquals(ChatServer.DEFAULT_HANDSHAKE_TIMEOUT_MILLIS, server.getHandshakeTimeoutMillis());
+    assertEquals(ChatServer.DEFAULT_MAX_PENDING_HANDSHAKES, server.getMaxPendingHandshakes());
+  }
+
+  @Test
+  void testVersionTwoClientTalksToVersionOneClient() throws IOException {
+    Socket v2 = new Socket("localhost", assignedPort);
+    DataOutputStream outV2 = new DataOutputStream(v2.getOutputStream());
+    DataInputStream inV2 = new DataInputStream(v2.getInputStream());
+    new ConnectMessage("modern", Protocol.VERSION_2).send(outV2);
+    ConnectResp resp = ConnectResp.receive(inV2);
+    assertTrue(resp.getSuccess());
+    assertEquals(Protocol.VERSION_2, resp.getProtocolVersion());
+
+    Socket v1 = new Socket("localhost", assignedPort);
+    DataOutputStream outV1 = new DataOutputStream(v1.getOutputStream());
+    DataInputStream inV1 = new DataInputStream(v1.getInputStream());
+    new ConnectMessage("legacy").send(outV1);
+    assertEquals(Protocol.CONNECT_RESPONSE, inV1.readInt());
+    assertTrue(inV1.readBoolean());
+    inV1.readUTF();
+
+    FrameCodecV2.write(new DirectMessage("modern", "legacy", "from v2"), outV2);
+    assertEquals(new DirectMessage("modern", "legacy", "from v2"), Message.receive(inV1));
+
+    new DirectMessage("legacy", "modern", "from v1").send(outV1);
+    assertEquals(new DirectMessage("legacy", "modern", "from v1"), FrameCodecV2.read(inV2));
+
+    new BroadcastMessage("legacy", "to all").send(outV1);
+    assertEquals(new BroadcastMessage("legacy", "to all"), FrameCodecV2.read(inV2));
+
+    FrameCodecV2.write(new QueryUsers("modern"), outV2);
+    assertEquals(new QueryResp(java.util.List.of("legacy")), FrameCodecV2.read(inV2));
+
+    FrameCodecV2.write(new DisconnectMessage("modern"), outV2);
+    DisconnectResp bye = (DisconnectResp) FrameCodecV2.read(inV2);
+    assertTrue(bye.isSuccess());
+    v1.close();
+    v2.close();
+  }
+
+  @Test
+  void testRoomsOnlyReachTheirMembers() throws IOException, InterruptedException {
+    Socket a = new Socket("localhost", assignedPort);
+    Socket b = new Socket("localhost", assignedPort);
+    Socket c = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    DataOutputStream outC = new DataOutputStream(c.getOutputStream());
+    DataInputStream inC = new DataInputStream(c.getInputStream());
+    new ConnectMessage("roomA").send(outA);
+    ConnectResp.receive(inA);
+    new ConnectMessage("roomB").send(outB);
+    ConnectResp.receive(inB);
+    new ConnectMessage("roomC").send(outC);
+    ConnectResp.receive(inC);
+
+    new JoinRoomMessage("roomA", "lobby").send(outA);
+    assertEquals(new RoomResp(true, "lobby", "Joined room: lobby"), Message.receive(inA));
+    new JoinRoomMessage("roomB", "lobby").send(outB);
+    assertEquals(new RoomResp(true, "lobby", "Joined room: lobby"), Message.receive(inB));
+    new JoinRoomMessage("roomA", "lobby").send(outA);
+    assertEquals(new RoomResp(false, "lobby", "Already in room: lobby"), Message.receive(inA));
+    new JoinRoomMessage("roomC", "kitchen").send(outC);
+    assertEquals(new RoomResp(true, "kitchen", "Joined room: kitchen"), Message.receive(inC));
+    assertEquals(2, server.getRooms().getRoomCount());
+
+    new RoomMessage("roomA", "lobby", "hello lobby").send(outA);
+    assertEquals(new FailedMessage(""), Message.receive(inA));
+    assertEquals(new RoomMessage("roomA", "lobby", "hello lobby"), Message.receive(inB));
+    new DirectMessage("roomB", "roomC", "marker").send(outB);
+    assertEquals(new DirectMessage("roomB", "roomC", "marker"), Message.receive(inC));
+
+    new RoomMessage("roomC", "lobby", "let me in").send(outC);
+    assertEquals(new FailedMessage("You are not in room: lobby"), Message.receive(inC));
+    new RoomMessage("roomA", "kitchen", "spoofed").send(outC);
+    assertTrue(((FailedMessage) Message.receive(inC)).getErrorMessage().contains("Sender does not match"));
+    new JoinRoomMessage("roomC", "bad name").send(outC);
+    assertEquals(new FailedMessage("Invalid room name: bad name"), Message.receive(inC));
+
+    new LeaveRoomMessage("roomB", "lobby").send(outB);
+    assertEquals(new RoomResp(true, "lobby", "Left room: lobby"), Message.receive(inB));
+    new LeaveRoomMessage("roomB", "lobby").send(outB);
+    assertEquals(new RoomResp(false, "lobby", "Not in room: lobby"), Message.receive(inB));
+    new RoomMessage("roomA", "lobby", "anyone?").send(outA);
+    assertEquals(new FailedMessage(""), Message.receive(inA));
+    new DirectMessage("roomC", "roomB", "marker").send(outC);
+    assertEquals(new DirectMessage("roomC", "roomB", "marker"), Message.receive(inB));
+
+    a.close();
+    c.close();
+    long deadline = System.currentTimeMillis() + 2000;
+    while (server.getRooms().getRoomCount() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, server.getRooms().getRoomCount());
+    b.close();
+  }
+
+  @Test
+  void testPresenceSubscriptionPushesDeltas() throws IOException {
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("watcher").send(outA);
+    ConnectResp.receive(inA);
+    new SubscribePresence("watcher").send(outA);
+    PresenceSync sync = (PresenceSync) Message.receive(inA);
+    assertEquals(java.util.List.of("watcher"), sync.getUsernames());
+
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("joiner").send(outB);
+    ConnectResp.receive(inB);
+    assertEquals(new PresenceDelta(sync.getSequence() + 1, true, "joiner"), Message.receive(inA));
+
+    new SubscribePresence("someoneElse").send(outB);
+    assertTrue(((FailedMessage) Message.receive(inB)).getErrorMessage().contains("Sender does not match"));
+    new DisconnectMessage("joiner").send(outB);
+    assertEquals(new PresenceDelta(sync.getSequence() + 2, false, "joiner"), Message.receive(inA));
+
+    new SubscribePresence("watcher").send(outA);
+    assertEquals(new PresenceSync(sync.getSequence() + 2, java.util.List.of("watcher")), Message.receive(inA));
+    a.close();
+    b.close();
+  }
+
+  @Test
+  void testDirectoryQueryPages() throws IOException {
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("dir-a").send(outA);
+    ConnectResp.receive(inA);
+    java.util.List<Socket> others = new java.util.ArrayList<>();
+    for (String name : new String[] {"dir-b", "dir-c", "other"}) {
+      Socket socket = new Socket("localhost", assignedPort);
+      new ConnectMessage(name).send(new DataOutputStream(socket.getOutputStream()));
+      ConnectResp.receive(new DataInputStream(socket.getInputStream()));
+      others.add(socket);
+    }
+
+    new DirectoryQuery("dir-a", "dir-", "", 2).send(outA);
+    assertEquals(new DirectoryResp(java.util.List.of("dir-a", "dir-b"), "dir-b"), Message.receive(inA));
+    new DirectoryQuery("dir-a", "dir-", "dir-b", 2).send(outA);
+    assertEquals(new DirectoryResp(java.util.List.of("dir-c"), ""), Message.receive(inA));
+    new DirectoryQuery("dir-a", "dir-", "", 0).send(outA);
+    assertEquals(new FailedMessage("Invalid page size: 0"), Message.receive(inA));
+
+    others.get(0).close();
+    long deadline = System.currentTimeMillis() + 2000;
+    while (server.getDirectory().size() > 3 && System.currentTimeMillis() < deadline) {
+      Thread.yield();
+    }
+    new DirectoryQuery("dir-a", "dir-", "", 5).send(outA);
+    assertEquals(new DirectoryResp(java.util.List.of("dir-a", "dir-c"), ""), Message.receive(inA));
+    a.close();
+    for (Socket socket : others) {
+      socket.close();
+    }
+  }
+
+  @Test
+  void testRoutedMessagesAreJournaled() throws Exception {
+    java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("journal");
+    MessageJournal journal = new MessageJournal(directory);
+    server.setJournal(journal);
+    assertSame(journal, server.getJournal());
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("journalA").send(outA);
+    ConnectResp.receive(inA);
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("journalB").send(outB);
+    ConnectResp.receive(inB);
+
+    new DirectMessage("journalA", "journalB", "direct").send(outA);
+    assertEquals(new DirectMessage("journalA", "journalB", "direct"), Message.receive(inB));
+    new BroadcastMessage("journalB", "to all").send(outB);
+    assertEquals(new BroadcastMessage("journalB", "to all"), Message.receive(inA));
+    assertEquals(new FailedMessage(""), Message.receive(inB));
+
+    java.util.List<JournalEntry> entries = new java.util.ArrayList<>();
+    journal.replay(1, entries::add);
+    assertEquals(2, entries.size());
+    assertEquals(WireFormat.V1, entries.get(0).getFormat());
+    assertEquals(new DirectMessage("journalA", "journalB", "direct"), entries.get(0).getMessage());
+    assertEquals(new BroadcastMessage("journalB", "to all"), entries.get(1).getMessage());
+    server.setJournal(null);
+    journal.close();
+    a.close();
+    b.close();
+    try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(directory)) {
+      for (java.nio.file.Path file : files.toList()) {
+        java.nio.file.Files.delete(file);
+      }
+    }
+    java.nio.file.Files.delete(directory);
+  }
+
+  @Test
+  void testMessagesToOfflineUsersWaitInTheirMailbox() throws Exception {
+    OfflineMailbox mailbox = new OfflineMailbox();
+    server.setMailbox(mailbox);
+    assertSame(mailbox, server.getMailbox());
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("mailA", Protocol.VERSION_2).send(outA);
+    ConnectResp.receive(inA);
+
+    for (int i = 0; i < 3; i++) {
+      DirectMessage message = new DirectMessage("mailA", "mailB", "while away " + i);
+      message.setRequestId(i + 1);
+      FrameCodecV2.write(message, outA);
+      Message ack = FrameCodecV2.read(inA);
+      assertEquals(new FailedMessage(""), ack);
+      assertEquals(i + 1, ack.getRequestId());
+    }
+    assertEquals(3, mailbox.getWaitingCount("mailB"));
+
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("mailB").send(outB);
+    assertTrue(ConnectResp.receive(inB).getSuccess());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(new DirectMessage("mailA", "mailB", "while away " + i), Message.receive(inB));
+    }
+    assertEquals(0, mailbox.getWaitingCount("mailB"));
+
+    server.setMailbox(null);
+    a.close();
+    b.close();
+  }
+
+  @Test
+  void testLostConnectionIsResumedWithOnlyTheGap() throws Exception {
+    server.setResumeGraceMillis(5_000);
+    assertEquals(5_000, server.getResumeGraceMillis());
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("resA", Protocol.VERSION_2).send(outA);
+    String token = ConnectResp.receive(inA).getResumeToken();
+    assertFalse(token.isEmpty());
+
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("resB").send(outB);
+    assertEquals("", ConnectResp.receive(inB).getResumeToken());
+
+    for (int i = 1; i <= 3; i++) {
+      new DirectMessage("resB", "resA", "m" + i).send(outB);
+    }
+    assertEquals(new DirectMessage("resB", "resA", "m1"), FrameCodecV2.read(inA));
+    ClientThread lost = server.getClients().get("resA");
+    a.close();
+    long deadline = System.currentTimeMillis() + 2000;
+    while (!lost.isDetached() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(lost.isDetached());
+    assertTrue(server.getClients().containsKey("resA"));
+    assertEquals(2, server.getDirectory().size());
+    new DirectMessage("resB", "resA", "m4").send(outB);
+
+    Socket wrong = new Socket("localhost", assignedPort);
+    new ResumeMessage("resA", "not-the-token", 1, Protocol.VERSION_2).send(new DataOutputStream(wrong.getOutputStream()));
+    assertFalse(ConnectResp.receive(new DataInputStream(wrong.getInputStream())).getSuccess());
+    wrong.close();
+
+    Socket again = new Socket("localhost", assignedPort);
+    DataOutputStream outAgain = new DataOutputStream(again.getOutputStream());
+    DataInputStream inAgain = new DataInputStream(again.getInputStream());
+    new ResumeMessage("resA", token, 1, Protocol.VERSION_2).send(outAgain);
+    ConnectResp resumed = ConnectResp.receive(inAgain);
+    assertTrue(resumed.getSuccess());
+    assertEquals(token, resumed.getResumeToken());
+    for (int i = 2; i <= 4; i++) {
+      assertEquals(new DirectMessage("resB", "resA", "m" + i), FrameCodecV2.read(inAgain));
+    }
+    assertNotSame(lost, server.getClients().get("resA"));
+
+    FrameCodecV2.write(new DirectMessage("resA", "resB", "back"), outAgain);
+    assertEquals(new DirectMessage("resA", "resB", "back"), Message.receive(inB));
+    again.close();
+    b.close();
+  }
+
+  @Test
+  void testResumeWhileBroadcastsAreInFlightKeepsTheirOrder() throws Exception {
+    server.setResumeGraceMillis(5_000);
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("flightA", Protocol.VERSION_2).send(outA);
+    String token = ConnectResp.receive(inA).getResumeToken();
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("flightB").send(outB);
+    ConnectResp.receive(inB);
+
+    int total = 4000;
+    Thread acks = new Thread(() -> {
+      try {
+        for (int i = 0; i < total; i++) {
+          Message.receive(inB);
+        }
+      } catch (IOException ignored) {
+      }
+    });
+    acks.start();
+    Thread sender = new Thread(() -> {
+      try {
+        for (int i = 0; i < total; i++) {
+          new BroadcastMessage("flightB", "b" + i).send(outB);
+          if (i % 100 == 0) {
+            Thread.sleep(1);
+          }
+        }
+      } catch (IOException | InterruptedException ignored) {
+      }
+    });
+    sender.start();
+
+    int read = 10;
+    for (int i = 0; i < read; i++) {
+      assertEquals(new BroadcastMessage("flightB", "b" + i), FrameCodecV2.read(inA));
+    }
+    ClientThread lost = server.getClients().get("flightA");
+    a.close();
+    long deadline = System.currentTimeMillis() + 2000;
+    while ((!lost.isDetached() || lost.getQueueDepth() < 500) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    Socket again = new Socket("localhost", assignedPort);
+    DataOutputStream outAgain = new DataOutputStream(again.getOutputStream());
+    DataInputStream inAgain = new DataInputStream(again.getInputStream());
+    new ResumeMessage("flightA", token, read, Protocol.VERSION_2).send(outAgain);
+    assertTrue(ConnectResp.receive(inAgain).getSuccess());
+    for (int i = read; i < total; i++) {
+      assertEquals(new BroadcastMessage("flightB", "b" + i), FrameCodecV2.read(inAgain));
+    }
+    sender.join(2000);
+    acks.join(2000);
+    again.close();
+    b.close();
+  }
+
+  @Test
+  void testSessionsThatAreNotResumedExpire() throws Exception {
+    server.setResumeGraceMillis(100);
+    assertThrows(IllegalArgumentException.class, () -> server.setResumeGraceMillis(-1));
+    Socket a = new Socket("localhost", assignedPort);
+    new ConnectMessage("gone", Protocol.VERSION_2).send(new DataOutputStream(a.getOutputStream()));
+    String token = ConnectResp.receive(new DataInputStream(a.getInputStream())).getResumeToken();
+    a.close();
+    long deadline = System.currentTimeMillis() + 3000;
+    while (server.getClients().containsKey("gone") && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertFalse(server.getClients().containsKey("gone"));
+
+    Socket again = new Socket("localhost", assignedPort);
+    new ResumeMessage("gone", token, 0, Protocol.VERSION_2).send(new DataOutputStream(again.getOutputStream()));
+    assertFalse(ConnectResp.receive(new DataInputStream(again.getInputStream())).getSuccess());
+    again.close();
+  }
+
+  @Test
+  void testQuietConnectionsArePingedThenEvicted() throws Exception {
+    server.setHeartbeatIntervalMillis(100);
+    server.setIdleTimeoutMillis(400);
+    assertThrows(IllegalArgumentException.class, () -> server.setHeartbeatIntervalMillis(-1));
+    assertThrows(IllegalArgumentException.class, () -> server.setIdleTimeoutMillis(-1));
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("quiet", Protocol.VERSION_2).send(outA);
+    ConnectResp.receive(inA);
+
+    PingMessage ping = (PingMessage) FrameCodecV2.read(inA);
+    FrameCodecV2.write(new PongMessage(ping.getTimestamp()), outA);
+    PingMessage mine = new PingMessage(7);
+    mine.setRequestId(3);
+    FrameCodecV2.write(mine, outA);
+    Message answer = FrameCodecV2.read(inA);
+    while (answer instanceof PingMessage) {
+      answer = FrameCodecV2.read(inA);
+    }
+    assertEquals(new PongMessage(7), answer);
+    assertEquals(3, answer.getRequestId());
+    assertTrue(server.getClients().containsKey("quiet"));
+
+    long deadline = System.currentTimeMillis() + 3000;
+    while (server.getClients().containsKey("quiet") && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertFalse(server.getClients().containsKey("quiet"));
+    assertEquals(1, server.getIdleEvictions());
+    a.close();
+  }
+
+  @Test
+  void testBroadcastsOverTheRateLimitAreRejected() throws Exception {
+    assertEquals(RateLimits.UNLIMITED, server.getRateLimits());
+    server.setRateLimits(RateLimits.UNLIMITED.with(RateCategory.BROADCAST, 0.01, 2));
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("limitedA").send(outA);
+    ConnectResp.receive(inA);
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("limitedB").send(outB);
+    ConnectResp.receive(inB);
+
+    for (int i = 1; i <= 3; i++) {
+      new BroadcastMessage("limitedA", "flood " + i).send(outA);
+    }
+    assertEquals(new FailedMessage(""), Message.receive(inA));
+    assertEquals(new FailedMessage(""), Message.receive(inA));
+    assertEquals(new FailedMessage("Rate limit exceeded for broadcasts."), Message.receive(inA));
+    assertEquals(new BroadcastMessage("limitedA", "flood 1"), Message.receive(inB));
+    assertEquals(new BroadcastMessage("limitedA", "flood 2"), Message.receive(inB));
+
+    new DirectMessage("limitedA", "limitedB", "still allowed").send(outA);
+    assertEquals(new DirectMessage("limitedA", "limitedB", "still allowed"), Message.receive(inB));
+    assertEquals(1, server.getRateLimitRejections());
+    assertEquals(1, server.getClients().get("limitedA").getRateLimitedMessages());
+    a.close();
+    b.close();
+  }
+
+  @Test
+  void testHistoryQueriesReadTheRoomAndDirectConversations() throws Exception {
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("historyA").send(outA);
+    ConnectResp.receive(inA);
+    new HistoryQuery("historyA", "", 10, 0).send(outA);
+    assertEquals(new FailedMessage("History is not available."), Message.receive(inA));
+
+    java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("history");
+    MessageJournal journal = new MessageJournal(directory);
+    MessageHistory history = new MessageHistory(journal);
+    server.setJournal(journal);
+    server.setHistory(history);
+    assertSame(history, server.getHistory());
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("historyB").send(outB);
+    ConnectResp.receive(inB);
+
+    new DirectMessage("historyA", "historyB", "direct").send(outA);
+    assertEquals(new DirectMessage("historyA", "historyB", "direct"), Message.receive(inB));
+    new BroadcastMessage("historyB", "to all").send(outB);
+    assertEquals(new BroadcastMessage("historyB", "to all"), Message.receive(inA));
+    assertEquals(new FailedMessage(""), Message.receive(inB));
+
+    new HistoryQuery("historyA", "", 10, 0).send(outA);
+    HistoryResp room = (HistoryResp) Message.receive(inA);
+    assertEquals(1, room.getEntries().size());
+    assertEquals("historyB", room.getEntries().get(0).getSenderUsername());
+    assertEquals("to all", room.getEntries().get(0).getMessage());
+    assertFalse(room.hasMore());
+    new HistoryQuery("historyB", "historyA", 10, 0).send(outB);
+    HistoryResp direct = (HistoryResp) Message.receive(inB);
+    assertEquals(1, direct.getEntries().size());
+    assertEquals("historyB", direct.getEntries().get(0).getRecipientUsername());
+    assertEquals("direct", direct.getEntries().get(0).getMessage());
+    new HistoryQuery("historyA", "", 0, 0).send(outA);
+    assertEquals(new FailedMessage("Invalid history count: 0"), Message.receive(inA));
+    new HistoryQuery("historyB", "", 10, 0).send(outA);
+    assertEquals(new FailedMessage("Sender does not match your username: historyB"), Message.receive(inA));
+
+    server.setHistory(null);
+    server.setJournal(null);
+    history.close();
+    journal.close();
+    a.close();
+    b.close();
+    try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.walk(directory)) {
+      for (java.nio.file.Path file : files.sorted(java.util.Comparator.reverseOrder()).toList()) {
+        java.nio.file.Files.delete(file);
+      }
+    }
+  }
+
+  @Test
+  void testPipelinedRequestsAreAnsweredById() throws Exception {
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("pipeA", Protocol.VERSION_2).send(outA);
+    ConnectResp.receive(inA);
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("pipeB", Protocol.VERSION_2).send(outB);
+    ConnectResp.receive(inB);
+
+    PendingRequests requests = new PendingRequests(WireFormat.V2, outA);
+    java.util.List<CompletableFuture<Message>> sent = new java.util.ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      sent.add(requests.send(new DirectMessage("pipeA", "pipeB", "pipelined " + i)));
+    }
+    CompletableFuture<Message> query = requests.send(new QueryUsers("pipeA"));
+    CompletableFuture<Message> join = requests.send(new JoinRoomMessage("pipeA", "pipes"));
+    CompletableFuture<Message> spoofed = requests.send(new DirectMessage("pipeB", "pipeA", "spoofed"));
+    CompletableFuture<Message> page = requests.send(new DirectoryQuery("pipeA", "pipe", "", 10));
+    CompletableFuture<Message> broadcast = requests.send(new BroadcastMessage("pipeA", "to all"));
+    assertEquals(105, requests.size());
+
+    Thread reader = new Thread(() -> Client.receiveMessage(inA, new PresenceView("pipeA"), requests));
+    reader.start();
+    for (CompletableFuture<Message> answer : sent) {
+      assertEquals(new FailedMessage(""), answer.get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(new QueryResp(java.util.List.of("pipeB")), query.get(5, TimeUnit.SECONDS));
+    assertEquals(new RoomResp(true, "pipes", "Joined room: pipes"), join.get(5, TimeUnit.SECONDS));
+    assertEquals(new FailedMessage("Sender does not match your username: pipeB"),
+        spoofed.get(5, TimeUnit.SECONDS));
+    assertEquals(new DirectoryResp(java.util.List.of("pipeA", "pipeB"), ""), page.get(5, TimeUnit.SECONDS));
+    assertEquals(new FailedMessage(""), broadcast.get(5, TimeUnit.SECONDS));
+    assertEquals(0, requests.size());
+
+    for (int i = 0; i < 100; i++) {
+      Message delivered = FrameCodecV2.read(inB);
+      assertEquals(new DirectMessage("pipeA", "pipeB", "pipelined " + i), delivered);
+      assertEquals(0, delivered.getRequestId());
+    }
+    Message toAll = FrameCodecV2.read(inB);
+    assertEquals(new BroadcastMessage("pipeA", "to all"), toAll);
+    assertEquals(0, toAll.getRequestId());
+
+    a.close();
+    reader.join(2000);
+    assertThrows(IOException.class, () -> requests.send(new QueryUsers("pipeA")));
+    b.close();
+  }
+
+  @Test
+  void testDirectMessageWithWrongSenderIsRejected() throws IOException {
+    Socket a = new Socket("localhost", assignedPort);
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("honest").send(outA);
+    ConnectResp.receive(inA);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    new ConnectMessage("victim").send(outB);
+    ConnectResp.receive(new DataInputStream(b.getInputStream()));
+
+    new DirectMessage("victim", "honest", "spoofed").send(outA);
+    FailedMessage failed = (FailedMessage) Message.receive(inA);
+    assertTrue(failed.getErrorMessage().contains("Sender does not match"));
+
+    new DirectMessage("honest", "nobody", "lost").send(outA);
+    failed = (FailedMessage) Message.receive(inA);
+    assertTrue(failed.getErrorMessage().contains("Recipient not found"));
+    a.close();
+    b.close();
+  }
+
+  @Test
+  void testMalformedDirectMessageIsRejectedBeforeJournaling() throws Exception {
+    java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("journal");
+    MessageJournal journal = new MessageJournal(directory);
+    server.setJournal(journal);
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("badA").send(outA);
+    ConnectResp.receive(inA);
+    Socket b = new Socket("localhost", assignedPort);
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("badB").send(new DataOutputStream(b.getOutputStream()));
+    ConnectResp.receive(inB);
+
+    outA.writeInt(Protocol.DIRECT_MESSAGE);
+    outA.writeUTF("badA");
+    outA.writeUTF("badB");
+    outA.writeShort(2);
+    outA.write(new byte[] {(byte) 0xC0, 0x20});
+    outA.flush();
+    assertEquals(new FailedMessage("Malformed direct message."), Message.receive(inA));
+    new DirectMessage("badA", "badB", "marker").send(outA);
+    assertEquals(new DirectMessage("badA", "badB", "marker"), Message.receive(inB));
+
+    java.util.List<JournalEntry> entries = new java.util.ArrayList<>();
+    journal.replay(1, entries::add);
+    assertEquals(1, entries.size());
+    assertEquals(new DirectMessage("badA", "badB", "marker"), entries.get(0).getMessage());
+    server.setJournal(null);
+    journal.close();
+    a.close();
+    b.close();
+    try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(directory)) {
+      for (java.nio.file.Path file : files.toList()) {
+        java.nio.file.Files.delete(file);
+      }
+    }
+    java.nio.file.Files.delete(directory);
+  }
+
+  @Test
+  void testQueueLimitsAndDepths() throws IOException {
+    assertEquals(ChatServer.DEFAULT_QUEUE_LIMITS, server.getQueueLimits());
+    QueueLimits limits = new QueueLimits(5, 1000, SlowConsumerPolicy.DISCONNECT);
+    server.setQueueLimits(limits);
+    ClientConnection user = new ClientConnection("localhost", assignedPort, "limited");
+    user.connect();
+    assertEquals(limits, server.getClients().get("limited").getLimits());
+    assertEquals(Integer.valueOf(0), server.getQueueDepths().get("limited"));
+    user.close();
+  }
+
+  @Test
+  void testVirtualThreadMode() throws IOException, InterruptedException {
+    ServerSocket probe = new ServerSocket(0);
+    int port = probe.getLocalPort();
+    probe.close();
+    ChatServer virtualServer = new ChatServer(port, ServerMode.VIRTUAL_THREADS);
+    Thread thread = new Thread(() -> {
+      try {
+        virtualServer.start();
+      } catch (IOException ignored) {
+      }
+    });
+    thread.start();
+    Thread.sleep(200);
+
+    ClientConnection userA = new ClientConnection("localhost", port, "userA");
+    ClientConnection userB = new ClientConnection("localhost", port, "userB");
+    userA.connect();
+    userB.connect();
+    new DirectMessage("userA", "userB", "hi").send(userA.out);
+    DirectMessage dm = (DirectMessage) Message.receive(userB.in);
+    assertEquals("hi", dm.getMessage());
+    assertEquals(ServerMode.VIRTUAL_THREADS, virtualServer.getMode());
+    assertEquals(Runtime.version().feature() >= 21, ServerMode.VIRTUAL_THREADS.isAvailable());
+    assertTrue(ServerMode.BLOCKING.isAvailable());
+    assertTrue(ServerMode.NIO.isAvailable());
+
+    virtualServer.stop();
+    thread.join(500);
+    userA.close();
+    userB.close();
+  }
+
   @Test
   void testEqualsAndHashCode() throws IOException {
     ChatServer sameField = new ChatServer(0);
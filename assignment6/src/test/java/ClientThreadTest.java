@@ -6,8 +6,13 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.concurrent.BlockingQueue;
 
+import messageModel.BroadcastMessage;
+import messageModel.DirectMessage;
 import messageModel.FailedMessage;
+import messageModel.FramePool;
 import messageModel.Message;
+import messageModel.PooledFrame;
+import messageModel.WireFormat;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -66,6 +71,242 @@ public class ClientThreadTest {
     assertEquals("RunTestError", errorMsg);
   }
 
+  @Test
+  void testSpinningWriterDeliversInOrder() throws InterruptedException, IOException {
+    ClientThread spinning = new ClientThread(dataOut, "spinner", null, new QueueLimits(4, 1024,
+        SlowConsumerPolicy.DROP_OLDEST), WaitStrategy.SPIN_THEN_PARK);
+    assertEquals(16, spinning.getMessageLine().remainingCapacity());
+    Thread t = new Thread(spinning);
+    t.start();
+    for (int i = 0; i < 3; i++) {
+      spinning.receiveMessage(new FailedMessage("spin" + i));
+    }
+    spinning.closeAfterFlush();
+    t.join(2000);
+    assertFalse(t.isAlive());
+    DataInputStream dataIn = new DataInputStream(new java.io.ByteArrayInputStream(byteOut.toByteArray()));
+    for (int i = 0; i < 3; i++) {
+      assertEquals(Protocol.FAILED_MESSAGE, dataIn.readInt());
+      assertEquals("spin" + i, dataIn.readUTF());
+    }
+  }
+
+  @Test
+  void testRepliesOvertakeQueuedChatTraffic() throws InterruptedException, IOException {
+    assertEquals(LaneWeights.DEFAULT, clientThread.getLaneWeights());
+    clientThread.setLaneWeights(new LaneWeights(1, 2));
+    for (int i = 0; i < 4; i++) {
+      clientThread.receiveMessage(new BroadcastMessage("a", "chat" + i));
+    }
+    clientThread.receiveMessage(new FailedMessage("reply"));
+    clientThread.closeAfterFlush();
+    Thread t = new Thread(clientThread);
+    t.start();
+    t.join(2000);
+    assertFalse(t.isAlive());
+
+    DataInputStream dataIn = new DataInputStream(new java.io.ByteArrayInputStream(byteOut.toByteArray()));
+    assertEquals(new FailedMessage("reply"), Message.receive(dataIn));
+    for (int i = 0; i < 4; i++) {
+      assertEquals(new BroadcastMessage("a", "chat" + i), Message.receive(dataIn));
+    }
+    assertEquals(0, dataIn.available());
+  }
+
+  @Test
+  void testCloseWritesEveryReplyQueuedBeforeIt() throws InterruptedException, IOException {
+    int replies = LaneWeights.DEFAULT.getControl() + 36;
+    for (int i = 0; i < replies; i++) {
+      clientThread.receiveMessage(new FailedMessage("reply" + i));
+    }
+    clientThread.receiveMessage(new BroadcastMessage("a", "chat"));
+    clientThread.closeAfterFlush();
+    Thread t = new Thread(clientThread);
+    t.start();
+    t.join(2000);
+    assertFalse(t.isAlive());
+
+    DataInputStream dataIn = new DataInputStream(new java.io.ByteArrayInputStream(byteOut.toByteArray()));
+    for (int i = 0; i < replies; i++) {
+      if (i == LaneWeights.DEFAULT.getControl()) {
+        assertEquals(new BroadcastMessage("a", "chat"), Message.receive(dataIn));
+      }
+      assertEquals(new FailedMessage("reply" + i), Message.receive(dataIn));
+    }
+    assertEquals(0, dataIn.available());
+    assertEquals(0, clientThread.getQueueDepth());
+  }
+
+  @Test
+  void testDropOldestDropsChatTrafficBeforeReplies() {
+    ClientThread bounded = new ClientThread(dataOut, "slow", null,
+        new QueueLimits(2, Long.MAX_VALUE, SlowConsumerPolicy.DROP_OLDEST));
+    bounded.receiveMessage(new FailedMessage("reply"));
+    bounded.receiveMessage(new BroadcastMessage("a", "old"));
+    bounded.receiveMessage(new BroadcastMessage("a", "new"));
+    assertEquals(2, bounded.getQueueDepth());
+    assertEquals(1, bounded.getDroppedMessages());
+    assertEquals("[" + new FailedMessage("reply") + ", " + new BroadcastMessage("a", "new") + "]",
+        bounded.getMessageLine().toString());
+  }
+
+  @Test
+  void testRunWritesQueuedBurstWithOneFlush() throws InterruptedException, IOException {
+    int[] flushes = new int[1];
+    ByteArrayOutputStream sink = new ByteArrayOutputStream() {
+      @Override
+      public void flush() {
+        flushes[0]++;
+      }
+    };
+    ClientThread writer = new ClientThread(new DataOutputStream(sink), "testUser");
+    for (int i = 0; i < 50; i++) {
+      writer.receiveMessage(new FailedMessage("error " + i));
+    }
+
+    Thread t = new Thread(writer);
+    t.start();
+    Thread.sleep(200);
+    writer.closeAfterFlush();
+    t.join(500);
+
+    assertFalse(t.isAlive());
+    assertTrue(writer.isClosing());
+    assertEquals(1, flushes[0]);
+    DataInputStream dataIn = new DataInputStream(new java.io.ByteArrayInputStream(sink.toByteArray()));
+    for (int i = 0; i < 50; i++) {
+      assertEquals(Protocol.FAILED_MESSAGE, dataIn.readInt());
+      assertEquals("error " + i, dataIn.readUTF());
+    }
+    assertEquals(0, dataIn.available());
+  }
+
+  @Test
+  void testDepthReturnsToZeroAfterDelivery() throws InterruptedException {
+    FailedMessage msg = new FailedMessage("counted");
+    clientThread.receiveMessage(msg);
+    clientThread.receiveMessage(msg);
+    assertEquals(2, clientThread.getQueueDepth());
+    assertEquals(2L * msg.getEncodedSize(), clientThread.getQueuedBytes());
+
+    Thread t = new Thread(clientThread);
+    t.start();
+    Thread.sleep(200);
+    clientThread.closeAfterFlush();
+    t.join(500);
+    assertEquals(0, clientThread.getQueueDepth());
+    assertEquals(0, clientThread.getQueuedBytes());
+  }
+
+  @Test
+  void testDropOldestPolicy() {
+    ClientThread bounded = new ClientThread(dataOut, "slow", null,
+        new QueueLimits(3, Long.MAX_VALUE, SlowConsumerPolicy.DROP_OLDEST));
+    for (int i = 0; i < 5; i++) {
+      bounded.receiveMessage(new FailedMessage("m" + i));
+    }
+    assertEquals(3, bounded.getQueueDepth());
+    assertEquals(2, bounded.getDroppedMessages());
+    assertEquals(new FailedMessage("m2"), bounded.getMessageLine().peek());
+  }
+
+  @Test
+  void testByteLimit() {
+    FailedMessage msg = new FailedMessage("twelve bytes");
+    ClientThread bounded = new ClientThread(dataOut, "slow", null,
+        new QueueLimits(100, msg.getEncodedSize() * 2L, SlowConsumerPolicy.DROP_OLDEST));
+    for (int i = 0; i < 4; i++) {
+      bounded.receiveMessage(msg);
+    }
+    assertEquals(2, bounded.getQueueDepth());
+    assertEquals(msg.getEncodedSize() * 2L, bounded.getQueuedBytes());
+  }
+
+  @Test
+  void testDropBroadcastsKeepsDirectMessages() {
+    ClientThread bounded = new ClientThread(dataOut, "slow", null,
+        new QueueLimits(2, Long.MAX_VALUE, SlowConsumerPolicy.DROP_BROADCASTS));
+    DirectMessage dm = new DirectMessage("a", "slow", "hi");
+    bounded.receiveMessage(dm);
+    bounded.receiveMessage(dm);
+    bounded.receiveMessage(new BroadcastMessage("a", "everyone"));
+    assertEquals(2, bounded.getQueueDepth());
+    assertEquals(1, bounded.getDroppedMessages());
+
+    bounded.receiveMessage(dm);
+    bounded.receiveMessage(dm);
+    assertEquals(4, bounded.getQueueDepth());
+    assertFalse(bounded.isClosing());
+
+    bounded.receiveMessage(dm);
+    assertTrue(bounded.isClosing());
+    assertEquals(1, bounded.getQueueDepth());
+    assertTrue(bounded.getMessageLine().peek() instanceof FailedMessage);
+  }
+
+  private static PooledFrame pooledFrame(FramePool pool) {
+    PooledFrame frame = pool.acquire(Protocol.DIRECT_MESSAGE, WireFormat.V2, 8);
+    frame.getBuffer().put(new byte[8]).flip();
+    return frame;
+  }
+
+  @Test
+  void testDroppedPooledFramesGoBackToTheirPool() {
+    FramePool pool = new FramePool(64, 8);
+    ClientThread dropOldest = new ClientThread(dataOut, "slow", null,
+        new QueueLimits(1, Long.MAX_VALUE, SlowConsumerPolicy.DROP_OLDEST));
+    dropOldest.receiveMessage(pooledFrame(pool));
+    dropOldest.receiveMessage(pooledFrame(pool));
+    assertEquals(1, pool.getPooledCount());
+
+    ClientThread disconnect = new ClientThread(dataOut, "slow", null,
+        new QueueLimits(1, Long.MAX_VALUE, SlowConsumerPolicy.DISCONNECT));
+    disconnect.receiveMessage(pooledFrame(pool));
+    disconnect.receiveMessage(pooledFrame(pool));
+    assertTrue(disconnect.isClosing());
+    assertEquals(2, pool.getPooledCount());
+    disconnect.receiveMessage(pooledFrame(pool));
+    assertEquals(2, pool.getPooledCount());
+    assertEquals(2, disconnect.getDroppedMessages());
+  }
+
+  @Test
+  void testInterruptIsKeptWhenTheWriterStops() throws InterruptedException {
+    boolean[] interrupted = new boolean[1];
+    Thread t = new Thread(() -> {
+      clientThread.run();
+      interrupted[0] = Thread.currentThread().isInterrupted();
+    });
+    t.start();
+    Thread.sleep(100);
+    t.interrupt();
+    t.join(2000);
+    assertFalse(t.isAlive());
+    assertTrue(interrupted[0]);
+  }
+
+  @Test
+  void testDisconnectPolicy() throws InterruptedException, IOException {
+    ClientThread bounded = new ClientThread(dataOut, "slow", null,
+        new QueueLimits(2, Long.MAX_VALUE, SlowConsumerPolicy.DISCONNECT));
+    for (int i = 0; i < 3; i++) {
+      bounded.receiveMessage(new FailedMessage("m" + i));
+    }
+    assertTrue(bounded.isClosing());
+    assertEquals(3, bounded.getDroppedMessages());
+    bounded.receiveMessage(new FailedMessage("after"));
+    assertEquals(1, bounded.getQueueDepth());
+
+    Thread t = new Thread(bounded);
+    t.start();
+    t.join(500);
+    assertFalse(t.isAlive());
+    DataInputStream dataIn = new DataInputStream(new java.io.ByteArrayInputStream(byteOut.toByteArray()));
+    assertEquals(Protocol.FAILED_MESSAGE, dataIn.readInt());
+    assertTrue(dataIn.readUTF().contains("Disconnected"));
+    assertEquals(0, dataIn.available());
+  }
+
   @Test
   void testToString() {
     String str = clientThread.toString();
@@ -31,6 +31,7 @@ public class ErrorMessageTest {
   void testGetMenu() {
     assertFalse(ErrorMessage.getMenu().contains("Invalid"));
     assertTrue(ErrorMessage.getMenu().contains("!user"));
+    assertTrue(ErrorMessage.getMenu().contains("who prefix"));
   }
 
   @Test
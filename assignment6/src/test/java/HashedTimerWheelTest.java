@@ -0,0 +1,97 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class HashedTimerWheelTest {
+  private HashedTimerWheel timer;
+
+  @BeforeEach
+  void setUp() {
+    timer = new HashedTimerWheel("test-timer", 10, 8);
+  }
+
+  @AfterEach
+  void tearDown() {
+    timer.close();
+  }
+
+  @Test
+  void testTimeoutsNeverFireEarly() throws InterruptedException {
+    CountDownLatch fired = new CountDownLatch(1);
+    AtomicLong firedAfter = new AtomicLong();
+    long start = System.nanoTime();
+    HashedTimerWheel.Timeout timeout = timer.schedule(() -> {
+      firedAfter.set(System.nanoTime() - start);
+      fired.countDown();
+    }, 150, TimeUnit.MILLISECONDS);
+    assertTrue(fired.await(2, TimeUnit.SECONDS));
+    assertTrue(firedAfter.get() >= TimeUnit.MILLISECONDS.toNanos(150));
+    assertTrue(timeout.isExpired());
+    assertFalse(timeout.cancel());
+  }
+
+  @Test
+  void testCancelledTimeoutsDoNotFire() throws InterruptedException {
+    AtomicBoolean ran = new AtomicBoolean();
+    HashedTimerWheel.Timeout timeout = timer.schedule(() -> ran.set(true), 50, TimeUnit.MILLISECONDS);
+    assertTrue(timeout.cancel());
+    assertFalse(timeout.cancel());
+    assertTrue(timeout.isCancelled());
+    Thread.sleep(150);
+    assertFalse(ran.get());
+    assertEquals(0, timer.getPendingCount());
+  }
+
+  @Test
+  void testManyTimeoutsOverSeveralRounds() throws InterruptedException {
+    int count = 20_000;
+    CountDownLatch fired = new CountDownLatch(count / 2);
+    AtomicInteger cancelledRan = new AtomicInteger();
+    for (int i = 0; i < count; i++) {
+      if (i % 2 == 0) {
+        timer.schedule(fired::countDown, i % 300, TimeUnit.MILLISECONDS);
+      } else {
+        timer.schedule(cancelledRan::incrementAndGet, i % 300, TimeUnit.MILLISECONDS).cancel();
+      }
+    }
+    assertTrue(fired.await(5, TimeUnit.SECONDS));
+    assertEquals(0, cancelledRan.get());
+    long deadline = System.currentTimeMillis() + 1000;
+    while (timer.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, timer.getPendingCount());
+  }
+
+  @Test
+  void testThrowingTaskDoesNotStopTheTimer() throws InterruptedException {
+    CountDownLatch fired = new CountDownLatch(1);
+    timer.schedule(() -> {
+      throw new IllegalStateException("boom");
+    }, 0, TimeUnit.MILLISECONDS);
+    timer.schedule(fired::countDown, 30, TimeUnit.MILLISECONDS);
+    assertTrue(fired.await(2, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void testClosedTimerRefusesWork() {
+    timer.close();
+    assertThrows(IllegalStateException.class, () -> timer.schedule(() -> {}, 1, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  void testSettings() {
+    assertThrows(IllegalArgumentException.class, () -> new HashedTimerWheel("bad", 0, 8));
+    assertThrows(IllegalArgumentException.class, () -> new HashedTimerWheel("bad", 10, 0));
+    assertEquals(10, timer.getTickMillis());
+    assertTrue(timer.toString().contains("buckets:8"));
+    assertTrue(new HashedTimerWheel("odd", 10, 5).toString().contains("buckets:8"));
+  }
+}
@@ -0,0 +1,66 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class HistoryIndexTest {
+
+  private Path directory;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    directory = Files.createTempDirectory("index");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  private static List<Long> sequences(List<HistoryIndex.Position> positions) {
+    return positions.stream().map(HistoryIndex.Position::getSequence).toList();
+  }
+
+  @Test
+  void testFindReturnsTheNewestBeforeASequence() throws IOException {
+    try (HistoryIndex index = new HistoryIndex(directory)) {
+      for (long sequence = 1; sequence <= 10; sequence++) {
+        index.add(sequence % 2 == 0 ? "even" : "odd", sequence, (int) sequence * 100);
+      }
+      assertEquals(List.of(6L, 8L, 10L), sequences(index.find("even", Long.MAX_VALUE, 3)));
+      assertEquals(List.of(2L, 4L), sequences(index.find("even", 6, 5)));
+      assertEquals(List.of(), sequences(index.find("even", 2, 5)));
+      assertEquals(List.of(5L, 7L), sequences(index.find("odd", 8, 2)));
+      assertEquals(700, index.find("odd", 8, 1).get(0).getOffset());
+      assertEquals(List.of(), index.find("nobody", Long.MAX_VALUE, 5));
+    }
+  }
+
+  @Test
+  void testCheckpointAndReopen() throws IOException {
+    try (HistoryIndex index = new HistoryIndex(directory)) {
+      assertEquals(0, index.getCheckpoint());
+      index.add("room", 1, 4);
+      index.add("room", 2, 40);
+      index.checkpoint(2);
+      assertEquals(2, index.getCheckpoint());
+    }
+    try (HistoryIndex index = new HistoryIndex(directory)) {
+      assertEquals(2, index.getCheckpoint());
+      index.add("room", 2, 40);
+      index.add("room", 3, 80);
+      assertEquals(List.of(1L, 2L, 3L), sequences(index.find("room", Long.MAX_VALUE, 10)));
+    }
+  }
+}
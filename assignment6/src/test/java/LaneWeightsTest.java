@@ -0,0 +1,29 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class LaneWeightsTest {
+
+  @Test
+  void testGetters() {
+    LaneWeights weights = new LaneWeights(8, 2);
+    assertEquals(8, weights.getControl());
+    assertEquals(2, weights.getBulk());
+  }
+
+  @Test
+  void testInvalidWeights() {
+    assertThrows(IllegalArgumentException.class, () -> new LaneWeights(0, 1));
+    assertThrows(IllegalArgumentException.class, () -> new LaneWeights(1, 0));
+  }
+
+  @Test
+  void testEqualsHashCodeToString() {
+    LaneWeights weights = new LaneWeights(8, 2);
+    assertEquals(weights, new LaneWeights(8, 2));
+    assertEquals(weights.hashCode(), new LaneWeights(8, 2).hashCode());
+    assertNotEquals(weights, new LaneWeights(8, 3));
+    assertNotEquals(weights, null);
+    assertEquals("LaneWeights{control=8, bulk=2}", weights.toString());
+  }
+}
@@ -0,0 +1,111 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram(1_000_000);
+    for (int value = 1; value <= 100; value++) {
+      histogram.record(value);
+    }
+    assertEquals(100, histogram.getTotalCount());
+    assertEquals(50, histogram.getValueAtPercentile(50));
+    assertEquals(99, histogram.getValueAtPercentile(99));
+    assertEquals(100, histogram.getValueAtPercentile(100));
+    assertEquals(1, histogram.getMin());
+    assertEquals(100, histogram.getMax());
+    assertEquals(50.5, histogram.getMean(), 0.0001);
+  }
+
+  @Test
+  void testLargeValuesKeepThreeSignificantDigits() {
+    LatencyHistogram histogram = new LatencyHistogram(60_000_000_000L);
+    long[] values = {2048, 4095, 4096, 123_456, 9_876_543, 59_999_999_999L};
+    for (long value : values) {
+      LatencyHistogram single = new LatencyHistogram(60_000_000_000L);
+      single.record(value);
+      long reported = single.getValueAtPercentile(50);
+      assertTrue(reported >= value && reported - value <= value / 1000, value + " reported as " + reported);
+      histogram.record(value);
+    }
+    assertEquals(59_999_999_999L, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  void testPercentilesOfSkewedDistribution() {
+    LatencyHistogram histogram = new LatencyHistogram(1_000_000_000);
+    for (int i = 0; i < 9990; i++) {
+      histogram.record(1000);
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(50_000_000);
+    }
+    assertEquals(1000, histogram.getValueAtPercentile(50));
+    assertEquals(1000, histogram.getValueAtPercentile(99.9));
+    long p9999 = histogram.getValueAtPercentile(99.99);
+    assertTrue(p9999 >= 50_000_000 && p9999 <= 50_050_000);
+  }
+
+  @Test
+  void testValuesOutsideTheRange() {
+    LatencyHistogram histogram = new LatencyHistogram(10_000);
+    histogram.record(-5);
+    histogram.record(1_000_000);
+    assertEquals(0, histogram.getMin());
+    assertEquals(1_000_000, histogram.getMax());
+    assertEquals(0, histogram.getValueAtPercentile(50));
+    long top = histogram.getValueAtPercentile(100);
+    assertTrue(top >= 10_000 && top <= 1_000_000);
+  }
+
+  @Test
+  void testEmptyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram(10_000);
+    assertEquals(0, histogram.getTotalCount());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+    assertEquals(0, histogram.getMin());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getMean());
+  }
+
+  @Test
+  void testAdd() {
+    LatencyHistogram a = new LatencyHistogram(10_000);
+    LatencyHistogram b = new LatencyHistogram(10_000);
+    a.record(10);
+    b.record(20);
+    b.record(30);
+    a.add(b);
+    assertEquals(3, a.getTotalCount());
+    assertEquals(10, a.getMin());
+    assertEquals(30, a.getMax());
+    assertEquals(20, a.getValueAtPercentile(50));
+    assertThrows(IllegalArgumentException.class, () -> a.add(new LatencyHistogram(20_000)));
+  }
+
+  @Test
+  void testConcurrentRecording() throws InterruptedException {
+    LatencyHistogram histogram = new LatencyHistogram(1_000_000);
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          histogram.record(i % 500);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(40_000, histogram.getTotalCount());
+    assertEquals(499, histogram.getMax());
+  }
+
+  @Test
+  void testInvalidRange() {
+    assertThrows(IllegalArgumentException.class, () -> new LatencyHistogram(100));
+  }
+}
@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class LoadGeneratorTest {
+
+  private ChatServer server;
+  private Thread serverThread;
+
+  private int startServer(ServerMode mode) throws IOException, InterruptedException {
+    ServerSocket probe = new ServerSocket(0);
+    int port = probe.getLocalPort();
+    probe.close();
+    server = new ChatServer(port, mode, 2);
+    serverThread = new Thread(() -> {
+      try {
+        server.start();
+      } catch (IOException ignored) {
+      }
+    });
+    serverThread.start();
+    Thread.sleep(200);
+    return port;
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    if (server != null) {
+      server.stop();
+      serverThread.join(500);
+    }
+  }
+
+  private void assertReportCoversEveryOperation(LoadReport report) {
+    assertEquals(0, report.getErrors());
+    assertEquals(10, report.getConnectHistogram().getTotalCount());
+    for (LoadOperation operation : LoadOperation.values()) {
+      assertTrue(report.getSent(operation) > 0, operation + " was never sent");
+      assertTrue(report.getLatencies(operation).getTotalCount() > 0, operation + " was never timed");
+      assertTrue(report.getLatencies(operation).getValueAtPercentile(50) > 0);
+    }
+    assertEquals(report.getSent(LoadOperation.DIRECT),
+        report.getLatencies(LoadOperation.DIRECT).getTotalCount());
+    assertEquals(report.getSent(LoadOperation.WHO), report.getLatencies(LoadOperation.WHO).getTotalCount());
+    assertTrue(report.getSentPerSecond() > 100);
+    assertTrue(report.getDeliveredPerSecond() > 0);
+  }
+
+  @Test
+  void testRunAgainstNioServer() throws IOException, InterruptedException {
+    int port = startServer(ServerMode.NIO);
+    LoadGenerator generator = new LoadGenerator("localhost", port, 10, 500, LoadMix.DEFAULT, 32, "nio");
+    LoadReport report = generator.run(1000);
+    assertReportCoversEveryOperation(report);
+    assertEquals(0, server.getClients().size());
+    assertThrows(IllegalStateException.class, () -> generator.run(10));
+  }
+
+  @Test
+  void testRunAgainstBlockingServer() throws IOException, InterruptedException {
+    int port = startServer(ServerMode.BLOCKING);
+    LoadReport report = new LoadGenerator("localhost", port, 10, 500, new LoadMix(1, 1, 1, 1), 256,
+        "blocking").run(1000);
+    assertReportCoversEveryOperation(report);
+
+    ByteArrayOutputStream printed = new ByteArrayOutputStream();
+    report.print(new PrintStream(printed));
+    String csv = printed.toString();
+    assertTrue(csv.startsWith("metric,count,p50Us,p99Us,p999Us,maxUs"));
+    assertTrue(csv.contains("\nconnect,10,"));
+    assertTrue(csv.contains("\nDIRECT,"));
+    assertTrue(csv.contains("\nerrors,0"));
+  }
+
+  @Test
+  void testConnectFailureIsReported() throws IOException {
+    ServerSocket probe = new ServerSocket(0);
+    int unusedPort = probe.getLocalPort();
+    probe.close();
+    LoadGenerator generator = new LoadGenerator("localhost", unusedPort, 1, 10, LoadMix.DEFAULT, 0, "x");
+    assertThrows(IOException.class, () -> generator.run(10));
+  }
+
+  @Test
+  void testInvalidSettings() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new LoadGenerator("localhost", 1, 0, 10, LoadMix.DEFAULT, 0, "x"));
+    assertThrows(IllegalArgumentException.class,
+        () -> new LoadGenerator("localhost", 1, 1, 0, LoadMix.DEFAULT, 0, "x"));
+    assertThrows(IllegalArgumentException.class,
+        () -> new LoadGenerator("localhost", 1, 1, 10, LoadMix.DEFAULT, -1, "x"));
+  }
+}
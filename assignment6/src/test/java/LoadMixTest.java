@@ -0,0 +1,42 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class LoadMixTest {
+
+  @Test
+  void testPickFollowsWeights() {
+    LoadMix mix = new LoadMix(50, 0, 25, 25);
+    Map<LoadOperation, Integer> picks = new EnumMap<>(LoadOperation.class);
+    Random random = new Random(42);
+    for (int i = 0; i < 10_000; i++) {
+      picks.merge(mix.pick(random), 1, Integer::sum);
+    }
+    assertNull(picks.get(LoadOperation.BROADCAST));
+    assertTrue(Math.abs(picks.get(LoadOperation.DIRECT) - 5000) < 300);
+    assertTrue(Math.abs(picks.get(LoadOperation.INSULT) - 2500) < 300);
+    assertTrue(Math.abs(picks.get(LoadOperation.WHO) - 2500) < 300);
+  }
+
+  @Test
+  void testParse() {
+    LoadMix mix = LoadMix.parse("70, 10,10,10");
+    assertEquals(LoadMix.DEFAULT, mix);
+    assertEquals(LoadMix.DEFAULT.hashCode(), mix.hashCode());
+    assertEquals("70,10,10,10", mix.toString());
+    assertEquals(70, mix.getDirectWeight());
+    assertEquals(10, mix.getBroadcastWeight());
+    assertEquals(10, mix.getInsultWeight());
+    assertEquals(10, mix.getWhoWeight());
+    assertThrows(IllegalArgumentException.class, () -> LoadMix.parse("1,2,3"));
+  }
+
+  @Test
+  void testInvalidWeights() {
+    assertThrows(IllegalArgumentException.class, () -> new LoadMix(-1, 1, 1, 1));
+    assertThrows(IllegalArgumentException.class, () -> new LoadMix(0, 0, 0, 0));
+  }
+}
@@ -0,0 +1,136 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import messageModel.BroadcastMessage;
+import messageModel.DirectMessage;
+import messageModel.EncodedMessage;
+import messageModel.HistoryResp;
+import messageModel.Message;
+import messageModel.QueryUsers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MessageHistoryTest {
+
+  private Path directory;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    directory = Files.createTempDirectory("history");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  private static void route(MessageJournal journal, MessageHistory history, Message message) {
+    history.record(MessageHistory.conversationOf(message), journal.append(message), message);
+  }
+
+  private static void awaitIndexed(MessageHistory history, long sequence) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (history.getIndexedSequence() < sequence && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(sequence, history.getIndexedSequence());
+  }
+
+  private static List<String> texts(HistoryResp page) {
+    return page.getEntries().stream().map(HistoryResp.Entry::getMessage).toList();
+  }
+
+  @Test
+  void testConversations() throws IOException {
+    assertEquals(MessageHistory.GLOBAL_ROOM, MessageHistory.conversation("annie", ""));
+    assertEquals(MessageHistory.conversation("annie", "bob"), MessageHistory.conversation("bob", "annie"));
+    assertNotEquals(MessageHistory.conversation("annie", "bob"), MessageHistory.conversation("annie", "bobby"));
+    assertEquals(MessageHistory.GLOBAL_ROOM,
+        MessageHistory.conversationOf(new EncodedMessage(new BroadcastMessage("annie", "hi"))));
+    assertEquals(MessageHistory.conversation("annie", "bob"),
+        MessageHistory.conversationOf(new DirectMessage("bob", "annie", "hi")));
+    assertNull(MessageHistory.conversationOf(new QueryUsers("annie")));
+  }
+
+  @Test
+  void testPagesSpanTheRingAndTheIndex() throws Exception {
+    try (MessageJournal journal = new MessageJournal(directory);
+        MessageHistory history = new MessageHistory(journal, 2)) {
+      for (int i = 0; i < 5; i++) {
+        route(journal, history, new EncodedMessage(new BroadcastMessage("annie", "room " + i)));
+        route(journal, history, new DirectMessage("annie", "bob", "direct " + i));
+      }
+      awaitIndexed(history, 10);
+
+      HistoryResp page = history.fetch(MessageHistory.GLOBAL_ROOM, 0, 3);
+      assertEquals(List.of("room 2", "room 3", "room 4"), texts(page));
+      assertTrue(page.hasMore());
+      page = history.fetch(MessageHistory.GLOBAL_ROOM, page.getNextBeforeSequence(), 3);
+      assertEquals(List.of("room 0", "room 1"), texts(page));
+      assertFalse(page.hasMore());
+
+      page = history.fetchAsync(MessageHistory.conversation("bob", "annie"), 0, 10).get();
+      assertEquals(List.of("direct 0", "direct 1", "direct 2", "direct 3", "direct 4"), texts(page));
+      assertEquals("bob", page.getEntries().get(0).getRecipientUsername());
+      assertEquals(List.of(), history.fetch(MessageHistory.conversation("annie", "carol"), 0, 10).getEntries());
+    }
+  }
+
+  @Test
+  void testUnreadableMessagesDoNotEndThePaging() throws Exception {
+    try (MessageJournal journal = new MessageJournal(directory);
+        MessageHistory history = new MessageHistory(journal, 1)) {
+      for (int i = 1; i <= 6; i++) {
+        route(journal, history, new BroadcastMessage("annie", "room " + i));
+      }
+      awaitIndexed(history, 6);
+      int[] offsets = new int[8];
+      journal.replay(1, entry -> offsets[(int) entry.getSequence()] = entry.getOffset());
+      try (FileChannel segment = FileChannel.open(directory.resolve(String.format("%020d.journal", 1)),
+          StandardOpenOption.WRITE)) {
+        segment.write(ByteBuffer.wrap(new byte[] {'#'}), offsets[5] - 1);
+      }
+
+      HistoryResp page = history.fetch(MessageHistory.GLOBAL_ROOM, 0, 3);
+      assertEquals(List.of("room 5", "room 6"), texts(page));
+      assertEquals(4, page.getNextBeforeSequence());
+      page = history.fetch(MessageHistory.GLOBAL_ROOM, page.getNextBeforeSequence(), 3);
+      assertEquals(List.of("room 1", "room 2", "room 3"), texts(page));
+      assertTrue(page.hasMore());
+      page = history.fetch(MessageHistory.GLOBAL_ROOM, page.getNextBeforeSequence(), 3);
+      assertEquals(List.of(), texts(page));
+      assertFalse(page.hasMore());
+    }
+  }
+
+  @Test
+  void testHistoryOutlivesARestart() throws Exception {
+    try (MessageJournal journal = new MessageJournal(directory);
+        MessageHistory history = new MessageHistory(journal)) {
+      for (int i = 0; i < 4; i++) {
+        route(journal, history, new BroadcastMessage("annie", "before " + i));
+      }
+      awaitIndexed(history, 4);
+    }
+    try (MessageJournal journal = new MessageJournal(directory);
+        MessageHistory history = new MessageHistory(journal)) {
+      assertEquals(4, history.getIndexedSequence());
+      route(journal, history, new BroadcastMessage("annie", "after"));
+      assertEquals(List.of("before 2", "before 3", "after"),
+          texts(history.fetch(MessageHistory.GLOBAL_ROOM, 0, 3)));
+    }
+  }
+}
@@ -0,0 +1,183 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import messageModel.BroadcastMessage;
+import messageModel.DirectMessage;
+import messageModel.EncodedMessage;
+import messageModel.FrameView;
+import messageModel.Message;
+import messageModel.WireFormat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MessageJournalTest {
+
+  private Path directory;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    directory = Files.createTempDirectory("journal");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  private List<JournalEntry> replay(MessageJournal journal, long fromSequence) throws IOException {
+    List<JournalEntry> entries = new ArrayList<>();
+    journal.replay(fromSequence, entries::add);
+    return entries;
+  }
+
+  private long segmentCount() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+
+  @Test
+  void testAppendAndReplay() throws IOException {
+    try (MessageJournal journal = new MessageJournal(directory)) {
+      assertEquals(0, journal.getLastSequence());
+      assertEquals(1, journal.append(new BroadcastMessage("annie", "hello all")));
+      assertEquals(2, journal.append(new DirectMessage("annie", "bob", "hi bob")));
+      assertEquals(3, journal.append(new EncodedMessage(new BroadcastMessage("bob", "v1 frame"))));
+      assertEquals(3, journal.getLastSequence());
+
+      List<JournalEntry> entries = replay(journal, 1);
+      assertEquals(3, entries.size());
+      assertEquals(new BroadcastMessage("annie", "hello all"), entries.get(0).getMessage());
+      assertEquals(WireFormat.V2, entries.get(0).getFormat());
+      assertEquals(new DirectMessage("annie", "bob", "hi bob"), entries.get(1).getMessage());
+      assertEquals(WireFormat.V1, entries.get(2).getFormat());
+      assertEquals(new BroadcastMessage("bob", "v1 frame"), entries.get(2).getMessage());
+      assertTrue(entries.get(2).getTimestamp() > 0);
+
+      assertEquals(List.of(2L, 3L), replay(journal, 2).stream().map(JournalEntry::getSequence).toList());
+      assertEquals(3, journal.sync());
+      assertEquals(3, journal.getDurableSequence());
+    }
+  }
+
+  @Test
+  void testAppendFromFrameView() throws IOException {
+    ByteBuffer read = ByteBuffer.allocate(256);
+    read.put((byte) 7);
+    int start = read.position();
+    read.put(WireFormat.V2.encode(new DirectMessage("annie", "bob", "relayed")));
+    FrameView view = new FrameView().wrap(WireFormat.V2, read, start, read.position() - start);
+    try (MessageJournal journal = new MessageJournal(directory)) {
+      assertEquals(1, journal.append(view));
+      assertEquals(new DirectMessage("annie", "bob", "relayed"), replay(journal, 1).get(0).getMessage());
+    }
+  }
+
+  @Test
+  void testRollOverAndReopen() throws IOException {
+    try (MessageJournal journal = new MessageJournal(directory, 1024, 100)) {
+      for (int i = 1; i <= 100; i++) {
+        assertEquals(i, journal.append(new BroadcastMessage("annie", "message " + i)));
+      }
+    }
+    assertTrue(segmentCount() > 3);
+    try (MessageJournal journal = new MessageJournal(directory, 1024, 100)) {
+      assertEquals(100, journal.getLastSequence());
+      assertEquals(101, journal.append(new BroadcastMessage("annie", "after reopen")));
+      List<JournalEntry> entries = replay(journal, 1);
+      assertEquals(101, entries.size());
+      for (int i = 0; i < 100; i++) {
+        assertEquals(i + 1, entries.get(i).getSequence());
+        assertEquals(new BroadcastMessage("annie", "message " + (i + 1)), entries.get(i).getMessage());
+      }
+      assertEquals(new BroadcastMessage("annie", "after reopen"), entries.get(100).getMessage());
+      assertEquals(List.of(95L, 96L), replay(journal, 95).stream().limit(2)
+          .map(JournalEntry::getSequence).toList());
+    }
+  }
+
+  @Test
+  void testTornRecordIsDiscardedOnReopen() throws IOException {
+    try (MessageJournal journal = new MessageJournal(directory, 4096, 100)) {
+      journal.append(new BroadcastMessage("annie", "one"));
+      journal.append(new BroadcastMessage("annie", "two"));
+    }
+    Path segment = directory.resolve(MessageJournal.segmentName(1));
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocate(4);
+      channel.read(buffer, MessageJournal.SEGMENT_HEADER_SIZE);
+      int firstEnd = MessageJournal.SEGMENT_HEADER_SIZE + MessageJournal.RECORD_HEADER_SIZE
+          + buffer.flip().getInt();
+      channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3}), firstEnd + MessageJournal.RECORD_HEADER_SIZE);
+    }
+    try (MessageJournal journal = new MessageJournal(directory, 4096, 100)) {
+      assertEquals(1, journal.getLastSequence());
+      assertEquals(2, journal.append(new BroadcastMessage("annie", "second try")));
+      List<JournalEntry> entries = replay(journal, 1);
+      assertEquals(2, entries.size());
+      assertEquals(new BroadcastMessage("annie", "second try"), entries.get(1).getMessage());
+    }
+  }
+
+  @Test
+  void testFailedAppends() throws IOException {
+    MessageJournal journal = new MessageJournal(directory, 1024, 100);
+    assertEquals(-1, journal.append(new BroadcastMessage("annie", "x".repeat(2000))));
+    assertEquals(1, journal.append(new BroadcastMessage("annie", "fits")));
+    journal.close();
+    assertEquals(-1, journal.append(new BroadcastMessage("annie", "too late")));
+    assertEquals(2, journal.getFailedAppends());
+    assertEquals(1, journal.getDurableSequence());
+    assertTrue(journal.toString().contains("lastSequence:1"));
+  }
+
+  @Test
+  void testInvalidSettings() {
+    assertThrows(IllegalArgumentException.class, () -> new MessageJournal(directory, 100, 100));
+    assertThrows(IllegalArgumentException.class, () -> new MessageJournal(directory, 4096, 0));
+  }
+
+  @Test
+  void testConcurrentAppendsGetDistinctSequences() throws Exception {
+    try (MessageJournal journal = new MessageJournal(directory, 64 * 1024, 100)) {
+      List<Thread> threads = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        String sender = "user" + t;
+        Thread thread = new Thread(() -> {
+          for (int i = 0; i < 500; i++) {
+            journal.append(new BroadcastMessage(sender, "message " + i));
+          }
+        });
+        threads.add(thread);
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      assertEquals(2000, journal.getLastSequence());
+      List<JournalEntry> entries = replay(journal, 1);
+      assertEquals(2000, entries.size());
+      int[] next = new int[4];
+      for (int i = 0; i < entries.size(); i++) {
+        assertEquals(i + 1, entries.get(i).getSequence());
+        Message message = entries.get(i).getMessage();
+        int sender = ((BroadcastMessage) message).getSenderUsername().charAt(4) - '0';
+        assertEquals(new BroadcastMessage("user" + sender, "message " + next[sender]++), message);
+      }
+    }
+  }
+}
@@ -0,0 +1,138 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class MpscRingBufferTest {
+
+  @Test
+  void testFifoAcrossGrowth() {
+    MpscRingBuffer<Integer> queue = new MpscRingBuffer<>(2, 64, WaitStrategy.BLOCK);
+    assertTrue(queue.isEmpty());
+    assertNull(queue.poll());
+    assertNull(queue.peek());
+    for (int i = 0; i < 50; i++) {
+      assertTrue(queue.offer(i));
+    }
+    assertEquals(50, queue.size());
+    assertEquals(14, queue.remainingCapacity());
+    assertEquals(Integer.valueOf(0), queue.peek());
+    for (int i = 0; i < 50; i++) {
+      assertEquals(Integer.valueOf(i), queue.poll());
+    }
+    assertTrue(queue.isEmpty());
+    assertNull(queue.poll());
+  }
+
+  @Test
+  void testBoundedCapacity() {
+    MpscRingBuffer<Integer> queue = new MpscRingBuffer<>(4, 6, WaitStrategy.BLOCK);
+    assertEquals(8, queue.getCapacity());
+    for (int i = 0; i < 8; i++) {
+      assertTrue(queue.offer(i));
+    }
+    assertFalse(queue.offer(8));
+    assertEquals(0, queue.remainingCapacity());
+    assertEquals(Integer.valueOf(0), queue.poll());
+    assertTrue(queue.offer(8));
+    List<Integer> drained = new ArrayList<>();
+    assertEquals(3, queue.drainTo(drained, 3));
+    assertEquals(List.of(1, 2, 3), drained);
+    assertEquals(5, queue.drainTo(drained));
+    assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8), drained);
+    assertThrows(IllegalArgumentException.class, () -> queue.drainTo(queue));
+  }
+
+  @Test
+  void testIteratorAndToString() {
+    MpscRingBuffer<String> queue = new MpscRingBuffer<>(2, 16, WaitStrategy.BLOCK);
+    queue.add("a");
+    queue.add("b");
+    queue.add("c");
+    queue.poll();
+    queue.add("d");
+    assertEquals("[b, c, d]", queue.toString());
+    assertTrue(queue.contains("c"));
+    assertThrows(UnsupportedOperationException.class, () -> {
+      var iterator = queue.iterator();
+      iterator.next();
+      iterator.remove();
+    });
+    assertThrows(NullPointerException.class, () -> queue.offer(null));
+  }
+
+  @Test
+  void testInvalidCapacity() {
+    assertThrows(IllegalArgumentException.class, () -> new MpscRingBuffer<>(1));
+    assertThrows(IllegalArgumentException.class,
+        () -> new MpscRingBuffer<>(16, MpscRingBuffer.MAX_CAPACITY + 1, WaitStrategy.BLOCK));
+  }
+
+  @Test
+  void testProducersKeepTheirOwnOrder() throws Exception {
+    int producers = 8;
+    int perProducer = 20_000;
+    MpscRingBuffer<long[]> queue = new MpscRingBuffer<>(2, 1024, WaitStrategy.SPIN_THEN_PARK);
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[producers];
+    for (int p = 0; p < producers; p++) {
+      int producer = p;
+      threads[p] = new Thread(() -> {
+        try {
+          start.await();
+          for (int i = 0; i < perProducer; i++) {
+            queue.put(new long[] {producer, i});
+          }
+        } catch (InterruptedException ignored) {
+        }
+      });
+      threads[p].start();
+    }
+    start.countDown();
+    int[] next = new int[producers];
+    List<long[]> batch = new ArrayList<>();
+    for (int taken = 0; taken < producers * perProducer; ) {
+      batch.add(queue.take());
+      queue.drainTo(batch, 255);
+      for (long[] element : batch) {
+        assertEquals(next[(int) element[0]]++, element[1]);
+      }
+      taken += batch.size();
+      batch.clear();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  void testTakeWaitsForAProducer() throws Exception {
+    for (WaitStrategy strategy : WaitStrategy.values()) {
+      MpscRingBuffer<String> queue = new MpscRingBuffer<>(2, 16, strategy);
+      assertEquals(strategy, queue.getWaitStrategy());
+      assertNull(queue.poll(20, TimeUnit.MILLISECONDS));
+      Thread producer = new Thread(() -> {
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException ignored) {
+        }
+        queue.add("late");
+      });
+      producer.start();
+      assertEquals("late", queue.take());
+      producer.join();
+    }
+  }
+
+  @Test
+  void testTakeIsInterruptible() throws Exception {
+    MpscRingBuffer<String> queue = new MpscRingBuffer<>(16);
+    Thread.currentThread().interrupt();
+    assertThrows(InterruptedException.class, queue::take);
+    assertFalse(Thread.currentThread().isInterrupted());
+  }
+}
@@ -0,0 +1,845 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import messageModel.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class NioChatServerTest {
+
+  private ChatServer server;
+  private Thread serverThread;
+  private int assignedPort;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    ServerSocket testServerSocket = new ServerSocket(0);
+    assignedPort = testServerSocket.getLocalPort();
+    testServerSocket.close();
+
+    server = new ChatServer(assignedPort, ServerMode.NIO, 2);
+
+    serverThread = new Thread(() -> {
+      try {
+        server.start();
+      } catch (IOException ignored) {
+      }
+    });
+    serverThread.start();
+
+    try {
+      Thread.sleep(200);
+    } catch (InterruptedException ignored) {}
+  }
+
+  @AfterEach
+  void tearDown() throws IOException, InterruptedException {
+    if (server.getServerSocket() != null && !server.getServerSocket().isClosed()) {
+      server.getServerSocket().close();
+    }
+    serverThread.join(500);
+  }
+
+  private Socket connect(String username) throws IOException {
+    Socket socket = new Socket("localhost", assignedPort);
+    new ConnectMessage(username).send(new DataOutputStream(socket.getOutputStream()));
+    DataInputStream in = new DataInputStream(socket.getInputStream());
+    assertEquals(Protocol.CONNECT_RESPONSE, in.readInt());
+    assertTrue(in.readBoolean());
+    assertTrue(in.readUTF().contains(username));
+    return socket;
+  }
+
+  @Test
+  void testConnectAndQuery() throws IOException {
+    Socket first = connect("userA");
+    Socket second = connect("userB");
+    DataOutputStream out = new DataOutputStream(first.getOutputStream());
+    DataInputStream in = new DataInputStream(first.getInputStream());
+
+    new QueryUsers("userA").send(out);
+    assertEquals(Protocol.QUERY_USER_RESPONSE, in.readInt());
+    assertEquals(1, in.readInt());
+    assertEquals("userB", in.readUTF());
+
+    first.close();
+    second.close();
+  }
+
+  @Test
+  void testBroadcastAndDirect() throws IOException {
+    Socket a = connect("userA");
+    Socket b = connect("userB");
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+
+    new BroadcastMessage("userA", "Hello all!").send(new DataOutputStream(a.getOutputStream()));
+    assertTrue(Message.receive(inA) instanceof FailedMessage);
+    BroadcastMessage broadcast = (BroadcastMessage) Message.receive(inB);
+    assertEquals("Hello all!", broadcast.getMessage());
+
+    new DirectMessage("userB", "userA", "psst").send(new DataOutputStream(b.getOutputStream()));
+    DirectMessage dm = (DirectMessage) Message.receive(inA);
+    assertEquals("psst", dm.getMessage());
+    assertEquals("userB", dm.getSenderUsername());
+
+    a.close();
+    b.close();
+  }
+
+  @Test
+  void testPresenceRepliesCountAsOneDelivery() throws IOException, InterruptedException {
+    Socket first = connect("userA");
+    Socket second = connect("userB");
+    DataOutputStream out = new DataOutputStream(first.getOutputStream());
+    DataInputStream in = new DataInputStream(first.getInputStream());
+
+    for (int i = 0; i < 50; i++) {
+      new QueryUsers("userA").send(out);
+    }
+    for (int i = 0; i < 50; i++) {
+      assertEquals(new QueryResp(java.util.List.of("userB")), Message.receive(in));
+    }
+
+    long deadline = System.currentTimeMillis() + 2000;
+    while (server.getQueueDepths().get("userA") != 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(Integer.valueOf(0), server.getQueueDepths().get("userA"));
+    assertEquals(0, server.getClients().get("userA").getQueuedBytes());
+    first.close();
+    second.close();
+  }
+
+  @Test
+  void testFrameSplitAcrossWrites() throws IOException, InterruptedException {
+    Socket a = connect("userA");
+    DataOutputStream out = new DataOutputStream(a.getOutputStream());
+    DataInputStream in = new DataInputStream(a.getInputStream());
+
+    byte[] frame = FrameDecoder.encode(new QueryUsers("userA")).array();
+    out.write(frame, 0, 3);
+    out.flush();
+    Thread.sleep(50);
+    out.write(frame, 3, frame.length - 3);
+    out.flush();
+
+    assertEquals(Protocol.QUERY_USER_RESPONSE, in.readInt());
+    assertEquals(0, in.readInt());
+    a.close();
+  }
+
+  @Test
+  void testDisconnect() throws IOException, InterruptedException {
+    Socket a = connect("userA");
+    new DisconnectMessage("userA").send(new DataOutputStream(a.getOutputStream()));
+    DataInputStream in = new DataInputStream(a.getInputStream());
+    assertEquals(Protocol.OTHER, in.readInt());
+    assertTrue(in.readBoolean());
+    assertTrue(in.readUTF().contains("no longer connected"));
+    assertEquals(-1, in.read());
+    Thread.sleep(50);
+    assertFalse(server.getClients().containsKey("userA"));
+    a.close();
+  }
+
+  @Test
+  void testClosedSocketRemovesUser() throws IOException, InterruptedException {
+    Socket a = connect("userA");
+    assertTrue(server.getClients().containsKey("userA"));
+    a.close();
+    for (int i = 0; i < 50 && server.getClients().containsKey("userA"); i++) {
+      Thread.sleep(20);
+    }
+    assertFalse(server.getClients().containsKey("userA"));
+  }
+
+  @Test
+  void testBroadcastBurstLargerThanSocketBuffer() throws IOException, InterruptedException {
+    Socket a = connect("userA");
+    Socket b = connect("userB");
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    String body = "x".repeat(10_000);
+    int count = 200;
+    Thread sender = new Thread(() -> {
+      try {
+        for (int i = 0; i < count; i++) {
+          new BroadcastMessage("userA", i + body).send(outA);
+        }
+      } catch (IOException ignored) {
+      }
+    });
+    sender.start();
+    Thread.sleep(300);
+
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    for (int i = 0; i < count; i++) {
+      BroadcastMessage broadcast = (BroadcastMessage) Message.receive(inB);
+      assertEquals(i + body, broadcast.getMessage());
+    }
+    sender.join(1000);
+    a.close();
+    b.close();
+  }
+
+  @Test
+  void testStalledHandshakeDoesNotBlockAccept() throws IOException, InterruptedException {
+    server.setHandshakeTimeoutMillis(300);
+    Socket stalled = new Socket("localhost", assignedPort);
+    Thread.sleep(100);
+    assertEquals(1, server.getPendingHandshakeCount());
+
+    Socket fast = connect("fast");
+    assertTrue(server.getClients().containsKey("fast"));
+
+    stalled.setSoTimeout(2000);
+    assertEquals(-1, stalled.getInputStream().read());
+    assertEquals(0, server.getPendingHandshakeCount());
+    stalled.close();
+    fast.close();
+  }
+
+  @Test
+  void testPendingHandshakeLimit() throws IOException, InterruptedException {
+    server.setMaxPendingHandshakes(1);
+    Socket stalled = new Socket("localhost", assignedPort);
+    Thread.sleep(100);
+    Socket refused = new Socket("localhost", assignedPort);
+    refused.setSoTimeout(2000);
+    assertEquals(-1, refused.getInputStream().read());
+    assertEquals(1, server.getPendingHandshakeCount());
+    refused.close();
+    stalled.close();
+  }
+
+  @Test
+  void testInvalidHandshakeSettings() {
+    assertThrows(IllegalArgumentException.class, () -> server.setHandshakeTimeoutMillis(0));
+    assertThrows(IllegalArgumentException.class, () -> server.setMaxPendingHandshakes(0));
+    assertEquals(ChatServer.DEFAULT_HANDSHAKE_TIMEOUT_MILLIS, server.getHandshakeTimeoutMillis());
+    assertEquals(ChatServer.DEFAULT_MAX_PENDING_HANDSHAKES, server.getMaxPendingHandshakes());
+  }
+
+  @Test
+  void testVersionTwoClientTalksToVersionOneClient() throws IOException {
+    Socket v2 = new Socket("localhost", assignedPort);
+    DataOutputStream outV2 = new DataOutputStream(v2.getOutputStream());
+    DataInputStream inV2 = new DataInputStream(v2.getInputStream());
+    new ConnectMessage("modern", Protocol.VERSION_2).send(outV2);
+    ConnectResp resp = ConnectResp.receive(inV2);
+    assertTrue(resp.getSuccess());
+    assertEquals(Protocol.VERSION_2, resp.getProtocolVersion());
+
+    Socket v1 = new Socket("localhost", assignedPort);
+    DataOutputStream outV1 = new DataOutputStream(v1.getOutputStream());
+    DataInputStream inV1 = new DataInputStream(v1.getInputStream());
+    new ConnectMessage("legacy").send(outV1);
+    assertEquals(Protocol.CONNECT_RESPONSE, inV1.readInt());
+    assertTrue(inV1.readBoolean());
+    inV1.readUTF();
+
+    FrameCodecV2.write(new DirectMessage("modern", "legacy", "from v2"), outV2);
+    assertEquals(new DirectMessage("modern", "legacy", "from v2"), Message.receive(inV1));
+
+    new DirectMessage("legacy", "modern", "from v1").send(outV1);
+    assertEquals(new DirectMessage("legacy", "modern", "from v1"), FrameCodecV2.read(inV2));
+
+    new BroadcastMessage("legacy", "to all").send(outV1);
+    assertEquals(new BroadcastMessage("legacy", "to all"), FrameCodecV2.read(inV2));
+
+    FrameCodecV2.write(new QueryUsers("modern"), outV2);
+    assertEquals(new QueryResp(java.util.List.of("legacy")), FrameCodecV2.read(inV2));
+
+    FrameCodecV2.write(new DisconnectMessage("modern"), outV2);
+    DisconnectResp bye = (DisconnectResp) FrameCodecV2.read(inV2);
+    assertTrue(bye.isSuccess());
+    v1.close();
+    v2.close();
+  }
+
+  @Test
+  void testQueuesDrainToZeroAfterVersionTwoTraffic() throws IOException, InterruptedException {
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("drainA", Protocol.VERSION_2).send(outA);
+    ConnectResp.receive(inA);
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("drainB", Protocol.VERSION_2).send(outB);
+    ConnectResp.receive(inB);
+
+    for (int i = 0; i < 200; i++) {
+      FrameCodecV2.write(new BroadcastMessage("drainA", "round " + i), outA);
+      FrameCodecV2.write(new DirectMessage("drainB", "drainA", "reply " + i), outB);
+    }
+    for (int i = 0; i < 200; i++) {
+      assertEquals(new BroadcastMessage("drainA", "round " + i), FrameCodecV2.read(inB));
+    }
+    int broadcasts = 0;
+    int directs = 0;
+    while (broadcasts < 200 || directs < 200) {
+      Message message = FrameCodecV2.read(inA);
+      if (message instanceof DirectMessage) {
+        assertEquals(new DirectMessage("drainB", "drainA", "reply " + directs++), message);
+      } else {
+        assertEquals(new FailedMessage(""), message);
+        broadcasts++;
+      }
+    }
+
+    long deadline = System.currentTimeMillis() + 2000;
+    while (server.getQueueDepths().values().stream().anyMatch(depth -> depth != 0)
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(java.util.Map.of("drainA", 0, "drainB", 0), server.getQueueDepths());
+    for (ClientThread client : server.getClients().values()) {
+      assertEquals(0, client.getQueuedBytes());
+    }
+    a.close();
+    b.close();
+  }
+
+  @Test
+  void testDirectMessagesAreRelayedThroughPooledFrames() throws IOException, InterruptedException {
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("relayA", Protocol.VERSION_2).send(outA);
+    ConnectResp.receive(inA);
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("relayB", Protocol.VERSION_2).send(outB);
+    ConnectResp.receive(inB);
+    Socket c = connect("relayC");
+    DataInputStream inC = new DataInputStream(c.getInputStream());
+
+    for (int i = 0; i < 20; i++) {
+      FrameCodecV2.write(new DirectMessage("relayA", "relayB", "héllo " + i), outA);
+      FrameCodecV2.write(new DirectMessage("relayA", "relayC", "to v1 " + i), outA);
+    }
+    for (int i = 0; i < 20; i++) {
+      assertEquals(new DirectMessage("relayA", "relayB", "héllo " + i), FrameCodecV2.read(inB));
+      assertEquals(new DirectMessage("relayA", "relayC", "to v1 " + i), Message.receive(inC));
+    }
+    FrameCodecV2.write(new DirectMessage("relayA", "nobody", "lost"), outA);
+    assertEquals(new FailedMessage("Recipient not found: nobody"), FrameCodecV2.read(inA));
+
+    long deadline = System.currentTimeMillis() + 2000;
+    while (server.getFramePool().getPooledCount() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(server.getFramePool().getPooledCount() > 0);
+    a.close();
+    b.close();
+    c.close();
+  }
+
+  @Test
+  void testRoutedMessagesAreJournaled() throws Exception {
+    java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("journal");
+    MessageJournal journal = new MessageJournal(directory);
+    server.setJournal(journal);
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("journalA", Protocol.VERSION_2).send(outA);
+    ConnectResp.receive(inA);
+    Socket b = connect("journalB");
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+
+    FrameCodecV2.write(new DirectMessage("journalA", "journalB", "relayed"), outA);
+    assertEquals(new DirectMessage("journalA", "journalB", "relayed"), Message.receive(inB));
+    FrameCodecV2.write(new BroadcastMessage("journalA", "to all"), outA);
+    assertEquals(new BroadcastMessage("journalA", "to all"), Message.receive(inB));
+    assertEquals(new FailedMessage(""), FrameCodecV2.read(inA));
+    FrameCodecV2.write(new InsultMessage("journalA", "journalB"), outA);
+    BroadcastMessage insult = (BroadcastMessage) Message.receive(inB);
+    FrameCodecV2.write(new DirectMessage("journalA", "nobody", "lost"), outA);
+    assertEquals(new FailedMessage(""), FrameCodecV2.read(inA));
+    assertEquals(new FailedMessage("Recipient not found: nobody"), FrameCodecV2.read(inA));
+
+    java.util.List<Message> journaled = new java.util.ArrayList<>();
+    journal.replay(1, entry -> {
+      try {
+        journaled.add(entry.getMessage());
+      } catch (IOException e) {
+        throw new java.io.UncheckedIOException(e);
+      }
+    });
+    assertEquals(java.util.List.of(new DirectMessage("journalA", "journalB", "relayed"),
+        new BroadcastMessage("journalA", "to all"), insult), journaled);
+    server.setJournal(null);
+    journal.close();
+    a.close();
+    b.close();
+    try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(directory)) {
+      for (java.nio.file.Path file : files.toList()) {
+        java.nio.file.Files.delete(file);
+      }
+    }
+    java.nio.file.Files.delete(directory);
+  }
+
+  @Test
+  void testHistoryIncludesRelayedFrames() throws Exception {
+    java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("history");
+    MessageJournal journal = new MessageJournal(directory);
+    MessageHistory history = new MessageHistory(journal);
+    server.setJournal(journal);
+    server.setHistory(history);
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("historyA", Protocol.VERSION_2).send(outA);
+    ConnectResp.receive(inA);
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("historyB", Protocol.VERSION_2).send(outB);
+    ConnectResp.receive(inB);
+
+    for (int i = 0; i < 3; i++) {
+      FrameCodecV2.write(new DirectMessage("historyA", "historyB", "relayed " + i), outA);
+      assertEquals(new DirectMessage("historyA", "historyB", "relayed " + i), FrameCodecV2.read(inB));
+    }
+    HistoryQuery query = new HistoryQuery("historyB", "historyA", 2, 0);
+    query.setRequestId(7);
+    FrameCodecV2.write(query, outB);
+    HistoryResp page = (HistoryResp) FrameCodecV2.read(inB);
+    assertEquals(7, page.getRequestId());
+    assertEquals(java.util.List.of("relayed 1", "relayed 2"),
+        page.getEntries().stream().map(HistoryResp.Entry::getMessage).toList());
+    assertTrue(page.hasMore());
+    FrameCodecV2.write(new HistoryQuery("historyB", "historyA", 2, page.getNextBeforeSequence()), outB);
+    page = (HistoryResp) FrameCodecV2.read(inB);
+    assertEquals(java.util.List.of("relayed 0"),
+        page.getEntries().stream().map(HistoryResp.Entry::getMessage).toList());
+    assertFalse(page.hasMore());
+
+    server.setHistory(null);
+    server.setJournal(null);
+    history.close();
+    journal.close();
+    a.close();
+    b.close();
+    try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.walk(directory)) {
+      for (java.nio.file.Path file : files.sorted(java.util.Comparator.reverseOrder()).toList()) {
+        java.nio.file.Files.delete(file);
+      }
+    }
+  }
+
+  @Test
+  void testResumedSessionReplaysRelayedFrames() throws Exception {
+    server.setResumeGraceMillis(5_000);
+    Socket a = new Socket("localhost", assignedPort);
+    new ConnectMessage("nioResA", Protocol.VERSION_2).send(new DataOutputStream(a.getOutputStream()));
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    String token = ConnectResp.receive(inA).getResumeToken();
+    assertFalse(token.isEmpty());
+
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    new ConnectMessage("nioResB", Protocol.VERSION_2).send(outB);
+    ConnectResp.receive(new DataInputStream(b.getInputStream()));
+    for (int i = 1; i <= 3; i++) {
+      FrameCodecV2.write(new DirectMessage("nioResB", "nioResA", "m" + i), outB);
+    }
+    for (int i = 1; i <= 3; i++) {
+      assertEquals(new DirectMessage("nioResB", "nioResA", "m" + i), FrameCodecV2.read(inA));
+    }
+    ClientThread lost = server.getClients().get("nioResA");
+    a.close();
+    long deadline = System.currentTimeMillis() + 2000;
+    while (!lost.isDetached() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(lost.isDetached());
+    FrameCodecV2.write(new DirectMessage("nioResB", "nioResA", "m4"), outB);
+
+    Socket again = new Socket("localhost", assignedPort);
+    new ResumeMessage("nioResA", token, 2, Protocol.VERSION_2).send(new DataOutputStream(again.getOutputStream()));
+    DataInputStream inAgain = new DataInputStream(again.getInputStream());
+    assertTrue(ConnectResp.receive(inAgain).getSuccess());
+    for (int i = 3; i <= 4; i++) {
+      assertEquals(new DirectMessage("nioResB", "nioResA", "m" + i), FrameCodecV2.read(inAgain));
+    }
+    again.close();
+    b.close();
+  }
+
+  @Test
+  void testRelayedDirectMessagesAreRateLimited() throws Exception {
+    server.setRateLimits(RateLimits.UNLIMITED.with(RateCategory.DIRECT, 0.01, 2));
+    Socket a = connect("nioLimitA");
+    Socket b = connect("nioLimitB");
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    for (int i = 1; i <= 3; i++) {
+      new DirectMessage("nioLimitA", "nioLimitB", "m" + i).send(outA);
+    }
+    assertEquals(new FailedMessage("Rate limit exceeded for direct messages."), Message.receive(inA));
+    assertEquals(new DirectMessage("nioLimitA", "nioLimitB", "m1"), Message.receive(inB));
+    assertEquals(new DirectMessage("nioLimitA", "nioLimitB", "m2"), Message.receive(inB));
+    assertEquals(1, server.getRateLimitRejections());
+    a.close();
+    b.close();
+  }
+
+  @Test
+  void testQuietConnectionsAreEvictedButCanResume() throws Exception {
+    server.setResumeGraceMillis(5_000);
+    server.setIdleTimeoutMillis(200);
+    Socket a = new Socket("localhost", assignedPort);
+    new ConnectMessage("nioQuiet", Protocol.VERSION_2).send(new DataOutputStream(a.getOutputStream()));
+    String token = ConnectResp.receive(new DataInputStream(a.getInputStream())).getResumeToken();
+    ClientThread quiet = server.getClients().get("nioQuiet");
+    long deadline = System.currentTimeMillis() + 3000;
+    while (!quiet.isDetached() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(quiet.isDetached());
+    assertEquals(1, server.getIdleEvictions());
+    assertTrue(server.getClients().containsKey("nioQuiet"));
+
+    server.setIdleTimeoutMillis(0);
+    Socket again = new Socket("localhost", assignedPort);
+    new ResumeMessage("nioQuiet", token, 0, Protocol.VERSION_2).send(new DataOutputStream(again.getOutputStream()));
+    assertTrue(ConnectResp.receive(new DataInputStream(again.getInputStream())).getSuccess());
+    again.close();
+    a.close();
+  }
+
+  @Test
+  void testRoomsOnlyReachTheirMembers() throws IOException, InterruptedException {
+    Socket a = new Socket("localhost", assignedPort);
+    Socket b = new Socket("localhost", assignedPort);
+    Socket c = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    DataOutputStream outC = new DataOutputStream(c.getOutputStream());
+    DataInputStream inC = new DataInputStream(c.getInputStream());
+    new ConnectMessage("roomA").send(outA);
+    ConnectResp.receive(inA);
+    new ConnectMessage("roomB").send(outB);
+    ConnectResp.receive(inB);
+    new ConnectMessage("roomC").send(outC);
+    ConnectResp.receive(inC);
+
+    new JoinRoomMessage("roomA", "lobby").send(outA);
+    assertEquals(new RoomResp(true, "lobby", "Joined room: lobby"), Message.receive(inA));
+    new JoinRoomMessage("roomB", "lobby").send(outB);
+    assertEquals(new RoomResp(true, "lobby", "Joined room: lobby"), Message.receive(inB));
+    new JoinRoomMessage("roomA", "lobby").send(outA);
+    assertEquals(new RoomResp(false, "lobby", "Already in room: lobby"), Message.receive(inA));
+    new JoinRoomMessage("roomC", "kitchen").send(outC);
+    assertEquals(new RoomResp(true, "kitchen", "Joined room: kitchen"), Message.receive(inC));
+    assertEquals(2, server.getRooms().getRoomCount());
+
+    new RoomMessage("roomA", "lobby", "hello lobby").send(outA);
+    assertEquals(new FailedMessage(""), Message.receive(inA));
+    assertEquals(new RoomMessage("roomA", "lobby", "hello lobby"), Message.receive(inB));
+    new DirectMessage("roomB", "roomC", "marker").send(outB);
+    assertEquals(new DirectMessage("roomB", "roomC", "marker"), Message.receive(inC));
+
+    new RoomMessage("roomC", "lobby", "let me in").send(outC);
+    assertEquals(new FailedMessage("You are not in room: lobby"), Message.receive(inC));
+    new RoomMessage("roomA", "kitchen", "spoofed").send(outC);
+    assertTrue(((FailedMessage) Message.receive(inC)).getErrorMessage().contains("Sender does not match"));
+    new JoinRoomMessage("roomC", "bad name").send(outC);
+    assertEquals(new FailedMessage("Invalid room name: bad name"), Message.receive(inC));
+
+    new LeaveRoomMessage("roomB", "lobby").send(outB);
+    assertEquals(new RoomResp(true, "lobby", "Left room: lobby"), Message.receive(inB));
+    new LeaveRoomMessage("roomB", "lobby").send(outB);
+    assertEquals(new RoomResp(false, "lobby", "Not in room: lobby"), Message.receive(inB));
+    new RoomMessage("roomA", "lobby", "anyone?").send(outA);
+    assertEquals(new FailedMessage(""), Message.receive(inA));
+    new DirectMessage("roomC", "roomB", "marker").send(outC);
+    assertEquals(new DirectMessage("roomC", "roomB", "marker"), Message.receive(inB));
+
+    a.close();
+    c.close();
+    long deadline = System.currentTimeMillis() + 2000;
+    while (server.getRooms().getRoomCount() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, server.getRooms().getRoomCount());
+    b.close();
+  }
+
+  @Test
+  void testPresenceSubscriptionPushesDeltas() throws IOException {
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("watcher").send(outA);
+    ConnectResp.receive(inA);
+    new SubscribePresence("watcher").send(outA);
+    PresenceSync sync = (PresenceSync) Message.receive(inA);
+    assertEquals(java.util.List.of("watcher"), sync.getUsernames());
+
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("joiner").send(outB);
+    ConnectResp.receive(inB);
+    assertEquals(new PresenceDelta(sync.getSequence() + 1, true, "joiner"), Message.receive(inA));
+
+    new SubscribePresence("someoneElse").send(outB);
+    assertTrue(((FailedMessage) Message.receive(inB)).getErrorMessage().contains("Sender does not match"));
+    new DisconnectMessage("joiner").send(outB);
+    assertEquals(new PresenceDelta(sync.getSequence() + 2, false, "joiner"), Message.receive(inA));
+
+    new SubscribePresence("watcher").send(outA);
+    assertEquals(new PresenceSync(sync.getSequence() + 2, java.util.List.of("watcher")), Message.receive(inA));
+    a.close();
+    b.close();
+  }
+
+  @Test
+  void testDirectoryQueryPages() throws IOException {
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("dir-a").send(outA);
+    ConnectResp.receive(inA);
+    java.util.List<Socket> others = new java.util.ArrayList<>();
+    for (String name : new String[] {"dir-b", "dir-c", "other"}) {
+      Socket socket = new Socket("localhost", assignedPort);
+      new ConnectMessage(name).send(new DataOutputStream(socket.getOutputStream()));
+      ConnectResp.receive(new DataInputStream(socket.getInputStream()));
+      others.add(socket);
+    }
+
+    new DirectoryQuery("dir-a", "dir-", "", 2).send(outA);
+    assertEquals(new DirectoryResp(java.util.List.of("dir-a", "dir-b"), "dir-b"), Message.receive(inA));
+    new DirectoryQuery("dir-a", "dir-", "dir-b", 2).send(outA);
+    assertEquals(new DirectoryResp(java.util.List.of("dir-c"), ""), Message.receive(inA));
+    new DirectoryQuery("dir-a", "dir-", "", 0).send(outA);
+    assertEquals(new FailedMessage("Invalid page size: 0"), Message.receive(inA));
+
+    others.get(0).close();
+    long deadline = System.currentTimeMillis() + 2000;
+    while (server.getDirectory().size() > 3 && System.currentTimeMillis() < deadline) {
+      Thread.yield();
+    }
+    new DirectoryQuery("dir-a", "dir-", "", 5).send(outA);
+    assertEquals(new DirectoryResp(java.util.List.of("dir-a", "dir-c"), ""), Message.receive(inA));
+    a.close();
+    for (Socket socket : others) {
+      socket.close();
+    }
+  }
+
+  @Test
+  void testPipelinedRequestsAreAnsweredById() throws Exception {
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("pipeA", Protocol.VERSION_2).send(outA);
+    ConnectResp.receive(inA);
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("pipeB", Protocol.VERSION_2).send(outB);
+    ConnectResp.receive(inB);
+
+    PendingRequests requests = new PendingRequests(WireFormat.V2, outA);
+    java.util.List<CompletableFuture<Message>> sent = new java.util.ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      sent.add(requests.send(new DirectMessage("pipeA", "pipeB", "pipelined " + i)));
+    }
+    CompletableFuture<Message> query = requests.send(new QueryUsers("pipeA"));
+    CompletableFuture<Message> join = requests.send(new JoinRoomMessage("pipeA", "pipes"));
+    CompletableFuture<Message> spoofed = requests.send(new DirectMessage("pipeB", "pipeA", "spoofed"));
+    CompletableFuture<Message> page = requests.send(new DirectoryQuery("pipeA", "pipe", "", 10));
+    CompletableFuture<Message> broadcast = requests.send(new BroadcastMessage("pipeA", "to all"));
+    assertEquals(105, requests.size());
+
+    Thread reader = new Thread(() -> Client.receiveMessage(inA, new PresenceView("pipeA"), requests));
+    reader.start();
+    for (CompletableFuture<Message> answer : sent) {
+      assertEquals(new FailedMessage(""), answer.get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(new QueryResp(java.util.List.of("pipeB")), query.get(5, TimeUnit.SECONDS));
+    assertEquals(new RoomResp(true, "pipes", "Joined room: pipes"), join.get(5, TimeUnit.SECONDS));
+    assertEquals(new FailedMessage("Sender does not match your username: pipeB"),
+        spoofed.get(5, TimeUnit.SECONDS));
+    assertEquals(new DirectoryResp(java.util.List.of("pipeA", "pipeB"), ""), page.get(5, TimeUnit.SECONDS));
+    assertEquals(new FailedMessage(""), broadcast.get(5, TimeUnit.SECONDS));
+    assertEquals(0, requests.size());
+
+    for (int i = 0; i < 100; i++) {
+      Message delivered = FrameCodecV2.read(inB);
+      assertEquals(new DirectMessage("pipeA", "pipeB", "pipelined " + i), delivered);
+      assertEquals(0, delivered.getRequestId());
+    }
+    Message toAll = FrameCodecV2.read(inB);
+    assertEquals(new BroadcastMessage("pipeA", "to all"), toAll);
+    assertEquals(0, toAll.getRequestId());
+
+    a.close();
+    reader.join(2000);
+    assertThrows(IOException.class, () -> requests.send(new QueryUsers("pipeA")));
+    b.close();
+  }
+
+  @Test
+  void testDirectMessageWithWrongSenderIsRejected() throws IOException {
+    Socket a = new Socket("localhost", assignedPort);
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("honest").send(outA);
+    ConnectResp.receive(inA);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    new ConnectMessage("victim").send(outB);
+    ConnectResp.receive(new DataInputStream(b.getInputStream()));
+
+    new DirectMessage("victim", "honest", "spoofed").send(outA);
+    FailedMessage failed = (FailedMessage) Message.receive(inA);
+    assertTrue(failed.getErrorMessage().contains("Sender does not match"));
+
+    new DirectMessage("honest", "nobody", "lost").send(outA);
+    failed = (FailedMessage) Message.receive(inA);
+    assertTrue(failed.getErrorMessage().contains("Recipient not found"));
+    a.close();
+    b.close();
+  }
+
+  @Test
+  void testMalformedDirectMessagesAreRejectedBeforeJournaling() throws Exception {
+    java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("journal");
+    MessageJournal journal = new MessageJournal(directory);
+    server.setJournal(journal);
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    DataInputStream inA = new DataInputStream(a.getInputStream());
+    new ConnectMessage("badA").send(outA);
+    ConnectResp.receive(inA);
+    Socket b = new Socket("localhost", assignedPort);
+    DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("badB", Protocol.VERSION_2).send(outB);
+    ConnectResp.receive(inB);
+    Socket c = new Socket("localhost", assignedPort);
+    DataInputStream inC = new DataInputStream(c.getInputStream());
+    new ConnectMessage("badC", Protocol.VERSION_2).send(new DataOutputStream(c.getOutputStream()));
+    ConnectResp.receive(inC);
+
+    outA.writeInt(Protocol.DIRECT_MESSAGE);
+    outA.writeUTF("badA");
+    outA.writeUTF("badC");
+    outA.writeShort(2);
+    outA.write(new byte[] {(byte) 0xC0, 0x20});
+    outA.flush();
+    assertEquals(new FailedMessage("Malformed direct message."), Message.receive(inA));
+
+    byte[] frame = WireFormat.V2.encode(new DirectMessage("badB", "badC", "ab")).array().clone();
+    int end = WireFormat.V2.encode(new DirectMessage("badB", "badC", "ab")).limit();
+    frame[end - 2] = (byte) 0xC0;
+    frame[end - 1] = (byte) 0x80;
+    outB.write(frame, 0, end);
+    outB.flush();
+    assertEquals(new FailedMessage("Malformed direct message."), FrameCodecV2.read(inB));
+
+    FrameCodecV2.write(new DirectMessage("badB", "badC", "marker"), outB);
+    assertEquals(new DirectMessage("badB", "badC", "marker"), FrameCodecV2.read(inC));
+    java.util.List<JournalEntry> entries = new java.util.ArrayList<>();
+    journal.replay(1, entries::add);
+    assertEquals(1, entries.size());
+    assertEquals(new DirectMessage("badB", "badC", "marker"), entries.get(0).getMessage());
+    server.setJournal(null);
+    journal.close();
+    a.close();
+    b.close();
+    c.close();
+    try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(directory)) {
+      for (java.nio.file.Path file : files.toList()) {
+        java.nio.file.Files.delete(file);
+      }
+    }
+    java.nio.file.Files.delete(directory);
+  }
+
+  @Test
+  void testLargestFrameIsRelayed() throws IOException {
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    new ConnectMessage("largeA", Protocol.VERSION_2).send(outA);
+    ConnectResp.receive(new DataInputStream(a.getInputStream()));
+    Socket b = new Socket("localhost", assignedPort);
+    DataInputStream inB = new DataInputStream(b.getInputStream());
+    new ConnectMessage("largeB", Protocol.VERSION_2).send(new DataOutputStream(b.getOutputStream()));
+    ConnectResp.receive(inB);
+
+    String body = "x".repeat(FrameCodecV2.MAX_FRAME_LENGTH);
+    int overhead = FrameCodecV2.encode(new DirectMessage("largeA", "largeB", body)).remaining()
+        - FrameCodecV2.MAX_PREFIXED_FRAME_LENGTH;
+    DirectMessage largest = new DirectMessage("largeA", "largeB", body.substring(overhead));
+    assertEquals(FrameCodecV2.MAX_PREFIXED_FRAME_LENGTH, FrameCodecV2.encode(largest).remaining());
+    FrameCodecV2.write(largest, outA);
+    b.setSoTimeout(5000);
+    assertEquals(largest, FrameCodecV2.read(inB));
+    a.close();
+    b.close();
+  }
+
+  @Test
+  void testStopClosesConnectionsOnTheirEventLoops() throws Exception {
+    Socket a = new Socket("localhost", assignedPort);
+    DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+    new ConnectMessage("stopA", Protocol.VERSION_2).send(outA);
+    ConnectResp.receive(new DataInputStream(a.getInputStream()));
+    Socket b = new Socket("localhost", assignedPort);
+    new ConnectMessage("stopB", Protocol.VERSION_2).send(new DataOutputStream(b.getOutputStream()));
+    ConnectResp.receive(new DataInputStream(b.getInputStream()));
+
+    String body = "x".repeat(4000);
+    for (int i = 0; i < 200; i++) {
+      FrameCodecV2.write(new DirectMessage("stopA", "stopB", body), outA);
+    }
+    outA.flush();
+    Thread.sleep(200);
+    server.stop();
+
+    for (Socket socket : new Socket[] {a, b}) {
+      socket.setSoTimeout(2000);
+      byte[] drain = new byte[8192];
+      while (socket.getInputStream().read(drain) >= 0) {
+      }
+      socket.close();
+    }
+    long deadline = System.currentTimeMillis() + 2000;
+    while (server.getEventLoops()[0].getConnectionCount() + server.getEventLoops()[1].getConnectionCount() > 0
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, server.getEventLoops()[0].getConnectionCount());
+    assertEquals(0, server.getEventLoops()[1].getConnectionCount());
+    assertTrue(server.getClients().isEmpty());
+  }
+
+  @Test
+  void testGetter() {
+    assertEquals(ServerMode.NIO, server.getMode());
+    assertEquals(2, server.getEventLoops().length);
+  }
+}
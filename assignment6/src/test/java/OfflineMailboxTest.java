@@ -0,0 +1,110 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import messageModel.DirectMessage;
+import messageModel.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class OfflineMailboxTest {
+
+  private OfflineMailbox mailbox;
+
+  @BeforeEach
+  void setUp() {
+    mailbox = new OfflineMailbox(3, 1024 * 1024, 60_000);
+  }
+
+  private static ClientThread clientThread(String username, QueueLimits limits) {
+    return new ClientThread(new DataOutputStream(new ByteArrayOutputStream()), username, null, limits);
+  }
+
+  private static List<Message> drain(ClientThread clientThread) {
+    List<Message> messages = new ArrayList<>();
+    clientThread.getMessageLine().drainTo(messages);
+    return messages;
+  }
+
+  @Test
+  void testStoreAndDeliverInOrder() {
+    assertTrue(mailbox.store(new DirectMessage("annie", "bob", "first")));
+    assertTrue(mailbox.store(new DirectMessage("carol", "bob", "second")));
+    assertTrue(mailbox.store(new DirectMessage("annie", "dave", "other")));
+    assertEquals(2, mailbox.getWaitingCount("bob"));
+    assertEquals(1, mailbox.getSegmentCount());
+
+    ClientThread bob = clientThread("bob", QueueLimits.UNBOUNDED);
+    assertFalse(mailbox.deliver("bob", bob));
+    assertEquals(List.of(new DirectMessage("annie", "bob", "first"), new DirectMessage("carol", "bob", "second")),
+        drain(bob));
+    assertEquals(0, mailbox.getWaitingCount("bob"));
+    assertFalse(mailbox.deliver("bob", bob));
+    assertEquals(1, mailbox.getWaitingCount("dave"));
+    assertEquals(3, mailbox.getStoredMessages());
+  }
+
+  @Test
+  void testMailboxesAreBounded() {
+    for (int i = 0; i < 3; i++) {
+      assertTrue(mailbox.store(new DirectMessage("annie", "bob", "message " + i)));
+    }
+    assertFalse(mailbox.store(new DirectMessage("annie", "bob", "one too many")));
+    assertEquals(1, mailbox.getRejectedMessages());
+
+    OfflineMailbox small = new OfflineMailbox(100_000, 1, 60_000);
+    String text = "x".repeat(60_000);
+    int stored = 0;
+    while (small.store(new DirectMessage("annie", "bob", text))) {
+      stored++;
+    }
+    assertTrue(stored > 0);
+    assertEquals(1, small.getSegmentCount());
+    assertEquals(1, small.getRejectedMessages());
+  }
+
+  @Test
+  void testExpiredMessagesAreThrownAway() throws InterruptedException {
+    OfflineMailbox shortLived = new OfflineMailbox(10, 1024 * 1024, 20);
+    shortLived.store(new DirectMessage("annie", "bob", "too late"));
+    Thread.sleep(40);
+    shortLived.expire();
+    assertEquals(0, shortLived.getWaitingCount("bob"));
+    assertEquals(1, shortLived.getExpiredMessages());
+
+    shortLived.store(new DirectMessage("annie", "bob", "also too late"));
+    Thread.sleep(40);
+    ClientThread bob = clientThread("bob", QueueLimits.UNBOUNDED);
+    assertFalse(shortLived.deliver("bob", bob));
+    assertTrue(bob.getMessageLine().isEmpty());
+    assertEquals(2, shortLived.getExpiredMessages());
+  }
+
+  @Test
+  void testDeliveryStaysUnderHalfTheQueueLimits() {
+    OfflineMailbox large = new OfflineMailbox(50_000, 64L * 1024 * 1024, 60_000);
+    for (int i = 0; i < 5000; i++) {
+      large.store(new DirectMessage("annie", "bob", "message " + i));
+    }
+    ClientThread bob = clientThread("bob", new QueueLimits(100, 1024 * 1024, SlowConsumerPolicy.DISCONNECT));
+    assertTrue(large.deliver("bob", bob));
+    assertTrue(bob.getQueueDepth() <= 50);
+    assertEquals(0, bob.getDroppedMessages());
+    assertFalse(bob.isClosing());
+
+    List<Message> delivered = new ArrayList<>();
+    bob.setBacklog(() -> large.deliver("bob", bob));
+    while (!bob.getMessageLine().isEmpty()) {
+      Message message = bob.getMessageLine().poll();
+      delivered.add(message);
+      bob.onDelivered(message.getEncodedSize());
+      assertTrue(bob.getQueueDepth() <= 50);
+    }
+    assertEquals(5000, delivered.size());
+    assertEquals(new DirectMessage("annie", "bob", "message 4999"), delivered.get(delivered.size() - 1));
+    assertEquals(0, large.getWaitingCount("bob"));
+    assertEquals(0, bob.getDroppedMessages());
+  }
+}
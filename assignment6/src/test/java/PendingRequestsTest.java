@@ -0,0 +1,93 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import messageModel.FailedMessage;
+import messageModel.FrameCodecV2;
+import messageModel.Message;
+import messageModel.QueryResp;
+import messageModel.QueryUsers;
+import messageModel.WireFormat;
+import org.junit.jupiter.api.Test;
+
+public class PendingRequestsTest {
+
+  private static Message tagged(Message message, int requestId) {
+    message.setRequestId(requestId);
+    return message;
+  }
+
+  @Test
+  void testRequestsAreTaggedAndAnsweredOutOfOrder() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PendingRequests requests = new PendingRequests(WireFormat.V2, new DataOutputStream(bytes));
+    CompletableFuture<Message> first = requests.send(new QueryUsers("annie"));
+    CompletableFuture<Message> second = requests.send(new QueryUsers("annie"));
+    assertEquals(2, requests.size());
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    Message firstSent = FrameCodecV2.read(in);
+    Message secondSent = FrameCodecV2.read(in);
+    assertEquals(new QueryUsers("annie"), firstSent);
+    assertTrue(firstSent.getRequestId() > 0);
+    assertNotEquals(firstSent.getRequestId(), secondSent.getRequestId());
+
+    assertTrue(requests.complete(tagged(new QueryResp(List.of("bob")), secondSent.getRequestId())));
+    assertFalse(first.isDone());
+    assertEquals(new QueryResp(List.of("bob")), second.join());
+    assertTrue(requests.complete(tagged(new FailedMessage("no"), firstSent.getRequestId())));
+    assertEquals(new FailedMessage("no"), first.join());
+    assertEquals(0, requests.size());
+  }
+
+  @Test
+  void testUntaggedAndUnknownAnswersAreLeftToTheCaller() throws IOException {
+    PendingRequests requests =
+        new PendingRequests(WireFormat.V2, new DataOutputStream(new ByteArrayOutputStream()));
+    CompletableFuture<Message> pending = requests.send(new QueryUsers("annie"));
+    assertFalse(requests.complete(new FailedMessage("")));
+    assertFalse(requests.complete(tagged(new FailedMessage(""), 999)));
+    assertFalse(pending.isDone());
+  }
+
+  @Test
+  void testFailAll() throws IOException {
+    PendingRequests requests =
+        new PendingRequests(WireFormat.V2, new DataOutputStream(new ByteArrayOutputStream()));
+    CompletableFuture<Message> pending = requests.send(new QueryUsers("annie"));
+    requests.failAll(new IOException("gone"));
+    assertTrue(pending.isCompletedExceptionally());
+    assertEquals(0, requests.size());
+    assertThrows(IOException.class, () -> requests.send(new QueryUsers("annie")));
+  }
+
+  @Test
+  void testRegisterAndFail() throws IOException {
+    PendingRequests requests = new PendingRequests(WireFormat.V2, null);
+    QueryUsers query = new QueryUsers("annie");
+    CompletableFuture<Message> pending = requests.register(query);
+    assertTrue(query.getRequestId() > 0);
+    assertEquals(1, requests.size());
+    requests.fail(query, new IOException("too long"));
+    assertTrue(pending.isCompletedExceptionally());
+    assertEquals(0, requests.size());
+  }
+
+  @Test
+  void testVersionOneSendsUntagged() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    PendingRequests requests = new PendingRequests(WireFormat.V1, new DataOutputStream(bytes));
+    CompletableFuture<Message> answer = requests.send(new QueryUsers("annie"));
+    assertTrue(answer.isDone());
+    assertNull(answer.join());
+    assertEquals(0, requests.size());
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(new QueryUsers("annie"), Message.receive(in));
+    assertEquals("PendingRequests{format:V1, pending:0}", requests.toString());
+  }
+}
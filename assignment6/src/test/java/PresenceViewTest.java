@@ -0,0 +1,55 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import messageModel.PresenceDelta;
+import messageModel.PresenceSync;
+import org.junit.jupiter.api.Test;
+
+public class PresenceViewTest {
+
+  @Test
+  void testEverythingPassesUntilSynced() {
+    PresenceView view = new PresenceView("annie");
+    assertFalse(view.isSynced());
+    assertTrue(view.contains("bob"));
+    assertFalse(view.contains("annie"));
+    assertFalse(view.contains(null));
+    assertFalse(view.apply(new PresenceDelta(1, true, "bob")));
+  }
+
+  @Test
+  void testSyncAndDeltas() {
+    PresenceView view = new PresenceView("annie");
+    view.apply(new PresenceSync(5, List.of("annie", "bob")));
+    assertTrue(view.isSynced());
+    assertEquals(5, view.getSequence());
+    assertTrue(view.contains("bob"));
+    assertFalse(view.contains("zxy"));
+    assertFalse(view.contains("annie"));
+
+    assertFalse(view.apply(new PresenceDelta(5, true, "old")));
+    assertTrue(view.apply(new PresenceDelta(6, true, "zxy")));
+    assertTrue(view.apply(new PresenceDelta(7, false, "bob")));
+    assertEquals(List.of("zxy"), view.getUsernames());
+    assertEquals(7, view.getSequence());
+    assertFalse(view.isStale());
+    assertFalse(view.claimResync());
+  }
+
+  @Test
+  void testGapMarksStaleUntilNextSync() {
+    PresenceView view = new PresenceView("annie");
+    view.apply(new PresenceSync(1, List.of("annie")));
+    assertFalse(view.apply(new PresenceDelta(3, true, "bob")));
+    assertTrue(view.isStale());
+    assertFalse(view.apply(new PresenceDelta(4, true, "zxy")));
+    assertTrue(view.claimResync());
+    assertFalse(view.claimResync());
+
+    view.apply(new PresenceSync(4, List.of("annie", "bob", "zxy")));
+    assertFalse(view.isStale());
+    assertEquals(List.of("bob", "zxy"), view.getUsernames());
+    assertTrue(view.apply(new PresenceDelta(5, false, "zxy")));
+    assertEquals("PresenceView{sequence:5, users:2, synced:true, stale:false}", view.toString());
+  }
+}
@@ -0,0 +1,100 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import messageModel.BroadcastMessage;
+import messageModel.ConnectResp;
+import messageModel.DirectMessage;
+import messageModel.DisconnectResp;
+import messageModel.FailedMessage;
+import messageModel.Message;
+import messageModel.PingMessage;
+import messageModel.QueryResp;
+import messageModel.RoomMessage;
+import org.junit.jupiter.api.Test;
+
+public class PriorityMailboxTest {
+
+  @Test
+  void testLanes() {
+    assertEquals(Lane.CONTROL, Lane.of(new ConnectResp(true, "hi")));
+    assertEquals(Lane.CONTROL, Lane.of(new DisconnectResp(true, "bye")));
+    assertEquals(Lane.CONTROL, Lane.of(new QueryResp(List.of("a"))));
+    assertEquals(Lane.CONTROL, Lane.of(new FailedMessage("no")));
+    assertEquals(Lane.CONTROL, Lane.of(new PingMessage(1)));
+    assertEquals(Lane.BULK, Lane.of(new BroadcastMessage("a", "all")));
+    assertEquals(Lane.BULK, Lane.of(new DirectMessage("a", "b", "dm")));
+    assertEquals(Lane.BULK, Lane.of(new RoomMessage("a", "room", "hi")));
+    assertEquals(Lane.BULK, Lane.of(ClientThread.CLOSE_SIGNAL));
+  }
+
+  @Test
+  void testControlIsTakenFirst() {
+    PriorityMailbox mailbox = new PriorityMailbox(16, LaneWeights.DEFAULT, WaitStrategy.BLOCK);
+    assertTrue(mailbox.isEmpty());
+    assertNull(mailbox.poll());
+    mailbox.add(new BroadcastMessage("a", "1"));
+    mailbox.add(new BroadcastMessage("a", "2"));
+    mailbox.add(new FailedMessage("reply"));
+    assertEquals(3, mailbox.size());
+    assertEquals(1, mailbox.size(Lane.CONTROL));
+    assertEquals(2, mailbox.size(Lane.BULK));
+    assertEquals(new FailedMessage("reply"), mailbox.peek());
+    assertEquals(new BroadcastMessage("a", "1"), mailbox.poll(Lane.BULK));
+    assertEquals(new FailedMessage("reply"), mailbox.poll());
+    assertEquals(new BroadcastMessage("a", "2"), mailbox.poll());
+    assertNull(mailbox.poll());
+  }
+
+  @Test
+  void testWeightedBatches() {
+    PriorityMailbox mailbox = new PriorityMailbox(64, new LaneWeights(2, 1), WaitStrategy.BLOCK);
+    for (int i = 0; i < 3; i++) {
+      mailbox.add(new BroadcastMessage("a", "b" + i));
+    }
+    for (int i = 0; i < 5; i++) {
+      mailbox.add(new FailedMessage("c" + i));
+    }
+    List<Message> batch = new ArrayList<>();
+    assertEquals(7, mailbox.drainTo(batch, 7));
+    List<Message> expected = List.of(new FailedMessage("c0"), new FailedMessage("c1"),
+        new BroadcastMessage("a", "b0"), new FailedMessage("c2"), new FailedMessage("c3"),
+        new BroadcastMessage("a", "b1"), new FailedMessage("c4"));
+    assertEquals(expected, batch);
+    assertEquals(1, mailbox.drainTo(batch));
+    assertEquals(new BroadcastMessage("a", "b2"), batch.get(7));
+
+    mailbox.setWeights(new LaneWeights(1, 3));
+    assertEquals(new LaneWeights(1, 3), mailbox.getWeights());
+    assertThrows(IllegalArgumentException.class, () -> mailbox.drainTo(mailbox));
+  }
+
+  @Test
+  void testIteratorListsControlFirst() {
+    PriorityMailbox mailbox = new PriorityMailbox(16, LaneWeights.DEFAULT, WaitStrategy.BLOCK);
+    mailbox.add(new BroadcastMessage("a", "1"));
+    mailbox.add(new FailedMessage("reply"));
+    assertEquals("[" + new FailedMessage("reply") + ", " + new BroadcastMessage("a", "1") + "]",
+        mailbox.toString());
+    assertEquals(15, mailbox.remainingCapacity());
+  }
+
+  @Test
+  void testTakeWakesForEitherLane() throws Exception {
+    PriorityMailbox mailbox = new PriorityMailbox(16, LaneWeights.DEFAULT, WaitStrategy.BLOCK);
+    assertNull(mailbox.poll(20, TimeUnit.MILLISECONDS));
+    for (Message late : new Message[] {new FailedMessage("late"), new BroadcastMessage("a", "late")}) {
+      Thread producer = new Thread(() -> {
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException ignored) {
+        }
+        mailbox.add(late);
+      });
+      producer.start();
+      assertEquals(late, mailbox.take());
+      producer.join();
+    }
+  }
+}
@@ -0,0 +1,37 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class QueueLimitsTest {
+
+  @Test
+  void testGettersAndFits() {
+    QueueLimits limits = new QueueLimits(10, 100, SlowConsumerPolicy.DROP_BROADCASTS);
+    assertEquals(10, limits.getMaxMessages());
+    assertEquals(100, limits.getMaxBytes());
+    assertEquals(SlowConsumerPolicy.DROP_BROADCASTS, limits.getPolicy());
+    assertTrue(limits.fits(10, 100, 1));
+    assertFalse(limits.fits(11, 100, 1));
+    assertFalse(limits.fits(10, 101, 1));
+    assertTrue(limits.fits(20, 200, 2));
+    assertTrue(QueueLimits.UNBOUNDED.fits(Integer.MAX_VALUE, Long.MAX_VALUE, 2));
+  }
+
+  @Test
+  void testInvalidLimits() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new QueueLimits(0, 100, SlowConsumerPolicy.DISCONNECT));
+    assertThrows(IllegalArgumentException.class,
+        () -> new QueueLimits(10, 0, SlowConsumerPolicy.DISCONNECT));
+  }
+
+  @Test
+  void testEqualsHashCodeToString() {
+    QueueLimits limits = new QueueLimits(10, 100, SlowConsumerPolicy.DROP_OLDEST);
+    assertEquals(limits, new QueueLimits(10, 100, SlowConsumerPolicy.DROP_OLDEST));
+    assertEquals(limits.hashCode(), new QueueLimits(10, 100, SlowConsumerPolicy.DROP_OLDEST).hashCode());
+    assertNotEquals(limits, new QueueLimits(10, 100, SlowConsumerPolicy.DISCONNECT));
+    assertNotEquals(limits, null);
+    assertTrue(limits.toString().contains("maxMessages=10"));
+  }
+}
@@ -0,0 +1,56 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class RateLimitsTest {
+
+  @Test
+  void testWithAndWithout() {
+    RateLimits limits = RateLimits.UNLIMITED.with(RateCategory.BROADCAST, 5, 10);
+    assertTrue(limits.isLimited(RateCategory.BROADCAST));
+    assertFalse(limits.isLimited(RateCategory.DIRECT));
+    assertEquals(5, limits.getRatePerSecond(RateCategory.BROADCAST));
+    assertEquals(10, limits.getBurst(RateCategory.BROADCAST));
+    assertFalse(RateLimits.UNLIMITED.isLimited(RateCategory.BROADCAST));
+    assertEquals(RateLimits.UNLIMITED, limits.without(RateCategory.BROADCAST));
+  }
+
+  @Test
+  void testNewBuckets() {
+    TokenBucket[] buckets = RateLimits.UNLIMITED.with(RateCategory.INSULT, 1, 2).newBuckets();
+    assertEquals(RateCategory.values().length, buckets.length);
+    assertNull(buckets[RateCategory.BROADCAST.ordinal()]);
+    assertEquals(2, buckets[RateCategory.INSULT.ordinal()].getBurst());
+  }
+
+  @Test
+  void testCategories() {
+    assertEquals(RateCategory.BROADCAST, RateCategory.of(Protocol.BROADCAST_MESSAGE));
+    assertEquals(RateCategory.BROADCAST, RateCategory.of(Protocol.ROOM_MESSAGE));
+    assertEquals(RateCategory.DIRECT, RateCategory.of(Protocol.DIRECT_MESSAGE));
+    assertEquals(RateCategory.INSULT, RateCategory.of(Protocol.SEND_INSULT));
+    assertEquals(RateCategory.QUERY, RateCategory.of(Protocol.QUERY_CONNECTED_USERS));
+    assertEquals(RateCategory.QUERY, RateCategory.of(Protocol.PING));
+    assertNull(RateCategory.of(Protocol.DISCONNECT_MESSAGE));
+    assertNull(RateCategory.of(Protocol.PONG));
+    assertEquals("direct messages", RateCategory.DIRECT.getDescription());
+  }
+
+  @Test
+  void testInvalidLimits() {
+    assertThrows(IllegalArgumentException.class, () -> RateLimits.UNLIMITED.with(RateCategory.QUERY, 0, 1));
+    assertThrows(IllegalArgumentException.class, () -> RateLimits.UNLIMITED.with(RateCategory.QUERY, 1, 0));
+  }
+
+  @Test
+  void testEqualsHashCodeToString() {
+    RateLimits limits = RateLimits.UNLIMITED.with(RateCategory.QUERY, 1, 2);
+    assertEquals(limits, RateLimits.UNLIMITED.with(RateCategory.QUERY, 1, 2));
+    assertEquals(limits.hashCode(), RateLimits.UNLIMITED.with(RateCategory.QUERY, 1, 2).hashCode());
+    assertNotEquals(limits, RateLimits.UNLIMITED.with(RateCategory.QUERY, 1, 3));
+    assertNotEquals(limits, null);
+    assertTrue(limits.toString().contains("QUERY=1.0/s burst 2"));
+    assertTrue(limits.toString().contains("BROADCAST=unlimited"));
+  }
+}
@@ -0,0 +1,83 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import messageModel.ConnectResp;
+import messageModel.DirectMessage;
+import messageModel.EncodedMessage;
+import messageModel.FramePool;
+import messageModel.Message;
+import messageModel.PooledFrame;
+import messageModel.WireFormat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class ResumableSessionTest {
+  private ClientThread first;
+  private ClientThread second;
+  private ResumableSession session;
+
+  @BeforeEach
+  void setUp() {
+    first = new ClientThread(new DataOutputStream(new ByteArrayOutputStream()), "annie");
+    second = new ClientThread(new DataOutputStream(new ByteArrayOutputStream()), "annie");
+    session = new ResumableSession("annie", first, 4);
+  }
+
+  @Test
+  void testTokensAreRandom() {
+    assertFalse(session.getToken().isEmpty());
+    assertNotEquals(session.getToken(), new ResumableSession("annie", first).getToken());
+    assertEquals("annie", session.getUsername());
+    assertSame(first, session.getOwner());
+    assertThrows(IllegalArgumentException.class, () -> new ResumableSession("annie", first, 0));
+  }
+
+  @Test
+  void testTakeOverReturnsOnlyTheGap() {
+    assertTrue(session.record(first, new ConnectResp(true, "hi", Protocol.VERSION_2, session.getToken())));
+    for (int i = 1; i <= 3; i++) {
+      assertTrue(session.record(first, new DirectMessage("bob", "annie", "m" + i)));
+    }
+    assertEquals(3, session.getSentSequence());
+
+    List<Message> missed = session.takeOver(second, 1);
+    assertEquals(List.of(new DirectMessage("bob", "annie", "m2"), new DirectMessage("bob", "annie", "m3")),
+        missed);
+    assertSame(second, session.getOwner());
+    assertEquals(1, session.getSentSequence());
+
+    assertFalse(session.record(first, new DirectMessage("bob", "annie", "late")));
+    assertTrue(session.record(second, new DirectMessage("bob", "annie", "m2")));
+    assertEquals(2, session.getSentSequence());
+  }
+
+  @Test
+  void testTakeOverRefusesLostOrUnsentFrames() {
+    for (int i = 1; i <= 6; i++) {
+      session.record(first, new DirectMessage("bob", "annie", "m" + i));
+    }
+    assertNull(session.takeOver(second, 7));
+    assertNull(session.takeOver(second, 1));
+    assertNull(session.takeOver(second, -1));
+    assertSame(first, session.getOwner());
+    assertEquals(4, session.takeOver(second, 2).size());
+  }
+
+  @Test
+  void testPooledFramesAreCopied() throws IOException {
+    FramePool pool = new FramePool(1024, 4);
+    DirectMessage original = new DirectMessage("bob", "annie", "pooled");
+    PooledFrame frame = WireFormat.V2.encodePooled(original, pool);
+    session.record(first, frame);
+    frame.release();
+    WireFormat.V2.encodePooled(new DirectMessage("carl", "annie", "reuses the buffer"), pool);
+
+    Message kept = session.takeOver(second, 0).get(0);
+    assertTrue(kept instanceof EncodedMessage);
+    assertEquals(original, ((EncodedMessage) kept).getMessage());
+  }
+}
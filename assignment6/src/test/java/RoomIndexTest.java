@@ -0,0 +1,85 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import org.junit.jupiter.api.Test;
+
+public class RoomIndexTest {
+
+  private static ClientThread member(String username) {
+    return new ClientThread(new DataOutputStream(new ByteArrayOutputStream()), username);
+  }
+
+  @Test
+  void testJoinAndLeave() {
+    RoomIndex index = new RoomIndex();
+    ClientThread annie = member("annie");
+    ClientThread bob = member("bob");
+    assertTrue(index.join("lobby", annie));
+    assertFalse(index.join("lobby", annie));
+    assertTrue(index.join("lobby", bob));
+    assertEquals(1, index.getRoomCount());
+    assertEquals(2, index.getMembers("lobby").size());
+    assertTrue(index.isMember("lobby", annie));
+    assertTrue(annie.getRooms().contains("lobby"));
+
+    assertTrue(index.leave("lobby", annie));
+    assertFalse(index.leave("lobby", annie));
+    assertFalse(index.isMember("lobby", annie));
+    assertFalse(annie.getRooms().contains("lobby"));
+    assertEquals(1, index.getRoomCount());
+
+    assertTrue(index.leave("lobby", bob));
+    assertEquals(0, index.getRoomCount());
+    assertTrue(index.getMembers("lobby").isEmpty());
+    assertFalse(index.leave("missing", bob));
+  }
+
+  @Test
+  void testLeaveAll() {
+    RoomIndex index = new RoomIndex();
+    ClientThread annie = member("annie");
+    ClientThread bob = member("bob");
+    index.join("lobby", annie);
+    index.join("kitchen", annie);
+    index.join("kitchen", bob);
+    index.leaveAll(annie);
+    assertTrue(annie.getRooms().isEmpty());
+    assertEquals(1, index.getRoomCount());
+    assertTrue(index.isMember("kitchen", bob));
+  }
+
+  @Test
+  void testSameUsernameReplacesOlderConnection() {
+    RoomIndex index = new RoomIndex();
+    ClientThread older = member("annie");
+    ClientThread newer = member("annie");
+    index.join("lobby", older);
+    assertTrue(index.join("lobby", newer));
+    assertFalse(index.isMember("lobby", older));
+    assertTrue(index.isMember("lobby", newer));
+    assertFalse(older.getRooms().contains("lobby"));
+    assertEquals(1, index.getMembers("lobby").size());
+
+    assertFalse(index.leave("lobby", older));
+    assertTrue(index.isMember("lobby", newer));
+  }
+
+  @Test
+  void testIsValidRoomName() {
+    assertTrue(RoomIndex.isValidRoomName("lobby"));
+    assertTrue(RoomIndex.isValidRoomName("x".repeat(RoomIndex.MAX_ROOM_NAME_LENGTH)));
+    assertFalse(RoomIndex.isValidRoomName("x".repeat(RoomIndex.MAX_ROOM_NAME_LENGTH + 1)));
+    assertFalse(RoomIndex.isValidRoomName(""));
+    assertFalse(RoomIndex.isValidRoomName(null));
+    assertFalse(RoomIndex.isValidRoomName("two words"));
+    assertFalse(RoomIndex.isValidRoomName("tab\tname"));
+  }
+
+  @Test
+  void testToString() {
+    RoomIndex index = new RoomIndex();
+    index.join("lobby", member("annie"));
+    assertEquals("RoomIndex{rooms:1}", index.toString());
+  }
+}
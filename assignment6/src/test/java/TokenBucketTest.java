@@ -0,0 +1,73 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketTest {
+
+  @Test
+  void testBurstThenRefill() {
+    TokenBucket bucket = new TokenBucket(10, 3);
+    long now = System.nanoTime();
+    assertEquals(3, bucket.getAvailableTokens(now));
+    assertTrue(bucket.tryAcquire(now));
+    assertTrue(bucket.tryAcquire(now));
+    assertTrue(bucket.tryAcquire(now));
+    assertFalse(bucket.tryAcquire(now));
+    assertEquals(0, bucket.getAvailableTokens(now));
+
+    assertFalse(bucket.tryAcquire(now + 50_000_000L));
+    assertTrue(bucket.tryAcquire(now + 100_000_000L));
+    assertFalse(bucket.tryAcquire(now + 100_000_000L));
+
+    long later = now + 10_000_000_000L;
+    assertEquals(3, bucket.getAvailableTokens(later));
+    assertTrue(bucket.tryAcquire(later));
+    assertEquals(2, bucket.getAvailableTokens(later));
+  }
+
+  @Test
+  void testConcurrentAcquireNeverOverdraws() throws Exception {
+    TokenBucket bucket = new TokenBucket(0.001, 1000);
+    long now = System.nanoTime();
+    AtomicInteger taken = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int j = 0; j < 500; j++) {
+          if (bucket.tryAcquire(now)) {
+            taken.incrementAndGet();
+          }
+        }
+      });
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(1000, taken.get());
+  }
+
+  @Test
+  void testInvalidBucket() {
+    assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+    assertThrows(IllegalArgumentException.class, () -> new TokenBucket(Double.NaN, 1));
+    assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+  }
+
+  @Test
+  void testGettersAndToString() {
+    TokenBucket bucket = new TokenBucket(2.5, 4);
+    assertEquals(2.5, bucket.getRatePerSecond());
+    assertEquals(4, bucket.getBurst());
+    assertTrue(bucket.toString().contains("burst:4"));
+  }
+}
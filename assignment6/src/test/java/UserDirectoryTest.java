@@ -0,0 +1,83 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class UserDirectoryTest {
+
+  private static UserDirectory directoryOf(String... usernames) {
+    UserDirectory directory = new UserDirectory();
+    for (String username : usernames) {
+      directory.add(username);
+    }
+    return directory;
+  }
+
+  @Test
+  void testPrefixPage() {
+    UserDirectory directory = directoryOf("bob", "anna", "annie", "ann", "zxy", "an");
+    UserDirectory.Page page = directory.page("ann", "", 10);
+    assertEquals(List.of("ann", "anna", "annie"), page.getUsernames());
+    assertEquals("", page.getNextCursor());
+    assertEquals(List.of("an", "ann", "anna", "annie", "bob", "zxy"), directory.page("", "", 10).getUsernames());
+    assertTrue(directory.page("c", "", 10).getUsernames().isEmpty());
+    assertTrue(directory.page("zz", "", 10).getUsernames().isEmpty());
+  }
+
+  @Test
+  void testCursorWalksEveryPageOnce() {
+    UserDirectory directory = new UserDirectory();
+    for (int i = 0; i < 25; i++) {
+      directory.add(String.format("user%02d", i));
+    }
+    directory.add("other");
+    List<String> seen = new ArrayList<>();
+    String cursor = "";
+    int pages = 0;
+    do {
+      UserDirectory.Page page = directory.page("user", cursor, 10);
+      seen.addAll(page.getUsernames());
+      cursor = page.getNextCursor();
+      pages++;
+    } while (!cursor.isEmpty());
+    assertEquals(3, pages);
+    assertEquals(25, seen.size());
+    assertEquals("user00", seen.get(0));
+    assertEquals("user24", seen.get(24));
+  }
+
+  @Test
+  void testExactlyFullLastPageHasNoCursor() {
+    UserDirectory directory = directoryOf("a1", "a2", "b1");
+    UserDirectory.Page page = directory.page("a", "", 2);
+    assertEquals(List.of("a1", "a2"), page.getUsernames());
+    assertEquals("", page.getNextCursor());
+  }
+
+  @Test
+  void testChangesBetweenPages() {
+    UserDirectory directory = directoryOf("a1", "a2", "a3", "a4");
+    UserDirectory.Page first = directory.page("a", "", 2);
+    assertEquals("a2", first.getNextCursor());
+    directory.remove("a2");
+    directory.add("a0");
+    assertEquals(List.of("a3", "a4"), directory.page("a", first.getNextCursor(), 2).getUsernames());
+    assertEquals(4, directory.size());
+  }
+
+  @Test
+  void testCursorBeforePrefixStartsAtPrefix() {
+    UserDirectory directory = directoryOf("a", "b1", "b2");
+    assertEquals(List.of("b1", "b2"), directory.page("b", "a", 5).getUsernames());
+  }
+
+  @Test
+  void testInvalidPageSize() {
+    UserDirectory directory = new UserDirectory();
+    assertThrows(IllegalArgumentException.class, () -> directory.page("", "", 0));
+    assertThrows(IllegalArgumentException.class,
+        () -> directory.page("", "", UserDirectory.MAX_PAGE_SIZE + 1));
+    assertEquals("UserDirectory{users:0}", directory.toString());
+  }
+}
@@ -91,4 +91,17 @@ public class ConnectMessageTest {
     assertEquals(false,right.equals(null));
     assertEquals(false,right.equals(diff));
   }
+
+  @Test
+  void testVersionedSendAndReceive() throws IOException {
+    ConnectMessage versioned = new ConnectMessage(username, Protocol.VERSION_2);
+    assertEquals(Protocol.VERSION_2, versioned.getMaxVersion());
+    assertEquals(Protocol.VERSION_1, right.getMaxVersion());
+    assertNotEquals(right, versioned);
+
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    versioned.send(new DataOutputStream(byteOutputStream));
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(versioned, messageModel.Message.receive(in));
+  }
 }
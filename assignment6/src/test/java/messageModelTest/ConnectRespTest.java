@@ -114,4 +114,39 @@ public class ConnectRespTest {
     assertEquals(false,right.equals(diffMes));
   }
 
+
+  @Test
+  void testVersionedSendAndReceive() throws IOException {
+    ConnectResp versioned = new ConnectResp(true, message, Protocol.VERSION_2);
+    assertEquals(Protocol.VERSION_2, versioned.getProtocolVersion());
+    assertEquals(Protocol.VERSION_1, right.getProtocolVersion());
+    assertNotEquals(right, versioned);
+
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    versioned.send(new DataOutputStream(byteOutputStream));
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    in.mark(Integer.MAX_VALUE);
+    assertEquals(Protocol.VERSIONED_CONNECT_RESPONSE, in.readInt());
+    in.reset();
+    assertEquals(versioned, ConnectResp.receive(in));
+  }
+
+  @Test
+  void testResumeTokenIsOnlySentAboveVersionOne() throws IOException {
+    assertEquals("", right.getResumeToken());
+    ConnectResp resumable = new ConnectResp(true, message, Protocol.VERSION_2, "token");
+    assertEquals("token", resumable.getResumeToken());
+    assertNotEquals(new ConnectResp(true, message, Protocol.VERSION_2), resumable);
+    assertTrue(resumable.toString().contains("resumable:true"));
+
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    resumable.send(new DataOutputStream(byteOutputStream));
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(resumable, ConnectResp.receive(in));
+
+    byteOutputStream.reset();
+    new ConnectResp(true, message, Protocol.VERSION_1, "token").send(new DataOutputStream(byteOutputStream));
+    in = new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals("", ConnectResp.receive(in).getResumeToken());
+  }
 }
@@ -0,0 +1,94 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import messageModel.DirectoryQuery;
+import messageModel.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class DirectoryQueryTest {
+  private DirectoryQuery right;
+  private DirectoryQuery backup;
+
+  @BeforeEach
+  public void setUp() {
+    right = new DirectoryQuery("annie", "bo", "bob", 20);
+    backup = new DirectoryQuery("annie", "bo", "bob", 20);
+  }
+
+  @Test
+  void testGetters() {
+    assertEquals(Protocol.QUERY_DIRECTORY, right.getMessageType());
+    assertEquals("annie", right.getUsername());
+    assertEquals("bo", right.getPrefix());
+    assertEquals("bob", right.getCursor());
+    assertEquals(20, right.getPageSize());
+  }
+
+  @Test
+  void testSend() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(Protocol.QUERY_DIRECTORY, dataInputStream.readInt());
+    assertEquals("annie", dataInputStream.readUTF());
+    assertEquals("bo", dataInputStream.readUTF());
+    assertEquals("bob", dataInputStream.readUTF());
+    assertEquals(20, dataInputStream.readInt());
+  }
+
+  @Test
+  void testReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream(byteOutputStream);
+    dataOutputStream.writeUTF("annie");
+    dataOutputStream.writeUTF("bo");
+    dataOutputStream.writeUTF("bob");
+    dataOutputStream.writeInt(20);
+
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, DirectoryQuery.receive(dataInputStream));
+  }
+
+  @Test
+  void testMessageReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, Message.receive(dataInputStream));
+  }
+
+  @Test
+  void testToString() {
+    assertTrue(right.toString().contains("DirectoryQuery{messageType:"));
+  }
+
+  @Test
+  void testHashCode() {
+    assertEquals(backup.hashCode(), right.hashCode());
+  }
+
+  @Test
+  void testEquals() {
+    assertEquals(right, right);
+    assertEquals(right, backup);
+    assertNotEquals(right, null);
+    assertNotEquals(right, new DirectoryQuery("bob", "bo", "bob", 20));
+    assertNotEquals(right, new DirectoryQuery("annie", "b", "bob", 20));
+    assertNotEquals(right, new DirectoryQuery("annie", "bo", "", 20));
+    assertNotEquals(right, new DirectoryQuery("annie", "bo", "bob", 10));
+  }
+}
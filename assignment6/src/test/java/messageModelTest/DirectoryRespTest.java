@@ -0,0 +1,94 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import messageModel.DirectoryResp;
+import messageModel.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class DirectoryRespTest {
+  private DirectoryResp right;
+  private DirectoryResp backup;
+
+  @BeforeEach
+  public void setUp() {
+    right = new DirectoryResp(List.of("bob", "bobby"), "bobby");
+    backup = new DirectoryResp(List.of("bob", "bobby"), "bobby");
+  }
+
+  @Test
+  void testGetters() {
+    assertEquals(Protocol.DIRECTORY_RESPONSE, right.getMessageType());
+    assertEquals(List.of("bob", "bobby"), right.getUsernames());
+    assertEquals("bobby", right.getNextCursor());
+    assertTrue(right.hasMore());
+    assertFalse(new DirectoryResp(List.of(), "").hasMore());
+  }
+
+  @Test
+  void testSend() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(Protocol.DIRECTORY_RESPONSE, dataInputStream.readInt());
+    assertEquals(2, dataInputStream.readInt());
+    assertEquals("bob", dataInputStream.readUTF());
+    assertEquals("bobby", dataInputStream.readUTF());
+    assertEquals("bobby", dataInputStream.readUTF());
+  }
+
+  @Test
+  void testReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream(byteOutputStream);
+    dataOutputStream.writeInt(2);
+    dataOutputStream.writeUTF("bob");
+    dataOutputStream.writeUTF("bobby");
+    dataOutputStream.writeUTF("bobby");
+
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, DirectoryResp.receive(dataInputStream));
+  }
+
+  @Test
+  void testMessageReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, Message.receive(dataInputStream));
+  }
+
+  @Test
+  void testToString() {
+    assertTrue(right.toString().contains("DirectoryResp{messageType:"));
+  }
+
+  @Test
+  void testHashCode() {
+    assertEquals(backup.hashCode(), right.hashCode());
+  }
+
+  @Test
+  void testEquals() {
+    assertEquals(right, right);
+    assertEquals(right, backup);
+    assertNotEquals(right, null);
+    assertNotEquals(right, new DirectoryResp(List.of("bob"), "bobby"));
+    assertNotEquals(right, new DirectoryResp(List.of("bob", "bobby"), ""));
+  }
+}
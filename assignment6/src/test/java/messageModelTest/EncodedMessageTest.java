@@ -0,0 +1,82 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import messageModel.BroadcastMessage;
+import messageModel.EncodedMessage;
+import messageModel.FrameCodecV2;
+import messageModel.Message;
+import messageModel.WireFormat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class EncodedMessageTest {
+  private BroadcastMessage broadcast;
+  private EncodedMessage encoded;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    broadcast = new BroadcastMessage("annie", "hello everyone");
+    encoded = new EncodedMessage(broadcast);
+  }
+
+  @Test
+  void testGetters() {
+    assertEquals(Protocol.BROADCAST_MESSAGE, encoded.getMessageType());
+    assertEquals(broadcast, encoded.getMessage());
+  }
+
+  @Test
+  void testSendWritesSameBytesAsOriginal() throws IOException {
+    ByteArrayOutputStream original = new ByteArrayOutputStream();
+    broadcast.send(new DataOutputStream(original));
+    ByteArrayOutputStream shared = new ByteArrayOutputStream();
+    encoded.send(new DataOutputStream(shared));
+
+    assertEquals(original.size(), encoded.getFrameLength());
+    assertTrue(java.util.Arrays.equals(original.toByteArray(), shared.toByteArray()));
+    Message decoded = Message.receive(new DataInputStream(new ByteArrayInputStream(shared.toByteArray())));
+    assertEquals(broadcast, decoded);
+  }
+
+  @Test
+  void testRequestIdIsLeftOutOfSharedFrame() throws IOException {
+    BroadcastMessage tagged = new BroadcastMessage("annie", "hello everyone");
+    tagged.setRequestId(5);
+    EncodedMessage shared = new EncodedMessage(tagged);
+    Message decoded = FrameCodecV2.decode(shared.getFrame(WireFormat.V2));
+    assertEquals(broadcast, decoded);
+    assertEquals(0, decoded.getRequestId());
+    assertEquals(0, shared.getMessage().getRequestId());
+  }
+
+  @Test
+  void testFrameViewsAreIndependent() {
+    ByteBuffer first = encoded.getFrame();
+    ByteBuffer second = encoded.getFrame();
+    first.get(new byte[first.remaining()]);
+    assertEquals(0, first.remaining());
+    assertEquals(encoded.getFrameLength(), second.remaining());
+    assertTrue(second.isReadOnly());
+  }
+
+  @Test
+  void testEqualsHashCodeToString() throws IOException {
+    EncodedMessage same = new EncodedMessage(new BroadcastMessage("annie", "hello everyone"));
+    EncodedMessage diff = new EncodedMessage(new BroadcastMessage("annie", "bye"));
+    assertEquals(encoded, same);
+    assertEquals(encoded.hashCode(), same.hashCode());
+    assertNotEquals(encoded, diff);
+    assertNotEquals(encoded, broadcast);
+    assertTrue(encoded.toString().contains("EncodedMessage{messageType:"));
+  }
+}
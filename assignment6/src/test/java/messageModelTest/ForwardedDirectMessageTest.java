@@ -0,0 +1,110 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import messageModel.DirectMessage;
+import messageModel.ForwardedDirectMessage;
+import messageModel.FrameCodecV2;
+import messageModel.FrameDecoder;
+import messageModel.Message;
+import messageModel.WireFormat;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class ForwardedDirectMessageTest {
+  private final DirectMessage dm = new DirectMessage("annie", "zxy", "hello there ✓");
+
+  private static byte[] bytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+
+  @Test
+  void testFromVersionOneFrame() throws IOException {
+    byte[] frame = bytes(FrameDecoder.encode(dm));
+    ForwardedDirectMessage forwarded = ForwardedDirectMessage.fromFrame(WireFormat.V1, frame);
+    assertEquals(Protocol.DIRECT_MESSAGE, forwarded.getMessageType());
+    assertEquals("annie", forwarded.getSenderUsername());
+    assertEquals("zxy", forwarded.getRecipientUsername());
+    assertEquals(WireFormat.V1, forwarded.getSourceFormat());
+    assertEquals(frame.length, forwarded.getEncodedSize());
+    assertArrayEquals(frame, bytes(forwarded.getFrame(WireFormat.V1)));
+    assertEquals(dm, forwarded.getMessage());
+  }
+
+  @Test
+  void testFromVersionTwoFrame() throws IOException {
+    byte[] frame = bytes(FrameCodecV2.encode(dm));
+    ForwardedDirectMessage forwarded = ForwardedDirectMessage.fromFrame(WireFormat.V2, frame);
+    assertEquals("annie", forwarded.getSenderUsername());
+    assertEquals("zxy", forwarded.getRecipientUsername());
+    assertArrayEquals(frame, bytes(forwarded.getFrame(WireFormat.V2)));
+    assertEquals(FrameDecoder.encode(dm), forwarded.getFrame(WireFormat.V1));
+    assertEquals(dm, forwarded.getMessage());
+  }
+
+  @Test
+  void testReceiveCopiesBodyAsIs() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    dm.send(new DataOutputStream(out));
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    assertEquals(Protocol.DIRECT_MESSAGE, in.readInt());
+    ForwardedDirectMessage forwarded = ForwardedDirectMessage.receive(in);
+    assertArrayEquals(out.toByteArray(), bytes(forwarded.getFrame()));
+    assertEquals("zxy", forwarded.getRecipientUsername());
+  }
+
+  @Test
+  void testRoutedReadsAndDecodes() throws IOException {
+    for (WireFormat format : WireFormat.values()) {
+      ByteBuffer frame = format.encode(dm);
+      Message routed = format.decodeRouted(frame.duplicate());
+      assertTrue(routed instanceof ForwardedDirectMessage);
+      assertEquals(dm, ((ForwardedDirectMessage) routed).getMessage());
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      format.write(dm, new DataOutputStream(out));
+      Message read = format.readRouted(new DataInputStream(new ByteArrayInputStream(out.toByteArray())));
+      assertArrayEquals(out.toByteArray(), bytes(((ForwardedDirectMessage) read).getFrame(format)));
+
+      ByteBuffer query = format.encode(new messageModel.QueryUsers("annie"));
+      assertEquals(new messageModel.QueryUsers("annie"), format.decodeRouted(query));
+    }
+  }
+
+  @Test
+  void testMalformedFrames() throws IOException {
+    byte[] v2 = bytes(FrameCodecV2.encode(dm));
+    assertThrows(IOException.class,
+        () -> ForwardedDirectMessage.fromFrame(WireFormat.V2, Arrays.copyOf(v2, v2.length - 1)));
+    byte[] notDirect = bytes(FrameCodecV2.encode(new messageModel.FailedMessage("x")));
+    assertThrows(IOException.class, () -> ForwardedDirectMessage.fromFrame(WireFormat.V2, notDirect));
+    byte[] v1 = bytes(FrameDecoder.encode(new messageModel.FailedMessage("x")));
+    assertThrows(IOException.class, () -> ForwardedDirectMessage.fromFrame(WireFormat.V1, v1));
+
+    assertTrue(ForwardedDirectMessage.fromFrame(WireFormat.V2, v2).isWellFormed());
+    byte[] badBody = bytes(FrameDecoder.encode(new DirectMessage("a", "b", "xy")));
+    assertTrue(ForwardedDirectMessage.fromFrame(WireFormat.V1, badBody).isWellFormed());
+    badBody[badBody.length - 2] = (byte) 0xC0;
+    assertFalse(ForwardedDirectMessage.fromFrame(WireFormat.V1, badBody).isWellFormed());
+  }
+
+  @Test
+  void testToString() throws IOException {
+    ForwardedDirectMessage forwarded =
+        ForwardedDirectMessage.fromFrame(WireFormat.V1, bytes(FrameDecoder.encode(dm)));
+    assertTrue(forwarded.toString().contains("recipientUsername:zxy"));
+  }
+}
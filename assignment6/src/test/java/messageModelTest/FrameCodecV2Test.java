@@ -0,0 +1,203 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import messageModel.BroadcastMessage;
+import messageModel.ConnectMessage;
+import messageModel.DirectMessage;
+import messageModel.DirectoryQuery;
+import messageModel.DirectoryResp;
+import messageModel.DisconnectMessage;
+import messageModel.DisconnectResp;
+import messageModel.FailedMessage;
+import messageModel.FrameCodecV2;
+import messageModel.FrameDecoder;
+import messageModel.HistoryQuery;
+import messageModel.HistoryResp;
+import messageModel.InsultMessage;
+import messageModel.JoinRoomMessage;
+import messageModel.LeaveRoomMessage;
+import messageModel.Message;
+import messageModel.PingMessage;
+import messageModel.PongMessage;
+import messageModel.PresenceDelta;
+import messageModel.PresenceSync;
+import messageModel.QueryResp;
+import messageModel.QueryUsers;
+import messageModel.ResumeMessage;
+import messageModel.RoomMessage;
+import messageModel.RoomResp;
+import messageModel.SubscribePresence;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class FrameCodecV2Test {
+
+  private static final List<Message> ALL = List.of(
+      new ConnectMessage("annie"),
+      new DisconnectMessage("annie"),
+      new QueryUsers("annie"),
+      new QueryResp(List.of("zxy", "bob")),
+      new BroadcastMessage("annie", "hi all"),
+      new DirectMessage("annie", "zxy", "héllo ✓"),
+      new FailedMessage(""),
+      new InsultMessage("annie", "zxy"),
+      new DisconnectResp(true, "bye"),
+      new JoinRoomMessage("annie", "lobby"),
+      new LeaveRoomMessage("annie", "lobby"),
+      new RoomMessage("annie", "lobby", "hi room"),
+      new RoomResp(true, "lobby", "Joined room: lobby"),
+      new SubscribePresence("annie"),
+      new PresenceSync(42, List.of("annie", "zxy")),
+      new PresenceDelta(Long.MAX_VALUE, false, "zxy"),
+      new DirectoryQuery("annie", "zx", "", 50),
+      new DirectoryResp(List.of("zxy", "zxz"), "zxz"),
+      new HistoryQuery("annie", "zxy", 20, 1L << 40),
+      new ResumeMessage("annie", "token", 1L << 40, Protocol.VERSION_2),
+      new PingMessage(1_700_000_000_000L),
+      new PongMessage(-1L),
+      new HistoryResp(List.of(new HistoryResp.Entry(7, 1_700_000_000_000L, "annie", "", "hi all"),
+          new HistoryResp.Entry(9, 1_700_000_000_001L, "zxy", "annie", "héllo ✓")), 7));
+
+  @Test
+  void testRequestIdRoundTrip() throws IOException {
+    for (int requestId : new int[] {1, 300, Integer.MAX_VALUE}) {
+      for (Message message : ALL) {
+        Message tagged = FrameCodecV2.decode(FrameCodecV2.encode(message));
+        tagged.setRequestId(requestId);
+        ByteBuffer frame = FrameCodecV2.encode(tagged);
+        assertEquals(FrameCodecV2.encodedLength(tagged), frame.remaining());
+        assertEquals(FrameCodecV2.FLAG_REQUEST_ID, FrameCodecV2.peekFlags(frame));
+        Message decoded = FrameCodecV2.decode(frame);
+        assertEquals(message, decoded);
+        assertEquals(requestId, decoded.getRequestId());
+      }
+    }
+    assertEquals(0, FrameCodecV2.decode(FrameCodecV2.encode(new FailedMessage("x"))).getRequestId());
+    ByteBuffer unknownFlag = ByteBuffer.wrap(new byte[] {3, (byte) Protocol.FAILED_MESSAGE, 2, 0});
+    assertThrows(IOException.class, () -> FrameCodecV2.decode(unknownFlag));
+    assertThrows(IllegalArgumentException.class, () -> new FailedMessage("").setRequestId(-1));
+  }
+
+  @Test
+  void testEncodeDecodeRoundTrip() throws IOException {
+    for (Message message : ALL) {
+      ByteBuffer frame = FrameCodecV2.encode(message);
+      assertEquals(frame.remaining(), FrameCodecV2.frameLength(frame));
+      assertEquals(message, FrameCodecV2.decode(frame));
+      assertEquals(0, frame.remaining());
+    }
+  }
+
+  @Test
+  void testFrameHeader() throws IOException {
+    ByteBuffer frame = FrameCodecV2.encode(new FailedMessage("ab"));
+    assertEquals(frame.remaining() - 1, frame.get(0));
+    assertEquals(Protocol.FAILED_MESSAGE, frame.get(1));
+    assertEquals(FrameCodecV2.NO_FLAGS, frame.get(2));
+    assertEquals(2, frame.get(3));
+  }
+
+  @Test
+  void testEncodeIntoBuffer() throws IOException {
+    ByteBuffer target = ByteBuffer.allocate(1024);
+    target.put((byte) 7);
+    for (Message message : ALL) {
+      int start = target.position();
+      FrameCodecV2.encode(message, target);
+      assertEquals(FrameCodecV2.encodedLength(message), target.position() - start);
+      assertEquals(FrameCodecV2.encode(message), target.duplicate().flip().position(start));
+    }
+    assertEquals(7, target.get(0));
+  }
+
+  @Test
+  void testSurrogatesEncodeLikeStringGetBytes() throws IOException {
+    String text = "smile \uD83D\uDE00 lone \uD800 end \uDC00";
+    DirectMessage decoded = (DirectMessage) FrameCodecV2.decode(
+        FrameCodecV2.encode(new DirectMessage("annie", "zxy", text)));
+    assertEquals(new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8),
+        decoded.getMessage());
+  }
+
+  @Test
+  void testSmallerThanVersionOne() throws IOException {
+    DirectMessage dm = new DirectMessage("annie", "zxy", "hello there");
+    assertTrue(FrameCodecV2.encode(dm).remaining() < FrameDecoder.encode(dm).remaining());
+  }
+
+  @Test
+  void testPartialFrameIsNotConsumed() throws IOException {
+    ByteBuffer frame = FrameCodecV2.encode(new BroadcastMessage("annie", "hi all"));
+    int length = frame.remaining();
+    for (int cut = 0; cut < length; cut++) {
+      ByteBuffer partial = frame.duplicate();
+      partial.limit(cut);
+      assertEquals(FrameCodecV2.INCOMPLETE, FrameCodecV2.frameLength(partial));
+      assertNull(FrameCodecV2.decode(partial));
+      assertEquals(0, partial.position());
+    }
+  }
+
+  @Test
+  void testMultiByteLength() throws IOException {
+    String body = "x".repeat(70_000);
+    ByteBuffer frame = FrameCodecV2.encode(new BroadcastMessage("annie", body));
+    assertTrue((frame.get(0) & 0x80) != 0);
+    BroadcastMessage decoded = (BroadcastMessage) FrameCodecV2.decode(frame);
+    assertEquals(body, decoded.getMessage());
+  }
+
+  @Test
+  void testBackToBackFrames() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(256);
+    buffer.put(FrameCodecV2.encode(new QueryUsers("annie")));
+    buffer.put(FrameCodecV2.encode(new FailedMessage("oops")));
+    buffer.flip();
+    assertEquals(new QueryUsers("annie"), FrameCodecV2.decode(buffer));
+    assertEquals(new FailedMessage("oops"), FrameCodecV2.decode(buffer));
+    assertNull(FrameCodecV2.decode(buffer));
+  }
+
+  @Test
+  void testWriteAndRead() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    for (Message message : ALL) {
+      FrameCodecV2.write(message, out);
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    for (Message message : ALL) {
+      assertEquals(message, FrameCodecV2.read(in));
+    }
+    assertEquals(0, in.available());
+  }
+
+  @Test
+  void testMalformedFrames() {
+    ByteBuffer tooLarge = ByteBuffer.wrap(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x7F});
+    assertThrows(IOException.class, () -> FrameCodecV2.frameLength(tooLarge));
+    ByteBuffer badVarint = ByteBuffer.wrap(new byte[] {(byte) 0x80, (byte) 0x80, (byte) 0x80,
+        (byte) 0x80, (byte) 0x80, 0x01});
+    assertThrows(IOException.class, () -> FrameCodecV2.frameLength(badVarint));
+    ByteBuffer unknownType = ByteBuffer.wrap(new byte[] {2, 99, 0});
+    assertThrows(IOException.class, () -> FrameCodecV2.decode(unknownType));
+    ByteBuffer flags = ByteBuffer.wrap(new byte[] {3, (byte) Protocol.FAILED_MESSAGE, 1, 0});
+    assertThrows(IOException.class, () -> FrameCodecV2.decode(flags));
+    ByteBuffer shortString = ByteBuffer.wrap(new byte[] {3, (byte) Protocol.FAILED_MESSAGE, 0, 5});
+    assertThrows(IOException.class, () -> FrameCodecV2.decode(shortString));
+    ByteBuffer trailing = ByteBuffer.wrap(new byte[] {4, (byte) Protocol.FAILED_MESSAGE, 0, 0, 0});
+    assertThrows(IOException.class, () -> FrameCodecV2.decode(trailing));
+  }
+}
@@ -0,0 +1,88 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import messageModel.BroadcastMessage;
+import messageModel.DirectMessage;
+import messageModel.FrameDecoder;
+import messageModel.Message;
+import messageModel.PingMessage;
+import messageModel.PongMessage;
+import messageModel.QueryUsers;
+import messageModel.ResumeMessage;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class FrameDecoderTest {
+
+  @Test
+  void testEncodeDecodeRoundTrip() throws IOException {
+    DirectMessage dm = new DirectMessage("annie", "zxy", "hello there");
+    ByteBuffer frame = FrameDecoder.encode(dm);
+    assertEquals(frame.remaining(), FrameDecoder.frameLength(frame));
+    assertEquals(dm, FrameDecoder.decode(frame));
+    assertEquals(0, frame.remaining());
+  }
+
+  @Test
+  void testPartialFrameIsNotConsumed() throws IOException {
+    ByteBuffer frame = FrameDecoder.encode(new BroadcastMessage("annie", "hi all"));
+    int length = frame.remaining();
+    for (int cut = 0; cut < length; cut++) {
+      ByteBuffer partial = frame.duplicate();
+      partial.limit(cut);
+      assertEquals(FrameDecoder.INCOMPLETE, FrameDecoder.frameLength(partial));
+      assertNull(FrameDecoder.decode(partial));
+      assertEquals(0, partial.position());
+    }
+  }
+
+  @Test
+  void testSeveralFramesInOneBuffer() throws IOException {
+    ByteBuffer first = FrameDecoder.encode(new QueryUsers("annie"));
+    ByteBuffer second = FrameDecoder.encode(new BroadcastMessage("annie", "hi"));
+    ByteBuffer both = ByteBuffer.allocate(first.remaining() + second.remaining());
+    both.put(first).put(second).flip();
+
+    Message one = FrameDecoder.decode(both);
+    Message two = FrameDecoder.decode(both);
+    assertTrue(one instanceof QueryUsers);
+    assertTrue(two instanceof BroadcastMessage);
+    assertNull(FrameDecoder.decode(both));
+  }
+
+  @Test
+  void testResumeAndHeartbeatFrames() throws IOException {
+    for (Message message : new Message[] {new ResumeMessage("annie", "token", 12, Protocol.VERSION_2),
+        new PingMessage(5), new PongMessage(5)}) {
+      ByteBuffer frame = FrameDecoder.encode(message);
+      ByteBuffer partial = frame.duplicate();
+      partial.limit(frame.limit() - 1);
+      assertEquals(FrameDecoder.INCOMPLETE, FrameDecoder.frameLength(partial));
+      assertEquals(frame.remaining(), FrameDecoder.frameLength(frame));
+      assertEquals(message, FrameDecoder.decode(frame));
+    }
+  }
+
+  @Test
+  void testUnknownType() {
+    ByteBuffer buffer = ByteBuffer.allocate(4).putInt(999);
+    buffer.flip();
+    assertThrows(IOException.class, () -> FrameDecoder.frameLength(buffer));
+  }
+
+  @Test
+  void testVersionedConnectFrame() throws IOException {
+    ByteBuffer frame = FrameDecoder.encode(new messageModel.ConnectMessage("annie", 2));
+    ByteBuffer partial = frame.duplicate();
+    partial.limit(frame.limit() - 1);
+    assertEquals(FrameDecoder.INCOMPLETE, FrameDecoder.frameLength(partial));
+    assertEquals(frame.remaining(), FrameDecoder.frameLength(frame));
+    assertEquals(new messageModel.ConnectMessage("annie", 2), FrameDecoder.decode(frame));
+  }
+}
@@ -0,0 +1,169 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import messageModel.BroadcastMessage;
+import messageModel.ConnectResp;
+import messageModel.DirectMessage;
+import messageModel.FailedMessage;
+import messageModel.FramePool;
+import messageModel.FrameView;
+import messageModel.PooledFrame;
+import messageModel.WireFormat;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class FramePoolTest {
+
+  @Test
+  void testReleasedFramesAreReused() {
+    FramePool pool = new FramePool(64, 2);
+    PooledFrame first = pool.acquire(Protocol.FAILED_MESSAGE, WireFormat.V2, 10);
+    first.getBuffer().put((byte) 1);
+    first.release();
+    first.release();
+    assertEquals(1, pool.getPooledCount());
+    PooledFrame second = pool.acquire(Protocol.DIRECT_MESSAGE, WireFormat.V1, 64);
+    assertSame(first, second);
+    assertEquals(0, second.getBuffer().position());
+    assertEquals(Protocol.DIRECT_MESSAGE, second.getMessageType());
+    assertEquals(WireFormat.V1, second.getFormat());
+    assertEquals(0, pool.getPooledCount());
+  }
+
+  @Test
+  void testOversizeFramesAreNotPooled() {
+    FramePool pool = new FramePool(64, 2);
+    PooledFrame big = pool.acquire(Protocol.BROADCAST_MESSAGE, WireFormat.V2, 65);
+    assertTrue(big.getBuffer().capacity() >= 65);
+    big.release();
+    assertEquals(0, pool.getPooledCount());
+  }
+
+  @Test
+  void testPoolIsBounded() {
+    FramePool pool = new FramePool(64, 1);
+    PooledFrame a = pool.acquire(Protocol.FAILED_MESSAGE, WireFormat.V2, 1);
+    PooledFrame b = pool.acquire(Protocol.FAILED_MESSAGE, WireFormat.V2, 1);
+    assertNotSame(a, b);
+    a.release();
+    b.release();
+    assertEquals(1, pool.getPooledCount());
+  }
+
+  @Test
+  void testInvalidSizes() {
+    assertThrows(IllegalArgumentException.class, () -> new FramePool(0, 1));
+    assertThrows(IllegalArgumentException.class, () -> new FramePool(1, 0));
+  }
+
+  @Test
+  void testCopyOfAndWrite() throws IOException {
+    FramePool pool = new FramePool(256, 4);
+    DirectMessage dm = new DirectMessage("annie", "zxy", "héllo");
+    for (WireFormat format : WireFormat.values()) {
+      ByteBuffer source = format.encode(dm);
+      FrameView view = new FrameView().wrap(format, source, 0, source.remaining());
+      PooledFrame frame = pool.copyOf(view);
+      assertEquals(source.remaining(), frame.getEncodedSize());
+      assertEquals(dm, format.decode(format.encode(frame).duplicate()));
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      format.write(frame, new DataOutputStream(bytes));
+      assertEquals(source, ByteBuffer.wrap(bytes.toByteArray()));
+      frame.release();
+    }
+  }
+
+  @Test
+  void testFrameInOtherFormatIsRejected() throws IOException {
+    FramePool pool = new FramePool(256, 4);
+    PooledFrame frame = WireFormat.V2.encodePooled(new FailedMessage("x"), pool);
+    assertThrows(IOException.class, () -> WireFormat.V1.encode(frame));
+    assertThrows(IOException.class,
+        () -> WireFormat.V1.write(frame, new DataOutputStream(new ByteArrayOutputStream())));
+  }
+
+  @Test
+  void testEncodePooled() throws IOException {
+    FramePool pool = new FramePool(256, 4);
+    BroadcastMessage message = new BroadcastMessage("annie", "hi all");
+    PooledFrame frame = WireFormat.V2.encodePooled(message, pool);
+    assertEquals(WireFormat.V2.encode(message), frame.getBuffer());
+    assertNull(WireFormat.V1.encodePooled(message, pool));
+    assertNull(WireFormat.V2.encodePooled(new ConnectResp(true, "hi"), pool));
+  }
+
+  @Test
+  void testRelayDoesNotAllocateOnceWarm() throws IOException {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return;
+    }
+    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+    if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) {
+      return;
+    }
+    for (WireFormat format : WireFormat.values()) {
+      ByteBuffer read = ByteBuffer.allocate(4096);
+      for (int i = 0; i < 16; i++) {
+        read.put(format.encode(new DirectMessage("annie", "zxy", "hello number " + i)));
+      }
+      read.flip();
+      FramePool pool = new FramePool(256, 4);
+      FrameView view = new FrameView();
+      ByteBuffer socket = ByteBuffer.allocate(256);
+      FailedMessage ack = new FailedMessage("Recipient not found: bob");
+
+      relay(format, read, pool, view, socket, ack, 20_000);
+      long threadId = Thread.currentThread().getId();
+      long before = allocations.getThreadAllocatedBytes(threadId);
+      int relayed = relay(format, read, pool, view, socket, ack, 100_000);
+      long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+      assertTrue(allocated < 1024, format + " allocated " + allocated + " bytes for "
+          + relayed + " messages");
+    }
+  }
+
+  /**
+   * Route frames the way a connection does: match sender and recipient in place, copy each into a pooled
+   * frame, write it and release it, and encode a reply into a pooled frame for v2
+   */
+  private static int relay(WireFormat format, ByteBuffer read, FramePool pool, FrameView view,
+      ByteBuffer socket, FailedMessage ack, int count) throws IOException {
+    int relayed = 0;
+    for (int i = 0; i < count; i++) {
+      if (!read.hasRemaining()) {
+        read.rewind();
+      }
+      int length = format.frameLength(read);
+      view.wrap(format, read, read.position(), length);
+      if (view.fieldEquals(0, "annie") && view.fieldEquals(1, "zxy")) {
+        PooledFrame frame = pool.copyOf(view);
+        socket.clear();
+        socket.put(format.encode(frame));
+        frame.release();
+        relayed++;
+      }
+      PooledFrame reply = format.encodePooled(ack, pool);
+      if (reply != null) {
+        socket.clear();
+        socket.put(reply.getBuffer());
+        reply.release();
+      }
+      read.position(read.position() + length);
+    }
+    return relayed;
+  }
+}
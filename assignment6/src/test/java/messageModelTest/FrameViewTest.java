@@ -0,0 +1,116 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import messageModel.ConnectResp;
+import messageModel.DirectMessage;
+import messageModel.FrameCodecV2;
+import messageModel.FrameView;
+import messageModel.QueryResp;
+import messageModel.WireFormat;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class FrameViewTest {
+
+  private static final DirectMessage DM = new DirectMessage("annie", "zxÿ", "héllo ✓");
+
+  private FrameView wrap(WireFormat format, ByteBuffer frame) throws IOException {
+    return new FrameView().wrap(format, frame, frame.position(), format.frameLength(frame));
+  }
+
+  @Test
+  void testReadsFieldsInBothFormats() throws IOException {
+    for (WireFormat format : WireFormat.values()) {
+      FrameView view = wrap(format, format.encode(DM));
+      assertEquals(format, view.getFormat());
+      assertEquals(Protocol.DIRECT_MESSAGE, view.getMessageType());
+      assertEquals("annie", view.getString(0));
+      assertEquals("zxÿ", view.getString(1));
+      assertEquals("héllo ✓", view.getString(2));
+      assertTrue(view.fieldEquals(0, "annie"));
+      assertFalse(view.fieldEquals(0, "anniE"));
+      assertFalse(view.fieldEquals(0, "ann"));
+      assertFalse(view.fieldEquals(0, null));
+      assertTrue(view.fieldEquals(1, "zxÿ"));
+      assertFalse(view.fieldEquals(1, "zxy"));
+    }
+  }
+
+  @Test
+  void testFrameInsideLargerBuffer() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(256);
+    buffer.put(new byte[] {9, 9, 9});
+    buffer.put(WireFormat.V2.encode(DM));
+    buffer.put((byte) 9);
+    buffer.flip().position(3);
+    FrameView view = wrap(WireFormat.V2, buffer);
+    assertEquals(buffer.remaining() - 1, view.getFrameLength());
+    assertEquals("héllo ✓", view.getString(2));
+    assertEquals(3, buffer.position());
+
+    ByteBuffer copy = ByteBuffer.allocate(view.getFrameLength());
+    view.copyTo(copy);
+    copy.flip();
+    assertEquals(DM, WireFormat.V2.decode(copy));
+  }
+
+  @Test
+  void testRejectsMissingAndNonStringFields() throws IOException {
+    FrameView view = wrap(WireFormat.V2, WireFormat.V2.encode(DM));
+    assertThrows(IOException.class, () -> view.getString(3));
+    FrameView query = wrap(WireFormat.V2, WireFormat.V2.encode(new QueryResp(java.util.List.of("a"))));
+    assertThrows(IOException.class, () -> query.getString(0));
+    FrameView resp = wrap(WireFormat.V2, FrameCodecV2.encode(new ConnectResp(true, "hi")));
+    assertThrows(IOException.class, () -> resp.fieldEquals(0, "hi"));
+  }
+
+  @Test
+  void testTaggedFrame() throws IOException {
+    DirectMessage tagged = new DirectMessage("annie", "zxÿ", "héllo ✓");
+    tagged.setRequestId(300);
+    FrameView view = wrap(WireFormat.V2, WireFormat.V2.encode(tagged));
+    assertEquals(300, view.getRequestId());
+    assertEquals("annie", view.getString(0));
+    assertEquals("héllo ✓", view.getString(2));
+    assertEquals(0, wrap(WireFormat.V2, WireFormat.V2.encode(DM)).getRequestId());
+  }
+
+  @Test
+  void testRejectsTruncatedFields() throws IOException {
+    ByteBuffer frame = WireFormat.V2.encode(DM);
+    FrameView view = new FrameView().wrap(WireFormat.V2, frame, 0, 6);
+    assertThrows(IOException.class, () -> view.getString(0));
+    ByteBuffer flags = ByteBuffer.wrap(new byte[] {3, (byte) Protocol.FAILED_MESSAGE, 1, 0});
+    assertThrows(IOException.class, () -> new FrameView().wrap(WireFormat.V2, flags, 0, 4));
+  }
+
+  @Test
+  void testChecksStringsInPlace() throws IOException {
+    DirectMessage withNul = new DirectMessage("annie", "zx\u0000", "héllo ✓");
+    for (WireFormat format : WireFormat.values()) {
+      assertTrue(wrap(format, format.encode(DM)).hasWellFormedStrings(3));
+      assertTrue(wrap(format, format.encode(withNul)).hasWellFormedStrings(3));
+      assertFalse(wrap(format, format.encode(DM)).hasWellFormedStrings(2));
+      assertFalse(wrap(format, format.encode(DM)).hasWellFormedStrings(4));
+
+      ByteBuffer broken = format.encode(DM);
+      broken.put(broken.limit() - 1, (byte) 'A');
+      assertFalse(wrap(format, broken).hasWellFormedStrings(3));
+      ByteBuffer truncated = format.encode(DM);
+      assertFalse(new FrameView().wrap(format, truncated, 0, truncated.limit() - 1).hasWellFormedStrings(3));
+    }
+    ByteBuffer overlong = WireFormat.V2.encode(new DirectMessage("annie", "zx", "ab"));
+    overlong.put(overlong.limit() - 2, (byte) 0xC0).put(overlong.limit() - 1, (byte) 0x80);
+    assertFalse(wrap(WireFormat.V2, overlong).hasWellFormedStrings(3));
+    ByteBuffer surrogate = WireFormat.V2.encode(new DirectMessage("annie", "zx", "abc"));
+    surrogate.put(surrogate.limit() - 3, (byte) 0xED).put(surrogate.limit() - 2, (byte) 0xA0)
+        .put(surrogate.limit() - 1, (byte) 0x80);
+    assertFalse(wrap(WireFormat.V2, surrogate).hasWellFormedStrings(3));
+  }
+}
@@ -0,0 +1,94 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import messageModel.HistoryQuery;
+import messageModel.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class HistoryQueryTest {
+  private HistoryQuery right;
+  private HistoryQuery backup;
+
+  @BeforeEach
+  public void setUp() {
+    right = new HistoryQuery("annie", "bob", 20, 300L);
+    backup = new HistoryQuery("annie", "bob", 20, 300L);
+  }
+
+  @Test
+  void testGetters() {
+    assertEquals(Protocol.HISTORY_QUERY, right.getMessageType());
+    assertEquals("annie", right.getUsername());
+    assertEquals("bob", right.getPeer());
+    assertEquals(20, right.getCount());
+    assertEquals(300L, right.getBeforeSequence());
+  }
+
+  @Test
+  void testSend() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(Protocol.HISTORY_QUERY, dataInputStream.readInt());
+    assertEquals("annie", dataInputStream.readUTF());
+    assertEquals("bob", dataInputStream.readUTF());
+    assertEquals(20, dataInputStream.readInt());
+    assertEquals(300L, dataInputStream.readLong());
+  }
+
+  @Test
+  void testReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream(byteOutputStream);
+    dataOutputStream.writeUTF("annie");
+    dataOutputStream.writeUTF("bob");
+    dataOutputStream.writeInt(20);
+    dataOutputStream.writeLong(300L);
+
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, HistoryQuery.receive(dataInputStream));
+  }
+
+  @Test
+  void testMessageReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, Message.receive(dataInputStream));
+  }
+
+  @Test
+  void testToString() {
+    assertTrue(right.toString().contains("HistoryQuery{messageType:"));
+  }
+
+  @Test
+  void testHashCode() {
+    assertEquals(backup.hashCode(), right.hashCode());
+  }
+
+  @Test
+  void testEquals() {
+    assertEquals(right, right);
+    assertEquals(right, backup);
+    assertNotEquals(right, null);
+    assertNotEquals(right, new HistoryQuery("bob", "bob", 20, 300L));
+    assertNotEquals(right, new HistoryQuery("annie", "", 20, 300L));
+    assertNotEquals(right, new HistoryQuery("annie", "bob", 10, 300L));
+    assertNotEquals(right, new HistoryQuery("annie", "bob", 20, 0L));
+  }
+}
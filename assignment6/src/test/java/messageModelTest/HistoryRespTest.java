@@ -0,0 +1,118 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import messageModel.HistoryResp;
+import messageModel.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class HistoryRespTest {
+  private HistoryResp.Entry first;
+  private HistoryResp.Entry second;
+  private HistoryResp right;
+  private HistoryResp backup;
+
+  @BeforeEach
+  public void setUp() {
+    first = new HistoryResp.Entry(5, 1000L, "annie", "", "hi all");
+    second = new HistoryResp.Entry(8, 2000L, "bob", "annie", "hi annie");
+    right = new HistoryResp(List.of(first, second), 5);
+    backup = new HistoryResp(List.of(new HistoryResp.Entry(5, 1000L, "annie", "", "hi all"),
+        new HistoryResp.Entry(8, 2000L, "bob", "annie", "hi annie")), 5);
+  }
+
+  @Test
+  void testGetters() {
+    assertEquals(Protocol.HISTORY_RESPONSE, right.getMessageType());
+    assertEquals(List.of(first, second), right.getEntries());
+    assertEquals(5, right.getNextBeforeSequence());
+    assertTrue(right.hasMore());
+    assertFalse(new HistoryResp(List.of(), 0).hasMore());
+    assertEquals(8, second.getSequence());
+    assertEquals(2000L, second.getTimestamp());
+    assertEquals("bob", second.getSenderUsername());
+    assertEquals("annie", second.getRecipientUsername());
+    assertEquals("hi annie", second.getMessage());
+  }
+
+  @Test
+  void testSend() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(Protocol.HISTORY_RESPONSE, dataInputStream.readInt());
+    assertEquals(2, dataInputStream.readInt());
+    assertEquals(5, dataInputStream.readLong());
+    assertEquals(1000L, dataInputStream.readLong());
+    assertEquals("annie", dataInputStream.readUTF());
+    assertEquals("", dataInputStream.readUTF());
+    assertEquals("hi all", dataInputStream.readUTF());
+    assertEquals(8, dataInputStream.readLong());
+    assertEquals(2000L, dataInputStream.readLong());
+    assertEquals("bob", dataInputStream.readUTF());
+    assertEquals("annie", dataInputStream.readUTF());
+    assertEquals("hi annie", dataInputStream.readUTF());
+    assertEquals(5, dataInputStream.readLong());
+  }
+
+  @Test
+  void testReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream(byteOutputStream);
+    dataOutputStream.writeInt(1);
+    dataOutputStream.writeLong(5);
+    dataOutputStream.writeLong(1000L);
+    dataOutputStream.writeUTF("annie");
+    dataOutputStream.writeUTF("");
+    dataOutputStream.writeUTF("hi all");
+    dataOutputStream.writeLong(0);
+
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(new HistoryResp(List.of(first), 0), HistoryResp.receive(dataInputStream));
+  }
+
+  @Test
+  void testMessageReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, Message.receive(dataInputStream));
+  }
+
+  @Test
+  void testToString() {
+    assertTrue(right.toString().contains("HistoryResp{messageType:"));
+    assertTrue(first.toString().contains("Entry{sequence:5"));
+  }
+
+  @Test
+  void testHashCode() {
+    assertEquals(backup.hashCode(), right.hashCode());
+  }
+
+  @Test
+  void testEquals() {
+    assertEquals(right, right);
+    assertEquals(right, backup);
+    assertNotEquals(right, null);
+    assertNotEquals(right, new HistoryResp(List.of(first), 5));
+    assertNotEquals(right, new HistoryResp(List.of(first, second), 0));
+    assertNotEquals(first, second);
+    assertNotEquals(first, new HistoryResp.Entry(5, 1000L, "annie", "", "hi"));
+  }
+}
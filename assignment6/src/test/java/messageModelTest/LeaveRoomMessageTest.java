@@ -0,0 +1,97 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import messageModel.LeaveRoomMessage;
+import messageModel.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class LeaveRoomMessageTest {
+  private LeaveRoomMessage right;
+  private LeaveRoomMessage backup;
+
+  @BeforeEach
+  public void setUp() {
+    right = new LeaveRoomMessage("annie", "lobby");
+    backup = new LeaveRoomMessage("annie", "lobby");
+  }
+
+  @Test
+  void testGetUsername() {
+    assertEquals("annie", right.getUsername());
+  }
+
+  @Test
+  void testGetRoomName() {
+    assertEquals("lobby", right.getRoomName());
+  }
+
+  @Test
+  void testSend() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream(byteOutputStream);
+
+    right.send(dataOutputStream);
+
+    ByteArrayInputStream byteInputStream = new ByteArrayInputStream(byteOutputStream.toByteArray());
+    DataInputStream dataInputStream = new DataInputStream(byteInputStream);
+
+    assertEquals(Protocol.LEAVE_ROOM, dataInputStream.readInt());
+    assertEquals("annie", dataInputStream.readUTF());
+    assertEquals("lobby", dataInputStream.readUTF());
+  }
+
+  @Test
+  void testReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream(byteOutputStream);
+
+    dataOutputStream.writeUTF("annie");
+    dataOutputStream.writeUTF("lobby");
+    dataOutputStream.flush();
+
+    ByteArrayInputStream byteInputStream = new ByteArrayInputStream(byteOutputStream.toByteArray());
+    DataInputStream dataInputStream = new DataInputStream(byteInputStream);
+
+    LeaveRoomMessage receivedMessage = LeaveRoomMessage.receive(dataInputStream);
+    assertEquals("annie", receivedMessage.getUsername());
+    assertEquals("lobby", receivedMessage.getRoomName());
+  }
+
+  @Test
+  void testMessageReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, Message.receive(dataInputStream));
+  }
+
+  @Test
+  void testToString() {
+    assertTrue(right.toString().contains("LeaveRoomMessage{messageType:"));
+  }
+
+  @Test
+  void testHashCode() {
+    assertEquals(backup.hashCode(), right.hashCode());
+  }
+
+  @Test
+  void testEquals() {
+    assertEquals(right, right);
+    assertEquals(right, backup);
+    assertNotEquals(right, null);
+    assertNotEquals(right, new LeaveRoomMessage("zxy", "lobby"));
+    assertNotEquals(right, new LeaveRoomMessage("annie", "kitchen"));
+  }
+}
@@ -0,0 +1,90 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import messageModel.Message;
+import messageModel.PresenceDelta;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class PresenceDeltaTest {
+  private PresenceDelta right;
+  private PresenceDelta backup;
+
+  @BeforeEach
+  public void setUp() {
+    right = new PresenceDelta(7, true, "annie");
+    backup = new PresenceDelta(7, true, "annie");
+  }
+
+  @Test
+  void testGetters() {
+    assertEquals(Protocol.PRESENCE_DELTA, right.getMessageType());
+    assertEquals(7, right.getSequence());
+    assertEquals(true, right.isJoined());
+    assertEquals("annie", right.getUsername());
+  }
+
+  @Test
+  void testSend() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(Protocol.PRESENCE_DELTA, dataInputStream.readInt());
+    assertEquals(7, dataInputStream.readLong());
+    assertEquals(true, dataInputStream.readBoolean());
+    assertEquals("annie", dataInputStream.readUTF());
+  }
+
+  @Test
+  void testReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream(byteOutputStream);
+    dataOutputStream.writeLong(7);
+    dataOutputStream.writeBoolean(true);
+    dataOutputStream.writeUTF("annie");
+
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, PresenceDelta.receive(dataInputStream));
+  }
+
+  @Test
+  void testMessageReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, Message.receive(dataInputStream));
+  }
+
+  @Test
+  void testToString() {
+    assertTrue(right.toString().contains("PresenceDelta{messageType:"));
+  }
+
+  @Test
+  void testHashCode() {
+    assertEquals(backup.hashCode(), right.hashCode());
+  }
+
+  @Test
+  void testEquals() {
+    assertEquals(right, right);
+    assertEquals(right, backup);
+    assertNotEquals(right, null);
+    assertNotEquals(right, new PresenceDelta(8, true, "annie"));
+    assertNotEquals(right, new PresenceDelta(7, false, "annie"));
+    assertNotEquals(right, new PresenceDelta(7, true, "bob"));
+  }
+}
@@ -0,0 +1,65 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import messageModel.FrameCodecV2;
+import messageModel.Message;
+import messageModel.PresenceReply;
+import messageModel.PresenceSnapshot;
+import messageModel.QueryResp;
+import messageModel.WireFormat;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class PresenceReplyTest {
+
+  private final PresenceSnapshot snapshot = new PresenceSnapshot(3, List.of("bob", "annie", "zxy"));
+
+  @Test
+  void testGetters() {
+    PresenceReply reply = snapshot.replyFor("bob");
+    assertEquals(Protocol.QUERY_USER_RESPONSE, reply.getMessageType());
+    assertSame(snapshot, reply.getSnapshot());
+    assertEquals(List.of("annie", "zxy"), reply.getUsernames());
+    assertEquals(List.of("annie", "bob", "zxy"), snapshot.replyFor(null).getUsernames());
+  }
+
+  @Test
+  void testSendIsReadAsQueryResp() throws IOException {
+    PresenceReply reply = snapshot.replyFor("annie");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    reply.send(new DataOutputStream(bytes));
+    assertEquals(bytes.size(), reply.getEncodedSize());
+    assertEquals(new QueryResp(List.of("bob", "zxy")).getEncodedSize(), reply.getEncodedSize());
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(Protocol.QUERY_USER_RESPONSE, in.readInt());
+    assertEquals(new QueryResp(List.of("bob", "zxy")), QueryResp.receive(in));
+  }
+
+  @Test
+  void testTaggedReply() throws IOException {
+    PresenceReply reply = snapshot.replyFor("annie");
+    reply.setRequestId(300);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    reply.send(new DataOutputStream(bytes), WireFormat.V2);
+    ByteBuffer gathered = WireFormat.V2.encode(reply);
+    assertEquals(ByteBuffer.wrap(bytes.toByteArray()), gathered);
+    Message decoded = FrameCodecV2.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(new QueryResp(List.of("bob", "zxy")), decoded);
+    assertEquals(300, decoded.getRequestId());
+  }
+
+  @Test
+  void testToString() {
+    assertEquals("PresenceReply{messageType:" + Protocol.QUERY_USER_RESPONSE + ", version:3, users:[annie, zxy]}",
+        snapshot.replyFor("bob").toString());
+  }
+}
@@ -0,0 +1,89 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import messageModel.PresenceSnapshot;
+import messageModel.QueryResp;
+import messageModel.WireFormat;
+import org.junit.jupiter.api.Test;
+
+public class PresenceSnapshotTest {
+
+  private static final List<String> USERS = List.of("zxy", "annie", "héllo ✓", "bob");
+
+  @Test
+  void testGetters() {
+    PresenceSnapshot snapshot = new PresenceSnapshot(7, USERS);
+    assertEquals(7, snapshot.getVersion());
+    assertEquals(4, snapshot.size());
+    assertEquals(List.of("annie", "bob", "héllo ✓", "zxy"), snapshot.getUsernames());
+    assertThrows(UnsupportedOperationException.class, () -> snapshot.getUsernames().add("x"));
+    assertEquals("PresenceSnapshot{version:7, users:4}", snapshot.toString());
+  }
+
+  @Test
+  void testReplyMatchesQueryRespWithoutRequester() throws IOException {
+    PresenceSnapshot snapshot = new PresenceSnapshot(1, USERS);
+    for (WireFormat format : WireFormat.values()) {
+      for (String requester : List.of("annie", "bob", "héllo ✓", "zxy", "nobody")) {
+        List<String> expected = new ArrayList<>(snapshot.getUsernames());
+        expected.remove(requester);
+        ByteBuffer frame = format.encode(new QueryResp(expected));
+        assertEquals(frame, format.encode(snapshot.replyFor(requester)), format + " " + requester);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        format.write(snapshot.replyFor(requester), new DataOutputStream(bytes));
+        assertEquals(frame, ByteBuffer.wrap(bytes.toByteArray()));
+        if (format == WireFormat.V2) {
+          assertEquals(new QueryResp(expected), format.decode(ByteBuffer.wrap(bytes.toByteArray())));
+        }
+      }
+    }
+  }
+
+  @Test
+  void testEmptyAndOnlyRequester() throws IOException {
+    for (WireFormat format : WireFormat.values()) {
+      ByteBuffer empty = format.encode(new QueryResp(List.of()));
+      assertEquals(empty, format.encode(new PresenceSnapshot(0, List.of()).replyFor("annie")));
+      assertEquals(empty, format.encode(new PresenceSnapshot(1, List.of("annie")).replyFor("annie")));
+    }
+  }
+
+  @Test
+  void testRepliesShareTheEncodedUsernames() throws IOException {
+    PresenceSnapshot snapshot = new PresenceSnapshot(1, USERS);
+    ByteBuffer[] first = snapshot.replyFor("bob").getFrame(WireFormat.V2);
+    ByteBuffer[] second = snapshot.replyFor("bob").getFrame(WireFormat.V2);
+    assertEquals(3, first.length);
+    assertEquals(2, snapshot.replyFor("zxy").getFrame(WireFormat.V2).length);
+    assertTrue(first[1].isReadOnly());
+    assertTrue(first[2].isReadOnly());
+    int length = 0;
+    for (ByteBuffer part : first) {
+      length += part.remaining();
+    }
+    assertEquals(WireFormat.V2.encode(snapshot.replyFor("bob")).remaining(), length);
+    first[1].get(new byte[first[1].remaining()]);
+    assertEquals(0, first[1].remaining());
+    assertEquals(first[1].limit(), second[1].remaining());
+  }
+
+  @Test
+  void testLargeSnapshotIsRejectedInVersionTwo() {
+    List<String> users = new ArrayList<>();
+    for (int i = 0; i < 40_000; i++) {
+      users.add("user-with-a-long-name-" + i);
+    }
+    PresenceSnapshot snapshot = new PresenceSnapshot(1, users);
+    assertThrows(IOException.class, () -> WireFormat.V2.encode(snapshot.replyFor("user-with-a-long-name-0")));
+  }
+}
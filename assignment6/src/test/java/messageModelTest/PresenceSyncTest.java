@@ -0,0 +1,91 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import messageModel.Message;
+import messageModel.PresenceSync;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class PresenceSyncTest {
+  private PresenceSync right;
+  private PresenceSync backup;
+
+  @BeforeEach
+  public void setUp() {
+    right = new PresenceSync(42, List.of("annie", "bob"));
+    backup = new PresenceSync(42, List.of("annie", "bob"));
+  }
+
+  @Test
+  void testGetters() {
+    assertEquals(Protocol.PRESENCE_SYNC, right.getMessageType());
+    assertEquals(42, right.getSequence());
+    assertEquals(List.of("annie", "bob"), right.getUsernames());
+  }
+
+  @Test
+  void testSend() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(Protocol.PRESENCE_SYNC, dataInputStream.readInt());
+    assertEquals(42, dataInputStream.readLong());
+    assertEquals(2, dataInputStream.readInt());
+    assertEquals("annie", dataInputStream.readUTF());
+    assertEquals("bob", dataInputStream.readUTF());
+  }
+
+  @Test
+  void testReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream(byteOutputStream);
+    dataOutputStream.writeLong(42);
+    dataOutputStream.writeInt(2);
+    dataOutputStream.writeUTF("annie");
+    dataOutputStream.writeUTF("bob");
+
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, PresenceSync.receive(dataInputStream));
+  }
+
+  @Test
+  void testMessageReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, Message.receive(dataInputStream));
+  }
+
+  @Test
+  void testToString() {
+    assertTrue(right.toString().contains("PresenceSync{messageType:"));
+  }
+
+  @Test
+  void testHashCode() {
+    assertEquals(backup.hashCode(), right.hashCode());
+  }
+
+  @Test
+  void testEquals() {
+    assertEquals(right, right);
+    assertEquals(right, backup);
+    assertNotEquals(right, null);
+    assertNotEquals(right, new PresenceSync(43, List.of("annie", "bob")));
+    assertNotEquals(right, new PresenceSync(42, List.of("annie")));
+  }
+}
@@ -0,0 +1,96 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import messageModel.Message;
+import messageModel.ResumeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class ResumeMessageTest {
+  private ResumeMessage right;
+  private ResumeMessage backup;
+
+  @BeforeEach
+  public void setUp() {
+    right = new ResumeMessage("annie", "secret-token", 42L, Protocol.VERSION_2);
+    backup = new ResumeMessage("annie", "secret-token", 42L, Protocol.VERSION_2);
+  }
+
+  @Test
+  void testGetters() {
+    assertEquals(Protocol.RESUME_SESSION, right.getMessageType());
+    assertEquals("annie", right.getUsername());
+    assertEquals("secret-token", right.getResumeToken());
+    assertEquals(42L, right.getLastSequence());
+    assertEquals(Protocol.VERSION_2, right.getMaxVersion());
+  }
+
+  @Test
+  void testSend() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(Protocol.RESUME_SESSION, dataInputStream.readInt());
+    assertEquals("annie", dataInputStream.readUTF());
+    assertEquals("secret-token", dataInputStream.readUTF());
+    assertEquals(42L, dataInputStream.readLong());
+    assertEquals(Protocol.VERSION_2, dataInputStream.readInt());
+  }
+
+  @Test
+  void testReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream(byteOutputStream);
+    dataOutputStream.writeUTF("annie");
+    dataOutputStream.writeUTF("secret-token");
+    dataOutputStream.writeLong(42L);
+    dataOutputStream.writeInt(Protocol.VERSION_2);
+
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, ResumeMessage.receive(dataInputStream));
+  }
+
+  @Test
+  void testMessageReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, Message.receive(dataInputStream));
+  }
+
+  @Test
+  void testToStringHidesToken() {
+    assertTrue(right.toString().contains("ResumeMessage{messageType:"));
+    assertFalse(right.toString().contains("secret-token"));
+  }
+
+  @Test
+  void testHashCode() {
+    assertEquals(backup.hashCode(), right.hashCode());
+  }
+
+  @Test
+  void testEquals() {
+    assertEquals(right, right);
+    assertEquals(right, backup);
+    assertNotEquals(right, null);
+    assertNotEquals(right, new ResumeMessage("bob", "secret-token", 42L, Protocol.VERSION_2));
+    assertNotEquals(right, new ResumeMessage("annie", "other", 42L, Protocol.VERSION_2));
+    assertNotEquals(right, new ResumeMessage("annie", "secret-token", 41L, Protocol.VERSION_2));
+    assertNotEquals(right, new ResumeMessage("annie", "secret-token", 42L, Protocol.VERSION_1));
+  }
+}
@@ -0,0 +1,106 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import messageModel.RoomMessage;
+import messageModel.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class RoomMessageTest {
+  private RoomMessage right;
+  private RoomMessage backup;
+
+  @BeforeEach
+  public void setUp() {
+    right = new RoomMessage("annie", "lobby", "hello room");
+    backup = new RoomMessage("annie", "lobby", "hello room");
+  }
+
+  @Test
+  void testGetSenderUsername() {
+    assertEquals("annie", right.getSenderUsername());
+  }
+
+  @Test
+  void testGetRoomName() {
+    assertEquals("lobby", right.getRoomName());
+  }
+
+  @Test
+  void testGetMessage() {
+    assertEquals("hello room", right.getMessage());
+  }
+
+  @Test
+  void testSend() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream(byteOutputStream);
+
+    right.send(dataOutputStream);
+
+    ByteArrayInputStream byteInputStream = new ByteArrayInputStream(byteOutputStream.toByteArray());
+    DataInputStream dataInputStream = new DataInputStream(byteInputStream);
+
+    assertEquals(Protocol.ROOM_MESSAGE, dataInputStream.readInt());
+    assertEquals("annie", dataInputStream.readUTF());
+    assertEquals("lobby", dataInputStream.readUTF());
+    assertEquals("hello room", dataInputStream.readUTF());
+  }
+
+  @Test
+  void testReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream(byteOutputStream);
+
+    dataOutputStream.writeUTF("annie");
+    dataOutputStream.writeUTF("lobby");
+    dataOutputStream.writeUTF("hello room");
+    dataOutputStream.flush();
+
+    ByteArrayInputStream byteInputStream = new ByteArrayInputStream(byteOutputStream.toByteArray());
+    DataInputStream dataInputStream = new DataInputStream(byteInputStream);
+
+    RoomMessage receivedMessage = RoomMessage.receive(dataInputStream);
+    assertEquals("annie", receivedMessage.getSenderUsername());
+    assertEquals("lobby", receivedMessage.getRoomName());
+    assertEquals("hello room", receivedMessage.getMessage());
+  }
+
+  @Test
+  void testMessageReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, Message.receive(dataInputStream));
+  }
+
+  @Test
+  void testToString() {
+    assertTrue(right.toString().contains("RoomMessage{messageType:"));
+  }
+
+  @Test
+  void testHashCode() {
+    assertEquals(backup.hashCode(), right.hashCode());
+  }
+
+  @Test
+  void testEquals() {
+    assertEquals(right, right);
+    assertEquals(right, backup);
+    assertNotEquals(right, null);
+    assertNotEquals(right, new RoomMessage("zxy", "lobby", "hello room"));
+    assertNotEquals(right, new RoomMessage("annie", "kitchen", "hello room"));
+    assertNotEquals(right, new RoomMessage("annie", "lobby", "bye room"));
+  }
+}
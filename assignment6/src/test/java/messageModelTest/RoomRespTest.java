@@ -0,0 +1,106 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import messageModel.RoomResp;
+import messageModel.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class RoomRespTest {
+  private RoomResp right;
+  private RoomResp backup;
+
+  @BeforeEach
+  public void setUp() {
+    right = new RoomResp(true, "lobby", "Joined room: lobby");
+    backup = new RoomResp(true, "lobby", "Joined room: lobby");
+  }
+
+  @Test
+  void testIsSuccess() {
+    assertEquals(true, right.isSuccess());
+  }
+
+  @Test
+  void testGetRoomName() {
+    assertEquals("lobby", right.getRoomName());
+  }
+
+  @Test
+  void testGetMessage() {
+    assertEquals("Joined room: lobby", right.getMessage());
+  }
+
+  @Test
+  void testSend() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream(byteOutputStream);
+
+    right.send(dataOutputStream);
+
+    ByteArrayInputStream byteInputStream = new ByteArrayInputStream(byteOutputStream.toByteArray());
+    DataInputStream dataInputStream = new DataInputStream(byteInputStream);
+
+    assertEquals(Protocol.ROOM_RESPONSE, dataInputStream.readInt());
+    assertEquals(true, dataInputStream.readBoolean());
+    assertEquals("lobby", dataInputStream.readUTF());
+    assertEquals("Joined room: lobby", dataInputStream.readUTF());
+  }
+
+  @Test
+  void testReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    DataOutputStream dataOutputStream = new DataOutputStream(byteOutputStream);
+
+    dataOutputStream.writeBoolean(true);
+    dataOutputStream.writeUTF("lobby");
+    dataOutputStream.writeUTF("Joined room: lobby");
+    dataOutputStream.flush();
+
+    ByteArrayInputStream byteInputStream = new ByteArrayInputStream(byteOutputStream.toByteArray());
+    DataInputStream dataInputStream = new DataInputStream(byteInputStream);
+
+    RoomResp receivedMessage = RoomResp.receive(dataInputStream);
+    assertEquals(true, receivedMessage.isSuccess());
+    assertEquals("lobby", receivedMessage.getRoomName());
+    assertEquals("Joined room: lobby", receivedMessage.getMessage());
+  }
+
+  @Test
+  void testMessageReceive() throws IOException {
+    ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+    right.send(new DataOutputStream(byteOutputStream));
+    DataInputStream dataInputStream =
+        new DataInputStream(new ByteArrayInputStream(byteOutputStream.toByteArray()));
+    assertEquals(right, Message.receive(dataInputStream));
+  }
+
+  @Test
+  void testToString() {
+    assertTrue(right.toString().contains("RoomResp{messageType:"));
+  }
+
+  @Test
+  void testHashCode() {
+    assertEquals(backup.hashCode(), right.hashCode());
+  }
+
+  @Test
+  void testEquals() {
+    assertEquals(right, right);
+    assertEquals(right, backup);
+    assertNotEquals(right, null);
+    assertNotEquals(right, new RoomResp(false, "lobby", "Joined room: lobby"));
+    assertNotEquals(right, new RoomResp(true, "kitchen", "Joined room: lobby"));
+    assertNotEquals(right, new RoomResp(true, "lobby", "Left room: lobby"));
+  }
+}
@@ -0,0 +1,87 @@
+package messageModelTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import messageModel.BroadcastMessage;
+import messageModel.ConnectResp;
+import messageModel.DirectMessage;
+import messageModel.EncodedMessage;
+import messageModel.FrameCodecV2;
+import messageModel.FrameDecoder;
+import messageModel.ForwardedDirectMessage;
+import messageModel.Message;
+import messageModel.WireFormat;
+import org.junit.jupiter.api.Test;
+import protocol.Protocol;
+
+public class WireFormatTest {
+
+  @Test
+  void testNegotiate() {
+    assertEquals(WireFormat.V1, WireFormat.negotiate(Protocol.VERSION_1));
+    assertEquals(WireFormat.V2, WireFormat.negotiate(Protocol.VERSION_2));
+    assertEquals(WireFormat.V2, WireFormat.negotiate(Protocol.VERSION_2 + 5));
+    assertEquals(Protocol.VERSION_2, WireFormat.V2.getVersion());
+  }
+
+  @Test
+  void testEncodeUsesFormat() throws IOException {
+    DirectMessage dm = new DirectMessage("annie", "zxy", "hi");
+    assertEquals(FrameDecoder.encode(dm), WireFormat.V1.encode(dm));
+    assertEquals(FrameCodecV2.encode(dm), WireFormat.V2.encode(dm));
+    ByteBuffer decoded = WireFormat.V2.encode(dm);
+    assertEquals(dm, WireFormat.V2.decode(decoded));
+  }
+
+  @Test
+  void testConnectRespIsAlwaysVersionOne() throws IOException {
+    ConnectResp resp = new ConnectResp(true, "welcome", Protocol.VERSION_2);
+    assertEquals(FrameDecoder.encode(resp), WireFormat.V2.encode(resp));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    WireFormat.V2.write(resp, new DataOutputStream(bytes));
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(resp, ConnectResp.receive(in));
+  }
+
+  @Test
+  void testTaggedDirectMessageIsNotForwarded() throws IOException {
+    DirectMessage tagged = new DirectMessage("annie", "zxy", "hi");
+    tagged.setRequestId(7);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    WireFormat.V2.write(tagged, new DataOutputStream(bytes));
+    Message routed = WireFormat.V2.readRouted(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertFalse(routed instanceof ForwardedDirectMessage);
+    assertEquals(tagged, routed);
+    assertEquals(7, routed.getRequestId());
+
+    Message decoded = WireFormat.V2.decodeRouted(WireFormat.V2.encode(tagged));
+    assertFalse(decoded instanceof ForwardedDirectMessage);
+    assertEquals(7, decoded.getRequestId());
+    assertTrue(WireFormat.V2.decodeRouted(WireFormat.V2.encode(new DirectMessage("annie", "zxy", "hi")))
+        instanceof ForwardedDirectMessage);
+  }
+
+  @Test
+  void testEncodedMessagePerFormat() throws IOException {
+    BroadcastMessage broadcast = new BroadcastMessage("annie", "hi all");
+    EncodedMessage encoded = new EncodedMessage(broadcast);
+    assertEquals(FrameCodecV2.encode(broadcast), WireFormat.V2.encode(encoded));
+    assertEquals(FrameDecoder.encode(broadcast), WireFormat.V1.encode(encoded));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    WireFormat.V2.write(encoded, out);
+    WireFormat.V1.write(encoded, out);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(broadcast, WireFormat.V2.read(in));
+    assertEquals(broadcast, WireFormat.V1.read(in));
+  }
+}